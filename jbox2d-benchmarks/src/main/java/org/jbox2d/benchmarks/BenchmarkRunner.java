@@ -21,11 +21,26 @@
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
  * POSSIBILITY OF SUCH DAMAGE.
  ******************************************************************************/
-package org.jbox2d.dynamics.contacts;
+package org.jbox2d.benchmarks;
 
-import org.jbox2d.common.Vec2;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 
-public class Position {
-  public final Vec2 c = new Vec2();
-  public float a;
+/**
+ * Main class of the benchmarks jar. Takes the usual JMH command line and always adds the GC
+ * profiler, so allocation rate and bytes allocated per operation are reported next to the times.
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    Options options =
+        new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+            .build();
+    new Runner(options).run();
+  }
 }
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.collision.broadphase.BroadPhaseStrategy;
+import org.jbox2d.collision.broadphase.DynamicTree;
+import org.jbox2d.collision.broadphase.DynamicTreeFlatNodes;
+import org.jbox2d.common.Vec2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AABB queries and ray casts against a broad-phase tree filled with randomly placed proxies. The
+ * query boxes and rays are generated up front and cycled through so every implementation sees the
+ * same sequence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DynamicTreeBenchmark {
+
+  private static final int QUERIES = 1024;
+  private static final float WORLD_EXTENT = 500.0f;
+
+  @Param({"DynamicTree", "DynamicTreeFlatNodes"})
+  public String tree;
+
+  @Param({"1000", "10000"})
+  public int proxyCount;
+
+  private BroadPhaseStrategy strategy;
+  private final AABB[] queries = new AABB[QUERIES];
+  private final RayCastInput[] rays = new RayCastInput[QUERIES];
+  private int next;
+  private int hits;
+
+  private final TreeCallback queryCallback = new TreeCallback() {
+    @Override
+    public boolean treeCallback(int proxyId) {
+      ++hits;
+      return true;
+    }
+  };
+
+  private final TreeRayCastCallback rayCastCallback = new TreeRayCastCallback() {
+    @Override
+    public float raycastCallback(RayCastInput input, int nodeId) {
+      ++hits;
+      return input.maxFraction;
+    }
+  };
+
+  @Setup
+  public void setup() {
+    if ("DynamicTree".equals(tree)) {
+      strategy = new DynamicTree();
+    } else if ("DynamicTreeFlatNodes".equals(tree)) {
+      strategy = new DynamicTreeFlatNodes();
+    } else {
+      throw new IllegalArgumentException("Unknown tree " + tree);
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < proxyCount; ++i) {
+      strategy.createProxy(randomBox(random, 2.0f), null);
+    }
+    for (int i = 0; i < QUERIES; ++i) {
+      queries[i] = randomBox(random, 20.0f);
+      RayCastInput input = new RayCastInput();
+      input.p1.set(randomPoint(random));
+      input.p2.set(randomPoint(random));
+      input.maxFraction = 1.0f;
+      rays[i] = input;
+    }
+  }
+
+  @Benchmark
+  public int query() {
+    hits = 0;
+    strategy.query(queryCallback, queries[next++ & (QUERIES - 1)]);
+    return hits;
+  }
+
+  @Benchmark
+  public int raycast() {
+    hits = 0;
+    strategy.raycast(rayCastCallback, rays[next++ & (QUERIES - 1)]);
+    return hits;
+  }
+
+  private static Vec2 randomPoint(Random random) {
+    return new Vec2((random.nextFloat() - 0.5f) * WORLD_EXTENT,
+        (random.nextFloat() - 0.5f) * WORLD_EXTENT);
+  }
+
+  private static AABB randomBox(Random random, float maxSize) {
+    Vec2 lower = randomPoint(random);
+    Vec2 upper = new Vec2(lower.x + random.nextFloat() * maxSize, lower.y + random.nextFloat()
+        * maxSize);
+    return new AABB(lower, upper);
+  }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.common.Sweep;
+import org.jbox2d.common.Transform;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.Island;
+import org.jbox2d.dynamics.Profile;
+import org.jbox2d.dynamics.TimeStep;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.contacts.Contact;
+import org.jbox2d.dynamics.joints.Joint;
+import org.jbox2d.pooling.normal.ThreadLocalWorldPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Island#solve} on one island holding every body, touching contact and joint of a settled
+ * scene. The body state and the warm starting impulses are put back at the start of every call, so
+ * each call solves exactly the same problem. A solve only takes microseconds, so this is done in
+ * the benchmark method rather than in a per-invocation setup, and {@link #restore()} measures the
+ * put back on its own. Subtract it from {@link #solve()} to get the cost of the solve. With
+ * {@code coloredThreads} above zero the island is solved color by color on a pool of that many
+ * threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IslandSolveBenchmark {
+
+  @Param({"PYRAMID", "VERTICAL_STACK", "TUMBLER"})
+  public Scene scene;
+
+  @Param({"0", "1", "4"})
+  public int coloredThreads;
+
+  private ForkJoinPool coloredPool;
+
+  private final Island island = new Island();
+  private final Profile profile = new Profile();
+  private final TimeStep step = new TimeStep();
+  private Vec2 gravity;
+
+  private Sweep[] sweeps;
+  private Transform[] transforms;
+  private Vec2[] linearVelocities;
+  private float[] angularVelocities;
+  private float[] impulses;
+
+  @Setup
+  public void setup() {
+    // The colored solver only solves joints concurrently when every thread has its own pool.
+    World world = coloredThreads > 0
+        ? scene.createWorld(new ThreadLocalWorldPool(World.WORLD_POOL_SIZE,
+            World.WORLD_POOL_CONTAINER_SIZE))
+        : scene.createWorld();
+    gravity = world.getGravity();
+
+    step.dt = Scene.DT;
+    step.inv_dt = 1.0f / Scene.DT;
+    step.dtRatio = 1.0f;
+    step.velocityIterations = Scene.VELOCITY_ITERATIONS;
+    step.positionIterations = Scene.POSITION_ITERATIONS;
+    step.warmStarting = true;
+
+    if (coloredThreads > 0) {
+      coloredPool = new ForkJoinPool(coloredThreads);
+      island.setColoredSolverPool(coloredPool, world.getPool() instanceof ThreadLocalWorldPool);
+    }
+
+    island.init(world.getBodyCount(), world.getContactCount(), world.getJointCount(), null);
+    for (Body b = world.getBodyList(); b != null; b = b.getNext()) {
+      island.add(b);
+    }
+    for (Contact c = world.getContactList(); c != null; c = c.getNext()) {
+      if (c.isEnabled() && c.isTouching() && !c.getFixtureA().isSensor()
+          && !c.getFixtureB().isSensor()) {
+        island.add(c);
+      }
+    }
+    for (Joint j = world.getJointList(); j != null; j = j.getNext()) {
+      island.add(j);
+    }
+
+    int bodyCount = island.m_bodyCount;
+    sweeps = new Sweep[bodyCount];
+    transforms = new Transform[bodyCount];
+    linearVelocities = new Vec2[bodyCount];
+    angularVelocities = new float[bodyCount];
+    for (int i = 0; i < bodyCount; ++i) {
+      Body b = island.m_bodies[i];
+      sweeps[i] = new Sweep().set(b.m_sweep);
+      transforms[i] = new Transform(b.m_xf);
+      linearVelocities[i] = new Vec2(b.m_linearVelocity);
+      angularVelocities[i] = b.m_angularVelocity;
+    }
+
+    impulses = new float[island.m_contactCount * 2 * 2];
+    for (int i = 0; i < island.m_contactCount; ++i) {
+      Manifold manifold = island.m_contacts[i].getManifold();
+      for (int j = 0; j < manifold.pointCount; ++j) {
+        impulses[4 * i + 2 * j] = manifold.points[j].normalImpulse;
+        impulses[4 * i + 2 * j + 1] = manifold.points[j].tangentImpulse;
+      }
+    }
+  }
+
+  private void restoreState() {
+    for (int i = 0; i < island.m_bodyCount; ++i) {
+      Body b = island.m_bodies[i];
+      b.m_sweep.set(sweeps[i]);
+      b.m_xf.set(transforms[i]);
+      b.m_linearVelocity.set(linearVelocities[i]);
+      b.m_angularVelocity = angularVelocities[i];
+    }
+    for (int i = 0; i < island.m_contactCount; ++i) {
+      Manifold manifold = island.m_contacts[i].getManifold();
+      for (int j = 0; j < manifold.pointCount; ++j) {
+        manifold.points[j].normalImpulse = impulses[4 * i + 2 * j];
+        manifold.points[j].tangentImpulse = impulses[4 * i + 2 * j + 1];
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (coloredPool != null) {
+      coloredPool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public Island restore() {
+    restoreState();
+    return island;
+  }
+
+  @Benchmark
+  public Island solve() {
+    restoreState();
+    island.solve(profile, step, gravity, false);
+    return island;
+  }
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.benchmarks;
+
+import org.jbox2d.collision.shapes.ChainShape;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.EdgeShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.FixtureDef;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.joints.RevoluteJointDef;
+import org.jbox2d.particle.ParticleGroupDef;
+import org.jbox2d.pooling.IWorldPool;
+import org.jbox2d.pooling.normal.DefaultWorldPool;
+
+/**
+ * The worlds the benchmarks run against. Sleeping is turned off so a settled scene keeps doing the
+ * same amount of work every step, and every scene is stepped {@link #SETTLE_STEPS} times after it
+ * is built so contacts and warm starting impulses exist before anything is measured.
+ */
+public enum Scene {
+  /** A pyramid of boxes resting on the ground, one big island with many resting contacts. */
+  PYRAMID {
+    @Override
+    void build(World world) {
+      Body ground = world.createBody(new BodyDef());
+      EdgeShape edge = new EdgeShape();
+      edge.set(new Vec2(-40.0f, 0.0f), new Vec2(40.0f, 0.0f));
+      ground.createFixture(edge, 0.0f);
+
+      float a = .5f;
+      PolygonShape shape = new PolygonShape();
+      shape.setAsBox(a, a);
+
+      Vec2 x = new Vec2(-12.0f, 0.75f);
+      Vec2 y = new Vec2();
+      Vec2 deltaX = new Vec2(0.5625f, 1.25f);
+      Vec2 deltaY = new Vec2(1.125f, 0.0f);
+
+      int count = 25;
+      for (int i = 0; i < count; ++i) {
+        y.set(x);
+        for (int j = i; j < count; ++j) {
+          BodyDef bd = new BodyDef();
+          bd.type = BodyType.DYNAMIC;
+          bd.position.set(y);
+          world.createBody(bd).createFixture(shape, 5.0f);
+          y.addLocal(deltaY);
+        }
+        x.addLocal(deltaX);
+      }
+    }
+  },
+
+  /** Columns of boxes stacked on top of each other, many small islands. */
+  VERTICAL_STACK {
+    @Override
+    void build(World world) {
+      Body ground = world.createBody(new BodyDef());
+      EdgeShape edge = new EdgeShape();
+      edge.set(new Vec2(-60.0f, 0.0f), new Vec2(60.0f, 0.0f));
+      ground.createFixture(edge, 0.0f);
+
+      PolygonShape shape = new PolygonShape();
+      shape.setAsBox(0.5f, 0.5f);
+      FixtureDef fd = new FixtureDef();
+      fd.shape = shape;
+      fd.density = 1.0f;
+      fd.friction = 0.3f;
+
+      for (int j = 0; j < 12; ++j) {
+        for (int i = 0; i < 20; ++i) {
+          BodyDef bd = new BodyDef();
+          bd.type = BodyType.DYNAMIC;
+          bd.position.set(-44.0f + 8.0f * j, 0.52f + 1.05f * i);
+          world.createBody(bd).createFixture(fd);
+        }
+      }
+    }
+  },
+
+  /** A motorized box turning over a few hundred small bodies, lots of new and ending contacts. */
+  TUMBLER {
+    @Override
+    void build(World world) {
+      Body ground = world.createBody(new BodyDef());
+
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.position.set(0.0f, 10.0f);
+      Body body = world.createBody(bd);
+
+      PolygonShape shape = new PolygonShape();
+      shape.setAsBox(0.5f, 10.0f, new Vec2(10.0f, 0.0f), 0.0f);
+      body.createFixture(shape, 5.0f);
+      shape.setAsBox(0.5f, 10.0f, new Vec2(-10.0f, 0.0f), 0.0f);
+      body.createFixture(shape, 5.0f);
+      shape.setAsBox(10.0f, 0.5f, new Vec2(0.0f, 10.0f), 0.0f);
+      body.createFixture(shape, 5.0f);
+      shape.setAsBox(10.0f, 0.5f, new Vec2(0.0f, -10.0f), 0.0f);
+      body.createFixture(shape, 5.0f);
+
+      RevoluteJointDef jd = new RevoluteJointDef();
+      jd.bodyA = ground;
+      jd.bodyB = body;
+      jd.localAnchorA.set(0.0f, 10.0f);
+      jd.localAnchorB.set(0.0f, 0.0f);
+      jd.referenceAngle = 0.0f;
+      jd.motorSpeed = 0.05f * MathUtils.PI;
+      jd.maxMotorTorque = 1e8f;
+      jd.enableMotor = true;
+      world.createJoint(jd);
+
+      PolygonShape small = new PolygonShape();
+      small.setAsBox(0.125f, 0.125f);
+      for (int i = 0; i < 24; ++i) {
+        for (int j = 0; j < 24; ++j) {
+          BodyDef sbd = new BodyDef();
+          sbd.type = BodyType.DYNAMIC;
+          sbd.position.set(-6.9f + 0.6f * i, 3.1f + 0.6f * j);
+          world.createBody(sbd).createFixture(small, 1.0f);
+        }
+      }
+    }
+  },
+
+  /** A block of liquid particles collapsing in a tank. */
+  DAM_BREAK {
+    @Override
+    void build(World world) {
+      Body ground = world.createBody(new BodyDef());
+      ChainShape chain = new ChainShape();
+      Vec2[] vertices =
+          new Vec2[] {new Vec2(-20, 0), new Vec2(20, 0), new Vec2(20, 40), new Vec2(-20, 40)};
+      chain.createLoop(vertices, 4);
+      ground.createFixture(chain, 0.0f);
+
+      world.setParticleRadius(0.15f);
+      world.setParticleDamping(0.2f);
+
+      PolygonShape shape = new PolygonShape();
+      shape.setAsBox(8, 10, new Vec2(-12, 10.1f), 0);
+      ParticleGroupDef pd = new ParticleGroupDef();
+      pd.shape = shape;
+      world.createParticleGroup(pd);
+    }
+  },
+
+  /**
+   * Fast bullets bouncing around a closed box full of loose bodies, so most steps have time of
+   * impact events to resolve. The walls are thicker than anything moves in a step, so nothing
+   * leaves the box even with continuous physics off.
+   */
+  BULLETS {
+    @Override
+    void build(World world) {
+      Body ground = world.createBody(new BodyDef());
+      PolygonShape wall = new PolygonShape();
+      wall.setAsBox(26.0f, 3.0f, new Vec2(0.0f, -3.0f), 0.0f);
+      ground.createFixture(wall, 0.0f);
+      wall.setAsBox(26.0f, 3.0f, new Vec2(0.0f, 33.0f), 0.0f);
+      ground.createFixture(wall, 0.0f);
+      wall.setAsBox(3.0f, 18.0f, new Vec2(-23.0f, 15.0f), 0.0f);
+      ground.createFixture(wall, 0.0f);
+      wall.setAsBox(3.0f, 18.0f, new Vec2(23.0f, 15.0f), 0.0f);
+      ground.createFixture(wall, 0.0f);
+
+      PolygonShape box = new PolygonShape();
+      box.setAsBox(0.4f, 0.4f);
+      for (int i = 0; i < 10; ++i) {
+        for (int j = 0; j < 8; ++j) {
+          BodyDef bd = new BodyDef();
+          bd.type = BodyType.DYNAMIC;
+          bd.position.set(-15.0f + 3.0f * i, 2.0f + 3.0f * j);
+          world.createBody(bd).createFixture(box, 1.0f);
+        }
+      }
+
+      CircleShape circle = new CircleShape();
+      circle.m_radius = 0.1f;
+      FixtureDef fd = new FixtureDef();
+      fd.shape = circle;
+      fd.density = 20.0f;
+      fd.restitution = 1.0f;
+      fd.friction = 0.0f;
+      for (int i = 0; i < 60; ++i) {
+        float angle = i * MathUtils.TWOPI / 60;
+        BodyDef bd = new BodyDef();
+        bd.type = BodyType.DYNAMIC;
+        bd.bullet = true;
+        bd.position.set(-18.0f + 0.6f * i, 28.0f - 0.2f * (i % 10));
+        bd.linearVelocity.set(120.0f * MathUtils.cos(angle), 120.0f * MathUtils.sin(angle));
+        world.createBody(bd).createFixture(fd);
+      }
+    }
+  };
+
+  public static final float DT = 1.0f / 60.0f;
+  public static final int VELOCITY_ITERATIONS = 8;
+  public static final int POSITION_ITERATIONS = 3;
+  public static final int SETTLE_STEPS = 60;
+
+  abstract void build(World world);
+
+  /**
+   * Builds a fresh world for this scene and steps it {@link #SETTLE_STEPS} times.
+   */
+  public World createWorld() {
+    return createWorld(
+        new DefaultWorldPool(World.WORLD_POOL_SIZE, World.WORLD_POOL_CONTAINER_SIZE));
+  }
+
+  /**
+   * Same as {@link #createWorld()}, with the given pool.
+   */
+  public World createWorld(IWorldPool pool) {
+    World world = new World(new Vec2(0.0f, -10.0f), pool);
+    world.setAllowSleep(false);
+    build(world);
+    for (int i = 0; i < SETTLE_STEPS; ++i) {
+      world.step(DT, VELOCITY_ITERATIONS, POSITION_ITERATIONS);
+    }
+    return world;
+  }
+}
@@ -1,63 +1,153 @@
 #include "org_jbox2d_collision_broadphase_BroadPhaseJNI.h"
 #include "b2BroadPhase.h"
-#include "stdio.h"
+#include <stdint.h>
+#include <string.h>
+
+// Command opcodes, see BroadPhaseJNI.java.
+enum {
+	e_create = 0, e_destroy = 1, e_move = 2, e_touch = 3
+};
+// op, proxy id, lower x, lower y, upper x, upper y, displacement x, displacement y
+const int32 commandSize = 32;
 
 jclass globalPhaseClass;
 jfieldID nativePhaseId;
 
-jclass globalCallbackClass;
-jmethodID treeCallbackMethodId;
-
 jclass globalRaycastClass;
 jmethodID treeRaycastMethodId;
 
-jclass aabb2class;
-jfieldID aabblx;
-jfieldID aabbly;
-jfieldID aabbux;
-jfieldID aabbuy;
+/// The native broad-phase of one BroadPhaseJNI. The Java side hands out its own proxy ids, the
+/// tree proxy of each is kept in m_nodes and the Java id is stored as the tree user data.
+class NativeBroadPhase {
+public:
+	NativeBroadPhase() :
+			m_nodes(NULL), m_nodeCapacity(0), m_results(NULL), m_resultBytes(0), m_resultCapacity(
+					0) {
+	}
 
-jclass globalPairClass;
-jmethodID pairCallbackMethodId;
+	~NativeBroadPhase() {
+		if (m_nodes != NULL) {
+			b2Free(m_nodes);
+		}
+		if (m_results != NULL) {
+			b2Free(m_results);
+		}
+	}
 
-b2BroadPhase* getPhase(JNIEnv *env, jobject obj) {
-	//printf("Getting phase, jobject at %llx\n",
-	//	(long long unsigned int) (obj - (jobject) NULL));
-	b2BroadPhase* tree = (b2BroadPhase*) env->GetLongField(obj, nativePhaseId);
-	//printf("After, phase at %llx\n",
-	//	(long long unsigned int) (tree - (b2BroadPhase*) NULL));
-	return tree;
-}
+	void RunCommands(const char* commands, int32 count, float* fat) {
+		for (int32 i = 0; i < count; ++i) {
+			const int32* command = (const int32*) (commands + i * commandSize);
+			const float32* values = (const float32*) (command + 2);
+			int32 id = command[1];
+			b2AABB aabb;
+			aabb.lowerBound.Set(values[0], values[1]);
+			aabb.upperBound.Set(values[2], values[3]);
+			switch (command[0]) {
+			case e_create:
+				EnsureNodes(id + 1);
+				m_nodes[id] = m_phase.CreateProxy(aabb, (void*) (intptr_t) id);
+				WriteFat(fat, id);
+				break;
+			case e_destroy:
+				m_phase.DestroyProxy(m_nodes[id]);
+				m_nodes[id] = b2BroadPhase::e_nullProxy;
+				break;
+			case e_move:
+				m_phase.MoveProxy(m_nodes[id], aabb, b2Vec2(values[4], values[5]));
+				WriteFat(fat, id);
+				break;
+			case e_touch:
+				m_phase.TouchProxy(m_nodes[id]);
+				break;
+			}
+		}
+	}
 
-class TreeCallbackHelper {
-public:
-	TreeCallbackHelper(JNIEnv *env, jobject callback) :
-			m_env(env), m_callback(callback) {
+	/// Collects the pairs as (idA << 32) | idB in the result buffer.
+	void AddPair(void* userDataA, void* userDataB) {
+		int64_t pair = ((int64_t) (intptr_t) userDataA << 32)
+				| (uint32) (intptr_t) userDataB;
+		AppendResult(&pair, sizeof(pair));
 	}
-	;
 
-	bool QueryCallback(int proxyId) {
-		if (treeCallbackMethodId == 0) {
-			globalCallbackClass = m_env->FindClass(
-					"org/jbox2d/callbacks/TreeCallback");
-			globalCallbackClass = (jclass) m_env->NewGlobalRef(
-					globalCallbackClass);
-			treeCallbackMethodId = m_env->GetMethodID(globalCallbackClass,
-					"treeCallback", "(I)Z");
-		}
-		return m_env->CallBooleanMethod(m_callback, treeCallbackMethodId,
-				(jint) proxyId);
+	/// Collects the Java ids of the query results in the result buffer.
+	bool QueryCallback(int32 proxyId) {
+		int32 id = (int32) (intptr_t) m_phase.GetUserData(proxyId);
+		AppendResult(&id, sizeof(id));
+		return true;
+	}
+
+	void ClearResults() {
+		m_resultBytes = 0;
+	}
+
+	/// Copies as much of the result buffer as fits.
+	void CopyResults(JNIEnv *env, jobject buffer) {
+		int64_t capacity = env->GetDirectBufferCapacity(buffer);
+		int32 bytes = m_resultBytes < capacity ? m_resultBytes : (int32) capacity;
+		memcpy(env->GetDirectBufferAddress(buffer), m_results, bytes);
+	}
+
+	int32 GetResultBytes() const {
+		return m_resultBytes;
 	}
 
+	b2BroadPhase m_phase;
+
 private:
-	JNIEnv *m_env;
-	jobject m_callback;
+	void EnsureNodes(int32 count) {
+		if (count <= m_nodeCapacity) {
+			return;
+		}
+		int32 capacity = b2Max(2 * m_nodeCapacity, b2Max(count, 64));
+		int32* nodes = (int32*) b2Alloc(capacity * sizeof(int32));
+		if (m_nodes != NULL) {
+			memcpy(nodes, m_nodes, m_nodeCapacity * sizeof(int32));
+			b2Free(m_nodes);
+		}
+		m_nodes = nodes;
+		m_nodeCapacity = capacity;
+	}
+
+	void WriteFat(float* fat, int32 id) {
+		const b2AABB& aabb = m_phase.GetFatAABB(m_nodes[id]);
+		fat[4 * id] = aabb.lowerBound.x;
+		fat[4 * id + 1] = aabb.lowerBound.y;
+		fat[4 * id + 2] = aabb.upperBound.x;
+		fat[4 * id + 3] = aabb.upperBound.y;
+	}
+
+	void AppendResult(const void* value, int32 bytes) {
+		if (m_resultBytes + bytes > m_resultCapacity) {
+			int32 capacity = b2Max(2 * m_resultCapacity, 512);
+			char* results = (char*) b2Alloc(capacity);
+			if (m_results != NULL) {
+				memcpy(results, m_results, m_resultBytes);
+				b2Free(m_results);
+			}
+			m_results = results;
+			m_resultCapacity = capacity;
+		}
+		memcpy(m_results + m_resultBytes, value, bytes);
+		m_resultBytes += bytes;
+	}
+
+	int32* m_nodes;
+	int32 m_nodeCapacity;
+
+	char* m_results;
+	int32 m_resultBytes;
+	int32 m_resultCapacity;
 };
 
+NativeBroadPhase* getPhase(JNIEnv *env, jobject obj) {
+	return (NativeBroadPhase*) env->GetLongField(obj, nativePhaseId);
+}
+
 class TreeRaycastHelper {
 public:
-	TreeRaycastHelper(JNIEnv *env, jobject callback) :
-			m_env(env), m_callback(callback) {
+	TreeRaycastHelper(JNIEnv *env, jobject callback, const b2BroadPhase* phase) :
+			m_env(env), m_callback(callback), m_phase(phase) {
 	}
 	;
 
@@ -72,39 +162,16 @@ public:
 		}
 		const b2Vec2 &p1 = input.p1;
 		const b2Vec2 &p2 = input.p2;
+		jint id = (jint) (intptr_t) m_phase->GetUserData(nodeId);
 		return m_env->CallFloatMethod(m_callback, treeRaycastMethodId,
 				(jfloat) p1.x, (jfloat) p1.y, (jfloat) p2.x, (jfloat) p2.y,
-				(jfloat) input.maxFraction, (jint) nodeId);
-	}
-
-private:
-	JNIEnv *m_env;
-	jobject m_callback;
-};
-
-class PairCallbackHelper {
-public:
-	PairCallbackHelper(JNIEnv *env, jobject callback) :
-			m_env(env), m_callback(callback) {
-	}
-	;
-
-	void AddPair(void* userData1, void* userData2) {
-		if (pairCallbackMethodId == 0) {
-			globalPairClass = m_env->FindClass(
-					"org/jbox2d/callbacks/PairCallback");
-			globalPairClass = (jclass) m_env->NewGlobalRef(globalPairClass);
-			pairCallbackMethodId = m_env->GetMethodID(globalPairClass,
-					"addPair", "(Ljava/lang/Object;Ljava/lang/Object;)V");
-		}
-
-		m_env->CallVoidMethod(m_callback, pairCallbackMethodId,
-				(jobject) userData1, (jobject) userData2);
+				(jfloat) input.maxFraction, id);
 	}
 
 private:
 	JNIEnv *m_env;
 	jobject m_callback;
+	const b2BroadPhase* m_phase;
 };
 
 /*
@@ -114,166 +181,70 @@ private:
  */
 JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_createNative
 (JNIEnv *env, jobject obj) {
-	//printf("Creating phase\n");
-	b2BroadPhase* tree;
 	if (nativePhaseId == 0) {
 		globalPhaseClass = env->FindClass("org/jbox2d/collision/broadphase/BroadPhaseJNI");
 		globalPhaseClass = (jclass) env->NewGlobalRef(globalPhaseClass);
 		nativePhaseId = env->GetFieldID( globalPhaseClass, "nativeAddress", "J" );
 	}
-	tree = new b2BroadPhase();
-	env->SetLongField( obj, nativePhaseId, (jlong)tree);
-}
-
-/*
- * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    createProxy
- * Signature: (FFFFLjava/lang/Object;)I
- */
-JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_createProxy(
-		JNIEnv *env, jobject obj, jfloat lowerX, jfloat lowerY, jfloat upperX,
-		jfloat upperY, jobject userData) {
-	b2BroadPhase* tree = getPhase(env, obj);
-	b2AABB bounds;
-	bounds.lowerBound.Set(lowerX, lowerY);
-	bounds.upperBound.Set(upperX, upperY);
-	int32 id = tree->CreateProxy(bounds, env->NewGlobalRef(userData));
-	//printf("Created proxy at %d with user data at %llx\n", id,
-	//		(long long unsigned int) (userData - (jobject) NULL));
-	return (jint) id;
-}
-
-/*
- * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    destroyProxy
- * Signature: (I)V
- */
-JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_destroyProxy
-(JNIEnv *env, jobject obj, jint proxy) {
-	b2BroadPhase* tree = getPhase(env, obj);
-	jobject data = (jobject) tree->GetUserData(proxy);
-	env->DeleteGlobalRef(data);
-	tree->DestroyProxy(proxy);
-}
-
-/*
- * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    moveProxy
- * Signature: (IFFFFFF)V
- */
-JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_moveProxy
-(JNIEnv *env, jobject obj, jint proxy, jfloat lowerX, jfloat lowerY,
-		jfloat upperX, jfloat upperY, jfloat dispX, jfloat dispY) {
-	b2BroadPhase* tree = getPhase(env, obj);
-	b2AABB bounds;
-	bounds.lowerBound.Set(lowerX, lowerY);
-	bounds.upperBound.Set(upperX, upperY);
-	b2Vec2 disp;
-	disp.Set(dispX, dispY);
-	tree->MoveProxy(proxy, bounds, disp);
-}
-
-/*
- * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    touchProxy
- * Signature: (I)V
- */
-JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_touchProxy
-(JNIEnv *env, jobject obj, jint proxy) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	phase->TouchProxy(proxy);
-}
-
-/*
- * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    getUserData
- * Signature: (I)Ljava/lang/Object;
- */
-JNIEXPORT jobject JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getUserData(
-		JNIEnv *env, jobject obj, jint proxy) {
-	//printf("Getting user data for proxy at %d\n", proxy);
-	b2BroadPhase* tree = getPhase(env, obj);
-	jobject data = (jobject) tree->GetUserData(proxy);
-	//printf("User data at %llx\n",
-	//		(unsigned long long int) (holder->m_orig - (jobject) NULL));
-	return data;
-}
-
-/*
- * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    getFat
- * Signature: (I)Lorg/jbox2d/collision/broadphase/AABB2;
- */
-JNIEXPORT jobject JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getFat(
-		JNIEnv *env, jobject obj, jint proxy) {
-	b2BroadPhase* tree = getPhase(env, obj);
-	b2AABB aabb = tree->GetFatAABB(proxy);
-	if (aabb2class == 0) {
-		aabb2class = env->FindClass("org/jbox2d/collision/broadphase/AABB2");
-		aabb2class = (jclass) env->NewGlobalRef(aabb2class);
-		aabblx = env->GetFieldID(aabb2class, "lx", "F");
-		aabbly = env->GetFieldID(aabb2class, "ly", "F");
-		aabbux = env->GetFieldID(aabb2class, "ux", "F");
-		aabbuy = env->GetFieldID(aabb2class, "uy", "F");
-	}
-	jobject ret = env->AllocObject(aabb2class);
-	env->SetFloatField(ret, aabblx, aabb.lowerBound.x);
-	env->SetFloatField(ret, aabbly, aabb.lowerBound.y);
-	env->SetFloatField(ret, aabbux, aabb.upperBound.x);
-	env->SetFloatField(ret, aabbuy, aabb.upperBound.y);
-	return ret;
+	NativeBroadPhase* phase = new NativeBroadPhase();
+	env->SetLongField( obj, nativePhaseId, (jlong)phase);
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    testOverlap
- * Signature: (II)Z
+ * Method:    flush
+ * Signature: (Ljava/nio/ByteBuffer;ILjava/nio/ByteBuffer;)V
  */
-JNIEXPORT jboolean JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_testOverlap(
-		JNIEnv *env, jobject obj, jint proxyA, jint proxyB) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	return phase->TestOverlap(proxyA, proxyB);
+JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_flush
+(JNIEnv *env, jobject obj, jobject commands, jint count, jobject fat) {
+	NativeBroadPhase* phase = getPhase(env, obj);
+	phase->RunCommands((const char*) env->GetDirectBufferAddress(commands), count,
+			(float*) env->GetDirectBufferAddress(fat));
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    getProxyCount
- * Signature: ()I
+ * Method:    updatePairs
+ * Signature: (Ljava/nio/ByteBuffer;ILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I
  */
-JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getProxyCount(
-		JNIEnv *env, jobject obj) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	return phase->GetProxyCount();
+JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_updatePairs(
+		JNIEnv *env, jobject obj, jobject commands, jint count, jobject fat,
+		jobject results) {
+	NativeBroadPhase* phase = getPhase(env, obj);
+	phase->RunCommands((const char*) env->GetDirectBufferAddress(commands), count,
+			(float*) env->GetDirectBufferAddress(fat));
+	phase->ClearResults();
+	phase->m_phase.UpdatePairs(phase);
+	phase->CopyResults(env, results);
+	return phase->GetResultBytes() / sizeof(int64_t);
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    updatePairs
- * Signature: (Lorg/jbox2d/callbacks/PairCallback;)V
+ * Method:    fetchResults
+ * Signature: (Ljava/nio/ByteBuffer;)V
  */
-JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_updatePairs
-(JNIEnv *env, jobject obj, jobject callback) {
-	if (callback == NULL) {
-		return;
-	}
-	b2BroadPhase* phase = getPhase(env, obj);
-	PairCallbackHelper helper(env, callback);
-	phase->UpdatePairs(&helper);
+JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_fetchResults
+(JNIEnv *env, jobject obj, jobject results) {
+	getPhase(env, obj)->CopyResults(env, results);
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
  * Method:    query
- * Signature: (Lorg/jbox2d/callbacks/TreeCallback;FFFF)V
+ * Signature: (Ljava/nio/ByteBuffer;FFFF)I
  */
-JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_query
-(JNIEnv *env, jobject obj, jobject callback, jfloat lowerX, jfloat lowerY, jfloat upperX, jfloat upperY) {
-	b2BroadPhase* tree = getPhase(env, obj);
+JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_query(
+		JNIEnv *env, jobject obj, jobject results, jfloat lowerX, jfloat lowerY,
+		jfloat upperX, jfloat upperY) {
+	NativeBroadPhase* phase = getPhase(env, obj);
 	b2AABB bounds;
 	bounds.lowerBound.Set(lowerX, lowerY);
 	bounds.upperBound.Set(upperX, upperY);
-	TreeCallbackHelper helper(env, callback);
-	tree->Query(&helper, bounds);
+	phase->ClearResults();
+	phase->m_phase.Query(phase, bounds);
+	phase->CopyResults(env, results);
+	return phase->GetResultBytes() / sizeof(int32);
 }
 
 /*
@@ -283,63 +254,45 @@ JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_query
  */
 JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_raycast
 (JNIEnv *env, jobject obj, jobject callback, jfloat p1x, jfloat p1y, jfloat p2x, jfloat p2y, jfloat maxFraction) {
-	b2BroadPhase* tree = getPhase(env, obj);
-	TreeRaycastHelper helper(env, callback);
+	NativeBroadPhase* phase = getPhase(env, obj);
+	TreeRaycastHelper helper(env, callback, &phase->m_phase);
 	b2RayCastInput input;
 	input.p1.Set(p1x, p1y);
 	input.p2.Set(p2x, p2y);
 	input.maxFraction = maxFraction;
-	tree->RayCast(&helper, input);
+	phase->m_phase.RayCast(&helper, input);
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    getTreeHeight
+ * Method:    getNativeTreeHeight
  * Signature: ()I
  */
-JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getTreeHeight(
+JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getNativeTreeHeight(
 		JNIEnv *env, jobject obj) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	return phase->GetTreeHeight();
+	return getPhase(env, obj)->m_phase.GetTreeHeight();
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    getTreeBalance
+ * Method:    getNativeTreeBalance
  * Signature: ()I
  */
-JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getTreeBalance(
+JNIEXPORT jint JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getNativeTreeBalance(
 		JNIEnv *env, jobject obj) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	return phase->GetTreeBalance();
+	return getPhase(env, obj)->m_phase.GetTreeBalance();
 }
 
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
- * Method:    getTreeQuality
+ * Method:    getNativeTreeQuality
  * Signature: ()F
  */
-JNIEXPORT jfloat JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getTreeQuality(
+JNIEXPORT jfloat JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_getNativeTreeQuality(
 		JNIEnv *env, jobject obj) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	return phase->GetTreeQuality();
+	return getPhase(env, obj)->m_phase.GetTreeQuality();
 }
 
-class DeleteHelper {
-public:
-	DeleteHelper(JNIEnv *env) :
-			m_env(env) {
-	}
-	;
-
-	void process(void* userData) {
-		m_env->DeleteGlobalRef((jobject) userData);
-	}
-
-private:
-	JNIEnv *m_env;
-};
-
 /*
  * Class:     org_jbox2d_collision_broadphase_BroadPhaseJNI
  * Method:    freeNative
@@ -347,8 +300,5 @@ private:
  */
 JNIEXPORT void JNICALL Java_org_jbox2d_collision_broadphase_BroadPhaseJNI_freeNative
 (JNIEnv *env, jobject obj) {
-	b2BroadPhase* phase = getPhase(env, obj);
-	DeleteHelper helper(env);
-	phase->Iterate(&helper);
-	free(phase);
+	delete getPhase(env, obj);
 }
@@ -1,5 +1,8 @@
 package org.jbox2d.collision.broadphase;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.jbox2d.callbacks.DebugDraw;
 import org.jbox2d.callbacks.PairCallback;
 import org.jbox2d.callbacks.TreeCallback;
@@ -8,86 +11,268 @@ import org.jbox2d.collision.AABB;
 import org.jbox2d.collision.RayCastInput;
 import org.jbox2d.common.Vec2;
 
+/**
+ * A broad-phase backed by the native Box2D dynamic tree. Native calls are paid per step rather than
+ * per proxy: creating, moving, touching and destroying proxies only appends a command to a direct
+ * buffer shared with the native side, and the commands are run in one call right before the pairs
+ * are updated or the tree is queried. The native side writes the fat AABB of every proxy it
+ * (re)inserts into a second shared buffer and hands the new pairs back packed into a third, so
+ * {@link #getFatAABB(int)}, {@link #testOverlap(int, int)} and {@link #getUserData(int)} never
+ * cross into native code. Proxy ids and user data are kept on the Java side.
+ *
+ * Use {@link #create()} to fall back to the Java broad-phase when the native library can't be
+ * loaded.
+ */
 public class BroadPhaseJNI implements BroadPhase {
 
+  private static final boolean AVAILABLE;
+
   static {
-    NarSystem.loadLibrary();
+    boolean available;
+    try {
+      NarSystem.loadLibrary();
+      available = true;
+    } catch (UnsatisfiedLinkError e) {
+      available = false;
+    }
+    AVAILABLE = available;
+  }
+
+  /**
+   * @return true if the native library was loaded
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * @return a native broad-phase, or a {@link DefaultBroadPhaseBuffer} with a {@link DynamicTree}
+   *         if the native library isn't present
+   */
+  public static BroadPhase create() {
+    return AVAILABLE ? new BroadPhaseJNI() : new DefaultBroadPhaseBuffer(new DynamicTree());
   }
 
+  // Command opcodes, see BroadPhaseJNI.cpp.
+  private static final int CREATE = 0;
+  private static final int DESTROY = 1;
+  private static final int MOVE = 2;
+  private static final int TOUCH = 3;
+  // op, proxy id, lower x, lower y, upper x, upper y, displacement x, displacement y
+  private static final int COMMAND_SIZE = 32;
+
   private long nativeAddress;
 
+  private ByteBuffer m_commands;
+  private int m_commandCount;
+
+  // Fat AABBs by proxy id, four floats each. Written by the native side.
+  private ByteBuffer m_fat;
+  private Object[] m_userData;
+  private int[] m_freeIds;
+  private int m_freeCount;
+  private int m_idCount;
+  private int m_proxyCount;
+
+  // Pairs as (proxyIdA << 32) | proxyIdB, or query results as ints. Written by the native side.
+  private ByteBuffer m_results;
+
   public BroadPhaseJNI() {
+    m_commands = allocate(64 * COMMAND_SIZE);
+    m_fat = allocate(64 * 16);
+    m_results = allocate(64 * 8);
+    m_userData = new Object[64];
+    m_freeIds = new int[16];
     createNative();
   }
 
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer, int minBytes) {
+    ByteBuffer grown = allocate(Math.max(2 * buffer.capacity(), minBytes));
+    buffer.clear();
+    grown.put(buffer);
+    grown.clear();
+    return grown;
+  }
+
   private native void createNative();
 
+  private void addCommand(int op, int proxyId, float lowerX, float lowerY, float upperX,
+      float upperY, float displaceX, float displaceY) {
+    int offset = m_commandCount * COMMAND_SIZE;
+    if (offset + COMMAND_SIZE > m_commands.capacity()) {
+      m_commands = grow(m_commands, offset + COMMAND_SIZE);
+    }
+    m_commands.putInt(offset, op);
+    m_commands.putInt(offset + 4, proxyId);
+    m_commands.putFloat(offset + 8, lowerX);
+    m_commands.putFloat(offset + 12, lowerY);
+    m_commands.putFloat(offset + 16, upperX);
+    m_commands.putFloat(offset + 20, upperY);
+    m_commands.putFloat(offset + 24, displaceX);
+    m_commands.putFloat(offset + 28, displaceY);
+    ++m_commandCount;
+  }
+
+  /**
+   * Runs the buffered commands on the native side.
+   */
+  private void flush() {
+    if (m_commandCount > 0) {
+      flush(m_commands, m_commandCount, m_fat);
+      m_commandCount = 0;
+    }
+  }
+
+  private native void flush(ByteBuffer commands, int count, ByteBuffer fat);
+
   @Override
   public int createProxy(AABB aabb, Object userData) {
-    return createProxy(aabb.lowerBound.x, aabb.lowerBound.y, aabb.upperBound.x, aabb.upperBound.y,
-        userData);
+    final int proxyId;
+    if (m_freeCount > 0) {
+      proxyId = m_freeIds[--m_freeCount];
+    } else {
+      proxyId = m_idCount++;
+      if (proxyId == m_userData.length) {
+        Object[] old = m_userData;
+        m_userData = new Object[2 * old.length];
+        System.arraycopy(old, 0, m_userData, 0, old.length);
+      }
+      if (16 * m_idCount > m_fat.capacity()) {
+        m_fat = grow(m_fat, 16 * m_idCount);
+      }
+    }
+    m_userData[proxyId] = userData;
+    ++m_proxyCount;
+    addCommand(CREATE, proxyId, aabb.lowerBound.x, aabb.lowerBound.y, aabb.upperBound.x,
+        aabb.upperBound.y, 0, 0);
+    return proxyId;
   }
 
-  private native int createProxy(float lowerX, float lowerY, float upperX, float upperY,
-      Object userData);
-
   @Override
-  public native void destroyProxy(int proxyId);
+  public void destroyProxy(int proxyId) {
+    assert (m_userData[proxyId] != null);
+    addCommand(DESTROY, proxyId, 0, 0, 0, 0, 0, 0);
+    m_userData[proxyId] = null;
+    if (m_freeCount == m_freeIds.length) {
+      int[] old = m_freeIds;
+      m_freeIds = new int[2 * old.length];
+      System.arraycopy(old, 0, m_freeIds, 0, old.length);
+    }
+    m_freeIds[m_freeCount++] = proxyId;
+    --m_proxyCount;
+  }
 
   @Override
   public void moveProxy(int proxyId, AABB aabb, Vec2 displacement) {
-    moveProxy(proxyId, aabb.lowerBound.x, aabb.lowerBound.y, aabb.upperBound.x, aabb.upperBound.y,
-        displacement.x, displacement.y);
+    addCommand(MOVE, proxyId, aabb.lowerBound.x, aabb.lowerBound.y, aabb.upperBound.x,
+        aabb.upperBound.y, displacement.x, displacement.y);
   }
 
-  private native void moveProxy(int proxyId, float lowerX, float lowerY, float upperX,
-      float upperY, float displaceX, float displaceY);
-
   @Override
-  public native void touchProxy(int proxyId);
+  public void touchProxy(int proxyId) {
+    addCommand(TOUCH, proxyId, 0, 0, 0, 0, 0, 0);
+  }
 
   @Override
-  public native Object getUserData(int proxyId);
+  public Object getUserData(int proxyId) {
+    return m_userData[proxyId];
+  }
 
   private final AABB fat = new AABB();
 
   @Override
   public AABB getFatAABB(int proxyId) {
-    AABB2 f2 = getFat(proxyId);
-    fat.lowerBound.x = f2.lx;
-    fat.lowerBound.y = f2.ly;
-    fat.upperBound.x = f2.ux;
-    fat.upperBound.y = f2.uy;
+    flush();
+    final int offset = 16 * proxyId;
+    fat.lowerBound.x = m_fat.getFloat(offset);
+    fat.lowerBound.y = m_fat.getFloat(offset + 4);
+    fat.upperBound.x = m_fat.getFloat(offset + 8);
+    fat.upperBound.y = m_fat.getFloat(offset + 12);
     return fat;
   }
 
-  private native AABB2 getFat(int proxy);
-
   @Override
-  public native boolean testOverlap(int proxyIdA, int proxyIdB);
+  public boolean testOverlap(int proxyIdA, int proxyIdB) {
+    flush();
+    final ByteBuffer f = m_fat;
+    final int a = 16 * proxyIdA, b = 16 * proxyIdB;
+    if (f.getFloat(b) - f.getFloat(a + 8) > 0.0f || f.getFloat(b + 4) - f.getFloat(a + 12) > 0.0f) {
+      return false;
+    }
+    if (f.getFloat(a) - f.getFloat(b + 8) > 0.0f || f.getFloat(a + 4) - f.getFloat(b + 12) > 0.0f) {
+      return false;
+    }
+    return true;
+  }
 
   @Override
-  public native int getProxyCount();
+  public int getProxyCount() {
+    return m_proxyCount;
+  }
 
   @Override
   public void drawTree(DebugDraw argDraw) {}
 
   @Override
-  public native void updatePairs(PairCallback callback);
+  public void updatePairs(PairCallback callback) {
+    int pairCount = updatePairs(m_commands, m_commandCount, m_fat, m_results);
+    m_commandCount = 0;
+    if (8 * pairCount > m_results.capacity()) {
+      m_results = allocate(Math.max(2 * m_results.capacity(), 8 * pairCount));
+      fetchResults(m_results);
+    }
+    for (int i = 0; i < pairCount; i++) {
+      long pair = m_results.getLong(8 * i);
+      callback.addPair(m_userData[(int) (pair >>> 32)], m_userData[(int) pair]);
+    }
+  }
+
+  /**
+   * Runs the buffered commands, then finds the new pairs and writes as many as fit into results.
+   *
+   * @return the number of pairs found, use {@link #fetchResults(ByteBuffer)} if they didn't fit
+   */
+  private native int updatePairs(ByteBuffer commands, int count, ByteBuffer fat,
+      ByteBuffer results);
+
+  /**
+   * Copies the results of the last pair update or query into a buffer that is large enough.
+   */
+  private native void fetchResults(ByteBuffer results);
 
   @Override
   public void query(TreeCallback callback, AABB aabb) {
-    query(callback, aabb.lowerBound.x, aabb.lowerBound.y, aabb.upperBound.x, aabb.upperBound.y);
+    flush();
+    int count = query(m_results, aabb.lowerBound.x, aabb.lowerBound.y, aabb.upperBound.x,
+        aabb.upperBound.y);
+    if (4 * count > m_results.capacity()) {
+      m_results = allocate(Math.max(2 * m_results.capacity(), 4 * count));
+      fetchResults(m_results);
+    }
+    for (int i = 0; i < count; i++) {
+      if (!callback.treeCallback(m_results.getInt(4 * i))) {
+        return;
+      }
+    }
   }
 
-  private native void query(TreeCallback callback, float lowerX, float lowerY, float upperX,
+  /**
+   * Writes the ids of the proxies overlapping the box into results, as many as fit.
+   *
+   * @return the number of proxies found
+   */
+  private native int query(ByteBuffer results, float lowerX, float lowerY, float upperX,
       float upperY);
 
-
   private final RaycastWrapper wrapper = new RaycastWrapper();
 
   @Override
   public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    flush();
     wrapper.setCallback(callback);
     raycast(wrapper, input.p1.x, input.p1.y, input.p2.x, input.p2.y, input.maxFraction);
   }
@@ -96,13 +281,28 @@ public class BroadPhaseJNI implements BroadPhase {
       float maxFraction);
 
   @Override
-  public native int getTreeHeight();
+  public int getTreeHeight() {
+    flush();
+    return getNativeTreeHeight();
+  }
+
+  private native int getNativeTreeHeight();
 
   @Override
-  public native int getTreeBalance();
+  public int getTreeBalance() {
+    flush();
+    return getNativeTreeBalance();
+  }
+
+  private native int getNativeTreeBalance();
 
   @Override
-  public native float getTreeQuality();
+  public float getTreeQuality() {
+    flush();
+    return getNativeTreeQuality();
+  }
+
+  private native float getNativeTreeQuality();
 
   private native void freeNative();
 
@@ -28,6 +28,7 @@ package org.jbox2d.callbacks;
 
 import org.jbox2d.common.Color3f;
 import org.jbox2d.common.IViewportTransform;
+import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Transform;
 import org.jbox2d.common.Vec2;
 import org.jbox2d.particle.ParticleColor;
@@ -187,6 +188,47 @@ public abstract class DebugDraw {
   public abstract void drawParticlesWireframe(Vec2[] centers, float radius, ParticleColor[] colors,
       int count);
 
+  /**
+   * Draw a particle array. Copies the centers into vectors for
+   * {@link #drawParticles(Vec2[], float, ParticleColor[], int)}, override to draw them directly.
+   * 
+   * @param centers x and y of each particle, interleaved
+   * @param colors can be null
+   */
+  public void drawParticles(float[] centers, float radius, ParticleColor[] colors, int count) {
+    drawParticles(toVectors(centers, count), radius, colors, count);
+  }
+
+  /**
+   * Draw a particle array. Copies the centers into vectors for
+   * {@link #drawParticlesWireframe(Vec2[], float, ParticleColor[], int)}, override to draw them
+   * directly.
+   * 
+   * @param centers x and y of each particle, interleaved
+   * @param colors can be null
+   */
+  public void drawParticlesWireframe(float[] centers, float radius, ParticleColor[] colors,
+      int count) {
+    drawParticlesWireframe(toVectors(centers, count), radius, colors, count);
+  }
+
+  private Vec2[] particleCenters = new Vec2[0];
+
+  private Vec2[] toVectors(float[] centers, int count) {
+    if (particleCenters.length < count) {
+      Vec2[] old = particleCenters;
+      particleCenters = new Vec2[MathUtils.max(count, 2 * old.length)];
+      System.arraycopy(old, 0, particleCenters, 0, old.length);
+      for (int i = old.length; i < particleCenters.length; i++) {
+        particleCenters[i] = new Vec2();
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      particleCenters[i].set(centers[2 * i], centers[2 * i + 1]);
+    }
+    return particleCenters;
+  }
+
   /** Called at the end of drawing a world */
   public void flush() {}
 
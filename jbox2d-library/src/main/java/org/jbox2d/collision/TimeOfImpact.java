@@ -48,6 +48,10 @@ public class TimeOfImpact {
   public static int toiMaxIters = 0;
   public static int toiRootIters = 0;
   public static int toiMaxRootIters = 0;
+  /** calls that returned early because the swept bounds don't overlap, not part of toiCalls */
+  public static int toiSkips = 0;
+  /** calls that started from a simplex cached by a previous call */
+  public static int toiWarmStarts = 0;
 
   /**
    * Input parameters for TOI
@@ -63,6 +67,11 @@ public class TimeOfImpact {
      * defines sweep interval [0, tMax]
      */
     public float tMax;
+    /**
+     * optional simplex kept between calls for the same pair of shapes, warm starts the separating
+     * axis search. Left null to start from scratch.
+     */
+    public SimplexCache cache;
   }
 
   public static enum TOIOutputState {
@@ -90,6 +99,8 @@ public class TimeOfImpact {
   private final int[] indexes = new int[2];
   private final Sweep sweepA = new Sweep();
   private final Sweep sweepB = new Sweep();
+  private final AABB boundsA = new AABB();
+  private final AABB boundsB = new AABB();
 
 
   private final IWorldPool pool;
@@ -111,8 +122,6 @@ public class TimeOfImpact {
     // CCD via the local separating axis method. This seeks progression
     // by computing the largest time at which separation is maintained.
 
-    ++toiCalls;
-
     output.state = TOIOutputState.UNKNOWN;
     output.t = input.tMax;
 
@@ -129,6 +138,17 @@ public class TimeOfImpact {
 
     float tMax = input.tMax;
 
+    // Shapes whose swept bounds never meet can't touch in the interval.
+    computeSweptBounds(boundsA, proxyA, sweepA, tMax);
+    computeSweptBounds(boundsB, proxyB, sweepB, tMax);
+    if (AABB.testOverlap(boundsA, boundsB) == false) {
+      ++toiSkips;
+      output.state = TOIOutputState.SEPARATED;
+      return;
+    }
+
+    ++toiCalls;
+
     float totalRadius = proxyA.m_radius + proxyB.m_radius;
     // djm: whats with all these constants?
     float target = MathUtils.max(Settings.linearSlop, totalRadius - 3.0f * Settings.linearSlop);
@@ -139,7 +159,16 @@ public class TimeOfImpact {
     float t1 = 0f;
     int iter = 0;
 
-    cache.count = 0;
+    final SimplexCache cache;
+    if (input.cache != null && isValid(input.cache, proxyA, proxyB)) {
+      cache = input.cache;
+      if (cache.count > 0) {
+        ++toiWarmStarts;
+      }
+    } else {
+      cache = input.cache != null ? input.cache : this.cache;
+      cache.count = 0;
+    }
     distanceInput.proxyA = input.proxyA;
     distanceInput.proxyB = input.proxyB;
     distanceInput.useRadii = false;
@@ -297,6 +326,56 @@ public class TimeOfImpact {
     // System.out.printf("final sweeps: %f, %f, %f; %f, %f, %f", input.s)
     toiMaxIters = MathUtils.max(toiMaxIters, iter);
   }
+
+  private static boolean isValid(SimplexCache cache, DistanceProxy proxyA, DistanceProxy proxyB) {
+    for (int i = 0; i < cache.count; ++i) {
+      if (cache.indexA[i] >= proxyA.m_count || cache.indexB[i] >= proxyB.m_count) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Computes a box containing the proxy over the sweep interval [0, tMax]. The center moves
+   * linearly, so each vertex stays within (angle change)^2 / 8 times its distance to the center of
+   * the chord between its end positions. The box is grown by the proxy radius and by
+   * {@link Settings#linearSlop}, more than the distance at which two proxies count as touching.
+   */
+  private final void computeSweptBounds(AABB bounds, DistanceProxy proxy, Sweep sweep, float tMax) {
+    final Vec2 lower = bounds.lowerBound;
+    final Vec2 upper = bounds.upperBound;
+    lower.x = lower.y = Float.MAX_VALUE;
+    upper.x = upper.y = -Float.MAX_VALUE;
+    final Vec2 localCenter = sweep.localCenter;
+    final Transform xf = xfA;
+    float maxRadiusSq = 0;
+    for (int k = 0; k < 2; ++k) {
+      sweep.getTransform(xf, k == 0 ? 0 : tMax);
+      final Rot q = xf.q;
+      for (int i = 0; i < proxy.m_count; ++i) {
+        final Vec2 v = proxy.m_vertices[i];
+        float x = (q.c * v.x - q.s * v.y) + xf.p.x;
+        float y = (q.s * v.x + q.c * v.y) + xf.p.y;
+        lower.x = MathUtils.min(lower.x, x);
+        lower.y = MathUtils.min(lower.y, y);
+        upper.x = MathUtils.max(upper.x, x);
+        upper.y = MathUtils.max(upper.y, y);
+        if (k == 0) {
+          float dx = v.x - localCenter.x;
+          float dy = v.y - localCenter.y;
+          maxRadiusSq = MathUtils.max(maxRadiusSq, dx * dx + dy * dy);
+        }
+      }
+    }
+    float angle = (sweep.a - sweep.a0) * tMax;
+    float bulge = MathUtils.sqrt(maxRadiusSq) * MathUtils.min(0.125f * angle * angle, 2.0f);
+    float margin = proxy.m_radius + bulge + Settings.linearSlop;
+    lower.x -= margin;
+    lower.y -= margin;
+    upper.x += margin;
+    upper.y += margin;
+  }
 }
 
 
@@ -22,6 +22,19 @@ public interface BroadPhase {
    */
   int createProxy(AABB aabb, Object userData);
 
+  /**
+   * Create a proxy for a fixture of a static body. Such proxies never move by themselves, so a
+   * broad-phase may keep them apart from the others and never report pairs between two of them.
+   * By default this is the same as {@link #createProxy(AABB, Object)}.
+   * 
+   * @param aabb
+   * @param userData
+   * @return
+   */
+  default int createStaticProxy(AABB aabb, Object userData) {
+    return createProxy(aabb, userData);
+  }
+
   /**
    * Destroy a proxy. It is up to the client to remove any pairs.
    * 
@@ -29,6 +42,19 @@ public interface BroadPhase {
    */
   void destroyProxy(int proxyId);
 
+  /**
+   * Destroy many proxies at once, for example when a level is unloaded. It is up to the client to
+   * remove any pairs. By default this calls {@link #destroyProxy(int)} for each of them.
+   * 
+   * @param proxyIds
+   * @param count the number of proxies in proxyIds to destroy
+   */
+  default void destroyProxies(int[] proxyIds, int count) {
+    for (int i = 0; i < count; i++) {
+      destroyProxy(proxyIds[i]);
+    }
+  }
+
   /**
    * Call MoveProxy as many times as you like, then when you are done call UpdatePairs to finalized
    * the proxy pairs (for your time step).
@@ -0,0 +1,37 @@
+package org.jbox2d.collision.broadphase;
+
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+
+/**
+ * A broad-phase strategy that can be queried from several threads at once, as long as nobody
+ * modifies it meanwhile. Used by {@link DefaultBroadPhaseBuffer} to find pairs in parallel.
+ */
+public interface ConcurrentQueryStrategy extends BroadPhaseStrategy {
+
+  /**
+   * Same as {@link #query(TreeCallback, AABB)}, but keeps the traversal state in the given stack
+   * instead of in the strategy.
+   * 
+   * @param callback
+   * @param aabb
+   * @param stack scratch space owned by the calling thread, must not be empty
+   * @return the stack, or a larger replacement if it had to grow
+   */
+  int[] query(TreeCallback callback, AABB aabb, int[] stack);
+
+  /**
+   * Same as {@link #raycast(TreeRayCastCallback, RayCastInput)}, but keeps the traversal state in
+   * the given stack and hands subInput to the callback.
+   * 
+   * @param callback
+   * @param input
+   * @param subInput scratch input owned by the calling thread
+   * @param stack scratch space owned by the calling thread, must not be empty
+   * @return the stack, or a larger replacement if it had to grow
+   */
+  int[] raycast(TreeRayCastCallback callback, RayCastInput input, RayCastInput subInput,
+      int[] stack);
+}
@@ -24,6 +24,8 @@
 package org.jbox2d.collision.broadphase;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.jbox2d.callbacks.DebugDraw;
 import org.jbox2d.callbacks.PairCallback;
@@ -31,6 +33,7 @@ import org.jbox2d.callbacks.TreeCallback;
 import org.jbox2d.callbacks.TreeRayCastCallback;
 import org.jbox2d.collision.AABB;
 import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Vec2;
 
 /**
@@ -42,6 +45,16 @@ import org.jbox2d.common.Vec2;
  */
 public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
 
+  /**
+   * Pairs are only searched for in parallel when at least this many proxies moved in a step.
+   */
+  public static int PARALLEL_PAIRS_MIN_MOVES = 512;
+
+  /**
+   * Moved proxies are queried in chunks of this size when pairs are searched for in parallel.
+   */
+  public static int PAIRS_CHUNK_SIZE = 128;
+
   private final BroadPhaseStrategy m_tree;
 
   private int m_proxyCount;
@@ -49,6 +62,8 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
   private int[] m_moveBuffer;
   private int m_moveCapacity;
   private int m_moveCount;
+  // The slot of each proxy in the move buffer, NULL_PROXY if it isn't buffered.
+  private int[] m_moveIndex;
 
   private long[] m_pairBuffer;
   private int m_pairCapacity;
@@ -56,6 +71,10 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
 
   private int m_queryProxyId;
 
+  private ForkJoinPool m_pairPool;
+  private PairChunk[] m_pairChunks = new PairChunk[0];
+  private long[] m_pairScratch = new long[0];
+
   public DefaultBroadPhaseBuffer(BroadPhaseStrategy strategy) {
     m_proxyCount = 0;
 
@@ -69,11 +88,18 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     m_moveCapacity = 16;
     m_moveCount = 0;
     m_moveBuffer = new int[m_moveCapacity];
+    m_moveIndex = new int[m_moveCapacity];
+    Arrays.fill(m_moveIndex, NULL_PROXY);
 
     m_tree = strategy;
     m_queryProxyId = NULL_PROXY;
   }
 
+  /** The strategy the proxies are stored in. Proxy ids of this buffer are ids in the strategy. */
+  public BroadPhaseStrategy getStrategy() {
+    return m_tree;
+  }
+
   @Override
   public final int createProxy(final AABB aabb, Object userData) {
     int proxyId = m_tree.createProxy(aabb, userData);
@@ -139,11 +165,58 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     m_tree.drawTree(argDraw);
   }
 
+  /**
+   * Search for new pairs on the given pool when enough proxies moved. The strategy must implement
+   * {@link ConcurrentQueryStrategy}. Pairs are reported in the same order as on the calling thread.
+   * Pass null to go back to the serial search (the default).
+   * 
+   * @param pairPool
+   */
+  public void setPairPool(ForkJoinPool pairPool) {
+    if (pairPool != null && !(m_tree instanceof ConcurrentQueryStrategy)) {
+      throw new IllegalStateException("The broad-phase strategy can't be queried concurrently");
+    }
+    m_pairPool = pairPool;
+  }
+
+  public ForkJoinPool getPairPool() {
+    return m_pairPool;
+  }
+
   @Override
   public final void updatePairs(PairCallback callback) {
     // Reset pair buffer
     m_pairCount = 0;
 
+    if (m_pairPool != null && m_moveCount >= PARALLEL_PAIRS_MIN_MOVES) {
+      findPairsParallel();
+    } else {
+      findPairs();
+    }
+
+    // Send the pairs back to the client.
+    int i = 0;
+    while (i < m_pairCount) {
+      long primaryPair = m_pairBuffer[i];
+      Object userDataA = m_tree.getUserData((int) (primaryPair >> 32));
+      Object userDataB = m_tree.getUserData((int) (primaryPair));
+
+      // log.debug("returning pair: "+userDataA+", "+userDataB);
+      callback.addPair(userDataA, userDataB);
+      ++i;
+
+      // Skip any duplicate pairs.
+      while (i < m_pairCount) {
+        long pair = m_pairBuffer[i];
+        if (pair != primaryPair) {
+          break;
+        }
+        ++i;
+      }
+    }
+  }
+
+  private void findPairs() {
     // Perform tree queries for all moving proxies.
     for (int i = 0; i < m_moveCount; ++i) {
       m_queryProxyId = m_moveBuffer[i];
@@ -162,31 +235,51 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     // log.debug("Number of pairs found: "+m_pairCount);
 
     // Reset move buffer
-    m_moveCount = 0;
+    clearMoveBuffer();
 
     // Sort the pair buffer to expose duplicates.
     Arrays.sort(m_pairBuffer, 0, m_pairCount);
+  }
 
-    // Send the pairs back to the client.
-    int i = 0;
-    while (i < m_pairCount) {
-      long primaryPair = m_pairBuffer[i];
-      Object userDataA = m_tree.getUserData((int) (primaryPair >> 32));
-      Object userDataB = m_tree.getUserData((int) (primaryPair));
+  /**
+   * Parallel version of {@link #findPairs()}. The moved proxies are split into chunks that query
+   * the tree and sort their pairs on their own, then the sorted chunks are merged into the pair
+   * buffer. The result is the same sorted buffer the serial search produces, so pairs reach the
+   * callback in the same order.
+   */
+  private void findPairsParallel() {
+    final int chunkCount = (m_moveCount + PAIRS_CHUNK_SIZE - 1) / PAIRS_CHUNK_SIZE;
+    if (m_pairChunks.length < chunkCount) {
+      PairChunk[] old = m_pairChunks;
+      m_pairChunks = new PairChunk[chunkCount];
+      System.arraycopy(old, 0, m_pairChunks, 0, old.length);
+      for (int i = old.length; i < chunkCount; i++) {
+        m_pairChunks[i] = new PairChunk();
+      }
+    }
+    final PairChunk[] chunks = m_pairChunks;
 
-      // log.debug("returning pair: "+userDataA+", "+userDataB);
-      callback.addPair(userDataA, userDataB);
-      ++i;
+    m_pairPool.invoke(new PairQueryTask((ConcurrentQueryStrategy) m_tree, chunks, m_moveBuffer,
+        m_moveCount, 0, chunkCount));
 
-      // Skip any duplicate pairs.
-      while (i < m_pairCount) {
-        long pair = m_pairBuffer[i];
-        if (pair != primaryPair) {
-          break;
-        }
-        ++i;
-      }
+    // Reset move buffer
+    clearMoveBuffer();
+
+    int pairCount = 0;
+    for (int i = 0; i < chunkCount; i++) {
+      chunks[i].offset = pairCount;
+      pairCount += chunks[i].pairCount;
+    }
+    if (m_pairCapacity < pairCount) {
+      m_pairCapacity = MathUtils.max(2 * m_pairCapacity, pairCount);
+      m_pairBuffer = new long[m_pairCapacity];
+    }
+    if (m_pairScratch.length < pairCount) {
+      m_pairScratch = new long[m_pairCapacity];
     }
+
+    m_pairPool.invoke(new PairMergeTask(chunks, 0, chunkCount, m_pairBuffer, m_pairScratch));
+    m_pairCount = pairCount;
   }
 
   @Override
@@ -215,6 +308,16 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
   }
 
   protected final void bufferMove(int proxyId) {
+    if (proxyId >= m_moveIndex.length) {
+      int[] old = m_moveIndex;
+      m_moveIndex = new int[MathUtils.max(2 * old.length, proxyId + 1)];
+      System.arraycopy(old, 0, m_moveIndex, 0, old.length);
+      Arrays.fill(m_moveIndex, old.length, m_moveIndex.length, NULL_PROXY);
+    } else if (m_moveIndex[proxyId] != NULL_PROXY) {
+      // Already buffered this step.
+      return;
+    }
+
     if (m_moveCount == m_moveCapacity) {
       int[] old = m_moveBuffer;
       m_moveCapacity *= 2;
@@ -222,16 +325,26 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
       System.arraycopy(old, 0, m_moveBuffer, 0, old.length);
     }
 
+    m_moveIndex[proxyId] = m_moveCount;
     m_moveBuffer[m_moveCount] = proxyId;
     ++m_moveCount;
   }
 
   protected final void unbufferMove(int proxyId) {
-    for (int i = 0; i < m_moveCount; i++) {
-      if (m_moveBuffer[i] == proxyId) {
-        m_moveBuffer[i] = NULL_PROXY;
+    if (proxyId < m_moveIndex.length && m_moveIndex[proxyId] != NULL_PROXY) {
+      m_moveBuffer[m_moveIndex[proxyId]] = NULL_PROXY;
+      m_moveIndex[proxyId] = NULL_PROXY;
+    }
+  }
+
+  private final void clearMoveBuffer() {
+    for (int i = 0; i < m_moveCount; ++i) {
+      final int proxyId = m_moveBuffer[i];
+      if (proxyId != NULL_PROXY) {
+        m_moveIndex[proxyId] = NULL_PROXY;
       }
     }
+    m_moveCount = 0;
   }
 
   /**
@@ -263,4 +376,132 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     ++m_pairCount;
     return true;
   }
+
+  /**
+   * The pairs found by one chunk of moved proxies.
+   */
+  private static final class PairChunk implements TreeCallback {
+    long[] pairs = new long[16];
+    int pairCount;
+    int offset;
+    int[] stack = new int[20];
+    int queryProxyId;
+
+    void findPairs(ConcurrentQueryStrategy tree, int[] moveBuffer, int start, int end) {
+      pairCount = 0;
+      for (int i = start; i < end; ++i) {
+        queryProxyId = moveBuffer[i];
+        if (queryProxyId == NULL_PROXY) {
+          continue;
+        }
+        stack = tree.query(this, tree.getFatAABB(queryProxyId), stack);
+      }
+      Arrays.sort(pairs, 0, pairCount);
+    }
+
+    public boolean treeCallback(int proxyId) {
+      // A proxy cannot form a pair with itself.
+      if (proxyId == queryProxyId) {
+        return true;
+      }
+
+      if (pairCount == pairs.length) {
+        long[] old = pairs;
+        pairs = new long[2 * old.length];
+        System.arraycopy(old, 0, pairs, 0, old.length);
+      }
+
+      if (proxyId < queryProxyId) {
+        pairs[pairCount] = ((long) proxyId << 32) | queryProxyId;
+      } else {
+        pairs[pairCount] = ((long) queryProxyId << 32) | proxyId;
+      }
+
+      ++pairCount;
+      return true;
+    }
+  }
+
+  /**
+   * Queries the moved proxies of the chunks in [start, end).
+   */
+  private static class PairQueryTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentQueryStrategy tree;
+    private final PairChunk[] chunks;
+    private final int[] moveBuffer;
+    private final int moveCount;
+    private final int start;
+    private final int end;
+
+    PairQueryTask(ConcurrentQueryStrategy tree, PairChunk[] chunks, int[] moveBuffer,
+        int moveCount, int start, int end) {
+      this.tree = tree;
+      this.chunks = chunks;
+      this.moveBuffer = moveBuffer;
+      this.moveCount = moveCount;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new PairQueryTask(tree, chunks, moveBuffer, moveCount, start, mid),
+            new PairQueryTask(tree, chunks, moveBuffer, moveCount, mid, end));
+        return;
+      }
+      int first = start * PAIRS_CHUNK_SIZE;
+      int last = MathUtils.min(first + PAIRS_CHUNK_SIZE, moveCount);
+      chunks[start].findPairs(tree, moveBuffer, first, last);
+    }
+  }
+
+  /**
+   * Merges the sorted pairs of the chunks in [start, end) into dst, at the offset of the first
+   * chunk. The other buffer is used for the halves, so the two swap roles at each level.
+   */
+  private static class PairMergeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final PairChunk[] chunks;
+    private final int start;
+    private final int end;
+    private final long[] dst;
+    private final long[] other;
+
+    PairMergeTask(PairChunk[] chunks, int start, int end, long[] dst, long[] other) {
+      this.chunks = chunks;
+      this.start = start;
+      this.end = end;
+      this.dst = dst;
+      this.other = other;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start == 1) {
+        PairChunk chunk = chunks[start];
+        System.arraycopy(chunk.pairs, 0, dst, chunk.offset, chunk.pairCount);
+        return;
+      }
+      int mid = (start + end) >>> 1;
+      invokeAll(new PairMergeTask(chunks, start, mid, other, dst),
+          new PairMergeTask(chunks, mid, end, other, dst));
+
+      int i = chunks[start].offset;
+      int iEnd = chunks[mid].offset;
+      int j = iEnd;
+      int jEnd = chunks[end - 1].offset + chunks[end - 1].pairCount;
+      int k = i;
+      while (i < iEnd && j < jEnd) {
+        dst[k++] = other[i] <= other[j] ? other[i++] : other[j++];
+      }
+      System.arraycopy(other, i, dst, k, iEnd - i);
+      k += iEnd - i;
+      System.arraycopy(other, j, dst, k, jEnd - j);
+    }
+  }
 }
@@ -28,6 +28,7 @@ import org.jbox2d.callbacks.TreeCallback;
 import org.jbox2d.callbacks.TreeRayCastCallback;
 import org.jbox2d.collision.AABB;
 import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.BufferUtils;
 import org.jbox2d.common.Color3f;
 import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Settings;
@@ -41,7 +42,7 @@ import org.jbox2d.common.Vec2;
  * 
  * @author daniel
  */
-public class DynamicTree implements BroadPhaseStrategy {
+public class DynamicTree implements ConcurrentQueryStrategy {
   public static final int MAX_STACK_SIZE = 64;
   public static final int NULL_NODE = -1;
 
@@ -189,6 +190,34 @@ public class DynamicTree implements BroadPhaseStrategy {
     }
   }
 
+  @Override
+  public final int[] query(TreeCallback callback, AABB aabb, int[] stack) {
+    if (m_root == null) {
+      return stack;
+    }
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root.id;
+
+    while (stackIndex > 0) {
+      DynamicTreeNode node = m_nodes[stack[--stackIndex]];
+      if (AABB.testOverlap(node.aabb, aabb)) {
+        if (node.child1 == null) {
+          boolean proceed = callback.treeCallback(node.id);
+          if (!proceed) {
+            return stack;
+          }
+        } else {
+          if (stack.length - stackIndex - 2 <= 0) {
+            stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+          }
+          stack[stackIndex++] = node.child1.id;
+          stack[stackIndex++] = node.child2.id;
+        }
+      }
+    }
+    return stack;
+  }
+
   private final Vec2 r = new Vec2();
   private final AABB aabb = new AABB();
   private final RayCastInput subInput = new RayCastInput();
@@ -304,6 +333,98 @@ public class DynamicTree implements BroadPhaseStrategy {
     }
   }
 
+  @Override
+  public int[] raycast(TreeRayCastCallback callback, RayCastInput input, RayCastInput subInput,
+      int[] stack) {
+    final float p1x = input.p1.x, p2x = input.p2.x, p1y = input.p1.y, p2y = input.p2.y;
+    float rx = p2x - p1x;
+    float ry = p2y - p1y;
+    assert ((rx * rx + ry * ry) > 0f);
+    float length = MathUtils.sqrt(rx * rx + ry * ry);
+    if (length >= Settings.EPSILON) {
+      float invLength = 1.0f / length;
+      rx *= invLength;
+      ry *= invLength;
+    }
+
+    // v is perpendicular to the segment.
+    final float vx = -1f * ry;
+    final float vy = 1f * rx;
+    final float absVx = MathUtils.abs(vx);
+    final float absVy = MathUtils.abs(vy);
+
+    float maxFraction = input.maxFraction;
+
+    // Build a bounding box for the segment.
+    float tempx = (p2x - p1x) * maxFraction + p1x;
+    float tempy = (p2y - p1y) * maxFraction + p1y;
+    float segLowerX = p1x < tempx ? p1x : tempx;
+    float segLowerY = p1y < tempy ? p1y : tempy;
+    float segUpperX = p1x > tempx ? p1x : tempx;
+    float segUpperY = p1y > tempy ? p1y : tempy;
+
+    if (m_root == null) {
+      return stack;
+    }
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root.id;
+    while (stackIndex > 0) {
+      final DynamicTreeNode node = m_nodes[stack[--stackIndex]];
+      final AABB nodeAABB = node.aabb;
+      if (segLowerX - nodeAABB.upperBound.x > 0.0f || segLowerY - nodeAABB.upperBound.y > 0.0f
+          || nodeAABB.lowerBound.x - segUpperX > 0.0f
+          || nodeAABB.lowerBound.y - segUpperY > 0.0f) {
+        continue;
+      }
+
+      // Separating axis for segment (Gino, p80).
+      // |dot(v, p1 - c)| > dot(|v|, h)
+      float cx = (nodeAABB.lowerBound.x + nodeAABB.upperBound.x) * .5f;
+      float cy = (nodeAABB.lowerBound.y + nodeAABB.upperBound.y) * .5f;
+      float hx = (nodeAABB.upperBound.x - nodeAABB.lowerBound.x) * .5f;
+      float hy = (nodeAABB.upperBound.y - nodeAABB.lowerBound.y) * .5f;
+      tempx = p1x - cx;
+      tempy = p1y - cy;
+      float separation = MathUtils.abs(vx * tempx + vy * tempy) - (absVx * hx + absVy * hy);
+      if (separation > 0.0f) {
+        continue;
+      }
+
+      if (node.child1 == null) {
+        subInput.p1.x = p1x;
+        subInput.p1.y = p1y;
+        subInput.p2.x = p2x;
+        subInput.p2.y = p2y;
+        subInput.maxFraction = maxFraction;
+
+        float value = callback.raycastCallback(subInput, node.id);
+
+        if (value == 0.0f) {
+          // The client has terminated the ray cast.
+          return stack;
+        }
+
+        if (value > 0.0f) {
+          // Update segment bounding box.
+          maxFraction = value;
+          tempx = (p2x - p1x) * maxFraction + p1x;
+          tempy = (p2y - p1y) * maxFraction + p1y;
+          segLowerX = p1x < tempx ? p1x : tempx;
+          segLowerY = p1y < tempy ? p1y : tempy;
+          segUpperX = p1x > tempx ? p1x : tempx;
+          segUpperY = p1y > tempy ? p1y : tempy;
+        }
+      } else {
+        if (stack.length - stackIndex - 2 <= 0) {
+          stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+        }
+        stack[stackIndex++] = node.child1.id;
+        stack[stackIndex++] = node.child2.id;
+      }
+    }
+    return stack;
+  }
+
   @Override
   public final int computeHeight() {
     return computeHeight(m_root);
@@ -0,0 +1,827 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.collision.broadphase;
+
+import org.jbox2d.callbacks.DebugDraw;
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.BufferUtils;
+import org.jbox2d.common.Color3f;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+
+/**
+ * A dynamic AABB tree like {@link DynamicTreeFlatNodes}, with the nodes packed into two primitive
+ * arrays: the bounds of node i are m_bounds[4 * i] to m_bounds[4 * i + 3] (lower x, lower y, upper
+ * x, upper y) and its child1, child2, parent and height are m_links[4 * i] to m_links[4 * i + 3].
+ * A node takes 32 bytes in two contiguous blocks instead of an AABB object, two Vec2 objects and
+ * four int arrays, so traversals touch far less memory. The fat AABB objects handed out by
+ * {@link #getFatAABB(int)} are kept on the side and only for leaves.
+ */
+public class DynamicTreeCompact implements ConcurrentQueryStrategy {
+  public static final int NULL_NODE = -1;
+  public static final int INITIAL_BUFFER_LENGTH = 16;
+
+  private static final int CHILD1 = 0;
+  private static final int CHILD2 = 1;
+  private static final int PARENT = 2;
+  private static final int HEIGHT = 3;
+
+  public int m_root;
+  public float[] m_bounds;
+  public int[] m_links;
+  public Object[] m_userData;
+  private AABB[] m_fatAABB;
+
+  private int m_nodeCount;
+  private int m_nodeCapacity;
+
+  private int m_freeList;
+
+  private final Vec2[] drawVecs = new Vec2[4];
+
+  public DynamicTreeCompact() {
+    m_root = NULL_NODE;
+    m_nodeCount = 0;
+    m_nodeCapacity = INITIAL_BUFFER_LENGTH;
+    expandBuffers(0, m_nodeCapacity);
+
+    for (int i = 0; i < drawVecs.length; i++) {
+      drawVecs[i] = new Vec2();
+    }
+  }
+
+  private void expandBuffers(int oldSize, int newSize) {
+    m_bounds = BufferUtils.reallocateBuffer(m_bounds, 4 * oldSize, 4 * newSize);
+    m_links = BufferUtils.reallocateBuffer(m_links, 4 * oldSize, 4 * newSize);
+    AABB[] oldFatAABB = m_fatAABB;
+    m_fatAABB = new AABB[newSize];
+    Object[] oldUserData = m_userData;
+    m_userData = new Object[newSize];
+    if (oldSize > 0) {
+      System.arraycopy(oldFatAABB, 0, m_fatAABB, 0, oldSize);
+      System.arraycopy(oldUserData, 0, m_userData, 0, oldSize);
+    }
+
+    // Build a linked list for the free list.
+    for (int i = oldSize; i < newSize; i++) {
+      final int l = 4 * i;
+      m_links[l + CHILD1] = NULL_NODE;
+      m_links[l + CHILD2] = NULL_NODE;
+      m_links[l + PARENT] = (i == newSize - 1) ? NULL_NODE : i + 1;
+      m_links[l + HEIGHT] = -1;
+    }
+    m_freeList = oldSize;
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    final int node = allocateNode();
+    // Fatten the aabb
+    final int b = 4 * node;
+    m_bounds[b] = aabb.lowerBound.x - Settings.aabbExtension;
+    m_bounds[b + 1] = aabb.lowerBound.y - Settings.aabbExtension;
+    m_bounds[b + 2] = aabb.upperBound.x + Settings.aabbExtension;
+    m_bounds[b + 3] = aabb.upperBound.y + Settings.aabbExtension;
+    m_userData[node] = userData;
+    updateFatAABB(node);
+
+    insertLeaf(node);
+
+    return node;
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    assert (m_links[4 * proxyId + CHILD1] == NULL_NODE);
+
+    removeLeaf(proxyId);
+    m_userData[proxyId] = null;
+    freeNode(proxyId);
+  }
+
+  @Override
+  public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
+    assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    final int node = proxyId;
+    assert (m_links[4 * node + CHILD1] == NULL_NODE);
+
+    final float[] bounds = m_bounds;
+    final int b = 4 * node;
+    if (bounds[b] <= aabb.lowerBound.x && bounds[b + 1] <= aabb.lowerBound.y
+        && aabb.upperBound.x <= bounds[b + 2] && aabb.upperBound.y <= bounds[b + 3]) {
+      return false;
+    }
+
+    removeLeaf(node);
+
+    // Extend AABB
+    float lowerX = aabb.lowerBound.x - Settings.aabbExtension;
+    float lowerY = aabb.lowerBound.y - Settings.aabbExtension;
+    float upperX = aabb.upperBound.x + Settings.aabbExtension;
+    float upperY = aabb.upperBound.y + Settings.aabbExtension;
+
+    // Predict AABB displacement.
+    final float dx = displacement.x * Settings.aabbMultiplier;
+    final float dy = displacement.y * Settings.aabbMultiplier;
+    if (dx < 0.0f) {
+      lowerX += dx;
+    } else {
+      upperX += dx;
+    }
+
+    if (dy < 0.0f) {
+      lowerY += dy;
+    } else {
+      upperY += dy;
+    }
+
+    bounds[b] = lowerX;
+    bounds[b + 1] = lowerY;
+    bounds[b + 2] = upperX;
+    bounds[b + 3] = upperY;
+    updateFatAABB(node);
+
+    insertLeaf(proxyId);
+    return true;
+  }
+
+  private final void updateFatAABB(int leaf) {
+    AABB fatAABB = m_fatAABB[leaf];
+    if (fatAABB == null) {
+      fatAABB = m_fatAABB[leaf] = new AABB();
+    }
+    final int b = 4 * leaf;
+    fatAABB.lowerBound.x = m_bounds[b];
+    fatAABB.lowerBound.y = m_bounds[b + 1];
+    fatAABB.upperBound.x = m_bounds[b + 2];
+    fatAABB.upperBound.y = m_bounds[b + 3];
+  }
+
+  @Override
+  public final Object getUserData(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    return m_userData[proxyId];
+  }
+
+  @Override
+  public final AABB getFatAABB(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    return m_fatAABB[proxyId];
+  }
+
+  private int[] nodeStack = new int[20];
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb) {
+    nodeStack = query(callback, aabb, nodeStack);
+  }
+
+  @Override
+  public final int[] query(TreeCallback callback, AABB aabb, int[] stack) {
+    if (m_root == NULL_NODE) {
+      return stack;
+    }
+    final float[] bounds = m_bounds;
+    final int[] links = m_links;
+    final float lowerX = aabb.lowerBound.x, lowerY = aabb.lowerBound.y;
+    final float upperX = aabb.upperBound.x, upperY = aabb.upperBound.y;
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root;
+
+    while (stackIndex > 0) {
+      final int node = stack[--stackIndex];
+      final int b = 4 * node;
+      if (lowerX > bounds[b + 2] || lowerY > bounds[b + 3] || bounds[b] > upperX
+          || bounds[b + 1] > upperY) {
+        continue;
+      }
+      final int child1 = links[b + CHILD1];
+      if (child1 == NULL_NODE) {
+        if (!callback.treeCallback(node)) {
+          return stack;
+        }
+      } else {
+        if (stack.length - stackIndex - 2 <= 0) {
+          stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+        }
+        stack[stackIndex++] = child1;
+        stack[stackIndex++] = links[b + CHILD2];
+      }
+    }
+    return stack;
+  }
+
+  private final RayCastInput subInput = new RayCastInput();
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    nodeStack = raycast(callback, input, subInput, nodeStack);
+  }
+
+  @Override
+  public int[] raycast(TreeRayCastCallback callback, RayCastInput input, RayCastInput subInput,
+      int[] stack) {
+    if (m_root == NULL_NODE) {
+      return stack;
+    }
+    final float[] bounds = m_bounds;
+    final int[] links = m_links;
+    final float p1x = input.p1.x, p2x = input.p2.x, p1y = input.p1.y, p2y = input.p2.y;
+    float rx = p2x - p1x;
+    float ry = p2y - p1y;
+    assert ((rx * rx + ry * ry) > 0f);
+    float length = MathUtils.sqrt(rx * rx + ry * ry);
+    if (length >= Settings.EPSILON) {
+      float invLength = 1.0f / length;
+      rx *= invLength;
+      ry *= invLength;
+    }
+
+    // v is perpendicular to the segment.
+    final float vx = -1f * ry;
+    final float vy = 1f * rx;
+    final float absVx = MathUtils.abs(vx);
+    final float absVy = MathUtils.abs(vy);
+
+    float maxFraction = input.maxFraction;
+
+    // Build a bounding box for the segment.
+    float tempx = (p2x - p1x) * maxFraction + p1x;
+    float tempy = (p2y - p1y) * maxFraction + p1y;
+    float segLowerX = p1x < tempx ? p1x : tempx;
+    float segLowerY = p1y < tempy ? p1y : tempy;
+    float segUpperX = p1x > tempx ? p1x : tempx;
+    float segUpperY = p1y > tempy ? p1y : tempy;
+
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root;
+    while (stackIndex > 0) {
+      final int node = stack[--stackIndex];
+      final int b = 4 * node;
+      final float lowerX = bounds[b], lowerY = bounds[b + 1];
+      final float upperX = bounds[b + 2], upperY = bounds[b + 3];
+      if (segLowerX > upperX || segLowerY > upperY || lowerX > segUpperX || lowerY > segUpperY) {
+        continue;
+      }
+
+      // Separating axis for segment (Gino, p80).
+      // |dot(v, p1 - c)| > dot(|v|, h)
+      float cx = (lowerX + upperX) * .5f;
+      float cy = (lowerY + upperY) * .5f;
+      float hx = (upperX - lowerX) * .5f;
+      float hy = (upperY - lowerY) * .5f;
+      tempx = p1x - cx;
+      tempy = p1y - cy;
+      float separation = MathUtils.abs(vx * tempx + vy * tempy) - (absVx * hx + absVy * hy);
+      if (separation > 0.0f) {
+        continue;
+      }
+
+      final int child1 = links[b + CHILD1];
+      if (child1 == NULL_NODE) {
+        subInput.p1.x = p1x;
+        subInput.p1.y = p1y;
+        subInput.p2.x = p2x;
+        subInput.p2.y = p2y;
+        subInput.maxFraction = maxFraction;
+
+        float value = callback.raycastCallback(subInput, node);
+
+        if (value == 0.0f) {
+          // The client has terminated the ray cast.
+          return stack;
+        }
+
+        if (value > 0.0f) {
+          // Update segment bounding box.
+          maxFraction = value;
+          tempx = (p2x - p1x) * maxFraction + p1x;
+          tempy = (p2y - p1y) * maxFraction + p1y;
+          segLowerX = p1x < tempx ? p1x : tempx;
+          segLowerY = p1y < tempy ? p1y : tempy;
+          segUpperX = p1x > tempx ? p1x : tempx;
+          segUpperY = p1y > tempy ? p1y : tempy;
+        }
+      } else {
+        if (stack.length - stackIndex - 2 <= 0) {
+          stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+        }
+        stack[stackIndex++] = child1;
+        stack[stackIndex++] = links[b + CHILD2];
+      }
+    }
+    return stack;
+  }
+
+  @Override
+  public final int computeHeight() {
+    if (m_root == NULL_NODE) {
+      return 0;
+    }
+    return computeHeight(m_root);
+  }
+
+  private final int computeHeight(int node) {
+    assert (0 <= node && node < m_nodeCapacity);
+
+    final int child1 = m_links[4 * node + CHILD1];
+    if (child1 == NULL_NODE) {
+      return 0;
+    }
+    int height1 = computeHeight(child1);
+    int height2 = computeHeight(m_links[4 * node + CHILD2]);
+    return 1 + MathUtils.max(height1, height2);
+  }
+
+  /**
+   * Validate this tree. For testing.
+   */
+  public void validate() {
+    validateStructure(m_root);
+    validateMetrics(m_root);
+
+    int freeCount = 0;
+    int freeNode = m_freeList;
+    while (freeNode != NULL_NODE) {
+      assert (0 <= freeNode && freeNode < m_nodeCapacity);
+      freeNode = m_links[4 * freeNode + PARENT];
+      ++freeCount;
+    }
+
+    assert (getHeight() == computeHeight());
+    assert (m_nodeCount + freeCount == m_nodeCapacity);
+  }
+
+  @Override
+  public int getHeight() {
+    if (m_root == NULL_NODE) {
+      return 0;
+    }
+    return m_links[4 * m_root + HEIGHT];
+  }
+
+  @Override
+  public int getMaxBalance() {
+    final int[] links = m_links;
+    int maxBalance = 0;
+    for (int i = 0; i < m_nodeCapacity; ++i) {
+      final int l = 4 * i;
+      if (links[l + HEIGHT] <= 1) {
+        continue;
+      }
+
+      assert (links[l + CHILD1] != NULL_NODE);
+
+      int child1 = links[l + CHILD1];
+      int child2 = links[l + CHILD2];
+      int balance = MathUtils.abs(links[4 * child2 + HEIGHT] - links[4 * child1 + HEIGHT]);
+      maxBalance = MathUtils.max(maxBalance, balance);
+    }
+
+    return maxBalance;
+  }
+
+  @Override
+  public float getAreaRatio() {
+    if (m_root == NULL_NODE) {
+      return 0.0f;
+    }
+
+    float rootArea = perimeter(m_root);
+
+    float totalArea = 0.0f;
+    for (int i = 0; i < m_nodeCapacity; ++i) {
+      if (m_links[4 * i + HEIGHT] < 0) {
+        // Free node in pool
+        continue;
+      }
+
+      totalArea += perimeter(i);
+    }
+
+    return totalArea / rootArea;
+  }
+
+  private final float perimeter(int node) {
+    final int b = 4 * node;
+    return 2.0f * (m_bounds[b + 2] - m_bounds[b] + m_bounds[b + 3] - m_bounds[b + 1]);
+  }
+
+  /**
+   * Perimeter of the union of the bounds of nodes a and b.
+   */
+  private final float combinedPerimeter(int a, int b) {
+    final float[] bounds = m_bounds;
+    final int ba = 4 * a, bb = 4 * b;
+    final float lowerX = bounds[ba] < bounds[bb] ? bounds[ba] : bounds[bb];
+    final float lowerY = bounds[ba + 1] < bounds[bb + 1] ? bounds[ba + 1] : bounds[bb + 1];
+    final float upperX = bounds[ba + 2] > bounds[bb + 2] ? bounds[ba + 2] : bounds[bb + 2];
+    final float upperY = bounds[ba + 3] > bounds[bb + 3] ? bounds[ba + 3] : bounds[bb + 3];
+    return 2.0f * (upperX - lowerX + upperY - lowerY);
+  }
+
+  /**
+   * Sets the bounds of node to the union of the bounds of nodes a and b.
+   */
+  private final void combine(int node, int a, int b) {
+    final float[] bounds = m_bounds;
+    final int bn = 4 * node, ba = 4 * a, bb = 4 * b;
+    bounds[bn] = bounds[ba] < bounds[bb] ? bounds[ba] : bounds[bb];
+    bounds[bn + 1] = bounds[ba + 1] < bounds[bb + 1] ? bounds[ba + 1] : bounds[bb + 1];
+    bounds[bn + 2] = bounds[ba + 2] > bounds[bb + 2] ? bounds[ba + 2] : bounds[bb + 2];
+    bounds[bn + 3] = bounds[ba + 3] > bounds[bb + 3] ? bounds[ba + 3] : bounds[bb + 3];
+  }
+
+  private final int allocateNode() {
+    if (m_freeList == NULL_NODE) {
+      assert (m_nodeCount == m_nodeCapacity);
+      m_nodeCapacity *= 2;
+      expandBuffers(m_nodeCount, m_nodeCapacity);
+    }
+    assert (m_freeList != NULL_NODE);
+    final int node = m_freeList;
+    final int l = 4 * node;
+    m_freeList = m_links[l + PARENT];
+    m_links[l + CHILD1] = NULL_NODE;
+    m_links[l + CHILD2] = NULL_NODE;
+    m_links[l + PARENT] = NULL_NODE;
+    m_links[l + HEIGHT] = 0;
+    ++m_nodeCount;
+    return node;
+  }
+
+  /**
+   * returns a node to the pool
+   */
+  private final void freeNode(int node) {
+    assert (node != NULL_NODE);
+    assert (0 < m_nodeCount);
+    m_links[4 * node + PARENT] = m_freeList;
+    m_links[4 * node + HEIGHT] = -1;
+    m_freeList = node;
+    m_nodeCount--;
+  }
+
+  private final void insertLeaf(int leaf) {
+    int[] links = m_links;
+    if (m_root == NULL_NODE) {
+      m_root = leaf;
+      links[4 * leaf + PARENT] = NULL_NODE;
+      return;
+    }
+
+    // find the best sibling
+    int index = m_root;
+    while (links[4 * index + CHILD1] != NULL_NODE) {
+      final int node = index;
+      final int child1 = links[4 * node + CHILD1];
+      final int child2 = links[4 * node + CHILD2];
+      float area = perimeter(node);
+      float combinedArea = combinedPerimeter(node, leaf);
+
+      // Cost of creating a new parent for this node and the new leaf
+      float cost = 2.0f * combinedArea;
+
+      // Minimum cost of pushing the leaf further down the tree
+      float inheritanceCost = 2.0f * (combinedArea - area);
+
+      // Cost of descending into child1
+      float cost1 = combinedPerimeter(leaf, child1) + inheritanceCost;
+      if (links[4 * child1 + CHILD1] != NULL_NODE) {
+        cost1 -= perimeter(child1);
+      }
+
+      // Cost of descending into child2
+      float cost2 = combinedPerimeter(leaf, child2) + inheritanceCost;
+      if (links[4 * child2 + CHILD1] != NULL_NODE) {
+        cost2 -= perimeter(child2);
+      }
+
+      // Descend according to the minimum cost.
+      if (cost < cost1 && cost < cost2) {
+        break;
+      }
+
+      // Descend
+      if (cost1 < cost2) {
+        index = child1;
+      } else {
+        index = child2;
+      }
+    }
+
+    final int sibling = index;
+    final int oldParent = links[4 * sibling + PARENT];
+    final int newParent = allocateNode();
+    // The buffers may have grown.
+    links = m_links;
+    final int np = 4 * newParent;
+    links[np + PARENT] = oldParent;
+    m_userData[newParent] = null;
+    combine(newParent, leaf, sibling);
+    links[np + HEIGHT] = links[4 * sibling + HEIGHT] + 1;
+
+    if (oldParent != NULL_NODE) {
+      // The sibling was not the root.
+      if (links[4 * oldParent + CHILD1] == sibling) {
+        links[4 * oldParent + CHILD1] = newParent;
+      } else {
+        links[4 * oldParent + CHILD2] = newParent;
+      }
+    } else {
+      // The sibling was the root.
+      m_root = newParent;
+    }
+    links[np + CHILD1] = sibling;
+    links[np + CHILD2] = leaf;
+    links[4 * sibling + PARENT] = newParent;
+    links[4 * leaf + PARENT] = newParent;
+
+    // Walk back up the tree fixing heights and AABBs
+    refit(links[4 * leaf + PARENT]);
+  }
+
+  private final void removeLeaf(int leaf) {
+    final int[] links = m_links;
+    if (leaf == m_root) {
+      m_root = NULL_NODE;
+      return;
+    }
+
+    final int parent = links[4 * leaf + PARENT];
+    final int grandParent = links[4 * parent + PARENT];
+    final int parentChild1 = links[4 * parent + CHILD1];
+    final int sibling = parentChild1 == leaf ? links[4 * parent + CHILD2] : parentChild1;
+
+    if (grandParent != NULL_NODE) {
+      // Destroy parent and connect sibling to grandParent.
+      if (links[4 * grandParent + CHILD1] == parent) {
+        links[4 * grandParent + CHILD1] = sibling;
+      } else {
+        links[4 * grandParent + CHILD2] = sibling;
+      }
+      links[4 * sibling + PARENT] = grandParent;
+      freeNode(parent);
+
+      // Adjust ancestor bounds.
+      refit(grandParent);
+    } else {
+      m_root = sibling;
+      links[4 * sibling + PARENT] = NULL_NODE;
+      freeNode(parent);
+    }
+  }
+
+  /**
+   * Balances and refits the bounds and heights from index up to the root.
+   */
+  private final void refit(int index) {
+    final int[] links = m_links;
+    while (index != NULL_NODE) {
+      index = balance(index);
+
+      final int l = 4 * index;
+      final int child1 = links[l + CHILD1];
+      final int child2 = links[l + CHILD2];
+
+      assert (child1 != NULL_NODE);
+      assert (child2 != NULL_NODE);
+
+      links[l + HEIGHT] = 1 + MathUtils.max(links[4 * child1 + HEIGHT], links[4 * child2 + HEIGHT]);
+      combine(index, child1, child2);
+
+      index = links[l + PARENT];
+    }
+  }
+
+  // Perform a left or right rotation if node A is imbalanced.
+  // Returns the new root index.
+  private int balance(int iA) {
+    assert (iA != NULL_NODE);
+    final int[] links = m_links;
+
+    final int A = 4 * iA;
+    if (links[A + CHILD1] == NULL_NODE || links[A + HEIGHT] < 2) {
+      return iA;
+    }
+
+    final int iB = links[A + CHILD1];
+    final int iC = links[A + CHILD2];
+    assert (0 <= iB && iB < m_nodeCapacity);
+    assert (0 <= iC && iC < m_nodeCapacity);
+
+    final int B = 4 * iB;
+    final int C = 4 * iC;
+
+    int balance = links[C + HEIGHT] - links[B + HEIGHT];
+
+    // Rotate C up
+    if (balance > 1) {
+      final int iF = links[C + CHILD1];
+      final int iG = links[C + CHILD2];
+      assert (0 <= iF && iF < m_nodeCapacity);
+      assert (0 <= iG && iG < m_nodeCapacity);
+
+      // Swap A and C
+      links[C + CHILD1] = iA;
+      final int cParent = links[C + PARENT] = links[A + PARENT];
+      links[A + PARENT] = iC;
+
+      // A's old parent should point to C
+      if (cParent != NULL_NODE) {
+        if (links[4 * cParent + CHILD1] == iA) {
+          links[4 * cParent + CHILD1] = iC;
+        } else {
+          assert (links[4 * cParent + CHILD2] == iA);
+          links[4 * cParent + CHILD2] = iC;
+        }
+      } else {
+        m_root = iC;
+      }
+
+      // Rotate
+      final int heightF = links[4 * iF + HEIGHT];
+      final int heightG = links[4 * iG + HEIGHT];
+      final int iUp = heightF > heightG ? iF : iG;
+      final int iDown = heightF > heightG ? iG : iF;
+      links[C + CHILD2] = iUp;
+      links[A + CHILD2] = iDown;
+      links[4 * iDown + PARENT] = iA;
+      combine(iA, iB, iDown);
+      combine(iC, iA, iUp);
+
+      links[A + HEIGHT] = 1 + MathUtils.max(links[B + HEIGHT], links[4 * iDown + HEIGHT]);
+      links[C + HEIGHT] = 1 + MathUtils.max(links[A + HEIGHT], links[4 * iUp + HEIGHT]);
+
+      return iC;
+    }
+
+    // Rotate B up
+    if (balance < -1) {
+      final int iD = links[B + CHILD1];
+      final int iE = links[B + CHILD2];
+      assert (0 <= iD && iD < m_nodeCapacity);
+      assert (0 <= iE && iE < m_nodeCapacity);
+
+      // Swap A and B
+      links[B + CHILD1] = iA;
+      final int bParent = links[B + PARENT] = links[A + PARENT];
+      links[A + PARENT] = iB;
+
+      // A's old parent should point to B
+      if (bParent != NULL_NODE) {
+        if (links[4 * bParent + CHILD1] == iA) {
+          links[4 * bParent + CHILD1] = iB;
+        } else {
+          assert (links[4 * bParent + CHILD2] == iA);
+          links[4 * bParent + CHILD2] = iB;
+        }
+      } else {
+        m_root = iB;
+      }
+
+      // Rotate
+      final int heightD = links[4 * iD + HEIGHT];
+      final int heightE = links[4 * iE + HEIGHT];
+      final int iUp = heightD > heightE ? iD : iE;
+      final int iDown = heightD > heightE ? iE : iD;
+      links[B + CHILD2] = iUp;
+      links[A + CHILD1] = iDown;
+      links[4 * iDown + PARENT] = iA;
+      combine(iA, iC, iDown);
+      combine(iB, iA, iUp);
+
+      links[A + HEIGHT] = 1 + MathUtils.max(links[C + HEIGHT], links[4 * iDown + HEIGHT]);
+      links[B + HEIGHT] = 1 + MathUtils.max(links[A + HEIGHT], links[4 * iUp + HEIGHT]);
+
+      return iB;
+    }
+
+    return iA;
+  }
+
+  private void validateStructure(int node) {
+    if (node == NULL_NODE) {
+      return;
+    }
+
+    final int l = 4 * node;
+    if (node == m_root) {
+      assert (m_links[l + PARENT] == NULL_NODE);
+    }
+
+    final int child1 = m_links[l + CHILD1];
+    final int child2 = m_links[l + CHILD2];
+
+    if (child1 == NULL_NODE) {
+      assert (child2 == NULL_NODE);
+      assert (m_links[l + HEIGHT] == 0);
+      return;
+    }
+
+    assert (0 <= child1 && child1 < m_nodeCapacity);
+    assert (0 <= child2 && child2 < m_nodeCapacity);
+
+    assert (m_links[4 * child1 + PARENT] == node);
+    assert (m_links[4 * child2 + PARENT] == node);
+
+    validateStructure(child1);
+    validateStructure(child2);
+  }
+
+  private void validateMetrics(int node) {
+    if (node == NULL_NODE) {
+      return;
+    }
+
+    final int l = 4 * node;
+    final int child1 = m_links[l + CHILD1];
+    final int child2 = m_links[l + CHILD2];
+
+    if (child1 == NULL_NODE) {
+      assert (child2 == NULL_NODE);
+      assert (m_links[l + HEIGHT] == 0);
+      final AABB fatAABB = m_fatAABB[node];
+      assert (fatAABB.lowerBound.x == m_bounds[l] && fatAABB.lowerBound.y == m_bounds[l + 1]);
+      assert (fatAABB.upperBound.x == m_bounds[l + 2] && fatAABB.upperBound.y == m_bounds[l + 3]);
+      return;
+    }
+
+    assert (child2 != child1);
+
+    int height1 = m_links[4 * child1 + HEIGHT];
+    int height2 = m_links[4 * child2 + HEIGHT];
+    assert (m_links[l + HEIGHT] == 1 + MathUtils.max(height1, height2));
+
+    final int b1 = 4 * child1, b2 = 4 * child2;
+    assert (m_bounds[l] == MathUtils.min(m_bounds[b1], m_bounds[b2]));
+    assert (m_bounds[l + 1] == MathUtils.min(m_bounds[b1 + 1], m_bounds[b2 + 1]));
+    assert (m_bounds[l + 2] == MathUtils.max(m_bounds[b1 + 2], m_bounds[b2 + 2]));
+    assert (m_bounds[l + 3] == MathUtils.max(m_bounds[b1 + 3], m_bounds[b2 + 3]));
+
+    validateMetrics(child1);
+    validateMetrics(child2);
+  }
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    if (m_root == NULL_NODE) {
+      return;
+    }
+    int height = computeHeight();
+    drawTree(argDraw, m_root, 0, height);
+  }
+
+  private final Color3f color = new Color3f();
+  private final Vec2 textVec = new Vec2();
+  private final AABB drawAABB = new AABB();
+
+  public void drawTree(DebugDraw argDraw, int node, int spot, int height) {
+    final int b = 4 * node;
+    final AABB a = drawAABB;
+    a.lowerBound.set(m_bounds[b], m_bounds[b + 1]);
+    a.upperBound.set(m_bounds[b + 2], m_bounds[b + 3]);
+    a.getVertices(drawVecs);
+
+    color.set(1, (height - spot) * 1f / height, (height - spot) * 1f / height);
+    argDraw.drawPolygon(drawVecs, 4, color);
+
+    argDraw.getViewportTranform().getWorldToScreen(a.upperBound, textVec);
+    argDraw.drawString(textVec.x, textVec.y, node + "-" + (spot + 1) + "/" + height, color);
+
+    int c1 = m_links[b + CHILD1];
+    int c2 = m_links[b + CHILD2];
+    if (c1 != NULL_NODE) {
+      drawTree(argDraw, c1, spot + 1, height);
+    }
+    if (c2 != NULL_NODE) {
+      drawTree(argDraw, c2, spot + 1, height);
+    }
+  }
+}
@@ -34,7 +34,7 @@ import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Settings;
 import org.jbox2d.common.Vec2;
 
-public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
+public class DynamicTreeFlatNodes implements ConcurrentQueryStrategy {
   public static final int MAX_STACK_SIZE = 64;
   public static final int NULL_NODE = -1;
   public static final int INITIAL_BUFFER_LENGTH = 16;
@@ -96,6 +96,7 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     m_userData[node] = userData;
 
     insertLeaf(node);
+    checkQuality();
 
     return node;
   }
@@ -148,6 +149,7 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     }
 
     insertLeaf(proxyId);
+    checkQuality();
     return true;
   }
 
@@ -196,33 +198,61 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     }
   }
 
-  private final Vec2 r = new Vec2();
-  private final AABB aabb = new AABB();
+  @Override
+  public final int[] query(TreeCallback callback, AABB aabb, int[] stack) {
+    if (m_root == NULL_NODE) {
+      return stack;
+    }
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root;
+
+    while (stackIndex > 0) {
+      int node = stack[--stackIndex];
+      if (AABB.testOverlap(m_aabb[node], aabb)) {
+        int child1 = m_child1[node];
+        if (child1 == NULL_NODE) {
+          boolean proceed = callback.treeCallback(node);
+          if (!proceed) {
+            return stack;
+          }
+        } else {
+          if (stack.length - stackIndex - 2 <= 0) {
+            stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+          }
+          stack[stackIndex++] = child1;
+          stack[stackIndex++] = m_child2[node];
+        }
+      }
+    }
+    return stack;
+  }
+
   private final RayCastInput subInput = new RayCastInput();
 
   @Override
   public void raycast(TreeRayCastCallback callback, RayCastInput input) {
-    final Vec2 p1 = input.p1;
-    final Vec2 p2 = input.p2;
-    float p1x = p1.x, p2x = p2.x, p1y = p1.y, p2y = p2.y;
-    float vx, vy;
-    float rx, ry;
-    float absVx, absVy;
-    float cx, cy;
-    float hx, hy;
-    float tempx, tempy;
-    r.x = p2x - p1x;
-    r.y = p2y - p1y;
-    assert ((r.x * r.x + r.y * r.y) > 0f);
-    r.normalize();
-    rx = r.x;
-    ry = r.y;
+    nodeStack = raycast(callback, input, subInput, nodeStack);
+  }
+
+  @Override
+  public int[] raycast(TreeRayCastCallback callback, RayCastInput input, RayCastInput subInput,
+      int[] stack) {
+    final float p1x = input.p1.x, p2x = input.p2.x, p1y = input.p1.y, p2y = input.p2.y;
+    float rx = p2x - p1x;
+    float ry = p2y - p1y;
+    assert ((rx * rx + ry * ry) > 0f);
+    float length = MathUtils.sqrt(rx * rx + ry * ry);
+    if (length >= Settings.EPSILON) {
+      float invLength = 1.0f / length;
+      rx *= invLength;
+      ry *= invLength;
+    }
 
     // v is perpendicular to the segment.
-    vx = -1f * ry;
-    vy = 1f * rx;
-    absVx = MathUtils.abs(vx);
-    absVy = MathUtils.abs(vy);
+    final float vx = -1f * ry;
+    final float vy = 1f * rx;
+    final float absVx = MathUtils.abs(vx);
+    final float absVy = MathUtils.abs(vy);
 
     // Separating axis for segment (Gino, p80).
     // |dot(v, p1 - c)| > dot(|v|, h)
@@ -230,30 +260,26 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     float maxFraction = input.maxFraction;
 
     // Build a bounding box for the segment.
-    final AABB segAABB = aabb;
     // Vec2 t = p1 + maxFraction * (p2 - p1);
-    // before inline
-    // temp.set(p2).subLocal(p1).mulLocal(maxFraction).addLocal(p1);
-    // Vec2.minToOut(p1, temp, segAABB.lowerBound);
-    // Vec2.maxToOut(p1, temp, segAABB.upperBound);
-    tempx = (p2x - p1x) * maxFraction + p1x;
-    tempy = (p2y - p1y) * maxFraction + p1y;
-    segAABB.lowerBound.x = p1x < tempx ? p1x : tempx;
-    segAABB.lowerBound.y = p1y < tempy ? p1y : tempy;
-    segAABB.upperBound.x = p1x > tempx ? p1x : tempx;
-    segAABB.upperBound.y = p1y > tempy ? p1y : tempy;
-    // end inline
-
-    nodeStackIndex = 0;
-    nodeStack[nodeStackIndex++] = m_root;
-    while (nodeStackIndex > 0) {
-      int node = nodeStack[--nodeStackIndex] = m_root;
+    float tempx = (p2x - p1x) * maxFraction + p1x;
+    float tempy = (p2y - p1y) * maxFraction + p1y;
+    float segLowerX = p1x < tempx ? p1x : tempx;
+    float segLowerY = p1y < tempy ? p1y : tempy;
+    float segUpperX = p1x > tempx ? p1x : tempx;
+    float segUpperY = p1y > tempy ? p1y : tempy;
+
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root;
+    while (stackIndex > 0) {
+      int node = stack[--stackIndex];
       if (node == NULL_NODE) {
         continue;
       }
 
       final AABB nodeAABB = m_aabb[node];
-      if (!AABB.testOverlap(nodeAABB, segAABB)) {
+      if (segLowerX - nodeAABB.upperBound.x > 0.0f || segLowerY - nodeAABB.upperBound.y > 0.0f
+          || nodeAABB.lowerBound.x - segUpperX > 0.0f
+          || nodeAABB.lowerBound.y - segUpperY > 0.0f) {
         continue;
       }
 
@@ -261,10 +287,10 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
       // |dot(v, p1 - c)| > dot(|v|, h)
       // node.aabb.getCenterToOut(c);
       // node.aabb.getExtentsToOut(h);
-      cx = (nodeAABB.lowerBound.x + nodeAABB.upperBound.x) * .5f;
-      cy = (nodeAABB.lowerBound.y + nodeAABB.upperBound.y) * .5f;
-      hx = (nodeAABB.upperBound.x - nodeAABB.lowerBound.x) * .5f;
-      hy = (nodeAABB.upperBound.y - nodeAABB.lowerBound.y) * .5f;
+      float cx = (nodeAABB.lowerBound.x + nodeAABB.upperBound.x) * .5f;
+      float cy = (nodeAABB.lowerBound.y + nodeAABB.upperBound.y) * .5f;
+      float hx = (nodeAABB.upperBound.x - nodeAABB.lowerBound.x) * .5f;
+      float hy = (nodeAABB.upperBound.y - nodeAABB.lowerBound.y) * .5f;
       tempx = p1x - cx;
       tempy = p1y - cy;
       float separation = MathUtils.abs(vx * tempx + vy * tempy) - (absVx * hx + absVy * hy);
@@ -284,27 +310,28 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
 
         if (value == 0.0f) {
           // The client has terminated the ray cast.
-          return;
+          return stack;
         }
 
         if (value > 0.0f) {
           // Update segment bounding box.
           maxFraction = value;
-          // temp.set(p2).subLocal(p1).mulLocal(maxFraction).addLocal(p1);
-          // Vec2.minToOut(p1, temp, segAABB.lowerBound);
-          // Vec2.maxToOut(p1, temp, segAABB.upperBound);
           tempx = (p2x - p1x) * maxFraction + p1x;
           tempy = (p2y - p1y) * maxFraction + p1y;
-          segAABB.lowerBound.x = p1x < tempx ? p1x : tempx;
-          segAABB.lowerBound.y = p1y < tempy ? p1y : tempy;
-          segAABB.upperBound.x = p1x > tempx ? p1x : tempx;
-          segAABB.upperBound.y = p1y > tempy ? p1y : tempy;
+          segLowerX = p1x < tempx ? p1x : tempx;
+          segLowerY = p1y < tempy ? p1y : tempy;
+          segUpperX = p1x > tempx ? p1x : tempx;
+          segUpperY = p1y > tempy ? p1y : tempy;
         }
       } else {
-        nodeStack[nodeStackIndex++] = child1;
-        nodeStack[nodeStackIndex++] = m_child2[node];
+        if (stack.length - stackIndex - 2 <= 0) {
+          stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+        }
+        stack[stackIndex++] = child1;
+        stack[stackIndex++] = m_child2[node];
       }
     }
+    return stack;
   }
 
   @Override
@@ -391,73 +418,242 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     return totalArea / rootArea;
   }
 
-  // /**
-  // * Build an optimal tree. Very expensive. For testing.
-  // */
-  // public void rebuildBottomUp() {
-  // int[] nodes = new int[m_nodeCount];
-  // int count = 0;
-  //
-  // // Build array of leaves. Free the rest.
-  // for (int i = 0; i < m_nodeCapacity; ++i) {
-  // if (m_nodes[i].height < 0) {
-  // // free node in pool
-  // continue;
-  // }
-  //
-  // DynamicTreeNode node = m_nodes[i];
-  // if (node.isLeaf()) {
-  // node.parent = null;
-  // nodes[count] = i;
-  // ++count;
-  // } else {
-  // freeNode(node);
-  // }
-  // }
-  //
-  // AABB b = new AABB();
-  // while (count > 1) {
-  // float minCost = Float.MAX_VALUE;
-  // int iMin = -1, jMin = -1;
-  // for (int i = 0; i < count; ++i) {
-  // AABB aabbi = m_nodes[nodes[i]].aabb;
-  //
-  // for (int j = i + 1; j < count; ++j) {
-  // AABB aabbj = m_nodes[nodes[j]].aabb;
-  // b.combine(aabbi, aabbj);
-  // float cost = b.getPerimeter();
-  // if (cost < minCost) {
-  // iMin = i;
-  // jMin = j;
-  // minCost = cost;
-  // }
-  // }
-  // }
-  //
-  // int index1 = nodes[iMin];
-  // int index2 = nodes[jMin];
-  // DynamicTreeNode child1 = m_nodes[index1];
-  // DynamicTreeNode child2 = m_nodes[index2];
-  //
-  // DynamicTreeNode parent = allocateNode();
-  // parent.child1 = child1;
-  // parent.child2 = child2;
-  // parent.height = 1 + MathUtils.max(child1.height, child2.height);
-  // parent.aabb.combine(child1.aabb, child2.aabb);
-  // parent.parent = null;
-  //
-  // child1.parent = parent;
-  // child2.parent = parent;
-  //
-  // nodes[jMin] = nodes[count - 1];
-  // nodes[iMin] = parent.id;
-  // --count;
-  // }
-  //
-  // m_root = m_nodes[nodes[0]];
-  //
-  // validate();
-  // }
+  /**
+   * Create many proxies at once. The leaves are allocated first and the whole tree is then rebuilt
+   * with {@link #rebuild()}, which is much faster and gives a better tree than inserting them one
+   * by one. Use it when loading level geometry.
+   * 
+   * @param aabbs the tight fitting AABBs
+   * @param userData the user data of each proxy
+   * @param count the number of proxies to create
+   * @param proxyIds receives the proxy ids, may be null
+   */
+  public final void createProxies(AABB[] aabbs, Object[] userData, int count, int[] proxyIds) {
+    for (int i = 0; i < count; ++i) {
+      final int node = allocateNode();
+      final AABB aabb = aabbs[i];
+      final AABB nodeAABB = m_aabb[node];
+      nodeAABB.lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+      nodeAABB.lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+      nodeAABB.upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+      nodeAABB.upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+      m_userData[node] = userData[i];
+      if (proxyIds != null) {
+        proxyIds[i] = node;
+      }
+    }
+    // The new leaves are not linked yet, so rebuild picks them up along with the old ones.
+    rebuild();
+  }
+
+  /**
+   * Rebuild the tree top down with a binned surface area heuristic. Proxy ids are kept, only the
+   * internal nodes are recreated. This is O(n log n).
+   */
+  public void rebuild() {
+    if (m_buildLeaves.length < m_nodeCount) {
+      m_buildLeaves = new int[m_nodeCapacity];
+      m_buildBounds = new float[4 * m_nodeCapacity];
+    }
+    final float[] bounds = m_buildBounds;
+    int count = 0;
+
+    // Build array of leaves. Free the rest.
+    for (int i = 0; i < m_nodeCapacity; ++i) {
+      if (m_height[i] < 0) {
+        // free node in pool
+        continue;
+      }
+
+      if (m_child1[i] == NULL_NODE) {
+        // Copy the bounds out so the build walks flat memory instead of the AABB objects.
+        final AABB a = m_aabb[i];
+        bounds[4 * count] = a.lowerBound.x;
+        bounds[4 * count + 1] = a.lowerBound.y;
+        bounds[4 * count + 2] = a.upperBound.x;
+        bounds[4 * count + 3] = a.upperBound.y;
+        m_parent[i] = NULL_NODE;
+        m_buildLeaves[count++] = i;
+      } else {
+        freeNode(i);
+      }
+    }
+
+    if (count == 0) {
+      m_root = NULL_NODE;
+      return;
+    }
+    m_root = buildRange(0, count);
+    m_insertionCount = 0;
+    // validate();
+  }
+
+  /**
+   * Rebuild the tree automatically once its area ratio (see {@link #getAreaRatio()}) grows past
+   * the given value. The ratio is checked after every m_nodeCount re-insertions, so the cost
+   * amortizes to a constant per insertion. A value of zero, the default, disables this.
+   */
+  public void setRebuildAreaRatio(float areaRatio) {
+    assert (areaRatio >= 0);
+    m_rebuildAreaRatio = areaRatio;
+  }
+
+  public float getRebuildAreaRatio() {
+    return m_rebuildAreaRatio;
+  }
+
+  private final void checkQuality() {
+    if (m_rebuildAreaRatio <= 0 || ++m_insertionCount < m_nodeCount) {
+      return;
+    }
+    m_insertionCount = 0;
+    if (getAreaRatio() > m_rebuildAreaRatio) {
+      rebuild();
+    }
+  }
+
+  private static final int SAH_BINS = 16;
+
+  private int[] m_buildLeaves = new int[16];
+  private float[] m_buildBounds = new float[4 * 16];
+  private final int[] binCount = new int[SAH_BINS];
+  // lower x, lower y, upper x, upper y for each bin
+  private final float[] binBounds = new float[4 * SAH_BINS];
+  private final float[] binCost = new float[SAH_BINS];
+  private int m_insertionCount;
+  private float m_rebuildAreaRatio;
+
+  private static float perimeter(float lx, float ly, float ux, float uy) {
+    return 2.0f * ((ux - lx) + (uy - ly));
+  }
+
+  /**
+   * Builds a subtree over m_buildLeaves[start, end) and returns its root.
+   */
+  private final int buildRange(int start, int end) {
+    final int[] leaves = m_buildLeaves;
+    final float[] bounds = m_buildBounds;
+    if (end - start == 1) {
+      return leaves[start];
+    }
+
+    // Bound the centers, which is what we split on.
+    float cminx = Float.MAX_VALUE, cminy = Float.MAX_VALUE;
+    float cmaxx = -Float.MAX_VALUE, cmaxy = -Float.MAX_VALUE;
+    for (int i = start; i < end; ++i) {
+      float cx = bounds[4 * i] + bounds[4 * i + 2];
+      float cy = bounds[4 * i + 1] + bounds[4 * i + 3];
+      cminx = MathUtils.min(cminx, cx);
+      cminy = MathUtils.min(cminy, cy);
+      cmaxx = MathUtils.max(cmaxx, cx);
+      cmaxy = MathUtils.max(cmaxy, cy);
+    }
+
+    final boolean axisX = cmaxx - cminx >= cmaxy - cminy;
+    final float cmin = axisX ? cminx : cminy;
+    final float extent = axisX ? cmaxx - cminx : cmaxy - cminy;
+
+    int mid;
+    if (extent <= 0.0f) {
+      // All centers coincide, any split is as good as another.
+      mid = (start + end) >>> 1;
+    } else {
+      final float scale = SAH_BINS / extent;
+      for (int b = 0; b < SAH_BINS; ++b) {
+        binCount[b] = 0;
+        binBounds[4 * b] = binBounds[4 * b + 1] = Float.MAX_VALUE;
+        binBounds[4 * b + 2] = binBounds[4 * b + 3] = -Float.MAX_VALUE;
+      }
+      for (int i = start; i < end; ++i) {
+        int b = binIndex(bounds, i, axisX, cmin, scale);
+        binCount[b]++;
+        binBounds[4 * b] = MathUtils.min(binBounds[4 * b], bounds[4 * i]);
+        binBounds[4 * b + 1] = MathUtils.min(binBounds[4 * b + 1], bounds[4 * i + 1]);
+        binBounds[4 * b + 2] = MathUtils.max(binBounds[4 * b + 2], bounds[4 * i + 2]);
+        binBounds[4 * b + 3] = MathUtils.max(binBounds[4 * b + 3], bounds[4 * i + 3]);
+      }
+
+      // Sweep from the right to get the cost of everything past each split plane.
+      float lx = Float.MAX_VALUE, ly = Float.MAX_VALUE;
+      float ux = -Float.MAX_VALUE, uy = -Float.MAX_VALUE;
+      int n = 0;
+      for (int b = SAH_BINS - 1; b > 0; --b) {
+        if (binCount[b] > 0) {
+          n += binCount[b];
+          lx = MathUtils.min(lx, binBounds[4 * b]);
+          ly = MathUtils.min(ly, binBounds[4 * b + 1]);
+          ux = MathUtils.max(ux, binBounds[4 * b + 2]);
+          uy = MathUtils.max(uy, binBounds[4 * b + 3]);
+        }
+        binCost[b] = n == 0 ? 0.0f : n * perimeter(lx, ly, ux, uy);
+      }
+
+      // Then from the left, splitting before bin b.
+      lx = ly = Float.MAX_VALUE;
+      ux = uy = -Float.MAX_VALUE;
+      n = 0;
+      float minCost = Float.MAX_VALUE;
+      int split = -1;
+      for (int b = 1; b < SAH_BINS; ++b) {
+        final int p = b - 1;
+        if (binCount[p] > 0) {
+          n += binCount[p];
+          lx = MathUtils.min(lx, binBounds[4 * p]);
+          ly = MathUtils.min(ly, binBounds[4 * p + 1]);
+          ux = MathUtils.max(ux, binBounds[4 * p + 2]);
+          uy = MathUtils.max(uy, binBounds[4 * p + 3]);
+        }
+        if (n == 0 || n == end - start) {
+          continue;
+        }
+        float cost = n * perimeter(lx, ly, ux, uy) + binCost[b];
+        if (cost < minCost) {
+          minCost = cost;
+          split = b;
+        }
+      }
+      assert (split != -1);
+
+      // Partition the leaves around the split plane.
+      int i = start, j = end - 1;
+      while (i <= j) {
+        if (binIndex(bounds, i, axisX, cmin, scale) < split) {
+          ++i;
+        } else {
+          int temp = leaves[i];
+          leaves[i] = leaves[j];
+          leaves[j] = temp;
+          for (int k = 0; k < 4; ++k) {
+            float tempf = bounds[4 * i + k];
+            bounds[4 * i + k] = bounds[4 * j + k];
+            bounds[4 * j + k] = tempf;
+          }
+          --j;
+        }
+      }
+      mid = i;
+    }
+    assert (start < mid && mid < end);
+
+    final int child1 = buildRange(start, mid);
+    final int child2 = buildRange(mid, end);
+
+    final int parent = allocateNode();
+    m_userData[parent] = null;
+    m_child1[parent] = child1;
+    m_child2[parent] = child2;
+    m_parent[child1] = parent;
+    m_parent[child2] = parent;
+    m_height[parent] = 1 + MathUtils.max(m_height[child1], m_height[child2]);
+    m_aabb[parent].combine(m_aabb[child1], m_aabb[child2]);
+    return parent;
+  }
+
+  private static int binIndex(float[] bounds, int i, boolean axisX, float cmin, float scale) {
+    float c = axisX ? bounds[4 * i] + bounds[4 * i + 2] : bounds[4 * i + 1] + bounds[4 * i + 3];
+    int b = (int) ((c - cmin) * scale);
+    return b < SAH_BINS ? b : SAH_BINS - 1;
+  }
 
   private final int allocateNode() {
     if (m_freeList == NULL_NODE) {
@@ -0,0 +1,816 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.collision.broadphase;
+
+import org.jbox2d.callbacks.DebugDraw;
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.BufferUtils;
+import org.jbox2d.common.Color3f;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+
+/**
+ * A dynamic AABB tree with up to four children per node, kept balanced like an R-tree: all proxies
+ * hang off nodes of level 0, a full node is split in two and an empty node is removed from its
+ * parent. The bounds of the four children of node n are stored lane by lane, m_bounds[16 * n +
+ * lane] holds the lower x of child lane, followed by the lower y, upper x and upper y lanes.
+ * Traversal tests all four children of a node with the same straight-line code, which the JIT can
+ * turn into SIMD compares, and only then branches on the result. Unused lanes hold empty bounds
+ * that never overlap anything.
+ */
+public class DynamicTreeWide implements ConcurrentQueryStrategy {
+  public static final int NULL_NODE = -1;
+  public static final int WIDTH = 4;
+  public static final int INITIAL_BUFFER_LENGTH = 16;
+
+  private static final int LOWER_X = 0;
+  private static final int LOWER_Y = WIDTH;
+  private static final int UPPER_X = 2 * WIDTH;
+  private static final int UPPER_Y = 3 * WIDTH;
+  private static final int STRIDE = 4 * WIDTH;
+
+  private int m_root;
+
+  // Nodes. A free node has a count of -1 and links the free list through m_parent.
+  private float[] m_bounds;
+  private int[] m_children;
+  private int[] m_count;
+  private int[] m_level;
+  private int[] m_parent;
+  private int[] m_parentSlot;
+  private int m_nodeCount;
+  private int m_nodeCapacity;
+  private int m_freeNode;
+
+  // Proxies. A free proxy has a slot of -1 and links the free list through m_proxyNode.
+  private AABB[] m_aabb;
+  private Object[] m_userData;
+  private int[] m_proxyNode;
+  private int[] m_proxySlot;
+  private int m_proxyCount;
+  private int m_proxyCapacity;
+  private int m_freeProxy;
+
+  // Split scratch: the WIDTH + 1 entries of an overflowing node.
+  private final int[] splitEntries = new int[WIDTH + 1];
+  private final float[] splitBounds = new float[4 * (WIDTH + 1)];
+  private final int[] splitOrder = new int[WIDTH + 1];
+  private final float[] splitKeys = new float[WIDTH + 1];
+
+  private final Vec2[] drawVecs = new Vec2[4];
+
+  public DynamicTreeWide() {
+    m_root = NULL_NODE;
+    m_nodeCapacity = INITIAL_BUFFER_LENGTH;
+    expandNodes(0, m_nodeCapacity);
+    m_proxyCapacity = INITIAL_BUFFER_LENGTH;
+    expandProxies(0, m_proxyCapacity);
+
+    for (int i = 0; i < drawVecs.length; i++) {
+      drawVecs[i] = new Vec2();
+    }
+  }
+
+  private void expandNodes(int oldSize, int newSize) {
+    m_bounds = BufferUtils.reallocateBuffer(m_bounds, STRIDE * oldSize, STRIDE * newSize);
+    m_children = BufferUtils.reallocateBuffer(m_children, WIDTH * oldSize, WIDTH * newSize);
+    m_count = BufferUtils.reallocateBuffer(m_count, oldSize, newSize);
+    m_level = BufferUtils.reallocateBuffer(m_level, oldSize, newSize);
+    m_parent = BufferUtils.reallocateBuffer(m_parent, oldSize, newSize);
+    m_parentSlot = BufferUtils.reallocateBuffer(m_parentSlot, oldSize, newSize);
+
+    for (int i = oldSize; i < newSize; i++) {
+      m_count[i] = -1;
+      m_parent[i] = (i == newSize - 1) ? NULL_NODE : i + 1;
+    }
+    m_freeNode = oldSize;
+  }
+
+  private void expandProxies(int oldSize, int newSize) {
+    m_aabb = BufferUtils.reallocateBuffer(AABB.class, m_aabb, oldSize, newSize);
+    m_userData = BufferUtils.reallocateBuffer(Object.class, m_userData, oldSize, newSize);
+    m_proxyNode = BufferUtils.reallocateBuffer(m_proxyNode, oldSize, newSize);
+    m_proxySlot = BufferUtils.reallocateBuffer(m_proxySlot, oldSize, newSize);
+
+    for (int i = oldSize; i < newSize; i++) {
+      m_userData[i] = null;
+      m_proxySlot[i] = -1;
+      m_proxyNode[i] = (i == newSize - 1) ? NULL_NODE : i + 1;
+    }
+    m_freeProxy = oldSize;
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    if (m_freeProxy == NULL_NODE) {
+      assert (m_proxyCount == m_proxyCapacity);
+      m_proxyCapacity *= 2;
+      expandProxies(m_proxyCount, m_proxyCapacity);
+    }
+    final int proxyId = m_freeProxy;
+    m_freeProxy = m_proxyNode[proxyId];
+    ++m_proxyCount;
+
+    // Fatten the aabb
+    final AABB fatAABB = m_aabb[proxyId];
+    fatAABB.lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+    fatAABB.lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+    fatAABB.upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+    fatAABB.upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+    m_userData[proxyId] = userData;
+
+    insertProxy(proxyId);
+    return proxyId;
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    assert (m_proxySlot[proxyId] != -1);
+
+    removeEntry(m_proxyNode[proxyId], m_proxySlot[proxyId]);
+    m_userData[proxyId] = null;
+    m_proxySlot[proxyId] = -1;
+    m_proxyNode[proxyId] = m_freeProxy;
+    m_freeProxy = proxyId;
+    --m_proxyCount;
+  }
+
+  @Override
+  public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    assert (m_proxySlot[proxyId] != -1);
+
+    final AABB fatAABB = m_aabb[proxyId];
+    final Vec2 lowerBound = fatAABB.lowerBound;
+    final Vec2 upperBound = fatAABB.upperBound;
+    if (lowerBound.x <= aabb.lowerBound.x && lowerBound.y <= aabb.lowerBound.y
+        && aabb.upperBound.x <= upperBound.x && aabb.upperBound.y <= upperBound.y) {
+      return false;
+    }
+
+    removeEntry(m_proxyNode[proxyId], m_proxySlot[proxyId]);
+
+    // Extend AABB
+    lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+    lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+    upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+    upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+
+    // Predict AABB displacement.
+    final float dx = displacement.x * Settings.aabbMultiplier;
+    final float dy = displacement.y * Settings.aabbMultiplier;
+    if (dx < 0.0f) {
+      lowerBound.x += dx;
+    } else {
+      upperBound.x += dx;
+    }
+
+    if (dy < 0.0f) {
+      lowerBound.y += dy;
+    } else {
+      upperBound.y += dy;
+    }
+
+    insertProxy(proxyId);
+    return true;
+  }
+
+  @Override
+  public final Object getUserData(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_userData[proxyId];
+  }
+
+  @Override
+  public final AABB getFatAABB(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_aabb[proxyId];
+  }
+
+  private int[] nodeStack = new int[20];
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb) {
+    nodeStack = query(callback, aabb, nodeStack);
+  }
+
+  @Override
+  public final int[] query(TreeCallback callback, AABB aabb, int[] stack) {
+    if (m_root == NULL_NODE) {
+      return stack;
+    }
+    final float[] bounds = m_bounds;
+    final int[] children = m_children;
+    final float lowerX = aabb.lowerBound.x, lowerY = aabb.lowerBound.y;
+    final float upperX = aabb.upperBound.x, upperY = aabb.upperBound.y;
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root;
+
+    while (stackIndex > 0) {
+      final int node = stack[--stackIndex];
+      final int b = STRIDE * node;
+
+      int hits = 0;
+      for (int lane = 0; lane < WIDTH; lane++) {
+        boolean overlap = (lowerX <= bounds[b + UPPER_X + lane])
+            & (lowerY <= bounds[b + UPPER_Y + lane]) & (bounds[b + LOWER_X + lane] <= upperX)
+            & (bounds[b + LOWER_Y + lane] <= upperY);
+        hits |= (overlap ? 1 : 0) << lane;
+      }
+      if (hits == 0) {
+        continue;
+      }
+
+      final int c = WIDTH * node;
+      if (m_level[node] == 0) {
+        for (int lane = 0; hits != 0; lane++, hits >>>= 1) {
+          if ((hits & 1) != 0 && !callback.treeCallback(children[c + lane])) {
+            return stack;
+          }
+        }
+      } else {
+        if (stack.length - stackIndex - WIDTH <= 0) {
+          stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+        }
+        for (int lane = 0; hits != 0; lane++, hits >>>= 1) {
+          if ((hits & 1) != 0) {
+            stack[stackIndex++] = children[c + lane];
+          }
+        }
+      }
+    }
+    return stack;
+  }
+
+  private final RayCastInput subInput = new RayCastInput();
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    nodeStack = raycast(callback, input, subInput, nodeStack);
+  }
+
+  @Override
+  public int[] raycast(TreeRayCastCallback callback, RayCastInput input, RayCastInput subInput,
+      int[] stack) {
+    if (m_root == NULL_NODE) {
+      return stack;
+    }
+    final float[] bounds = m_bounds;
+    final int[] children = m_children;
+    final float p1x = input.p1.x, p2x = input.p2.x, p1y = input.p1.y, p2y = input.p2.y;
+    float rx = p2x - p1x;
+    float ry = p2y - p1y;
+    assert ((rx * rx + ry * ry) > 0f);
+    float length = MathUtils.sqrt(rx * rx + ry * ry);
+    if (length >= Settings.EPSILON) {
+      float invLength = 1.0f / length;
+      rx *= invLength;
+      ry *= invLength;
+    }
+
+    // v is perpendicular to the segment.
+    final float vx = -1f * ry;
+    final float vy = 1f * rx;
+    final float absVx = MathUtils.abs(vx);
+    final float absVy = MathUtils.abs(vy);
+
+    float maxFraction = input.maxFraction;
+
+    // Build a bounding box for the segment.
+    float tempx = (p2x - p1x) * maxFraction + p1x;
+    float tempy = (p2y - p1y) * maxFraction + p1y;
+    float segLowerX = p1x < tempx ? p1x : tempx;
+    float segLowerY = p1y < tempy ? p1y : tempy;
+    float segUpperX = p1x > tempx ? p1x : tempx;
+    float segUpperY = p1y > tempy ? p1y : tempy;
+
+    int stackIndex = 0;
+    stack[stackIndex++] = m_root;
+    while (stackIndex > 0) {
+      final int node = stack[--stackIndex];
+      final int b = STRIDE * node;
+
+      // Segment box overlap and separating axis for segment (Gino, p80), one lane per child.
+      // |dot(v, p1 - c)| > dot(|v|, h)
+      int hits = 0;
+      for (int lane = 0; lane < WIDTH; lane++) {
+        final float lowerX = bounds[b + LOWER_X + lane], lowerY = bounds[b + LOWER_Y + lane];
+        final float upperX = bounds[b + UPPER_X + lane], upperY = bounds[b + UPPER_Y + lane];
+        float cx = p1x - (lowerX + upperX) * .5f;
+        float cy = p1y - (lowerY + upperY) * .5f;
+        float hx = (upperX - lowerX) * .5f;
+        float hy = (upperY - lowerY) * .5f;
+        float separation = MathUtils.abs(vx * cx + vy * cy) - (absVx * hx + absVy * hy);
+        boolean overlap = (segLowerX <= upperX) & (segLowerY <= upperY) & (lowerX <= segUpperX)
+            & (lowerY <= segUpperY) & (separation <= 0.0f);
+        hits |= (overlap ? 1 : 0) << lane;
+      }
+      if (hits == 0) {
+        continue;
+      }
+
+      final int c = WIDTH * node;
+      if (m_level[node] != 0) {
+        if (stack.length - stackIndex - WIDTH <= 0) {
+          stack = BufferUtils.reallocateBuffer(stack, stack.length, stack.length * 2);
+        }
+        for (int lane = 0; hits != 0; lane++, hits >>>= 1) {
+          if ((hits & 1) != 0) {
+            stack[stackIndex++] = children[c + lane];
+          }
+        }
+        continue;
+      }
+
+      for (int lane = 0; hits != 0; lane++, hits >>>= 1) {
+        if ((hits & 1) == 0) {
+          continue;
+        }
+        // An earlier proxy of this node may have clipped the segment.
+        if (segLowerX > bounds[b + UPPER_X + lane] || segLowerY > bounds[b + UPPER_Y + lane]
+            || bounds[b + LOWER_X + lane] > segUpperX || bounds[b + LOWER_Y + lane] > segUpperY) {
+          continue;
+        }
+        subInput.p1.x = p1x;
+        subInput.p1.y = p1y;
+        subInput.p2.x = p2x;
+        subInput.p2.y = p2y;
+        subInput.maxFraction = maxFraction;
+
+        float value = callback.raycastCallback(subInput, children[c + lane]);
+
+        if (value == 0.0f) {
+          // The client has terminated the ray cast.
+          return stack;
+        }
+
+        if (value > 0.0f) {
+          // Update segment bounding box.
+          maxFraction = value;
+          tempx = (p2x - p1x) * maxFraction + p1x;
+          tempy = (p2y - p1y) * maxFraction + p1y;
+          segLowerX = p1x < tempx ? p1x : tempx;
+          segLowerY = p1y < tempy ? p1y : tempy;
+          segUpperX = p1x > tempx ? p1x : tempx;
+          segUpperY = p1y > tempy ? p1y : tempy;
+        }
+      }
+    }
+    return stack;
+  }
+
+  @Override
+  public final int computeHeight() {
+    if (m_root == NULL_NODE) {
+      return 0;
+    }
+    return computeHeight(m_root);
+  }
+
+  private final int computeHeight(int node) {
+    if (m_level[node] == 0) {
+      return 1;
+    }
+    int height = 0;
+    for (int i = 0; i < m_count[node]; i++) {
+      height = MathUtils.max(height, computeHeight(m_children[WIDTH * node + i]));
+    }
+    return 1 + height;
+  }
+
+  @Override
+  public int getHeight() {
+    if (m_root == NULL_NODE) {
+      return 0;
+    }
+    return m_level[m_root] + 1;
+  }
+
+  /**
+   * All proxies are at the same depth, so the balance is always zero.
+   */
+  @Override
+  public int getMaxBalance() {
+    return 0;
+  }
+
+  @Override
+  public float getAreaRatio() {
+    if (m_root == NULL_NODE) {
+      return 0.0f;
+    }
+
+    float totalArea = 0.0f;
+    for (int node = 0; node < m_nodeCapacity; ++node) {
+      if (m_count[node] < 0) {
+        // Free node in pool
+        continue;
+      }
+      final int b = STRIDE * node;
+      for (int lane = 0; lane < m_count[node]; lane++) {
+        totalArea += 2.0f * (m_bounds[b + UPPER_X + lane] - m_bounds[b + LOWER_X + lane]
+            + m_bounds[b + UPPER_Y + lane] - m_bounds[b + LOWER_Y + lane]);
+      }
+    }
+
+    computeNodeBounds(m_root, splitBounds, 0);
+    float rootArea = 2.0f * (splitBounds[2] - splitBounds[0] + splitBounds[3] - splitBounds[1]);
+    return (totalArea + rootArea) / rootArea;
+  }
+
+  /**
+   * Validate this tree. For testing.
+   */
+  public void validate() {
+    if (m_root != NULL_NODE) {
+      assert (m_parent[m_root] == NULL_NODE);
+      validateNode(m_root);
+    }
+
+    int freeCount = 0;
+    int freeNode = m_freeNode;
+    while (freeNode != NULL_NODE) {
+      assert (0 <= freeNode && freeNode < m_nodeCapacity);
+      assert (m_count[freeNode] == -1);
+      freeNode = m_parent[freeNode];
+      ++freeCount;
+    }
+    assert (m_nodeCount + freeCount == m_nodeCapacity);
+
+    int freeProxies = 0;
+    int freeProxy = m_freeProxy;
+    while (freeProxy != NULL_NODE) {
+      assert (m_proxySlot[freeProxy] == -1);
+      freeProxy = m_proxyNode[freeProxy];
+      ++freeProxies;
+    }
+    assert (m_proxyCount + freeProxies == m_proxyCapacity);
+    assert (getHeight() == computeHeight());
+  }
+
+  private void validateNode(int node) {
+    final int count = m_count[node];
+    assert (0 < count && count <= WIDTH);
+    final int b = STRIDE * node;
+    final int c = WIDTH * node;
+    for (int lane = count; lane < WIDTH; lane++) {
+      assert (m_bounds[b + LOWER_X + lane] == Float.MAX_VALUE);
+      assert (m_bounds[b + UPPER_X + lane] == -Float.MAX_VALUE);
+    }
+    for (int lane = 0; lane < count; lane++) {
+      final int child = m_children[c + lane];
+      if (m_level[node] == 0) {
+        assert (m_proxyNode[child] == node && m_proxySlot[child] == lane);
+        final AABB aabb = m_aabb[child];
+        assert (m_bounds[b + LOWER_X + lane] == aabb.lowerBound.x);
+        assert (m_bounds[b + LOWER_Y + lane] == aabb.lowerBound.y);
+        assert (m_bounds[b + UPPER_X + lane] == aabb.upperBound.x);
+        assert (m_bounds[b + UPPER_Y + lane] == aabb.upperBound.y);
+      } else {
+        assert (m_parent[child] == node && m_parentSlot[child] == lane);
+        assert (m_level[child] == m_level[node] - 1);
+        computeNodeBounds(child, splitBounds, 0);
+        assert (m_bounds[b + LOWER_X + lane] == splitBounds[0]);
+        assert (m_bounds[b + LOWER_Y + lane] == splitBounds[1]);
+        assert (m_bounds[b + UPPER_X + lane] == splitBounds[2]);
+        assert (m_bounds[b + UPPER_Y + lane] == splitBounds[3]);
+        validateNode(child);
+      }
+    }
+  }
+
+  private final int allocateNode(int level) {
+    if (m_freeNode == NULL_NODE) {
+      assert (m_nodeCount == m_nodeCapacity);
+      m_nodeCapacity *= 2;
+      expandNodes(m_nodeCount, m_nodeCapacity);
+    }
+    final int node = m_freeNode;
+    m_freeNode = m_parent[node];
+    m_parent[node] = NULL_NODE;
+    m_parentSlot[node] = -1;
+    m_count[node] = 0;
+    m_level[node] = level;
+    final int b = STRIDE * node;
+    for (int lane = 0; lane < WIDTH; lane++) {
+      clearLane(b, lane);
+    }
+    ++m_nodeCount;
+    return node;
+  }
+
+  private final void freeNode(int node) {
+    assert (0 < m_nodeCount);
+    m_count[node] = -1;
+    m_parent[node] = m_freeNode;
+    m_freeNode = node;
+    --m_nodeCount;
+  }
+
+  private final void clearLane(int b, int lane) {
+    m_bounds[b + LOWER_X + lane] = Float.MAX_VALUE;
+    m_bounds[b + LOWER_Y + lane] = Float.MAX_VALUE;
+    m_bounds[b + UPPER_X + lane] = -Float.MAX_VALUE;
+    m_bounds[b + UPPER_Y + lane] = -Float.MAX_VALUE;
+  }
+
+  /**
+   * Writes the union of the children of node to out[offset] to out[offset + 3].
+   */
+  private final void computeNodeBounds(int node, float[] out, int offset) {
+    final float[] bounds = m_bounds;
+    final int b = STRIDE * node;
+    float lowerX = bounds[b + LOWER_X], lowerY = bounds[b + LOWER_Y];
+    float upperX = bounds[b + UPPER_X], upperY = bounds[b + UPPER_Y];
+    for (int lane = 1; lane < WIDTH; lane++) {
+      lowerX = MathUtils.min(lowerX, bounds[b + LOWER_X + lane]);
+      lowerY = MathUtils.min(lowerY, bounds[b + LOWER_Y + lane]);
+      upperX = MathUtils.max(upperX, bounds[b + UPPER_X + lane]);
+      upperY = MathUtils.max(upperY, bounds[b + UPPER_Y + lane]);
+    }
+    out[offset] = lowerX;
+    out[offset + 1] = lowerY;
+    out[offset + 2] = upperX;
+    out[offset + 3] = upperY;
+  }
+
+  /**
+   * Stores an entry (a proxy on level 0, a node above) with the given bounds in a lane of node.
+   */
+  private final void setEntry(int node, int lane, int entry, float lowerX, float lowerY,
+      float upperX, float upperY) {
+    final int b = STRIDE * node;
+    m_bounds[b + LOWER_X + lane] = lowerX;
+    m_bounds[b + LOWER_Y + lane] = lowerY;
+    m_bounds[b + UPPER_X + lane] = upperX;
+    m_bounds[b + UPPER_Y + lane] = upperY;
+    m_children[WIDTH * node + lane] = entry;
+    if (m_level[node] == 0) {
+      m_proxyNode[entry] = node;
+      m_proxySlot[entry] = lane;
+    } else {
+      m_parent[entry] = node;
+      m_parentSlot[entry] = lane;
+    }
+  }
+
+  /**
+   * Copies the union of the children of node into its lane in each ancestor.
+   */
+  private final void refit(int node) {
+    final float[] bounds = m_bounds;
+    final float[] scratch = splitBounds;
+    while (m_parent[node] != NULL_NODE) {
+      computeNodeBounds(node, scratch, 0);
+      final int parent = m_parent[node];
+      final int b = STRIDE * parent;
+      final int lane = m_parentSlot[node];
+      bounds[b + LOWER_X + lane] = scratch[0];
+      bounds[b + LOWER_Y + lane] = scratch[1];
+      bounds[b + UPPER_X + lane] = scratch[2];
+      bounds[b + UPPER_Y + lane] = scratch[3];
+      node = parent;
+    }
+  }
+
+  private final void insertProxy(int proxyId) {
+    final AABB aabb = m_aabb[proxyId];
+    final float lowerX = aabb.lowerBound.x, lowerY = aabb.lowerBound.y;
+    final float upperX = aabb.upperBound.x, upperY = aabb.upperBound.y;
+    if (m_root == NULL_NODE) {
+      m_root = allocateNode(0);
+    }
+
+    // Descend into the child whose perimeter grows least, the smaller one on ties.
+    final float[] bounds = m_bounds;
+    int node = m_root;
+    while (m_level[node] > 0) {
+      final int b = STRIDE * node;
+      int best = 0;
+      float bestGrowth = Float.MAX_VALUE;
+      float bestPerimeter = Float.MAX_VALUE;
+      for (int lane = 0; lane < m_count[node]; lane++) {
+        final float cLowerX = bounds[b + LOWER_X + lane], cLowerY = bounds[b + LOWER_Y + lane];
+        final float cUpperX = bounds[b + UPPER_X + lane], cUpperY = bounds[b + UPPER_Y + lane];
+        float perimeter = cUpperX - cLowerX + cUpperY - cLowerY;
+        float combined = MathUtils.max(cUpperX, upperX) - MathUtils.min(cLowerX, lowerX)
+            + MathUtils.max(cUpperY, upperY) - MathUtils.min(cLowerY, lowerY);
+        float growth = combined - perimeter;
+        if (growth < bestGrowth || (growth == bestGrowth && perimeter < bestPerimeter)) {
+          best = lane;
+          bestGrowth = growth;
+          bestPerimeter = perimeter;
+        }
+      }
+      node = m_children[WIDTH * node + best];
+    }
+
+    addEntry(node, proxyId, lowerX, lowerY, upperX, upperY);
+  }
+
+  /**
+   * Adds an entry to node, splitting it if it is full, and refits the ancestors.
+   */
+  private final void addEntry(int node, int entry, float lowerX, float lowerY, float upperX,
+      float upperY) {
+    final int count = m_count[node];
+    if (count < WIDTH) {
+      setEntry(node, count, entry, lowerX, lowerY, upperX, upperY);
+      m_count[node] = count + 1;
+      refit(node);
+      return;
+    }
+
+    // Gather the entries of the full node and the new one.
+    final float[] bounds = m_bounds;
+    final int b = STRIDE * node;
+    for (int i = 0; i < WIDTH; i++) {
+      splitEntries[i] = m_children[WIDTH * node + i];
+      splitBounds[4 * i] = bounds[b + LOWER_X + i];
+      splitBounds[4 * i + 1] = bounds[b + LOWER_Y + i];
+      splitBounds[4 * i + 2] = bounds[b + UPPER_X + i];
+      splitBounds[4 * i + 3] = bounds[b + UPPER_Y + i];
+    }
+    splitEntries[WIDTH] = entry;
+    splitBounds[4 * WIDTH] = lowerX;
+    splitBounds[4 * WIDTH + 1] = lowerY;
+    splitBounds[4 * WIDTH + 2] = upperX;
+    splitBounds[4 * WIDTH + 3] = upperY;
+
+    // Sort them along the axis where their centers spread most.
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (int i = 0; i <= WIDTH; i++) {
+      float cx = splitBounds[4 * i] + splitBounds[4 * i + 2];
+      float cy = splitBounds[4 * i + 1] + splitBounds[4 * i + 3];
+      minX = MathUtils.min(minX, cx);
+      maxX = MathUtils.max(maxX, cx);
+      minY = MathUtils.min(minY, cy);
+      maxY = MathUtils.max(maxY, cy);
+    }
+    final int axis = maxX - minX >= maxY - minY ? 0 : 1;
+    for (int i = 0; i <= WIDTH; i++) {
+      float key = splitBounds[4 * i + axis] + splitBounds[4 * i + 2 + axis];
+      int j = i;
+      while (j > 0 && splitKeys[j - 1] > key) {
+        splitKeys[j] = splitKeys[j - 1];
+        splitOrder[j] = splitOrder[j - 1];
+        --j;
+      }
+      splitKeys[j] = key;
+      splitOrder[j] = i;
+    }
+
+    // Take the split point with the smallest perimeter sum, leaving both halves at least two.
+    int bestSplit = 2;
+    float bestCost = Float.MAX_VALUE;
+    for (int split = 2; split <= WIDTH - 1; split++) {
+      float cost = splitPerimeter(0, split) + splitPerimeter(split, WIDTH + 1);
+      if (cost < bestCost) {
+        bestCost = cost;
+        bestSplit = split;
+      }
+    }
+
+    final int sibling = allocateNode(m_level[node]);
+    final int nb = STRIDE * node;
+    for (int lane = 0; lane < WIDTH; lane++) {
+      clearLane(nb, lane);
+    }
+    for (int i = 0; i <= WIDTH; i++) {
+      final int k = splitOrder[i];
+      final int target = i < bestSplit ? node : sibling;
+      final int lane = i < bestSplit ? i : i - bestSplit;
+      setEntry(target, lane, splitEntries[k], splitBounds[4 * k], splitBounds[4 * k + 1],
+          splitBounds[4 * k + 2], splitBounds[4 * k + 3]);
+    }
+    m_count[node] = bestSplit;
+    m_count[sibling] = WIDTH + 1 - bestSplit;
+
+    final int parent = m_parent[node];
+    if (parent == NULL_NODE) {
+      // Grow a new root above the two halves.
+      final int root = allocateNode(m_level[node] + 1);
+      computeNodeBounds(node, splitBounds, 0);
+      setEntry(root, 0, node, splitBounds[0], splitBounds[1], splitBounds[2], splitBounds[3]);
+      computeNodeBounds(sibling, splitBounds, 0);
+      setEntry(root, 1, sibling, splitBounds[0], splitBounds[1], splitBounds[2], splitBounds[3]);
+      m_count[root] = 2;
+      m_root = root;
+      return;
+    }
+
+    // Shrink the node in its parent, then add the sibling there.
+    refit(node);
+    computeNodeBounds(sibling, splitBounds, 0);
+    addEntry(parent, sibling, splitBounds[0], splitBounds[1], splitBounds[2], splitBounds[3]);
+  }
+
+  private final float splitPerimeter(int start, int end) {
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (int i = start; i < end; i++) {
+      final int k = 4 * splitOrder[i];
+      minX = MathUtils.min(minX, splitBounds[k]);
+      minY = MathUtils.min(minY, splitBounds[k + 1]);
+      maxX = MathUtils.max(maxX, splitBounds[k + 2]);
+      maxY = MathUtils.max(maxY, splitBounds[k + 3]);
+    }
+    return maxX - minX + maxY - minY;
+  }
+
+  /**
+   * Removes the entry in a lane of node. Empty nodes are removed from their parents, and a root
+   * with a single child is replaced by the child.
+   */
+  private final void removeEntry(int node, int lane) {
+    final int last = m_count[node] - 1;
+    if (lane != last) {
+      final int b = STRIDE * node;
+      setEntry(node, lane, m_children[WIDTH * node + last], m_bounds[b + LOWER_X + last],
+          m_bounds[b + LOWER_Y + last], m_bounds[b + UPPER_X + last], m_bounds[b + UPPER_Y + last]);
+    }
+    clearLane(STRIDE * node, last);
+    m_count[node] = last;
+
+    if (last == 0) {
+      final int parent = m_parent[node];
+      final int parentSlot = m_parentSlot[node];
+      freeNode(node);
+      if (parent == NULL_NODE) {
+        m_root = NULL_NODE;
+      } else {
+        removeEntry(parent, parentSlot);
+      }
+      return;
+    }
+
+    refit(node);
+    while (m_level[m_root] > 0 && m_count[m_root] == 1) {
+      final int oldRoot = m_root;
+      m_root = m_children[WIDTH * oldRoot];
+      m_parent[m_root] = NULL_NODE;
+      m_parentSlot[m_root] = -1;
+      freeNode(oldRoot);
+    }
+  }
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    if (m_root == NULL_NODE) {
+      return;
+    }
+    int height = getHeight();
+    drawTree(argDraw, m_root, 0, height);
+  }
+
+  private final Color3f color = new Color3f();
+  private final Vec2 textVec = new Vec2();
+  private final float[] drawBounds = new float[4];
+
+  public void drawTree(DebugDraw argDraw, int node, int spot, int height) {
+    computeNodeBounds(node, drawBounds, 0);
+    drawVecs[0].set(drawBounds[0], drawBounds[1]);
+    drawVecs[1].set(drawBounds[2], drawBounds[1]);
+    drawVecs[2].set(drawBounds[2], drawBounds[3]);
+    drawVecs[3].set(drawBounds[0], drawBounds[3]);
+
+    color.set(1, (height - spot) * 1f / height, (height - spot) * 1f / height);
+    argDraw.drawPolygon(drawVecs, 4, color);
+
+    argDraw.getViewportTranform().getWorldToScreen(drawVecs[2], textVec);
+    argDraw.drawString(textVec.x, textVec.y, node + "-" + (spot + 1) + "/" + height, color);
+
+    if (m_level[node] > 0) {
+      for (int i = 0; i < m_count[node]; i++) {
+        drawTree(argDraw, m_children[WIDTH * node + i], spot + 1, height);
+      }
+    }
+  }
+}
@@ -0,0 +1,592 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.collision.broadphase;
+
+import org.jbox2d.callbacks.DebugDraw;
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.BufferUtils;
+import org.jbox2d.common.Color3f;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+
+/**
+ * A broad-phase strategy backed by a hashed uniform grid. Every proxy is linked into each cell its
+ * fat AABB touches, so inserting, moving and removing cost a few cell visits no matter how many
+ * proxies there are. Pick a cell size around the size of a typical body. Proxies that would cover
+ * more than {@link #getMaxProxyCells()} cells are kept in a separate list that every query checks,
+ * so a few large static shapes are fine but many of them are not.
+ */
+public class SpatialHashGrid implements BroadPhaseStrategy {
+  public static final int NULL_PROXY = -1;
+  private static final int NULL_ENTRY = -1;
+
+  // Values of m_oversizedIndex for proxies that are not in the oversized list.
+  private static final int FREE = -2;
+  private static final int IN_GRID = -1;
+
+  private final float m_cellSize;
+  private final float m_invCellSize;
+  private int m_maxProxyCells;
+
+  // Per proxy id.
+  private AABB[] m_aabb;
+  private Object[] m_userData;
+  // min x, min y, max x, max y of the covered cells
+  private int[] m_cells;
+  private int[] m_oversizedIndex;
+  private int[] m_queryStamp;
+  private int[] m_nextFree;
+  private int m_proxyCapacity;
+  private int m_proxyCount;
+  private int m_freeProxy;
+
+  // Cell entries, chained per bucket.
+  private int[] m_buckets;
+  private int m_bucketMask;
+  private int[] m_entryProxy;
+  private int[] m_entryHash;
+  private int[] m_entryNext;
+  private int m_entryCapacity;
+  private int m_entryCount;
+  private int m_freeEntry;
+
+  private int[] m_oversized;
+  private int m_oversizedCount;
+
+  private int m_stamp;
+
+  private final Vec2[] drawVecs = new Vec2[4];
+  private final Color3f color = new Color3f(.9f, .6f, .6f);
+
+  public SpatialHashGrid() {
+    this(2.0f);
+  }
+
+  /**
+   * @param cellSize the edge length of a grid cell
+   */
+  public SpatialHashGrid(float cellSize) {
+    assert (cellSize > 0);
+    m_cellSize = cellSize;
+    m_invCellSize = 1.0f / cellSize;
+    m_maxProxyCells = 16;
+
+    m_proxyCapacity = 0;
+    expandProxies(0, 16);
+
+    m_buckets = new int[256];
+    m_bucketMask = m_buckets.length - 1;
+    for (int i = 0; i < m_buckets.length; i++) {
+      m_buckets[i] = NULL_ENTRY;
+    }
+    m_entryCapacity = 0;
+    expandEntries(0, 64);
+
+    m_oversized = new int[16];
+    m_oversizedCount = 0;
+
+    for (int i = 0; i < drawVecs.length; i++) {
+      drawVecs[i] = new Vec2();
+    }
+  }
+
+  public float getCellSize() {
+    return m_cellSize;
+  }
+
+  public int getMaxProxyCells() {
+    return m_maxProxyCells;
+  }
+
+  /**
+   * Set how many cells a proxy may cover before it goes to the oversized list. Only affects
+   * proxies inserted afterwards.
+   */
+  public void setMaxProxyCells(int maxProxyCells) {
+    assert (maxProxyCells > 0);
+    m_maxProxyCells = maxProxyCells;
+  }
+
+  private void expandProxies(int oldSize, int newSize) {
+    m_aabb = BufferUtils.reallocateBuffer(AABB.class, m_aabb, oldSize, newSize);
+    m_userData = BufferUtils.reallocateBuffer(Object.class, m_userData, oldSize, newSize);
+    m_cells = BufferUtils.reallocateBuffer(m_cells, 4 * oldSize, 4 * newSize);
+    m_oversizedIndex = BufferUtils.reallocateBuffer(m_oversizedIndex, oldSize, newSize);
+    m_queryStamp = BufferUtils.reallocateBuffer(m_queryStamp, oldSize, newSize);
+    m_nextFree = BufferUtils.reallocateBuffer(m_nextFree, oldSize, newSize);
+
+    for (int i = oldSize; i < newSize; i++) {
+      m_oversizedIndex[i] = FREE;
+      m_nextFree[i] = (i == newSize - 1) ? NULL_PROXY : i + 1;
+    }
+    m_freeProxy = oldSize;
+    m_proxyCapacity = newSize;
+  }
+
+  private void expandEntries(int oldSize, int newSize) {
+    m_entryProxy = BufferUtils.reallocateBuffer(m_entryProxy, oldSize, newSize);
+    m_entryHash = BufferUtils.reallocateBuffer(m_entryHash, oldSize, newSize);
+    m_entryNext = BufferUtils.reallocateBuffer(m_entryNext, oldSize, newSize);
+
+    for (int i = oldSize; i < newSize; i++) {
+      m_entryNext[i] = (i == newSize - 1) ? NULL_ENTRY : i + 1;
+    }
+    m_freeEntry = oldSize;
+    m_entryCapacity = newSize;
+  }
+
+  private static int hash(int cx, int cy) {
+    int h = cx * 73856093 ^ cy * 19349663;
+    return h ^ (h >>> 16);
+  }
+
+  private final int cellCoord(float x) {
+    return MathUtils.floor(x * m_invCellSize);
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    if (m_freeProxy == NULL_PROXY) {
+      expandProxies(m_proxyCapacity, m_proxyCapacity * 2);
+    }
+    final int proxyId = m_freeProxy;
+    m_freeProxy = m_nextFree[proxyId];
+    ++m_proxyCount;
+
+    // Fatten the aabb
+    final AABB fatAABB = m_aabb[proxyId];
+    fatAABB.lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+    fatAABB.lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+    fatAABB.upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+    fatAABB.upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+    m_userData[proxyId] = userData;
+    m_queryStamp[proxyId] = m_stamp;
+
+    insertCells(proxyId);
+    return proxyId;
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    assert (m_oversizedIndex[proxyId] != FREE);
+
+    removeCells(proxyId);
+    m_oversizedIndex[proxyId] = FREE;
+    m_userData[proxyId] = null;
+    m_nextFree[proxyId] = m_freeProxy;
+    m_freeProxy = proxyId;
+    --m_proxyCount;
+  }
+
+  @Override
+  public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    assert (m_oversizedIndex[proxyId] != FREE);
+
+    final AABB fatAABB = m_aabb[proxyId];
+    if (fatAABB.lowerBound.x <= aabb.lowerBound.x && fatAABB.lowerBound.y <= aabb.lowerBound.y
+        && aabb.upperBound.x <= fatAABB.upperBound.x && aabb.upperBound.y <= fatAABB.upperBound.y) {
+      return false;
+    }
+
+    // Extend AABB
+    final Vec2 lowerBound = fatAABB.lowerBound;
+    final Vec2 upperBound = fatAABB.upperBound;
+    lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+    lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+    upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+    upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+
+    // Predict AABB displacement.
+    final float dx = displacement.x * Settings.aabbMultiplier;
+    final float dy = displacement.y * Settings.aabbMultiplier;
+    if (dx < 0.0f) {
+      lowerBound.x += dx;
+    } else {
+      upperBound.x += dx;
+    }
+
+    if (dy < 0.0f) {
+      lowerBound.y += dy;
+    } else {
+      upperBound.y += dy;
+    }
+
+    // Only relink when the covered cells change.
+    final int[] cells = m_cells;
+    if (m_oversizedIndex[proxyId] == IN_GRID && cells[4 * proxyId] == cellCoord(lowerBound.x)
+        && cells[4 * proxyId + 1] == cellCoord(lowerBound.y)
+        && cells[4 * proxyId + 2] == cellCoord(upperBound.x)
+        && cells[4 * proxyId + 3] == cellCoord(upperBound.y)) {
+      return true;
+    }
+    removeCells(proxyId);
+    insertCells(proxyId);
+    return true;
+  }
+
+  private final void insertCells(int proxyId) {
+    final AABB fatAABB = m_aabb[proxyId];
+    final int minX = cellCoord(fatAABB.lowerBound.x);
+    final int minY = cellCoord(fatAABB.lowerBound.y);
+    final int maxX = cellCoord(fatAABB.upperBound.x);
+    final int maxY = cellCoord(fatAABB.upperBound.y);
+    m_cells[4 * proxyId] = minX;
+    m_cells[4 * proxyId + 1] = minY;
+    m_cells[4 * proxyId + 2] = maxX;
+    m_cells[4 * proxyId + 3] = maxY;
+
+    if ((long) (maxX - minX + 1) * (maxY - minY + 1) > m_maxProxyCells) {
+      if (m_oversizedCount == m_oversized.length) {
+        m_oversized =
+            BufferUtils.reallocateBuffer(m_oversized, m_oversizedCount, 2 * m_oversizedCount);
+      }
+      m_oversizedIndex[proxyId] = m_oversizedCount;
+      m_oversized[m_oversizedCount++] = proxyId;
+      return;
+    }
+
+    m_oversizedIndex[proxyId] = IN_GRID;
+    for (int y = minY; y <= maxY; ++y) {
+      for (int x = minX; x <= maxX; ++x) {
+        if (m_freeEntry == NULL_ENTRY) {
+          expandEntries(m_entryCapacity, m_entryCapacity * 2);
+        }
+        final int entry = m_freeEntry;
+        m_freeEntry = m_entryNext[entry];
+        final int h = hash(x, y);
+        final int bucket = h & m_bucketMask;
+        m_entryProxy[entry] = proxyId;
+        m_entryHash[entry] = h;
+        m_entryNext[entry] = m_buckets[bucket];
+        m_buckets[bucket] = entry;
+        ++m_entryCount;
+      }
+    }
+
+    if (m_entryCount > 2 * m_buckets.length) {
+      rehash(2 * m_buckets.length);
+    }
+  }
+
+  private final void removeCells(int proxyId) {
+    final int index = m_oversizedIndex[proxyId];
+    if (index >= 0) {
+      final int last = m_oversized[--m_oversizedCount];
+      m_oversized[index] = last;
+      m_oversizedIndex[last] = index;
+      return;
+    }
+
+    final int minX = m_cells[4 * proxyId];
+    final int minY = m_cells[4 * proxyId + 1];
+    final int maxX = m_cells[4 * proxyId + 2];
+    final int maxY = m_cells[4 * proxyId + 3];
+    for (int y = minY; y <= maxY; ++y) {
+      for (int x = minX; x <= maxX; ++x) {
+        final int h = hash(x, y);
+        final int bucket = h & m_bucketMask;
+        int prev = NULL_ENTRY;
+        int entry = m_buckets[bucket];
+        while (m_entryProxy[entry] != proxyId || m_entryHash[entry] != h) {
+          prev = entry;
+          entry = m_entryNext[entry];
+          assert (entry != NULL_ENTRY);
+        }
+        if (prev == NULL_ENTRY) {
+          m_buckets[bucket] = m_entryNext[entry];
+        } else {
+          m_entryNext[prev] = m_entryNext[entry];
+        }
+        m_entryNext[entry] = m_freeEntry;
+        m_freeEntry = entry;
+        --m_entryCount;
+      }
+    }
+  }
+
+  private final void rehash(int bucketCount) {
+    m_buckets = new int[bucketCount];
+    m_bucketMask = bucketCount - 1;
+    for (int i = 0; i < bucketCount; i++) {
+      m_buckets[i] = NULL_ENTRY;
+    }
+    // Hand out all entries again while relinking the proxies into the new buckets.
+    for (int i = 0; i < m_entryCapacity; i++) {
+      m_entryNext[i] = (i == m_entryCapacity - 1) ? NULL_ENTRY : i + 1;
+    }
+    m_freeEntry = 0;
+    for (int proxyId = 0; proxyId < m_proxyCapacity; ++proxyId) {
+      if (m_oversizedIndex[proxyId] != IN_GRID) {
+        continue;
+      }
+      final int minX = m_cells[4 * proxyId];
+      final int minY = m_cells[4 * proxyId + 1];
+      final int maxX = m_cells[4 * proxyId + 2];
+      final int maxY = m_cells[4 * proxyId + 3];
+      for (int y = minY; y <= maxY; ++y) {
+        for (int x = minX; x <= maxX; ++x) {
+          final int entry = m_freeEntry;
+          m_freeEntry = m_entryNext[entry];
+          final int h = hash(x, y);
+          final int bucket = h & m_bucketMask;
+          m_entryProxy[entry] = proxyId;
+          m_entryHash[entry] = h;
+          m_entryNext[entry] = m_buckets[bucket];
+          m_buckets[bucket] = entry;
+        }
+      }
+    }
+  }
+
+  @Override
+  public final Object getUserData(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_userData[proxyId];
+  }
+
+  @Override
+  public final AABB getFatAABB(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_aabb[proxyId];
+  }
+
+  /**
+   * Starts a new query. Proxies linked into several cells are reported once per stamp.
+   */
+  private final int nextStamp() {
+    if (++m_stamp == 0) {
+      for (int i = 0; i < m_proxyCapacity; i++) {
+        m_queryStamp[i] = 0;
+      }
+      m_stamp = 1;
+    }
+    return m_stamp;
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb) {
+    final int stamp = nextStamp();
+    final int[] queryStamp = m_queryStamp;
+
+    for (int i = 0; i < m_oversizedCount; ++i) {
+      final int proxyId = m_oversized[i];
+      if (AABB.testOverlap(m_aabb[proxyId], aabb) && !callback.treeCallback(proxyId)) {
+        return;
+      }
+    }
+
+    final int minX = cellCoord(aabb.lowerBound.x);
+    final int minY = cellCoord(aabb.lowerBound.y);
+    final int maxX = cellCoord(aabb.upperBound.x);
+    final int maxY = cellCoord(aabb.upperBound.y);
+    if ((long) (maxX - minX + 1) * (maxY - minY + 1) > m_proxyCount) {
+      // Cheaper to look at every proxy than at every cell.
+      for (int proxyId = 0; proxyId < m_proxyCapacity; ++proxyId) {
+        if (m_oversizedIndex[proxyId] == IN_GRID && AABB.testOverlap(m_aabb[proxyId], aabb)
+            && !callback.treeCallback(proxyId)) {
+          return;
+        }
+      }
+      return;
+    }
+
+    for (int y = minY; y <= maxY; ++y) {
+      for (int x = minX; x <= maxX; ++x) {
+        final int h = hash(x, y);
+        for (int entry = m_buckets[h & m_bucketMask]; entry != NULL_ENTRY;
+            entry = m_entryNext[entry]) {
+          final int proxyId = m_entryProxy[entry];
+          if (m_entryHash[entry] != h || queryStamp[proxyId] == stamp) {
+            continue;
+          }
+          queryStamp[proxyId] = stamp;
+          if (AABB.testOverlap(m_aabb[proxyId], aabb) && !callback.treeCallback(proxyId)) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  private final RayCastInput subInput = new RayCastInput();
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    final float p1x = input.p1.x, p1y = input.p1.y, p2x = input.p2.x, p2y = input.p2.y;
+    final float dx = p2x - p1x;
+    final float dy = p2y - p1y;
+    float length = MathUtils.sqrt(dx * dx + dy * dy);
+    assert (length > 0f);
+
+    // v is perpendicular to the segment.
+    final float vx = -dy / length;
+    final float vy = dx / length;
+    final float absVx = MathUtils.abs(vx);
+    final float absVy = MathUtils.abs(vy);
+
+    m_maxFraction = input.maxFraction;
+    final int stamp = nextStamp();
+
+    for (int i = 0; i < m_oversizedCount; ++i) {
+      if (!raycastProxy(callback, m_oversized[i], p1x, p1y, p2x, p2y, vx, vy, absVx, absVy)) {
+        return;
+      }
+    }
+
+    // Walk the cells along the segment (Amanatides and Woo). The t values are fractions of p2 - p1.
+    int cx = cellCoord(p1x);
+    int cy = cellCoord(p1y);
+    final int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+    final int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+    final float tDeltaX = stepX != 0 ? m_cellSize / MathUtils.abs(dx) : Float.MAX_VALUE;
+    final float tDeltaY = stepY != 0 ? m_cellSize / MathUtils.abs(dy) : Float.MAX_VALUE;
+    float tMaxX = stepX > 0 ? ((cx + 1) * m_cellSize - p1x) / dx
+        : stepX < 0 ? (cx * m_cellSize - p1x) / dx : Float.MAX_VALUE;
+    float tMaxY = stepY > 0 ? ((cy + 1) * m_cellSize - p1y) / dy
+        : stepY < 0 ? (cy * m_cellSize - p1y) / dy : Float.MAX_VALUE;
+
+    final int[] queryStamp = m_queryStamp;
+    while (true) {
+      final int h = hash(cx, cy);
+      for (int entry = m_buckets[h & m_bucketMask]; entry != NULL_ENTRY;
+          entry = m_entryNext[entry]) {
+        final int proxyId = m_entryProxy[entry];
+        if (m_entryHash[entry] != h || queryStamp[proxyId] == stamp) {
+          continue;
+        }
+        queryStamp[proxyId] = stamp;
+        if (!raycastProxy(callback, proxyId, p1x, p1y, p2x, p2y, vx, vy, absVx, absVy)) {
+          return;
+        }
+      }
+
+      // Step into the next cell unless the segment ends in this one.
+      if (tMaxX < tMaxY) {
+        if (tMaxX > m_maxFraction) {
+          return;
+        }
+        cx += stepX;
+        tMaxX += tDeltaX;
+      } else {
+        if (tMaxY > m_maxFraction) {
+          return;
+        }
+        cy += stepY;
+        tMaxY += tDeltaY;
+      }
+    }
+  }
+
+  private float m_maxFraction;
+
+  /**
+   * Tests one proxy against the current segment and reports it.
+   * 
+   * @return false if the client terminated the ray cast
+   */
+  private final boolean raycastProxy(TreeRayCastCallback callback, int proxyId, float p1x,
+      float p1y, float p2x, float p2y, float vx, float vy, float absVx, float absVy) {
+    final AABB nodeAABB = m_aabb[proxyId];
+    final float maxFraction = m_maxFraction;
+
+    // Bounding box of the segment.
+    float tempx = (p2x - p1x) * maxFraction + p1x;
+    float tempy = (p2y - p1y) * maxFraction + p1y;
+    if ((p1x < tempx ? p1x : tempx) > nodeAABB.upperBound.x
+        || (p1y < tempy ? p1y : tempy) > nodeAABB.upperBound.y
+        || (p1x > tempx ? p1x : tempx) < nodeAABB.lowerBound.x
+        || (p1y > tempy ? p1y : tempy) < nodeAABB.lowerBound.y) {
+      return true;
+    }
+
+    // Separating axis for segment (Gino, p80).
+    // |dot(v, p1 - c)| > dot(|v|, h)
+    float cx = (nodeAABB.lowerBound.x + nodeAABB.upperBound.x) * .5f;
+    float cy = (nodeAABB.lowerBound.y + nodeAABB.upperBound.y) * .5f;
+    float hx = (nodeAABB.upperBound.x - nodeAABB.lowerBound.x) * .5f;
+    float hy = (nodeAABB.upperBound.y - nodeAABB.lowerBound.y) * .5f;
+    float separation =
+        MathUtils.abs(vx * (p1x - cx) + vy * (p1y - cy)) - (absVx * hx + absVy * hy);
+    if (separation > 0.0f) {
+      return true;
+    }
+
+    subInput.p1.x = p1x;
+    subInput.p1.y = p1y;
+    subInput.p2.x = p2x;
+    subInput.p2.y = p2y;
+    subInput.maxFraction = maxFraction;
+
+    float value = callback.raycastCallback(subInput, proxyId);
+
+    if (value == 0.0f) {
+      // The client has terminated the ray cast.
+      return false;
+    }
+
+    if (value > 0.0f) {
+      m_maxFraction = value;
+    }
+    return true;
+  }
+
+  /** There is no hierarchy, so the height is always zero. */
+  @Override
+  public int computeHeight() {
+    return 0;
+  }
+
+  @Override
+  public int getHeight() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxBalance() {
+    return 0;
+  }
+
+  /** There is no hierarchy, so this is always zero. */
+  @Override
+  public float getAreaRatio() {
+    return 0;
+  }
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    for (int i = 0; i < m_proxyCapacity; ++i) {
+      if (m_oversizedIndex[i] == FREE) {
+        continue;
+      }
+      m_aabb[i].getVertices(drawVecs);
+      argDraw.drawPolygon(drawVecs, 4, color);
+    }
+  }
+}
@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.collision.broadphase;
+
+import java.util.Arrays;
+
+import org.jbox2d.callbacks.DebugDraw;
+import org.jbox2d.callbacks.PairCallback;
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Vec2;
+
+/**
+ * A broad-phase that keeps the proxies of static bodies in a tree of their own. Level geometry
+ * usually makes up most of the proxies but never moves, so moving proxies only search the static
+ * tree for candidate pairs and never have to descend through it when looking for each other. Pairs
+ * of two static proxies are never reported. Queries and ray casts visit both trees.
+ * 
+ * Proxy ids handed out by this class carry the tree in their lowest bit.
+ */
+public class SplitBroadPhaseBuffer implements TreeCallback, BroadPhase {
+
+  private final BroadPhaseStrategy m_staticTree;
+  private final BroadPhaseStrategy m_dynamicTree;
+
+  private int m_proxyCount;
+
+  private int[] m_moveBuffer;
+  private int m_moveCapacity;
+  private int m_moveCount;
+  // The slot of each proxy in the move buffer, NULL_PROXY if it isn't buffered.
+  private int[] m_moveIndex;
+
+  private long[] m_pairBuffer;
+  private int m_pairCapacity;
+  private int m_pairCount;
+
+  private int m_queryProxyId;
+  private int m_queryTreeTag;
+
+  private final ProxyQueryWrapper queryWrapper = new ProxyQueryWrapper();
+  private final ProxyRayCastWrapper raycastWrapper = new ProxyRayCastWrapper();
+  private final RayCastInput subInput = new RayCastInput();
+
+  /**
+   * @param staticTree holds the proxies created with {@link #createStaticProxy}
+   * @param dynamicTree holds all other proxies
+   */
+  public SplitBroadPhaseBuffer(BroadPhaseStrategy staticTree, BroadPhaseStrategy dynamicTree) {
+    m_staticTree = staticTree;
+    m_dynamicTree = dynamicTree;
+    m_proxyCount = 0;
+
+    m_pairCapacity = 16;
+    m_pairCount = 0;
+    m_pairBuffer = new long[m_pairCapacity];
+
+    m_moveCapacity = 16;
+    m_moveCount = 0;
+    m_moveBuffer = new int[m_moveCapacity];
+    m_moveIndex = new int[m_moveCapacity];
+    Arrays.fill(m_moveIndex, NULL_PROXY);
+
+    m_queryProxyId = NULL_PROXY;
+  }
+
+  private static boolean isStatic(int proxyId) {
+    return (proxyId & 1) != 0;
+  }
+
+  private BroadPhaseStrategy tree(int proxyId) {
+    return (proxyId & 1) != 0 ? m_staticTree : m_dynamicTree;
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    int proxyId = m_dynamicTree.createProxy(aabb, userData) << 1;
+    ++m_proxyCount;
+    bufferMove(proxyId);
+    return proxyId;
+  }
+
+  @Override
+  public final int createStaticProxy(final AABB aabb, Object userData) {
+    int proxyId = (m_staticTree.createProxy(aabb, userData) << 1) | 1;
+    ++m_proxyCount;
+    bufferMove(proxyId);
+    return proxyId;
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    unbufferMove(proxyId);
+    --m_proxyCount;
+    tree(proxyId).destroyProxy(proxyId >> 1);
+  }
+
+  @Override
+  public final void destroyProxies(int[] proxyIds, int count) {
+    for (int i = 0; i < count; i++) {
+      final int proxyId = proxyIds[i];
+      unbufferMove(proxyId);
+      tree(proxyId).destroyProxy(proxyId >> 1);
+    }
+    m_proxyCount -= count;
+  }
+
+  @Override
+  public final void moveProxy(int proxyId, final AABB aabb, final Vec2 displacement) {
+    boolean buffer = tree(proxyId).moveProxy(proxyId >> 1, aabb, displacement);
+    if (buffer) {
+      bufferMove(proxyId);
+    }
+  }
+
+  @Override
+  public void touchProxy(int proxyId) {
+    bufferMove(proxyId);
+  }
+
+  @Override
+  public Object getUserData(int proxyId) {
+    return tree(proxyId).getUserData(proxyId >> 1);
+  }
+
+  @Override
+  public AABB getFatAABB(int proxyId) {
+    return tree(proxyId).getFatAABB(proxyId >> 1);
+  }
+
+  @Override
+  public boolean testOverlap(int proxyIdA, int proxyIdB) {
+    final AABB a = getFatAABB(proxyIdA);
+    final AABB b = getFatAABB(proxyIdB);
+    if (b.lowerBound.x - a.upperBound.x > 0.0f || b.lowerBound.y - a.upperBound.y > 0.0f) {
+      return false;
+    }
+
+    if (a.lowerBound.x - b.upperBound.x > 0.0f || a.lowerBound.y - b.upperBound.y > 0.0f) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public final int getProxyCount() {
+    return m_proxyCount;
+  }
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    m_staticTree.drawTree(argDraw);
+    m_dynamicTree.drawTree(argDraw);
+  }
+
+  @Override
+  public final void updatePairs(PairCallback callback) {
+    // Reset pair buffer
+    m_pairCount = 0;
+
+    // Perform tree queries for all moving proxies.
+    for (int i = 0; i < m_moveCount; ++i) {
+      m_queryProxyId = m_moveBuffer[i];
+      if (m_queryProxyId == NULL_PROXY) {
+        continue;
+      }
+
+      // We have to query the tree with the fat AABB so that
+      // we don't fail to create a pair that may touch later.
+      final AABB fatAABB = getFatAABB(m_queryProxyId);
+
+      // Static proxies don't pair with each other, so they only look at the dynamic tree.
+      m_queryTreeTag = 0;
+      m_dynamicTree.query(this, fatAABB);
+      if (!isStatic(m_queryProxyId)) {
+        m_queryTreeTag = 1;
+        m_staticTree.query(this, fatAABB);
+      }
+    }
+
+    // Reset move buffer
+    clearMoveBuffer();
+
+    // Sort the pair buffer to expose duplicates.
+    Arrays.sort(m_pairBuffer, 0, m_pairCount);
+
+    // Send the pairs back to the client.
+    int i = 0;
+    while (i < m_pairCount) {
+      long primaryPair = m_pairBuffer[i];
+      Object userDataA = getUserData((int) (primaryPair >> 32));
+      Object userDataB = getUserData((int) (primaryPair));
+
+      callback.addPair(userDataA, userDataB);
+      ++i;
+
+      // Skip any duplicate pairs.
+      while (i < m_pairCount) {
+        long pair = m_pairBuffer[i];
+        if (pair != primaryPair) {
+          break;
+        }
+        ++i;
+      }
+    }
+  }
+
+  @Override
+  public final void query(final TreeCallback callback, final AABB aabb) {
+    queryWrapper.callback = callback;
+    queryWrapper.treeTag = 1;
+    queryWrapper.done = false;
+    m_staticTree.query(queryWrapper, aabb);
+    if (!queryWrapper.done) {
+      queryWrapper.treeTag = 0;
+      m_dynamicTree.query(queryWrapper, aabb);
+    }
+    queryWrapper.callback = null;
+  }
+
+  @Override
+  public final void raycast(final TreeRayCastCallback callback, final RayCastInput input) {
+    raycastWrapper.callback = callback;
+    raycastWrapper.treeTag = 1;
+    raycastWrapper.maxFraction = input.maxFraction;
+    m_staticTree.raycast(raycastWrapper, input);
+    // The dynamic tree continues with the ray clipped by the static hits.
+    if (raycastWrapper.maxFraction > 0) {
+      subInput.p1.set(input.p1);
+      subInput.p2.set(input.p2);
+      subInput.maxFraction = raycastWrapper.maxFraction;
+      raycastWrapper.treeTag = 0;
+      m_dynamicTree.raycast(raycastWrapper, subInput);
+    }
+    raycastWrapper.callback = null;
+  }
+
+  @Override
+  public final int getTreeHeight() {
+    return MathUtils.max(m_staticTree.getHeight(), m_dynamicTree.getHeight());
+  }
+
+  @Override
+  public int getTreeBalance() {
+    return MathUtils.max(m_staticTree.getMaxBalance(), m_dynamicTree.getMaxBalance());
+  }
+
+  /** The quality of the dynamic tree, which is the one that changes from step to step. */
+  @Override
+  public float getTreeQuality() {
+    return m_dynamicTree.getAreaRatio();
+  }
+
+  /**
+   * Rebuild the static tree in one go, which gives a better tree than inserting the proxies one by
+   * one. Call it after creating a lot of static proxies, such as when loading a level. Only a
+   * {@link DynamicTreeFlatNodes} static tree is rebuilt, other strategies are left as they are.
+   * Proxy ids don't change.
+   */
+  public void rebuildStatic() {
+    if (m_staticTree instanceof DynamicTreeFlatNodes) {
+      ((DynamicTreeFlatNodes) m_staticTree).rebuild();
+    }
+  }
+
+  public BroadPhaseStrategy getStaticTree() {
+    return m_staticTree;
+  }
+
+  public BroadPhaseStrategy getDynamicTree() {
+    return m_dynamicTree;
+  }
+
+  protected final void bufferMove(int proxyId) {
+    if (proxyId >= m_moveIndex.length) {
+      int[] old = m_moveIndex;
+      m_moveIndex = new int[MathUtils.max(2 * old.length, proxyId + 1)];
+      System.arraycopy(old, 0, m_moveIndex, 0, old.length);
+      Arrays.fill(m_moveIndex, old.length, m_moveIndex.length, NULL_PROXY);
+    } else if (m_moveIndex[proxyId] != NULL_PROXY) {
+      // Already buffered this step.
+      return;
+    }
+
+    if (m_moveCount == m_moveCapacity) {
+      int[] old = m_moveBuffer;
+      m_moveCapacity *= 2;
+      m_moveBuffer = new int[m_moveCapacity];
+      System.arraycopy(old, 0, m_moveBuffer, 0, old.length);
+    }
+
+    m_moveIndex[proxyId] = m_moveCount;
+    m_moveBuffer[m_moveCount] = proxyId;
+    ++m_moveCount;
+  }
+
+  protected final void unbufferMove(int proxyId) {
+    if (proxyId < m_moveIndex.length && m_moveIndex[proxyId] != NULL_PROXY) {
+      m_moveBuffer[m_moveIndex[proxyId]] = NULL_PROXY;
+      m_moveIndex[proxyId] = NULL_PROXY;
+    }
+  }
+
+  private final void clearMoveBuffer() {
+    for (int i = 0; i < m_moveCount; ++i) {
+      final int proxyId = m_moveBuffer[i];
+      if (proxyId != NULL_PROXY) {
+        m_moveIndex[proxyId] = NULL_PROXY;
+      }
+    }
+    m_moveCount = 0;
+  }
+
+  /**
+   * This is called from the tree queries in updatePairs when we are gathering pairs.
+   */
+  public final boolean treeCallback(int treeProxyId) {
+    int proxyId = (treeProxyId << 1) | m_queryTreeTag;
+    // A proxy cannot form a pair with itself.
+    if (proxyId == m_queryProxyId) {
+      return true;
+    }
+
+    // Grow the pair buffer as needed.
+    if (m_pairCount == m_pairCapacity) {
+      long[] oldBuffer = m_pairBuffer;
+      m_pairCapacity *= 2;
+      m_pairBuffer = new long[m_pairCapacity];
+      System.arraycopy(oldBuffer, 0, m_pairBuffer, 0, oldBuffer.length);
+    }
+
+    if (proxyId < m_queryProxyId) {
+      m_pairBuffer[m_pairCount] = ((long) proxyId << 32) | m_queryProxyId;
+    } else {
+      m_pairBuffer[m_pairCount] = ((long) m_queryProxyId << 32) | proxyId;
+    }
+
+    ++m_pairCount;
+    return true;
+  }
+
+  /** Hands the proxies found in one of the trees to a query callback with their broad-phase id. */
+  private static class ProxyQueryWrapper implements TreeCallback {
+    TreeCallback callback;
+    int treeTag;
+    boolean done;
+
+    public boolean treeCallback(int treeProxyId) {
+      boolean proceed = callback.treeCallback((treeProxyId << 1) | treeTag);
+      done = !proceed;
+      return proceed;
+    }
+  }
+
+  /** Same for ray casts, remembering how far the ray has been clipped. */
+  private static class ProxyRayCastWrapper implements TreeRayCastCallback {
+    TreeRayCastCallback callback;
+    int treeTag;
+    float maxFraction;
+
+    public float raycastCallback(RayCastInput input, int treeProxyId) {
+      float value = callback.raycastCallback(input, (treeProxyId << 1) | treeTag);
+      if (value == 0) {
+        maxFraction = 0;
+      } else if (value > 0) {
+        maxFraction = value;
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,506 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.collision.broadphase;
+
+import java.util.Arrays;
+
+import org.jbox2d.callbacks.DebugDraw;
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.common.BufferUtils;
+import org.jbox2d.common.Color3f;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+
+/**
+ * A sweep-and-prune broad-phase strategy. The fat AABBs are kept in one array sorted by their
+ * lower x bound, and moved proxies are put back in order with an insertion sort step, which is
+ * nearly free when things move coherently. New proxies are appended and destroyed ones are only
+ * marked, the next query sorts them in with one pass, so building or clearing a level stays linear.
+ * A query scans the slice of the array that can overlap
+ * in x, so this works best when the proxies have similar sizes, for example lots of boxes on
+ * conveyors. For scenes with very mixed sizes prefer a {@link DynamicTree}. Long level geometry
+ * widens every query, so use it as the dynamic side of a {@link SplitBroadPhaseBuffer} when there
+ * is any.
+ */
+public class SweepAndPrune implements ConcurrentQueryStrategy {
+  public static final int NULL_PROXY = -1;
+
+  // Per proxy id. Free ids chain through m_rank.
+  private AABB[] m_aabb;
+  private Object[] m_userData;
+  private int[] m_rank;
+  private int m_capacity;
+  private int m_freeList;
+
+  // Per rank, sorted by lower x. Bounds hold lower x, lower y, upper x, upper y. Ranks from
+  // m_sortedCount on are proxies created since the last flush, in creation order. Destroyed proxies
+  // leave NULL_PROXY behind until the flush compacts them away.
+  private int[] m_sorted;
+  private float[] m_bounds;
+  private int m_count;
+  private int m_sortedCount;
+  private int m_removedCount;
+
+  // Flush scratch, the created proxies keyed by lower x and the merged order.
+  private long[] m_keys;
+  private int[] m_merged;
+
+  // At least as wide as the widest proxy, tells how far back a query has to look. Goes stale when
+  // the widest proxy shrinks or goes away and is recomputed by the next flush.
+  private float m_maxWidth;
+  private boolean m_maxWidthStale;
+
+  // Set when a flush is due. Concurrent queries check it before they read the sorted arrays.
+  private volatile boolean m_dirty;
+
+  private final Vec2[] drawVecs = new Vec2[4];
+  private final Color3f color = new Color3f(.9f, .6f, .6f);
+
+  public SweepAndPrune() {
+    m_capacity = 0;
+    m_count = 0;
+    m_sortedCount = 0;
+    m_removedCount = 0;
+    m_maxWidth = 0;
+    expandBuffers(0, 16);
+
+    for (int i = 0; i < drawVecs.length; i++) {
+      drawVecs[i] = new Vec2();
+    }
+  }
+
+  private void expandBuffers(int oldSize, int newSize) {
+    m_aabb = BufferUtils.reallocateBuffer(AABB.class, m_aabb, oldSize, newSize);
+    m_userData = BufferUtils.reallocateBuffer(Object.class, m_userData, oldSize, newSize);
+    m_rank = BufferUtils.reallocateBuffer(m_rank, oldSize, newSize);
+    m_sorted = BufferUtils.reallocateBuffer(m_sorted, oldSize, newSize);
+    m_bounds = BufferUtils.reallocateBuffer(m_bounds, 4 * oldSize, 4 * newSize);
+    m_keys = new long[newSize];
+    m_merged = new int[newSize];
+
+    for (int i = oldSize; i < newSize; i++) {
+      m_rank[i] = (i == newSize - 1) ? NULL_PROXY : i + 1;
+    }
+    m_freeList = oldSize;
+    m_capacity = newSize;
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    if (m_freeList == NULL_PROXY) {
+      expandBuffers(m_capacity, m_capacity * 2);
+    }
+    final int proxyId = m_freeList;
+    m_freeList = m_rank[proxyId];
+    if (m_count == m_capacity) {
+      // Only destroyed proxies can fill the ranks, compact them away.
+      flush();
+    }
+
+    // Fatten the aabb
+    final AABB fatAABB = m_aabb[proxyId];
+    fatAABB.lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+    fatAABB.lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+    fatAABB.upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+    fatAABB.upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+    m_userData[proxyId] = userData;
+
+    // Append, the next flush sorts it in.
+    final int rank = m_count++;
+    m_sorted[rank] = proxyId;
+    m_rank[proxyId] = rank;
+    storeBounds(rank, fatAABB);
+    m_dirty = true;
+
+    return proxyId;
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_capacity);
+    final int rank = m_rank[proxyId];
+    assert (m_sorted[rank] == proxyId);
+
+    // Leave a hole, the next flush compacts it away.
+    m_sorted[rank] = NULL_PROXY;
+    ++m_removedCount;
+    if (m_bounds[4 * rank + 2] - m_bounds[4 * rank] >= m_maxWidth) {
+      m_maxWidthStale = true;
+    }
+    m_dirty = true;
+
+    m_userData[proxyId] = null;
+    m_rank[proxyId] = m_freeList;
+    m_freeList = proxyId;
+  }
+
+  @Override
+  public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
+    assert (0 <= proxyId && proxyId < m_capacity);
+    final AABB fatAABB = m_aabb[proxyId];
+    if (fatAABB.lowerBound.x <= aabb.lowerBound.x && fatAABB.lowerBound.y <= aabb.lowerBound.y
+        && aabb.upperBound.x <= fatAABB.upperBound.x && aabb.upperBound.y <= fatAABB.upperBound.y) {
+      return false;
+    }
+
+    final float oldWidth = fatAABB.upperBound.x - fatAABB.lowerBound.x;
+
+    // Extend AABB
+    final Vec2 lowerBound = fatAABB.lowerBound;
+    final Vec2 upperBound = fatAABB.upperBound;
+    lowerBound.x = aabb.lowerBound.x - Settings.aabbExtension;
+    lowerBound.y = aabb.lowerBound.y - Settings.aabbExtension;
+    upperBound.x = aabb.upperBound.x + Settings.aabbExtension;
+    upperBound.y = aabb.upperBound.y + Settings.aabbExtension;
+
+    // Predict AABB displacement.
+    final float dx = displacement.x * Settings.aabbMultiplier;
+    final float dy = displacement.y * Settings.aabbMultiplier;
+    if (dx < 0.0f) {
+      lowerBound.x += dx;
+    } else {
+      upperBound.x += dx;
+    }
+
+    if (dy < 0.0f) {
+      lowerBound.y += dy;
+    } else {
+      upperBound.y += dy;
+    }
+
+    if (oldWidth >= m_maxWidth && upperBound.x - lowerBound.x < oldWidth) {
+      m_maxWidthStale = true;
+      m_dirty = true;
+    }
+
+    int rank = m_rank[proxyId];
+    if (rank >= m_sortedCount) {
+      // Not sorted in yet, the flush takes care of it.
+      storeBounds(rank, fatAABB);
+      return true;
+    }
+
+    // Insertion sort step, the proxy usually only passes a few neighbors. Holes keep the bounds of
+    // the proxy they belonged to, so they stay in order and can be passed like any other rank.
+    final int[] sorted = m_sorted;
+    final float[] bounds = m_bounds;
+    final float lowerX = lowerBound.x;
+    while (rank > 0 && bounds[4 * rank - 4] > lowerX) {
+      sorted[rank] = sorted[rank - 1];
+      System.arraycopy(bounds, 4 * rank - 4, bounds, 4 * rank, 4);
+      if (sorted[rank] != NULL_PROXY) {
+        m_rank[sorted[rank]] = rank;
+      }
+      --rank;
+    }
+    while (rank < m_sortedCount - 1 && bounds[4 * rank + 4] < lowerX) {
+      sorted[rank] = sorted[rank + 1];
+      System.arraycopy(bounds, 4 * rank + 4, bounds, 4 * rank, 4);
+      if (sorted[rank] != NULL_PROXY) {
+        m_rank[sorted[rank]] = rank;
+      }
+      ++rank;
+    }
+    sorted[rank] = proxyId;
+    m_rank[proxyId] = rank;
+    storeBounds(rank, fatAABB);
+    return true;
+  }
+
+  /**
+   * Sort the proxies created since the last flush in, drop the destroyed ones and recompute the
+   * widest proxy. Called by the queries, so there is no need to call it directly.
+   */
+  public final void flush() {
+    if (m_sortedCount < m_count || m_removedCount > 0) {
+      final int[] sorted = m_sorted;
+      final AABB[] aabbs = m_aabb;
+
+      // Key the new proxies by lower x, with an order preserving int for the float.
+      final long[] keys = m_keys;
+      int keyCount = 0;
+      for (int i = m_sortedCount; i < m_count; ++i) {
+        final int proxyId = sorted[i];
+        if (proxyId != NULL_PROXY) {
+          int bits = Float.floatToIntBits(aabbs[proxyId].lowerBound.x);
+          bits ^= (bits >> 31) & 0x7fffffff;
+          keys[keyCount++] = ((long) bits << 32) | proxyId;
+        }
+      }
+      Arrays.sort(keys, 0, keyCount);
+
+      // Merge them with the survivors of the sorted ranks.
+      final int[] merged = m_merged;
+      int count = 0;
+      int k = 0;
+      for (int i = 0; i < m_sortedCount; ++i) {
+        final int proxyId = sorted[i];
+        if (proxyId == NULL_PROXY) {
+          continue;
+        }
+        final float lowerX = aabbs[proxyId].lowerBound.x;
+        while (k < keyCount && aabbs[(int) keys[k]].lowerBound.x < lowerX) {
+          merged[count++] = (int) keys[k++];
+        }
+        merged[count++] = proxyId;
+      }
+      while (k < keyCount) {
+        merged[count++] = (int) keys[k++];
+      }
+
+      m_merged = sorted;
+      m_sorted = merged;
+      m_count = count;
+      m_sortedCount = count;
+      m_removedCount = 0;
+      m_maxWidth = 0;
+      for (int i = 0; i < count; ++i) {
+        m_rank[merged[i]] = i;
+        storeBounds(i, aabbs[merged[i]]);
+      }
+    } else if (m_maxWidthStale) {
+      final float[] bounds = m_bounds;
+      float maxWidth = 0;
+      for (int i = 0; i < m_count; ++i) {
+        maxWidth = MathUtils.max(maxWidth, bounds[4 * i + 2] - bounds[4 * i]);
+      }
+      m_maxWidth = maxWidth;
+    }
+    m_maxWidthStale = false;
+    m_dirty = false;
+  }
+
+  /**
+   * Flush for a query that may run on several threads at once. Only the first one does the work,
+   * the others wait for it.
+   */
+  private void flushConcurrent() {
+    if (m_dirty) {
+      synchronized (this) {
+        if (m_dirty) {
+          flush();
+        }
+      }
+    }
+  }
+
+  private final void storeBounds(int rank, AABB fatAABB) {
+    m_bounds[4 * rank] = fatAABB.lowerBound.x;
+    m_bounds[4 * rank + 1] = fatAABB.lowerBound.y;
+    m_bounds[4 * rank + 2] = fatAABB.upperBound.x;
+    m_bounds[4 * rank + 3] = fatAABB.upperBound.y;
+    m_maxWidth = MathUtils.max(m_maxWidth, fatAABB.upperBound.x - fatAABB.lowerBound.x);
+  }
+
+  /**
+   * @return the first rank whose lower x bound is not less than x.
+   */
+  private final int lowerBound(float x) {
+    int lo = 0, hi = m_count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (m_bounds[4 * mid] < x) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  @Override
+  public final Object getUserData(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_capacity);
+    return m_userData[proxyId];
+  }
+
+  @Override
+  public final AABB getFatAABB(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_capacity);
+    return m_aabb[proxyId];
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb) {
+    if (m_dirty) {
+      flush();
+    }
+    final float[] bounds = m_bounds;
+    final float lowerX = aabb.lowerBound.x, lowerY = aabb.lowerBound.y;
+    final float upperX = aabb.upperBound.x, upperY = aabb.upperBound.y;
+    for (int i = lowerBound(lowerX - m_maxWidth); i < m_count; ++i) {
+      if (bounds[4 * i] > upperX) {
+        break;
+      }
+      if (bounds[4 * i + 2] < lowerX || bounds[4 * i + 1] > upperY || bounds[4 * i + 3] < lowerY) {
+        continue;
+      }
+      if (!callback.treeCallback(m_sorted[i])) {
+        return;
+      }
+    }
+  }
+
+  /** The sweep needs no scratch space, so this just forwards to the plain query. */
+  @Override
+  public final int[] query(TreeCallback callback, AABB aabb, int[] stack) {
+    flushConcurrent();
+    query(callback, aabb);
+    return stack;
+  }
+
+  private final RayCastInput subInput = new RayCastInput();
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    raycast(callback, input, subInput, null);
+  }
+
+  /** The sweep needs no stack, so the one given is returned untouched. */
+  @Override
+  public int[] raycast(TreeRayCastCallback callback, RayCastInput input, RayCastInput subInput,
+      int[] stack) {
+    flushConcurrent();
+    final float p1x = input.p1.x, p1y = input.p1.y, p2x = input.p2.x, p2y = input.p2.y;
+    float rx = p2x - p1x;
+    float ry = p2y - p1y;
+    float length = MathUtils.sqrt(rx * rx + ry * ry);
+    assert (length > 0f);
+    rx /= length;
+    ry /= length;
+
+    // v is perpendicular to the segment.
+    final float vx = -ry;
+    final float vy = rx;
+    final float absVx = MathUtils.abs(vx);
+    final float absVy = MathUtils.abs(vy);
+
+    float maxFraction = input.maxFraction;
+
+    // Build a bounding box for the segment.
+    float tempx = (p2x - p1x) * maxFraction + p1x;
+    float tempy = (p2y - p1y) * maxFraction + p1y;
+    float segLowerX = p1x < tempx ? p1x : tempx;
+    float segLowerY = p1y < tempy ? p1y : tempy;
+    float segUpperX = p1x > tempx ? p1x : tempx;
+    float segUpperY = p1y > tempy ? p1y : tempy;
+
+    final float[] bounds = m_bounds;
+    for (int i = lowerBound(segLowerX - m_maxWidth); i < m_count; ++i) {
+      final float lx = bounds[4 * i], ly = bounds[4 * i + 1];
+      final float ux = bounds[4 * i + 2], uy = bounds[4 * i + 3];
+      if (lx > segUpperX) {
+        break;
+      }
+      if (ux < segLowerX || ly > segUpperY || uy < segLowerY) {
+        continue;
+      }
+
+      // Separating axis for segment (Gino, p80).
+      // |dot(v, p1 - c)| > dot(|v|, h)
+      float cx = (lx + ux) * .5f;
+      float cy = (ly + uy) * .5f;
+      float hx = (ux - lx) * .5f;
+      float hy = (uy - ly) * .5f;
+      float separation =
+          MathUtils.abs(vx * (p1x - cx) + vy * (p1y - cy)) - (absVx * hx + absVy * hy);
+      if (separation > 0.0f) {
+        continue;
+      }
+
+      subInput.p1.x = p1x;
+      subInput.p1.y = p1y;
+      subInput.p2.x = p2x;
+      subInput.p2.y = p2y;
+      subInput.maxFraction = maxFraction;
+
+      float value = callback.raycastCallback(subInput, m_sorted[i]);
+
+      if (value == 0.0f) {
+        // The client has terminated the ray cast.
+        return stack;
+      }
+
+      if (value > 0.0f) {
+        // Update segment bounding box.
+        maxFraction = value;
+        tempx = (p2x - p1x) * maxFraction + p1x;
+        tempy = (p2y - p1y) * maxFraction + p1y;
+        segLowerX = p1x < tempx ? p1x : tempx;
+        segLowerY = p1y < tempy ? p1y : tempy;
+        segUpperX = p1x > tempx ? p1x : tempx;
+        segUpperY = p1y > tempy ? p1y : tempy;
+      }
+    }
+    return stack;
+  }
+
+  /** There is no hierarchy, so the height is always zero. */
+  @Override
+  public int computeHeight() {
+    return 0;
+  }
+
+  @Override
+  public int getHeight() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxBalance() {
+    return 0;
+  }
+
+  /** There is no hierarchy, so this is always zero. */
+  @Override
+  public float getAreaRatio() {
+    return 0;
+  }
+
+  /**
+   * Flush, then validate the sort order and the rank table. For testing.
+   */
+  public void validate() {
+    flush();
+    for (int i = 0; i < m_count; ++i) {
+      assert (m_rank[m_sorted[i]] == i);
+      assert (i == 0 || m_bounds[4 * i - 4] <= m_bounds[4 * i]);
+      assert (m_bounds[4 * i] == m_aabb[m_sorted[i]].lowerBound.x);
+      assert (m_bounds[4 * i + 2] - m_bounds[4 * i] <= m_maxWidth);
+    }
+  }
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    flush();
+    for (int i = 0; i < m_count; ++i) {
+      m_aabb[m_sorted[i]].getVertices(drawVecs);
+      argDraw.drawPolygon(drawVecs, 4, color);
+    }
+  }
+}
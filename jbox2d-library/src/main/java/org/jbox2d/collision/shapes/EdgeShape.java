@@ -81,9 +81,6 @@ public class EdgeShape extends Shape {
     return false;
   }
 
-  // for pooling
-  private final Vec2 normal = new Vec2();
-
   @Override
   public float computeDistanceToOut(Transform xf, Vec2 p, int childIndex, Vec2 normalOut) {
     float xfqc = xf.q.c;
@@ -153,11 +150,15 @@ public class EdgeShape extends Shape {
 
     // final Vec2 normal = pool2.set(v2).subLocal(v1);
     // normal.set(normal.y, -normal.x);
-    normal.x = v2.y - v1.y;
-    normal.y = v1.x - v2.x;
-    normal.normalize();
-    final float normalx = normal.x;
-    final float normaly = normal.y;
+    // Locals rather than a pooled vector, so concurrent ray casts can share the shape.
+    float normalx = v2.y - v1.y;
+    float normaly = v1.x - v2.x;
+    final float length = MathUtils.sqrt(normalx * normalx + normaly * normaly);
+    if (length >= Settings.EPSILON) {
+      final float invLength = 1.0f / length;
+      normalx *= invLength;
+      normaly *= invLength;
+    }
 
     // q = p1 + t * d
     // dot(normal, q - v1) = 0
@@ -200,12 +201,12 @@ public class EdgeShape extends Shape {
     output.fraction = t;
     if (numerator > 0.0f) {
       // output.normal = -b2Mul(xf.q, normal);
-      output.normal.x = -xfq.c * normal.x + xfq.s * normal.y;
-      output.normal.y = -xfq.s * normal.x - xfq.c * normal.y;
+      output.normal.x = -xfq.c * normalx + xfq.s * normaly;
+      output.normal.y = -xfq.s * normalx - xfq.c * normaly;
     } else {
       // output->normal = b2Mul(xf.q, normal);
-      output.normal.x = xfq.c * normal.x - xfq.s * normal.y;
-      output.normal.y = xfq.s * normal.x + xfq.c * normal.y;
+      output.normal.x = xfq.c * normalx - xfq.s * normaly;
+      output.normal.y = xfq.s * normalx + xfq.c * normaly;
     }
     return true;
   }
@@ -170,6 +170,23 @@ public class Settings {
   public static float baumgarte = 0.2f;
   public static float toiBaugarte = 0.75f;
 
+  /**
+   * The stiffness of contacts in the soft step solver, in cycles per second. It is capped at a
+   * quarter of the sub-step rate.
+   */
+  public static float contactHertz = 30.0f;
+
+  /**
+   * The damping ratio of contacts in the soft step solver.
+   */
+  public static float contactDampingRatio = 10.0f;
+
+  /**
+   * The maximum speed at which the soft step solver pushes overlapping shapes apart, in meters per
+   * second.
+   */
+  public static float contactPushMaxVelocity = 3.0f;
+
 
   // Sleep
 
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.dynamics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jbox2d.callbacks.TreeCallback;
+import org.jbox2d.callbacks.TreeRayCastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.RayCastInput;
+import org.jbox2d.collision.RayCastOutput;
+import org.jbox2d.collision.broadphase.BroadPhase;
+import org.jbox2d.collision.broadphase.ConcurrentQueryStrategy;
+import org.jbox2d.collision.broadphase.DefaultBroadPhaseBuffer;
+import org.jbox2d.collision.shapes.ChainShape;
+import org.jbox2d.collision.shapes.EdgeShape;
+import org.jbox2d.collision.shapes.ShapeType;
+import org.jbox2d.common.MathUtils;
+
+/**
+ * Runs the batched ray casts and AABB queries of {@link World}. Every worker has its own callback
+ * state and traversal stack, so chunks of a batch can run on a {@link ForkJoinPool} at the same
+ * time when the broad-phase strategy allows concurrent queries. Results are written by index, so
+ * they don't depend on scheduling. This is an internal class.
+ */
+public class BatchQueries {
+  /**
+   * Rays or boxes are handed to the pool in chunks of this size.
+   */
+  public static int CHUNK_SIZE = 64;
+
+  private ForkJoinPool m_pool;
+  private final Worker m_serialWorker = new Worker();
+  private Worker[] m_workers = new Worker[0];
+
+  public void setPool(ForkJoinPool pool) {
+    m_pool = pool;
+  }
+
+  public ForkJoinPool getPool() {
+    return m_pool;
+  }
+
+  /**
+   * @return the strategy to query concurrently, or null if the batch has to run serially
+   */
+  private ConcurrentQueryStrategy concurrentStrategy(BroadPhase broadPhase, int count) {
+    if (m_pool == null || count <= CHUNK_SIZE || !(broadPhase instanceof DefaultBroadPhaseBuffer)) {
+      return null;
+    }
+    Object strategy = ((DefaultBroadPhaseBuffer) broadPhase).getStrategy();
+    return strategy instanceof ConcurrentQueryStrategy ? (ConcurrentQueryStrategy) strategy : null;
+  }
+
+  private Worker[] workers(int chunkCount) {
+    if (m_workers.length < chunkCount) {
+      Worker[] old = m_workers;
+      m_workers = new Worker[chunkCount];
+      System.arraycopy(old, 0, m_workers, 0, old.length);
+      for (int i = old.length; i < chunkCount; i++) {
+        m_workers[i] = new Worker();
+      }
+    }
+    return m_workers;
+  }
+
+  public int raycastClosest(BroadPhase broadPhase, float[] rays, int count, int maskBits,
+      Fixture[] fixtures, float[] hits) {
+    final ConcurrentQueryStrategy strategy = concurrentStrategy(broadPhase, count);
+    if (strategy == null) {
+      m_serialWorker.init(broadPhase, null, maskBits);
+      return m_serialWorker.raycastClosest(rays, 0, count, fixtures, hits);
+    }
+
+    final int chunkCount = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final Worker[] workers = workers(chunkCount);
+    for (int i = 0; i < chunkCount; i++) {
+      workers[i].init(broadPhase, strategy, maskBits);
+    }
+    m_pool.invoke(new BatchTask(workers, 0, chunkCount, count, rays, fixtures, hits, null));
+
+    int hitCount = 0;
+    for (int i = 0; i < chunkCount; i++) {
+      hitCount += workers[i].resultCount;
+    }
+    return hitCount;
+  }
+
+  public int queryAABBs(BroadPhase broadPhase, float[] aabbs, int count, int maskBits,
+      Fixture[] fixtures, int[] starts) {
+    final ConcurrentQueryStrategy strategy = concurrentStrategy(broadPhase, count);
+    final int chunkCount;
+    final Worker[] workers;
+    if (strategy == null) {
+      chunkCount = 1;
+      workers = new Worker[] {m_serialWorker};
+      m_serialWorker.init(broadPhase, null, maskBits);
+      m_serialWorker.queryAABBs(aabbs, 0, count, starts);
+    } else {
+      chunkCount = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      workers = workers(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+        workers[i].init(broadPhase, strategy, maskBits);
+      }
+      m_pool.invoke(new BatchTask(workers, 0, chunkCount, count, aabbs, null, null, starts));
+    }
+
+    // The workers wrote the count of each box, turn them into offsets.
+    starts[0] = 0;
+    for (int i = 0; i < count; i++) {
+      starts[i + 1] += starts[i];
+    }
+    final int total = starts[count];
+    if (total <= fixtures.length) {
+      int offset = 0;
+      for (int i = 0; i < chunkCount; i++) {
+        Worker worker = workers[i];
+        System.arraycopy(worker.found, 0, fixtures, offset, worker.resultCount);
+        offset += worker.resultCount;
+      }
+    }
+    for (int i = 0; i < chunkCount; i++) {
+      workers[i].clearFound();
+    }
+    return total;
+  }
+
+  /**
+   * Runs the rays or boxes of the chunks in [start, end). Ray casts pass hits, queries pass starts.
+   */
+  private static class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Worker[] workers;
+    private final int start;
+    private final int end;
+    private final int count;
+    private final float[] input;
+    private final Fixture[] fixtures;
+    private final float[] hits;
+    private final int[] starts;
+
+    BatchTask(Worker[] workers, int start, int end, int count, float[] input, Fixture[] fixtures,
+        float[] hits, int[] starts) {
+      this.workers = workers;
+      this.start = start;
+      this.end = end;
+      this.count = count;
+      this.input = input;
+      this.fixtures = fixtures;
+      this.hits = hits;
+      this.starts = starts;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new BatchTask(workers, start, mid, count, input, fixtures, hits, starts),
+            new BatchTask(workers, mid, end, count, input, fixtures, hits, starts));
+        return;
+      }
+      int first = start * CHUNK_SIZE;
+      int last = MathUtils.min(first + CHUNK_SIZE, count);
+      if (hits != null) {
+        workers[start].raycastClosest(input, first, last, fixtures, hits);
+      } else {
+        workers[start].queryAABBs(input, first, last, starts);
+      }
+    }
+  }
+
+  /**
+   * The callback state of one thread. Chain shapes are ray cast through an edge owned by the
+   * worker, since the chain's own ray cast uses a shared edge.
+   */
+  private static class Worker implements TreeCallback, TreeRayCastCallback {
+    private BroadPhase broadPhase;
+    private ConcurrentQueryStrategy strategy;
+    private int maskBits;
+
+    private int[] stack = new int[20];
+    private final RayCastInput input = new RayCastInput();
+    private final RayCastInput subInput = new RayCastInput();
+    private final RayCastOutput output = new RayCastOutput();
+    private final EdgeShape edge = new EdgeShape();
+    private final AABB aabb = new AABB();
+
+    private Fixture closest;
+    private float closestNormalX, closestNormalY, closestFraction;
+
+    Fixture[] found = new Fixture[16];
+    int resultCount;
+
+    void init(BroadPhase broadPhase, ConcurrentQueryStrategy strategy, int maskBits) {
+      this.broadPhase = broadPhase;
+      this.strategy = strategy;
+      this.maskBits = maskBits;
+      resultCount = 0;
+    }
+
+    void clearFound() {
+      for (int i = 0; i < resultCount; i++) {
+        found[i] = null;
+      }
+      resultCount = 0;
+    }
+
+    private FixtureProxy getProxy(int proxyId) {
+      Object userData =
+          strategy != null ? strategy.getUserData(proxyId) : broadPhase.getUserData(proxyId);
+      return (FixtureProxy) userData;
+    }
+
+    int raycastClosest(float[] rays, int first, int last, Fixture[] fixtures, float[] hits) {
+      for (int i = first; i < last; i++) {
+        final int r = World.RAY_STRIDE * i;
+        input.p1.x = rays[r];
+        input.p1.y = rays[r + 1];
+        input.p2.x = rays[r + 2];
+        input.p2.y = rays[r + 3];
+        input.maxFraction = 1.0f;
+        closest = null;
+        if (strategy != null) {
+          stack = strategy.raycast(this, input, subInput, stack);
+        } else {
+          broadPhase.raycast(this, input);
+        }
+
+        final int h = World.HIT_STRIDE * i;
+        fixtures[i] = closest;
+        if (closest != null) {
+          float fraction = closestFraction;
+          hits[h] = (1 - fraction) * input.p1.x + fraction * input.p2.x;
+          hits[h + 1] = (1 - fraction) * input.p1.y + fraction * input.p2.y;
+          hits[h + 2] = closestNormalX;
+          hits[h + 3] = closestNormalY;
+          hits[h + 4] = fraction;
+          ++resultCount;
+          closest = null;
+        } else {
+          hits[h] = hits[h + 1] = hits[h + 2] = hits[h + 3] = 0;
+          hits[h + 4] = 1.0f;
+        }
+      }
+      return resultCount;
+    }
+
+    public float raycastCallback(RayCastInput input, int proxyId) {
+      final FixtureProxy proxy = getProxy(proxyId);
+      final Fixture fixture = proxy.fixture;
+      if (fixture.m_isSensor || (fixture.m_filter.categoryBits & maskBits) == 0) {
+        return -1;
+      }
+
+      boolean hit;
+      if (fixture.m_shape.m_type == ShapeType.CHAIN) {
+        ((ChainShape) fixture.m_shape).getChildEdge(edge, proxy.childIndex);
+        hit = edge.raycast(output, input, fixture.m_body.m_xf, 0);
+      } else {
+        hit = fixture.raycast(output, input, proxy.childIndex);
+      }
+
+      if (hit) {
+        closest = fixture;
+        closestNormalX = output.normal.x;
+        closestNormalY = output.normal.y;
+        closestFraction = output.fraction;
+        return output.fraction;
+      }
+      return input.maxFraction;
+    }
+
+    void queryAABBs(float[] aabbs, int first, int last, int[] starts) {
+      for (int i = first; i < last; i++) {
+        final int b = World.AABB_STRIDE * i;
+        aabb.lowerBound.x = aabbs[b];
+        aabb.lowerBound.y = aabbs[b + 1];
+        aabb.upperBound.x = aabbs[b + 2];
+        aabb.upperBound.y = aabbs[b + 3];
+        final int before = resultCount;
+        if (strategy != null) {
+          stack = strategy.query(this, aabb, stack);
+        } else {
+          broadPhase.query(this, aabb);
+        }
+        starts[i + 1] = resultCount - before;
+      }
+    }
+
+    public boolean treeCallback(int proxyId) {
+      final Fixture fixture = getProxy(proxyId).fixture;
+      if ((fixture.m_filter.categoryBits & maskBits) == 0) {
+        return true;
+      }
+      if (resultCount == found.length) {
+        Fixture[] old = found;
+        found = new Fixture[2 * old.length];
+        System.arraycopy(old, 0, found, 0, old.length);
+      }
+      found[resultCount++] = fixture;
+      return true;
+    }
+  }
+}
@@ -55,6 +55,12 @@ public class Body {
 
   public int m_islandIndex;
 
+  /** Index assigned by the world, see {@link #getWorldIndex()}. */
+  public int m_worldIndex;
+
+  /** Index in the world's list of awake bodies, -1 when not listed. */
+  public int m_awakeIndex = -1;
+
   /**
    * The body origin transform.
    */
@@ -334,6 +340,24 @@ public class Body {
     for (Fixture f = m_fixtureList; f != null; f = f.m_next) {
       f.synchronize(broadPhase, m_xf, m_xf);
     }
+    if (m_world.m_bodyChanges != null) {
+      m_world.m_bodyChanges.moved(this);
+    }
+    // so the previous transform is updated even if the body sleeps
+    if (m_awakeIndex == -1) {
+      m_world.addAwakeBody(this);
+    }
+  }
+
+  /**
+   * Get the index the world assigned to this body. The index stays the same for the lifetime of the
+   * body and may be reused by a body created after this one is destroyed. All indices are below
+   * {@link World#getBodyIndexCount()}.
+   * 
+   * @return the world index of the body.
+   */
+  public final int getWorldIndex() {
+    return m_worldIndex;
   }
 
   /**
@@ -880,6 +904,7 @@ public class Body {
       return;
     }
 
+    final boolean wasStatic = m_type == BodyType.STATIC;
     m_type = type;
 
     resetMassData();
@@ -908,6 +933,16 @@ public class Body {
 
     // Touch the proxies so that new contacts will be created (when appropriate)
     BroadPhase broadPhase = m_world.m_contactManager.m_broadPhase;
+    if (wasStatic != (m_type == BodyType.STATIC)) {
+      // The broad-phase may file static proxies separately, so recreate them instead.
+      for (Fixture f = m_fixtureList; f != null; f = f.m_next) {
+        if (f.m_proxyCount > 0) {
+          f.destroyProxies(broadPhase);
+          f.createProxies(broadPhase, m_xf);
+        }
+      }
+      return;
+    }
     for (Fixture f = m_fixtureList; f != null; f = f.m_next) {
       int proxyCount = f.m_proxyCount;
       for (int i = 0; i < proxyCount; ++i) {
@@ -964,8 +999,17 @@ public class Body {
       if ((m_flags & e_awakeFlag) == 0) {
         m_flags |= e_awakeFlag;
         m_sleepTime = 0.0f;
+        if (m_world.m_bodyChanges != null) {
+          m_world.m_bodyChanges.woke(this);
+        }
+      }
+      if (m_awakeIndex == -1) {
+        m_world.addAwakeBody(this);
       }
     } else {
+      if ((m_flags & e_awakeFlag) != 0 && m_world.m_bodyChanges != null) {
+        m_world.m_bodyChanges.slept(this);
+      }
       m_flags &= ~e_awakeFlag;
       m_sleepTime = 0.0f;
       m_linearVelocity.setZero();
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.dynamics;
+
+import org.jbox2d.common.BufferUtils;
+import org.jbox2d.common.MathUtils;
+
+/**
+ * The bodies that changed during the last time step, see {@link World#setBodyChangeTracking}.
+ * Each entry is the {@link Body#getWorldIndex()} of a body together with the changes recorded for
+ * it. Changes made between two steps (creating, destroying, waking or moving bodies) are reported
+ * with the following step. The record is reused: read it after {@link World#step} and before
+ * changing the world again.
+ */
+public class BodyChanges {
+  /** The body was created. */
+  public static final int CREATED = 0x0001;
+  /** The body was destroyed. Combined with CREATED, its index was reused by a new body. */
+  public static final int DESTROYED = 0x0002;
+  /** The body moved or rotated past the motion threshold since it was last reported. */
+  public static final int MOVED = 0x0004;
+  /** The body woke up. */
+  public static final int WOKE = 0x0008;
+  /** The body fell asleep. */
+  public static final int SLEPT = 0x0010;
+
+  // may have moved, resolved against the threshold in finish()
+  private static final int MOTION = 0x0100;
+
+  private int m_count;
+  private int[] m_indices = new int[16];
+  private int[] m_changes = new int[16];
+  private Body[] m_bodies = new Body[16];
+  private boolean m_complete;
+
+  // entry + 1 of each world index, 0 when it has no entry
+  private int[] m_entries = new int[16];
+  // x, y and angle of each world index when it was last reported
+  private float[] m_transforms = new float[3 * 16];
+
+  private float m_linearThreshold = 0;
+  private float m_angularThreshold = 0;
+
+  BodyChanges(World world) {
+    for (Body b = world.getBodyList(); b != null; b = b.m_next) {
+      ensureIndexCapacity(b.m_worldIndex + 1);
+      storeTransform(b);
+    }
+  }
+
+  /**
+   * Set how far a body has to move, and how much it has to rotate, from its last reported
+   * transform before it is reported as {@link #MOVED}. Both default to 0, which reports any motion.
+   * 
+   * @param linearThreshold distance in meters
+   * @param angularThreshold angle in radians
+   */
+  public void setMotionThreshold(float linearThreshold, float angularThreshold) {
+    assert (linearThreshold >= 0 && angularThreshold >= 0);
+    m_linearThreshold = linearThreshold;
+    m_angularThreshold = angularThreshold;
+  }
+
+  public float getLinearThreshold() {
+    return m_linearThreshold;
+  }
+
+  public float getAngularThreshold() {
+    return m_angularThreshold;
+  }
+
+  /** @return the number of changed bodies */
+  public int getCount() {
+    return m_count;
+  }
+
+  /** @return the world index of changed body k at k, valid up to {@link #getCount()} */
+  public int[] getIndices() {
+    return m_indices;
+  }
+
+  /** @return the change flags of changed body k at k, valid up to {@link #getCount()} */
+  public int[] getChanges() {
+    return m_changes;
+  }
+
+  /**
+   * Write the state of the changed bodies in the layout of
+   * {@link World#getBodyStates(float[], int[], boolean)}, entry k at k *
+   * {@link World#BODY_STATE_STRIDE}. Destroyed bodies are written as zeros.
+   * 
+   * @param states must hold BODY_STATE_STRIDE * {@link #getCount()} floats
+   * @return the number of bodies written
+   */
+  public int getBodyStates(float[] states) {
+    for (int k = 0; k < m_count; k++) {
+      Body b = m_bodies[k];
+      int offset = k * World.BODY_STATE_STRIDE;
+      if (b == null) {
+        for (int j = 0; j < World.BODY_STATE_STRIDE; j++) {
+          states[offset + j] = 0;
+        }
+        continue;
+      }
+      states[offset] = b.m_xf.p.x;
+      states[offset + 1] = b.m_xf.p.y;
+      states[offset + 2] = b.m_sweep.a;
+      states[offset + 3] = b.m_linearVelocity.x;
+      states[offset + 4] = b.m_linearVelocity.y;
+      states[offset + 5] = b.m_angularVelocity;
+    }
+    return m_count;
+  }
+
+  void created(Body b) {
+    int e = entry(b);
+    m_changes[e] = (m_changes[e] & DESTROYED) | CREATED;
+  }
+
+  void destroyed(Body b) {
+    int e = entry(b);
+    // a body that was created and destroyed again is never reported
+    m_changes[e] = (m_changes[e] & CREATED) != 0 ? m_changes[e] & DESTROYED : DESTROYED;
+    m_bodies[e] = null;
+  }
+
+  void woke(Body b) {
+    // static bodies are put to sleep with their islands, that is not worth reporting
+    if (b.m_type != BodyType.STATIC) {
+      int e = entry(b);
+      m_changes[e] |= WOKE;
+    }
+  }
+
+  void slept(Body b) {
+    if (b.m_type != BodyType.STATIC) {
+      int e = entry(b);
+      m_changes[e] |= SLEPT;
+    }
+  }
+
+  void moved(Body b) {
+    // entry() may grow m_changes, so it has to run before the array is read
+    int e = entry(b);
+    m_changes[e] |= MOTION;
+  }
+
+  /** Resolves the motion of the recorded bodies and drops the entries without changes. */
+  void finish() {
+    begin();
+    final float linearSqr = m_linearThreshold * m_linearThreshold;
+    int count = 0;
+    for (int k = 0; k < m_count; k++) {
+      int index = m_indices[k];
+      int changes = m_changes[k];
+      Body b = m_bodies[k];
+      if ((changes & CREATED) != 0) {
+        storeTransform(b);
+      } else if ((changes & MOTION) != 0 && b != null) {
+        float dx = b.m_xf.p.x - m_transforms[3 * index];
+        float dy = b.m_xf.p.y - m_transforms[3 * index + 1];
+        float da = b.m_sweep.a - m_transforms[3 * index + 2];
+        if (dx * dx + dy * dy > linearSqr || MathUtils.abs(da) > m_angularThreshold) {
+          changes |= MOVED;
+          storeTransform(b);
+        }
+      }
+      changes &= ~MOTION;
+      if (changes == 0) {
+        m_entries[index] = 0;
+        m_bodies[k] = null;
+        continue;
+      }
+      m_indices[count] = index;
+      m_changes[count] = changes;
+      m_bodies[count] = b;
+      m_entries[index] = count + 1;
+      count++;
+    }
+    for (int k = count; k < m_count; k++) {
+      m_bodies[k] = null;
+    }
+    m_count = count;
+    m_complete = true;
+  }
+
+  /** Drops the changes of the previous step once the first change of the next one comes in. */
+  private void begin() {
+    if (m_complete) {
+      for (int k = 0; k < m_count; k++) {
+        m_entries[m_indices[k]] = 0;
+        m_bodies[k] = null;
+      }
+      m_count = 0;
+      m_complete = false;
+    }
+  }
+
+  private int entry(Body b) {
+    begin();
+    int index = b.m_worldIndex;
+    ensureIndexCapacity(index + 1);
+    int e = m_entries[index] - 1;
+    if (e < 0) {
+      if (m_count == m_indices.length) {
+        int newCapacity = 2 * m_count;
+        m_indices = BufferUtils.reallocateBuffer(m_indices, m_count, newCapacity);
+        m_changes = BufferUtils.reallocateBuffer(m_changes, m_count, newCapacity);
+        Body[] bodies = new Body[newCapacity];
+        System.arraycopy(m_bodies, 0, bodies, 0, m_count);
+        m_bodies = bodies;
+      }
+      e = m_count++;
+      m_indices[e] = index;
+      m_changes[e] = 0;
+      m_entries[index] = e + 1;
+    }
+    m_bodies[e] = b;
+    return e;
+  }
+
+  private void ensureIndexCapacity(int capacity) {
+    if (capacity > m_entries.length) {
+      int newCapacity = MathUtils.max(capacity, 2 * m_entries.length);
+      m_entries = BufferUtils.reallocateBuffer(m_entries, m_entries.length, newCapacity);
+      m_transforms =
+          BufferUtils.reallocateBuffer(m_transforms, m_transforms.length, 3 * newCapacity);
+    }
+  }
+
+  private void storeTransform(Body b) {
+    int index = b.m_worldIndex;
+    m_transforms[3 * index] = b.m_xf.p.x;
+    m_transforms[3 * index + 1] = b.m_xf.p.y;
+    m_transforms[3 * index + 2] = b.m_sweep.a;
+  }
+}
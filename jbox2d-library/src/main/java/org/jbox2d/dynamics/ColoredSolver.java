@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.dynamics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jbox2d.common.Settings;
+import org.jbox2d.dynamics.contacts.ContactSolver;
+import org.jbox2d.dynamics.contacts.ContactSolver.PositionSolverTemp;
+import org.jbox2d.dynamics.contacts.ContactVelocityConstraint;
+import org.jbox2d.dynamics.joints.Joint;
+import org.jbox2d.dynamics.joints.JointType;
+import org.jbox2d.pooling.normal.ThreadLocalWorldPool;
+
+/**
+ * Solves the constraints of one large island in parallel. The constraints are greedily colored in
+ * island order so that no two constraints of a color share a dynamic body, then every color is
+ * solved as a batch on a {@link ForkJoinPool}, one color after the other. Static and kinematic
+ * bodies are only read by the solver, so they don't count as shared. The colors and their order
+ * only depend on the island, so the result is the same for any number of threads, though not the
+ * same as the serial solver's. A pool with a parallelism of one solves the colors on the calling
+ * thread. This is an internal class.
+ */
+public class ColoredSolver {
+
+  /**
+   * Islands with fewer contacts and joints than this are left to the serial solver.
+   */
+  public static int MIN_CONSTRAINTS = 256;
+
+  /**
+   * The number of constraints of a color solved by one task.
+   */
+  public static int CHUNK_SIZE = 64;
+
+  // A color is a bit of the per body masks.
+  private static final int MAX_COLORS = 64;
+
+  private final ForkJoinPool m_pool;
+  private final boolean m_concurrentJoints;
+
+  private ContactSolver m_contactSolver;
+  private Joint[] m_joints;
+  private SolverData m_data;
+
+  private long[] m_bodyColors = new long[64];
+
+  private int m_colorCount;
+  // The contacts and joints of color i are at [starts[i], starts[i + 1]) in the orders.
+  private final int[] m_contactStarts = new int[MAX_COLORS + 1];
+  private final int[] m_jointStarts = new int[MAX_COLORS + 1];
+  private int[] m_contactOrder = new int[64];
+  private int[] m_jointOrder = new int[16];
+  private int[] m_itemColors = new int[64];
+
+  // Constraints left over when all colors are taken, and joints with more than two bodies.
+  private int[] m_serialContacts = new int[16];
+  private int m_serialContactCount;
+  private int[] m_serialJoints = new int[16];
+  private int m_serialJointCount;
+
+  // One per chunk of the largest color, and one for the serial constraints.
+  private PositionSolverTemp[] m_temps = new PositionSolverTemp[0];
+  private boolean[] m_chunkJointsOkay = new boolean[0];
+  private final PositionSolverTemp m_serialTemp = new PositionSolverTemp();
+
+  /**
+   * @param pool the pool to solve the colors on
+   * @param concurrentJoints true if the world pool can be used from several threads (see
+   *        {@link ThreadLocalWorldPool}), otherwise joints are solved on the calling thread.
+   */
+  public ColoredSolver(ForkJoinPool pool, boolean concurrentJoints) {
+    assert (pool != null);
+    m_pool = pool;
+    m_concurrentJoints = concurrentJoints;
+  }
+
+  public ForkJoinPool getPool() {
+    return m_pool;
+  }
+
+  public boolean isConcurrentJoints() {
+    return m_concurrentJoints;
+  }
+
+  /**
+   * Colors the constraints of the island. The velocity constraints of the contact solver and the
+   * joints have to be initialized already.
+   */
+  public void color(Island island, ContactSolver contactSolver, SolverData data) {
+    m_contactSolver = contactSolver;
+    m_joints = island.m_joints;
+    m_data = data;
+
+    final int bodyCount = island.m_bodyCount;
+    final int contactCount = contactSolver.m_count;
+    final int jointCount = island.m_jointCount;
+    final Body[] bodies = island.m_bodies;
+
+    if (m_bodyColors.length < bodyCount) {
+      m_bodyColors = new long[bodyCount * 2];
+    }
+    if (m_itemColors.length < contactCount + jointCount) {
+      m_itemColors = new int[(contactCount + jointCount) * 2];
+    }
+    if (m_contactOrder.length < contactCount) {
+      m_contactOrder = new int[contactCount * 2];
+    }
+    if (m_jointOrder.length < jointCount) {
+      m_jointOrder = new int[jointCount * 2];
+    }
+    final long[] bodyColors = m_bodyColors;
+    for (int i = 0; i < bodyCount; ++i) {
+      bodyColors[i] = 0;
+    }
+    final int[] itemColors = m_itemColors;
+    m_serialContactCount = 0;
+    m_serialJointCount = 0;
+    m_colorCount = 0;
+    for (int i = 0; i <= MAX_COLORS; ++i) {
+      m_contactStarts[i] = 0;
+      m_jointStarts[i] = 0;
+    }
+
+    // Joints first, they are usually fewer and more constrained.
+    for (int i = 0; i < jointCount; ++i) {
+      Joint joint = m_joints[i];
+      JointType type = joint.getType();
+      int color = -1;
+      if (m_concurrentJoints && type != JointType.GEAR && type != JointType.CONSTANT_VOLUME) {
+        Body bodyA = joint.getBodyA();
+        Body bodyB = joint.getBodyB();
+        int indexA = bodyA.m_type == BodyType.DYNAMIC ? bodyA.m_islandIndex : -1;
+        int indexB = bodyB.m_type == BodyType.DYNAMIC ? bodyB.m_islandIndex : -1;
+        color = pickColor(indexA, indexB);
+      }
+      itemColors[contactCount + i] = color;
+      if (color == -1) {
+        addSerialJoint(i);
+      } else {
+        ++m_jointStarts[color + 1];
+      }
+    }
+
+    final ContactVelocityConstraint[] vcs = contactSolver.m_velocityConstraints;
+    for (int i = 0; i < contactCount; ++i) {
+      ContactVelocityConstraint vc = vcs[i];
+      int indexA = bodies[vc.indexA].m_type == BodyType.DYNAMIC ? vc.indexA : -1;
+      int indexB = bodies[vc.indexB].m_type == BodyType.DYNAMIC ? vc.indexB : -1;
+      int color = pickColor(indexA, indexB);
+      itemColors[i] = color;
+      if (color == -1) {
+        addSerialContact(i);
+      } else {
+        ++m_contactStarts[color + 1];
+      }
+    }
+
+    // Prefix sums, then fill in island order.
+    for (int i = 0; i < m_colorCount; ++i) {
+      m_contactStarts[i + 1] += m_contactStarts[i];
+      m_jointStarts[i + 1] += m_jointStarts[i];
+    }
+    for (int i = 0; i < contactCount; ++i) {
+      int color = itemColors[i];
+      if (color != -1) {
+        m_contactOrder[m_contactStarts[color]++] = i;
+      }
+    }
+    for (int i = 0; i < jointCount; ++i) {
+      int color = itemColors[contactCount + i];
+      if (color != -1) {
+        m_jointOrder[m_jointStarts[color]++] = i;
+      }
+    }
+    // Filling advanced every start to the next color's start, shift them back.
+    for (int i = m_colorCount; i > 0; --i) {
+      m_contactStarts[i] = m_contactStarts[i - 1];
+      m_jointStarts[i] = m_jointStarts[i - 1];
+    }
+    m_contactStarts[0] = 0;
+    m_jointStarts[0] = 0;
+
+    int maxChunks = 0;
+    for (int i = 0; i < m_colorCount; ++i) {
+      maxChunks = Math.max(maxChunks, getChunkCount(i));
+    }
+    if (m_temps.length < maxChunks) {
+      PositionSolverTemp[] old = m_temps;
+      m_temps = new PositionSolverTemp[maxChunks];
+      System.arraycopy(old, 0, m_temps, 0, old.length);
+      for (int i = old.length; i < maxChunks; ++i) {
+        m_temps[i] = new PositionSolverTemp();
+      }
+      m_chunkJointsOkay = new boolean[maxChunks];
+    }
+  }
+
+  /**
+   * @return the lowest color neither body has, or -1 if all are taken
+   */
+  private int pickColor(int indexA, int indexB) {
+    long used = 0;
+    if (indexA != -1) {
+      used |= m_bodyColors[indexA];
+    }
+    if (indexB != -1) {
+      used |= m_bodyColors[indexB];
+    }
+    if (used == -1L) {
+      return -1;
+    }
+    int color = Long.numberOfTrailingZeros(~used);
+    long bit = 1L << color;
+    if (indexA != -1) {
+      m_bodyColors[indexA] |= bit;
+    }
+    if (indexB != -1) {
+      m_bodyColors[indexB] |= bit;
+    }
+    m_colorCount = Math.max(m_colorCount, color + 1);
+    return color;
+  }
+
+  private void addSerialContact(int index) {
+    if (m_serialContactCount == m_serialContacts.length) {
+      int[] old = m_serialContacts;
+      m_serialContacts = new int[old.length * 2];
+      System.arraycopy(old, 0, m_serialContacts, 0, old.length);
+    }
+    m_serialContacts[m_serialContactCount++] = index;
+  }
+
+  private void addSerialJoint(int index) {
+    if (m_serialJointCount == m_serialJoints.length) {
+      int[] old = m_serialJoints;
+      m_serialJoints = new int[old.length * 2];
+      System.arraycopy(old, 0, m_serialJoints, 0, old.length);
+    }
+    m_serialJoints[m_serialJointCount++] = index;
+  }
+
+  private int getChunkCount(int color) {
+    int count = m_contactStarts[color + 1] - m_contactStarts[color] + m_jointStarts[color + 1]
+        - m_jointStarts[color];
+    return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+  }
+
+  /**
+   * One velocity iteration: the joints that couldn't be colored, then the colors in order, then the
+   * contacts that couldn't be colored.
+   */
+  public void solveVelocityConstraints() {
+    for (int i = 0; i < m_serialJointCount; ++i) {
+      m_joints[m_serialJoints[i]].solveVelocityConstraints(m_data);
+    }
+    final boolean inline = m_pool.getParallelism() == 1;
+    for (int color = 0; color < m_colorCount; ++color) {
+      int chunkCount = getChunkCount(color);
+      if (chunkCount == 1 || inline) {
+        for (int chunk = 0; chunk < chunkCount; ++chunk) {
+          solveVelocityChunk(color, chunk);
+        }
+      } else {
+        m_pool.invoke(new VelocityTask(this, color, 0, chunkCount));
+      }
+    }
+    m_contactSolver.solveVelocityConstraints(m_serialContacts, 0, m_serialContactCount);
+  }
+
+  /**
+   * One position iteration, in the same order as the velocity iterations.
+   * 
+   * @return true if the position errors are small
+   */
+  public boolean solvePositionConstraints() {
+    boolean jointsOkay = true;
+    for (int i = 0; i < m_serialJointCount; ++i) {
+      boolean jointOkay = m_joints[m_serialJoints[i]].solvePositionConstraints(m_data);
+      jointsOkay = jointsOkay && jointOkay;
+    }
+    float minSeparation = 0.0f;
+    final boolean inline = m_pool.getParallelism() == 1;
+    for (int color = 0; color < m_colorCount; ++color) {
+      int chunkCount = getChunkCount(color);
+      if (chunkCount == 1 || inline) {
+        for (int chunk = 0; chunk < chunkCount; ++chunk) {
+          minSeparation = Math.min(minSeparation, solvePositionChunk(color, chunk));
+          jointsOkay = jointsOkay && m_chunkJointsOkay[chunk];
+        }
+      } else {
+        PositionTask task = new PositionTask(this, color, 0, chunkCount);
+        m_pool.invoke(task);
+        minSeparation = Math.min(minSeparation, task.minSeparation);
+        jointsOkay = jointsOkay && task.jointsOkay;
+      }
+    }
+    minSeparation = Math.min(minSeparation, m_contactSolver.solvePositionConstraints(
+        m_serialContacts, 0, m_serialContactCount, m_serialTemp));
+
+    // Same tolerance as ContactSolver.solvePositionConstraints().
+    return minSeparation >= -3.0f * Settings.linearSlop && jointsOkay;
+  }
+
+  private void solveVelocityChunk(int color, int chunk) {
+    final int contactStart = m_contactStarts[color];
+    final int contactCount = m_contactStarts[color + 1] - contactStart;
+    final int jointStart = m_jointStarts[color];
+    final int start = chunk * CHUNK_SIZE;
+    final int end = Math.min(start + CHUNK_SIZE, contactCount + m_jointStarts[color + 1]
+        - jointStart);
+    if (start < contactCount) {
+      m_contactSolver.solveVelocityConstraints(m_contactOrder, contactStart + start, contactStart
+          + Math.min(end, contactCount));
+    }
+    for (int i = Math.max(start, contactCount); i < end; ++i) {
+      m_joints[m_jointOrder[jointStart + i - contactCount]].solveVelocityConstraints(m_data);
+    }
+  }
+
+  /**
+   * @return the smallest separation of the chunk's contacts, whether its joints are solved is left
+   *         in {@link #m_chunkJointsOkay}
+   */
+  private float solvePositionChunk(int color, int chunk) {
+    final int contactStart = m_contactStarts[color];
+    final int contactCount = m_contactStarts[color + 1] - contactStart;
+    final int jointStart = m_jointStarts[color];
+    final int start = chunk * CHUNK_SIZE;
+    final int end = Math.min(start + CHUNK_SIZE, contactCount + m_jointStarts[color + 1]
+        - jointStart);
+    float minSeparation = 0.0f;
+    if (start < contactCount) {
+      minSeparation = m_contactSolver.solvePositionConstraints(m_contactOrder, contactStart + start,
+          contactStart + Math.min(end, contactCount), m_temps[chunk]);
+    }
+    boolean jointsOkay = true;
+    for (int i = Math.max(start, contactCount); i < end; ++i) {
+      boolean jointOkay =
+          m_joints[m_jointOrder[jointStart + i - contactCount]].solvePositionConstraints(m_data);
+      jointsOkay = jointsOkay && jointOkay;
+    }
+    m_chunkJointsOkay[chunk] = jointsOkay;
+    return minSeparation;
+  }
+
+  private static class VelocityTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ColoredSolver solver;
+    private final int color;
+    private final int start;
+    private final int end;
+
+    VelocityTask(ColoredSolver solver, int color, int start, int end) {
+      this.solver = solver;
+      this.color = color;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new VelocityTask(solver, color, start, mid), new VelocityTask(solver, color, mid,
+            end));
+        return;
+      }
+      solver.solveVelocityChunk(color, start);
+    }
+  }
+
+  /**
+   * Solves the chunks [start, end) of a color and gathers their errors.
+   */
+  private static class PositionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ColoredSolver solver;
+    private final int color;
+    private final int start;
+    private final int end;
+
+    float minSeparation;
+    boolean jointsOkay;
+
+    PositionTask(ColoredSolver solver, int color, int start, int end) {
+      this.solver = solver;
+      this.color = color;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int mid = (start + end) >>> 1;
+        PositionTask left = new PositionTask(solver, color, start, mid);
+        PositionTask right = new PositionTask(solver, color, mid, end);
+        invokeAll(left, right);
+        minSeparation = Math.min(left.minSeparation, right.minSeparation);
+        jointsOkay = left.jointsOkay && right.jointsOkay;
+        return;
+      }
+
+      minSeparation = solver.solvePositionChunk(color, start);
+      jointsOkay = solver.m_chunkJointsOkay[start];
+    }
+  }
+}
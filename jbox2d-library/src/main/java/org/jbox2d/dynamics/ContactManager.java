@@ -23,6 +23,9 @@
  ******************************************************************************/
 package org.jbox2d.dynamics;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import org.jbox2d.callbacks.ContactFilter;
 import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.callbacks.PairCallback;
@@ -45,6 +48,20 @@ public class ContactManager implements PairCallback {
 
   private final World pool;
 
+  /**
+   * Contacts are evaluated in chunks of this size when the narrow phase runs in parallel.
+   */
+  public static int COLLIDE_CHUNK_SIZE = 256;
+
+  private static final byte COLLIDE_SKIP = 0;
+  private static final byte COLLIDE_DESTROY = 1;
+  private static final byte COLLIDE_UPDATE = 2;
+  private static final byte COLLIDE_TOUCHING = 3;
+
+  private ForkJoinPool m_narrowPhasePool;
+  private Contact[] m_collideContacts = new Contact[0];
+  private byte[] m_collideStates = new byte[0];
+
   public ContactManager(World argPool, BroadPhase broadPhase) {
     m_contactList = null;
     m_contactCount = 0;
@@ -226,11 +243,30 @@ public class ContactManager implements PairCallback {
     --m_contactCount;
   }
 
+  /**
+   * Evaluate contact manifolds on the given pool. The world pool must be safe to use from several
+   * threads. Pass null to go back to the serial narrow phase.
+   * 
+   * @param narrowPhasePool
+   */
+  public void setNarrowPhasePool(ForkJoinPool narrowPhasePool) {
+    m_narrowPhasePool = narrowPhasePool;
+  }
+
+  public ForkJoinPool getNarrowPhasePool() {
+    return m_narrowPhasePool;
+  }
+
   /**
    * This is the top level collision call for the time step. Here all the narrow phase collision is
    * processed for the world contact list.
    */
   public void collide() {
+    if (m_narrowPhasePool != null) {
+      collideParallel();
+      return;
+    }
+
     // Update awake contacts.
     Contact c = m_contactList;
     while (c != null) {
@@ -289,4 +325,146 @@ public class ContactManager implements PairCallback {
       c = c.getNext();
     }
   }
+
+  /**
+   * Parallel version of {@link #collide()}. The contact list is copied into an array and sorted
+   * into contacts to destroy, skip or update, then the manifolds of the contacts to update are
+   * computed in parallel. Finally the contacts are walked again in list order to destroy contacts
+   * and to wake bodies and call the listener, so callbacks arrive in the same order as with the
+   * serial narrow phase. Skipped contacts are checked again at that point, in case one of their
+   * bodies was woken up by an earlier contact.
+   */
+  private void collideParallel() {
+    if (m_collideContacts.length < m_contactCount) {
+      int newLength = m_contactCount * 2;
+      m_collideContacts = new Contact[newLength];
+      m_collideStates = new byte[newLength];
+    }
+    final Contact[] contacts = m_collideContacts;
+    final byte[] states = m_collideStates;
+
+    int count = 0;
+    for (Contact c = m_contactList; c != null; c = c.getNext()) {
+      contacts[count] = c;
+      states[count] = collideState(c);
+      ++count;
+    }
+    assert (count == m_contactCount);
+
+    m_narrowPhasePool.invoke(new CollideTask(contacts, states, 0, count));
+
+    for (int i = 0; i < count; ++i) {
+      Contact c = contacts[i];
+      contacts[i] = null;
+      switch (states[i]) {
+        case COLLIDE_DESTROY:
+          destroy(c);
+          break;
+        case COLLIDE_UPDATE:
+          c.updateTouching(false, m_contactListener);
+          break;
+        case COLLIDE_TOUCHING:
+          c.updateTouching(true, m_contactListener);
+          break;
+        default:
+          Body bodyA = c.getFixtureA().getBody();
+          Body bodyB = c.getFixtureB().getBody();
+          boolean activeA = bodyA.isAwake() && bodyA.m_type != BodyType.STATIC;
+          boolean activeB = bodyB.isAwake() && bodyB.m_type != BodyType.STATIC;
+          if (activeA == false && activeB == false) {
+            break;
+          }
+          if (overlaps(c) == false) {
+            destroy(c);
+            break;
+          }
+          c.update(m_contactListener);
+          break;
+      }
+    }
+  }
+
+  /**
+   * Does the filtering and broad-phase checks of {@link #collide()} for one contact, without
+   * destroying or updating it.
+   */
+  private byte collideState(Contact c) {
+    Fixture fixtureA = c.getFixtureA();
+    Fixture fixtureB = c.getFixtureB();
+    Body bodyA = fixtureA.getBody();
+    Body bodyB = fixtureB.getBody();
+
+    // is this contact flagged for filtering?
+    if ((c.m_flags & Contact.FILTER_FLAG) == Contact.FILTER_FLAG) {
+      // Should these bodies collide?
+      if (bodyB.shouldCollide(bodyA) == false) {
+        return COLLIDE_DESTROY;
+      }
+
+      // Check user filtering.
+      if (m_contactFilter != null && m_contactFilter.shouldCollide(fixtureA, fixtureB) == false) {
+        return COLLIDE_DESTROY;
+      }
+
+      // Clear the filtering flag.
+      c.m_flags &= ~Contact.FILTER_FLAG;
+    }
+
+    boolean activeA = bodyA.isAwake() && bodyA.m_type != BodyType.STATIC;
+    boolean activeB = bodyB.isAwake() && bodyB.m_type != BodyType.STATIC;
+
+    // At least one body must be awake and it must be dynamic or kinematic.
+    if (activeA == false && activeB == false) {
+      return COLLIDE_SKIP;
+    }
+
+    // Here we destroy contacts that cease to overlap in the broad-phase.
+    if (overlaps(c) == false) {
+      return COLLIDE_DESTROY;
+    }
+
+    return COLLIDE_UPDATE;
+  }
+
+  private boolean overlaps(Contact c) {
+    int proxyIdA = c.getFixtureA().m_proxies[c.getChildIndexA()].proxyId;
+    int proxyIdB = c.getFixtureB().m_proxies[c.getChildIndexB()].proxyId;
+    return m_broadPhase.testOverlap(proxyIdA, proxyIdB);
+  }
+
+  /**
+   * Computes the manifolds of the contacts in [start, end) that are flagged for update, and flags
+   * the ones that are touching.
+   */
+  private static class CollideTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Contact[] contacts;
+    private final byte[] states;
+    private final int start;
+    private final int end;
+
+    CollideTask(Contact[] contacts, byte[] states, int start, int end) {
+      this.contacts = contacts;
+      this.states = states;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > COLLIDE_CHUNK_SIZE) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new CollideTask(contacts, states, start, mid),
+            new CollideTask(contacts, states, mid, end));
+        return;
+      }
+
+      for (int i = start; i < end; ++i) {
+        if (states[i] == COLLIDE_UPDATE && contacts[i].updateManifold()) {
+          states[i] = COLLIDE_TOUCHING;
+        }
+      }
+    }
+  }
 }
@@ -377,11 +377,13 @@ public class Fixture {
 
     // Create proxies in the broad-phase.
     m_proxyCount = m_shape.getChildCount();
+    final boolean isStatic = m_body.m_type == BodyType.STATIC;
 
     for (int i = 0; i < m_proxyCount; ++i) {
       FixtureProxy proxy = m_proxies[i];
       m_shape.computeAABB(proxy.aabb, xf, i);
-      proxy.proxyId = broadPhase.createProxy(proxy.aabb, proxy);
+      proxy.proxyId = isStatic ? broadPhase.createStaticProxy(proxy.aabb, proxy)
+          : broadPhase.createProxy(proxy.aabb, proxy);
       proxy.fixture = this;
       proxy.childIndex = i;
     }
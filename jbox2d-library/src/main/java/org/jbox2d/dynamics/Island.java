@@ -23,6 +23,8 @@
  ******************************************************************************/
 package org.jbox2d.dynamics;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.jbox2d.callbacks.ContactImpulse;
 import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.common.MathUtils;
@@ -34,8 +36,6 @@ import org.jbox2d.dynamics.contacts.Contact;
 import org.jbox2d.dynamics.contacts.ContactSolver;
 import org.jbox2d.dynamics.contacts.ContactSolver.ContactSolverDef;
 import org.jbox2d.dynamics.contacts.ContactVelocityConstraint;
-import org.jbox2d.dynamics.contacts.Position;
-import org.jbox2d.dynamics.contacts.Velocity;
 import org.jbox2d.dynamics.joints.Joint;
 
 /*
@@ -169,8 +169,12 @@ public class Island {
   public Contact[] m_contacts;
   public Joint[] m_joints;
 
-  public Position[] m_positions;
-  public Velocity[] m_velocities;
+  /** Flat solver positions, {@code c.x, c.y, a} at {@code 3 * m_islandIndex}. */
+  public float[] m_positions;
+  /** Flat solver velocities, {@code v.x, v.y, w} at {@code 3 * m_islandIndex}. */
+  public float[] m_velocities;
+  /** Positions at the start of the step, used by the soft step solver. */
+  public float[] m_positions0;
 
   public int m_bodyCount;
   public int m_jointCount;
@@ -181,7 +185,15 @@ public class Island {
   public int m_jointCapacity;
 
   public Island() {
+    this(ContactSolver.INITIAL_NUM_CONSTRAINTS);
+  }
 
+  /**
+   * @param contactCapacity the initial number of contact constraints, the solver grows as needed.
+   */
+  public Island(int contactCapacity) {
+    contactSolver = new ContactSolver(contactCapacity);
+    toiContactSolver = new ContactSolver(Settings.maxTOIContacts);
   }
 
   public void init(int bodyCapacity, int contactCapacity, int jointCapacity,
@@ -207,23 +219,14 @@ public class Island {
     }
 
     // dynamic array
-    if (m_velocities == null || m_bodyCapacity > m_velocities.length) {
-      final Velocity[] old = m_velocities == null ? new Velocity[0] : m_velocities;
-      m_velocities = new Velocity[m_bodyCapacity];
-      System.arraycopy(old, 0, m_velocities, 0, old.length);
-      for (int i = old.length; i < m_velocities.length; i++) {
-        m_velocities[i] = new Velocity();
-      }
+    if (m_velocities == null || 3 * m_bodyCapacity > m_velocities.length) {
+      m_velocities = new float[3 * m_bodyCapacity];
     }
 
     // dynamic array
-    if (m_positions == null || m_bodyCapacity > m_positions.length) {
-      final Position[] old = m_positions == null ? new Position[0] : m_positions;
-      m_positions = new Position[m_bodyCapacity];
-      System.arraycopy(old, 0, m_positions, 0, old.length);
-      for (int i = old.length; i < m_positions.length; i++) {
-        m_positions[i] = new Position();
-      }
+    if (m_positions == null || 3 * m_bodyCapacity > m_positions.length) {
+      m_positions = new float[3 * m_bodyCapacity];
+      m_positions0 = new float[3 * m_bodyCapacity];
     }
   }
 
@@ -233,12 +236,70 @@ public class Island {
     m_jointCount = 0;
   }
 
-  private final ContactSolver contactSolver = new ContactSolver();
+  private final ContactSolver contactSolver;
   private final Timer timer = new Timer();
   private final SolverData solverData = new SolverData();
   private final ContactSolverDef solverDef = new ContactSolverDef();
+  private boolean m_positionSolved;
+  private ColoredSolver m_coloredSolver;
+
+  /**
+   * Solves islands with many constraints color by color on the given pool, see
+   * {@link World#setColoredSolverPool(ForkJoinPool)}. Pass null to always solve serially.
+   * 
+   * @param pool
+   * @param concurrentJoints true if joints can be solved on the pool too
+   */
+  public void setColoredSolverPool(ForkJoinPool pool, boolean concurrentJoints) {
+    if (pool == null) {
+      m_coloredSolver = null;
+    } else if (m_coloredSolver == null || m_coloredSolver.getPool() != pool
+        || m_coloredSolver.isConcurrentJoints() != concurrentJoints) {
+      m_coloredSolver = new ColoredSolver(pool, concurrentJoints);
+    }
+  }
 
   public void solve(Profile profile, TimeStep step, Vec2 gravity, boolean allowSleep) {
+    initContactSolver(step);
+    solveConstraints(profile, step, gravity);
+    report();
+    if (allowSleep) {
+      updateSleep(step.dt);
+    }
+  }
+
+  /**
+   * Initializes the contact constraints from the island's contacts. This captures the island index
+   * of each body, so it has to happen before another island is built with the same (static)
+   * bodies.
+   * 
+   * @param step
+   */
+  public void initContactSolver(TimeStep step) {
+    solverDef.step = step;
+    solverDef.contacts = m_contacts;
+    solverDef.count = m_contactCount;
+    solverDef.positions = m_positions;
+    solverDef.velocities = m_velocities;
+
+    contactSolver.init(solverDef);
+  }
+
+  /**
+   * Integrates velocities, solves the velocity and position constraints and integrates positions,
+   * then copies the state back to the bodies. Listener reporting and sleeping are left to
+   * {@link #report()} and {@link #updateSleep(float)}. Static bodies are only read, so islands
+   * that share them can be solved concurrently.
+   * 
+   * @param profile
+   * @param step
+   * @param gravity
+   */
+  public void solveConstraints(Profile profile, TimeStep step, Vec2 gravity) {
+    if (step.subSteps > 0) {
+      solveSoftConstraints(profile, step, gravity);
+      return;
+    }
 
     // System.out.println("Solving Island");
     float h = step.dt;
@@ -252,9 +313,11 @@ public class Island {
       final Vec2 v = b.m_linearVelocity;
       float w = b.m_angularVelocity;
 
-      // Store positions for continuous collision.
-      bm_sweep.c0.set(bm_sweep.c);
-      bm_sweep.a0 = bm_sweep.a;
+      if (b.m_type != BodyType.STATIC) {
+        // Store positions for continuous collision.
+        bm_sweep.c0.set(bm_sweep.c);
+        bm_sweep.a0 = bm_sweep.a;
+      }
 
       if (b.m_type == BodyType.DYNAMIC) {
         // Integrate velocities.
@@ -276,12 +339,13 @@ public class Island {
         w *= 1.0f / (1.0f + h * b.m_angularDamping);
       }
 
-      m_positions[i].c.x = c.x;
-      m_positions[i].c.y = c.y;
-      m_positions[i].a = a;
-      m_velocities[i].v.x = v.x;
-      m_velocities[i].v.y = v.y;
-      m_velocities[i].w = w;
+      final int offset = 3 * i;
+      m_positions[offset] = c.x;
+      m_positions[offset + 1] = c.y;
+      m_positions[offset + 2] = a;
+      m_velocities[offset] = v.x;
+      m_velocities[offset + 1] = v.y;
+      m_velocities[offset + 2] = w;
     }
 
     timer.reset();
@@ -292,13 +356,6 @@ public class Island {
     solverData.velocities = m_velocities;
 
     // Initialize velocity constraints.
-    solverDef.step = step;
-    solverDef.contacts = m_contacts;
-    solverDef.count = m_contactCount;
-    solverDef.positions = m_positions;
-    solverDef.velocities = m_velocities;
-
-    contactSolver.init(solverDef);
     // System.out.println("island init vel");
     contactSolver.initializeVelocityConstraints();
 
@@ -311,12 +368,23 @@ public class Island {
       m_joints[i].initVelocityConstraints(solverData);
     }
 
+    ColoredSolver colored = null;
+    if (m_coloredSolver != null && m_contactCount + m_jointCount >= ColoredSolver.MIN_CONSTRAINTS) {
+      colored = m_coloredSolver;
+      colored.color(this, contactSolver, solverData);
+    }
+
     profile.solveInit.accum(timer.getMilliseconds());
 
     // Solve velocity constraints
     timer.reset();
     // System.out.println("island solving velocities");
     for (int i = 0; i < step.velocityIterations; ++i) {
+      if (colored != null) {
+        colored.solveVelocityConstraints();
+        continue;
+      }
+
       for (int j = 0; j < m_jointCount; ++j) {
         m_joints[j].solveVelocityConstraints(solverData);
       }
@@ -330,20 +398,23 @@ public class Island {
 
     // Integrate positions
     for (int i = 0; i < m_bodyCount; ++i) {
-      final Vec2 c = m_positions[i].c;
-      float a = m_positions[i].a;
-      final Vec2 v = m_velocities[i].v;
-      float w = m_velocities[i].w;
+      final int offset = 3 * i;
+      float cx = m_positions[offset];
+      float cy = m_positions[offset + 1];
+      float a = m_positions[offset + 2];
+      float vx = m_velocities[offset];
+      float vy = m_velocities[offset + 1];
+      float w = m_velocities[offset + 2];
 
       // Check for large velocities
-      float translationx = v.x * h;
-      float translationy = v.y * h;
+      float translationx = vx * h;
+      float translationy = vy * h;
 
       if (translationx * translationx + translationy * translationy > Settings.maxTranslationSquared) {
         float ratio = Settings.maxTranslation
             / MathUtils.sqrt(translationx * translationx + translationy * translationy);
-        v.x *= ratio;
-        v.y *= ratio;
+        vx *= ratio;
+        vy *= ratio;
       }
 
       float rotation = h * w;
@@ -353,18 +424,30 @@ public class Island {
       }
 
       // Integrate
-      c.x += h * v.x;
-      c.y += h * v.y;
+      cx += h * vx;
+      cy += h * vy;
       a += h * w;
 
-      m_positions[i].a = a;
-      m_velocities[i].w = w;
+      m_positions[offset] = cx;
+      m_positions[offset + 1] = cy;
+      m_positions[offset + 2] = a;
+      m_velocities[offset] = vx;
+      m_velocities[offset + 1] = vy;
+      m_velocities[offset + 2] = w;
     }
 
     // Solve position constraints
     timer.reset();
-    boolean positionSolved = false;
+    m_positionSolved = false;
     for (int i = 0; i < step.positionIterations; ++i) {
+      if (colored != null) {
+        if (colored.solvePositionConstraints()) {
+          m_positionSolved = true;
+          break;
+        }
+        continue;
+      }
+
       boolean contactsOkay = contactSolver.solvePositionConstraints();
 
       boolean jointsOkay = true;
@@ -375,60 +458,226 @@ public class Island {
 
       if (contactsOkay && jointsOkay) {
         // Exit early if the position errors are small.
-        positionSolved = true;
+        m_positionSolved = true;
         break;
       }
     }
 
-    // Copy state buffers back to the bodies
+    copyStateBack();
+
+    profile.solvePosition.accum(timer.getMilliseconds());
+  }
+
+  /**
+   * Copies the state buffers back to the bodies.
+   */
+  private void copyStateBack() {
     for (int i = 0; i < m_bodyCount; ++i) {
       Body body = m_bodies[i];
-      body.m_sweep.c.x = m_positions[i].c.x;
-      body.m_sweep.c.y = m_positions[i].c.y;
-      body.m_sweep.a = m_positions[i].a;
-      body.m_linearVelocity.x = m_velocities[i].v.x;
-      body.m_linearVelocity.y = m_velocities[i].v.y;
-      body.m_angularVelocity = m_velocities[i].w;
+      if (body.m_type == BodyType.STATIC) {
+        continue;
+      }
+      final int offset = 3 * i;
+      body.m_sweep.c.x = m_positions[offset];
+      body.m_sweep.c.y = m_positions[offset + 1];
+      body.m_sweep.a = m_positions[offset + 2];
+      body.m_linearVelocity.x = m_velocities[offset];
+      body.m_linearVelocity.y = m_velocities[offset + 1];
+      body.m_angularVelocity = m_velocities[offset + 2];
       body.synchronizeTransform();
     }
+  }
 
-    profile.solvePosition.accum(timer.getMilliseconds());
+  private final TimeStep subStep = new TimeStep();
 
-    report(contactSolver.m_velocityConstraints);
+  /**
+   * The soft step solver: contacts are soft constraints, solved once in each of
+   * {@link TimeStep#subSteps} sub-steps with a relaxation pass after the positions are integrated,
+   * instead of with velocity and position iterations. Joints are initialized, solved and position
+   * corrected once per sub-step.
+   */
+  private void solveSoftConstraints(Profile profile, TimeStep step, Vec2 gravity) {
+    final int subSteps = step.subSteps;
+    final float h = step.dt / subSteps;
+    final float inv_h = subSteps * step.inv_dt;
 
-    if (allowSleep) {
-      float minSleepTime = Float.MAX_VALUE;
+    // Initialize the body state.
+    for (int i = 0; i < m_bodyCount; ++i) {
+      final Body b = m_bodies[i];
+      final Sweep bm_sweep = b.m_sweep;
+
+      if (b.m_type != BodyType.STATIC) {
+        // Store positions for continuous collision.
+        bm_sweep.c0.set(bm_sweep.c);
+        bm_sweep.a0 = bm_sweep.a;
+      }
+
+      final int offset = 3 * i;
+      m_positions[offset] = bm_sweep.c.x;
+      m_positions[offset + 1] = bm_sweep.c.y;
+      m_positions[offset + 2] = bm_sweep.a;
+      m_velocities[offset] = b.m_linearVelocity.x;
+      m_velocities[offset + 1] = b.m_linearVelocity.y;
+      m_velocities[offset + 2] = b.m_angularVelocity;
+    }
+    System.arraycopy(m_positions, 0, m_positions0, 0, 3 * m_bodyCount);
+
+    timer.reset();
 
-      final float linTolSqr = Settings.linearSleepTolerance * Settings.linearSleepTolerance;
-      final float angTolSqr = Settings.angularSleepTolerance * Settings.angularSleepTolerance;
+    subStep.dt = h;
+    subStep.inv_dt = inv_h;
+    subStep.velocityIterations = 1;
+    subStep.positionIterations = 1;
+    subStep.warmStarting = step.warmStarting;
 
+    solverData.step = subStep;
+    solverData.positions = m_positions;
+    solverData.velocities = m_velocities;
+
+    contactSolver.initializeVelocityConstraints();
+    contactSolver.prepareSoftConstraints(h, subSteps);
+
+    profile.solveInit.accum(timer.getMilliseconds());
+
+    timer.reset();
+    float minSeparation = 0.0f;
+    boolean jointsOkay = true;
+    for (int s = 0; s < subSteps; ++s) {
+      // Integrate velocities and apply damping.
       for (int i = 0; i < m_bodyCount; ++i) {
-        Body b = m_bodies[i];
-        if (b.getType() == BodyType.STATIC) {
+        final Body b = m_bodies[i];
+        if (b.m_type != BodyType.DYNAMIC) {
           continue;
         }
+        final int offset = 3 * i;
+        float linearDamping = 1.0f / (1.0f + h * b.m_linearDamping);
+        m_velocities[offset] = linearDamping
+            * (m_velocities[offset] + h * (b.m_gravityScale * gravity.x + b.m_invMass
+                * b.m_force.x));
+        m_velocities[offset + 1] = linearDamping
+            * (m_velocities[offset + 1] + h * (b.m_gravityScale * gravity.y + b.m_invMass
+                * b.m_force.y));
+        m_velocities[offset + 2] = (m_velocities[offset + 2] + h * b.m_invI * b.m_torque)
+            / (1.0f + h * b.m_angularDamping);
+      }
 
-        if ((b.m_flags & Body.e_autoSleepFlag) == 0
-            || b.m_angularVelocity * b.m_angularVelocity > angTolSqr
-            || Vec2.dot(b.m_linearVelocity, b.m_linearVelocity) > linTolSqr) {
-          b.m_sleepTime = 0.0f;
-          minSleepTime = 0.0f;
-        } else {
-          b.m_sleepTime += h;
-          minSleepTime = MathUtils.min(minSleepTime, b.m_sleepTime);
-        }
+      if (step.warmStarting) {
+        contactSolver.warmStart();
       }
 
-      if (minSleepTime >= Settings.timeToSleep && positionSolved) {
-        for (int i = 0; i < m_bodyCount; ++i) {
-          Body b = m_bodies[i];
-          b.setAwake(false);
-        }
+      // Joints scale their impulses by the ratio to the previous step.
+      subStep.dtRatio = s == 0 ? step.dtRatio : 1.0f;
+      for (int i = 0; i < m_jointCount; ++i) {
+        m_joints[i].initVelocityConstraints(solverData);
+      }
+      for (int i = 0; i < m_jointCount; ++i) {
+        m_joints[i].solveVelocityConstraints(solverData);
+      }
+
+      contactSolver.solveSoftVelocityConstraints(m_positions0, inv_h, true);
+
+      integratePositions(step.dt, h);
+
+      jointsOkay = true;
+      for (int i = 0; i < m_jointCount; ++i) {
+        boolean jointOkay = m_joints[i].solvePositionConstraints(solverData);
+        jointsOkay = jointsOkay && jointOkay;
+      }
+
+      // Relax the velocities, so the bias doesn't add energy.
+      minSeparation = contactSolver.solveSoftVelocityConstraints(m_positions0, inv_h, false);
+    }
+
+    contactSolver.finishSoftConstraints(subSteps);
+    contactSolver.storeImpulses();
+    profile.solveVelocity.accum(timer.getMilliseconds());
+
+    timer.reset();
+    m_positionSolved = minSeparation >= -3.0f * Settings.linearSlop && jointsOkay;
+    copyStateBack();
+    profile.solvePosition.accum(timer.getMilliseconds());
+  }
+
+  /**
+   * Integrates the positions over a sub-step, with velocities limited as for the whole step.
+   */
+  private void integratePositions(float dt, float h) {
+    for (int i = 0; i < m_bodyCount; ++i) {
+      final int offset = 3 * i;
+      float vx = m_velocities[offset];
+      float vy = m_velocities[offset + 1];
+      float w = m_velocities[offset + 2];
+
+      // Check for large velocities
+      float translationx = vx * dt;
+      float translationy = vy * dt;
+      float translationSquared = translationx * translationx + translationy * translationy;
+      if (translationSquared > Settings.maxTranslationSquared) {
+        float ratio = Settings.maxTranslation / MathUtils.sqrt(translationSquared);
+        vx *= ratio;
+        vy *= ratio;
+      }
+
+      float rotation = dt * w;
+      if (rotation * rotation > Settings.maxRotationSquared) {
+        float ratio = Settings.maxRotation / MathUtils.abs(rotation);
+        w *= ratio;
+      }
+
+      m_positions[offset] += h * vx;
+      m_positions[offset + 1] += h * vy;
+      m_positions[offset + 2] += h * w;
+      m_velocities[offset] = vx;
+      m_velocities[offset + 1] = vy;
+      m_velocities[offset + 2] = w;
+    }
+  }
+
+  /**
+   * Reports the impulses of the last {@link #solveConstraints} to the contact listener.
+   */
+  public void report() {
+    report(contactSolver.m_velocityConstraints);
+  }
+
+  /**
+   * Advances the sleep timers of the island's bodies after {@link #solveConstraints}, and puts the
+   * whole island to sleep once every body has been resting long enough.
+   * 
+   * @param h the time step
+   */
+  public void updateSleep(float h) {
+    float minSleepTime = Float.MAX_VALUE;
+
+    final float linTolSqr = Settings.linearSleepTolerance * Settings.linearSleepTolerance;
+    final float angTolSqr = Settings.angularSleepTolerance * Settings.angularSleepTolerance;
+
+    for (int i = 0; i < m_bodyCount; ++i) {
+      Body b = m_bodies[i];
+      if (b.getType() == BodyType.STATIC) {
+        continue;
+      }
+
+      if ((b.m_flags & Body.e_autoSleepFlag) == 0
+          || b.m_angularVelocity * b.m_angularVelocity > angTolSqr
+          || Vec2.dot(b.m_linearVelocity, b.m_linearVelocity) > linTolSqr) {
+        b.m_sleepTime = 0.0f;
+        minSleepTime = 0.0f;
+      } else {
+        b.m_sleepTime += h;
+        minSleepTime = MathUtils.min(minSleepTime, b.m_sleepTime);
+      }
+    }
+
+    if (minSleepTime >= Settings.timeToSleep && m_positionSolved) {
+      for (int i = 0; i < m_bodyCount; ++i) {
+        Body b = m_bodies[i];
+        b.setAwake(false);
       }
     }
   }
 
-  private final ContactSolver toiContactSolver = new ContactSolver();
+  private final ContactSolver toiContactSolver;
   private final ContactSolverDef toiSolverDef = new ContactSolverDef();
 
   public void solveTOI(TimeStep subStep, int toiIndexA, int toiIndexB) {
@@ -437,12 +686,13 @@ public class Island {
 
     // Initialize the body state.
     for (int i = 0; i < m_bodyCount; ++i) {
-      m_positions[i].c.x = m_bodies[i].m_sweep.c.x;
-      m_positions[i].c.y = m_bodies[i].m_sweep.c.y;
-      m_positions[i].a = m_bodies[i].m_sweep.a;
-      m_velocities[i].v.x = m_bodies[i].m_linearVelocity.x;
-      m_velocities[i].v.y = m_bodies[i].m_linearVelocity.y;
-      m_velocities[i].w = m_bodies[i].m_angularVelocity;
+      final int offset = 3 * i;
+      m_positions[offset] = m_bodies[i].m_sweep.c.x;
+      m_positions[offset + 1] = m_bodies[i].m_sweep.c.y;
+      m_positions[offset + 2] = m_bodies[i].m_sweep.a;
+      m_velocities[offset] = m_bodies[i].m_linearVelocity.x;
+      m_velocities[offset + 1] = m_bodies[i].m_linearVelocity.y;
+      m_velocities[offset + 2] = m_bodies[i].m_angularVelocity;
     }
 
     toiSolverDef.contacts = m_contacts;
@@ -493,11 +743,12 @@ public class Island {
     // #endif
 
     // Leap of faith to new safe state.
-    m_bodies[toiIndexA].m_sweep.c0.x = m_positions[toiIndexA].c.x;
-    m_bodies[toiIndexA].m_sweep.c0.y = m_positions[toiIndexA].c.y;
-    m_bodies[toiIndexA].m_sweep.a0 = m_positions[toiIndexA].a;
-    m_bodies[toiIndexB].m_sweep.c0.set(m_positions[toiIndexB].c);
-    m_bodies[toiIndexB].m_sweep.a0 = m_positions[toiIndexB].a;
+    m_bodies[toiIndexA].m_sweep.c0.x = m_positions[3 * toiIndexA];
+    m_bodies[toiIndexA].m_sweep.c0.y = m_positions[3 * toiIndexA + 1];
+    m_bodies[toiIndexA].m_sweep.a0 = m_positions[3 * toiIndexA + 2];
+    m_bodies[toiIndexB].m_sweep.c0.x = m_positions[3 * toiIndexB];
+    m_bodies[toiIndexB].m_sweep.c0.y = m_positions[3 * toiIndexB + 1];
+    m_bodies[toiIndexB].m_sweep.a0 = m_positions[3 * toiIndexB + 2];
 
     // No warm starting is needed for TOI events because warm
     // starting impulses were applied in the discrete solver.
@@ -515,19 +766,23 @@ public class Island {
 
     // Integrate positions
     for (int i = 0; i < m_bodyCount; ++i) {
-      Vec2 c = m_positions[i].c;
-      float a = m_positions[i].a;
-      Vec2 v = m_velocities[i].v;
-      float w = m_velocities[i].w;
+      final int offset = 3 * i;
+      float cx = m_positions[offset];
+      float cy = m_positions[offset + 1];
+      float a = m_positions[offset + 2];
+      float vx = m_velocities[offset];
+      float vy = m_velocities[offset + 1];
+      float w = m_velocities[offset + 2];
 
       // Check for large velocities
-      float translationx = v.x * h;
-      float translationy = v.y * h;
+      float translationx = vx * h;
+      float translationy = vy * h;
       if (translationx * translationx + translationy * translationy > Settings.maxTranslationSquared) {
         float ratio =
             Settings.maxTranslation
                 / MathUtils.sqrt(translationx * translationx + translationy * translationy);
-        v.mulLocal(ratio);
+        vx *= ratio;
+        vy *= ratio;
       }
 
       float rotation = h * w;
@@ -537,24 +792,24 @@ public class Island {
       }
 
       // Integrate
-      c.x += v.x * h;
-      c.y += v.y * h;
+      cx += vx * h;
+      cy += vy * h;
       a += h * w;
 
-      m_positions[i].c.x = c.x;
-      m_positions[i].c.y = c.y;
-      m_positions[i].a = a;
-      m_velocities[i].v.x = v.x;
-      m_velocities[i].v.y = v.y;
-      m_velocities[i].w = w;
+      m_positions[offset] = cx;
+      m_positions[offset + 1] = cy;
+      m_positions[offset + 2] = a;
+      m_velocities[offset] = vx;
+      m_velocities[offset + 1] = vy;
+      m_velocities[offset + 2] = w;
 
       // Sync bodies
       Body body = m_bodies[i];
-      body.m_sweep.c.x = c.x;
-      body.m_sweep.c.y = c.y;
+      body.m_sweep.c.x = cx;
+      body.m_sweep.c.y = cy;
       body.m_sweep.a = a;
-      body.m_linearVelocity.x = v.x;
-      body.m_linearVelocity.y = v.y;
+      body.m_linearVelocity.x = vx;
+      body.m_linearVelocity.y = vy;
       body.m_angularVelocity = w;
       body.synchronizeTransform();
     }
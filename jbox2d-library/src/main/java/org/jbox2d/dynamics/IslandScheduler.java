@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.dynamics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.joints.Joint;
+import org.jbox2d.pooling.normal.ThreadLocalWorldPool;
+
+/**
+ * Collects the awake islands of a time step and solves them concurrently on a
+ * {@link ForkJoinPool}. Every island is copied into its own {@link Island} (with its own contact
+ * solver and solver data), so nothing is shared between tasks except static bodies, which the
+ * solver only reads. Contact listener reports and sleeping are applied afterwards on the stepping
+ * thread, in the order the islands were found, so the outcome does not depend on scheduling. This
+ * is an internal class.
+ */
+public class IslandScheduler {
+
+  /**
+   * Consecutive islands are batched into one task until their combined size (bodies, contacts and
+   * joints) reaches this, so lots of tiny islands don't turn into lots of tiny tasks.
+   */
+  public static int MIN_TASK_SIZE = 64;
+
+  private final ForkJoinPool m_pool;
+  private final boolean m_concurrentJoints;
+  private ForkJoinPool m_coloredSolverPool;
+
+  private Island[] m_islands = new Island[16];
+  private Profile[] m_profiles = new Profile[16];
+  private boolean[] m_concurrent = new boolean[16];
+  private int m_islandCount;
+
+  private int[] m_tasks = new int[16];
+  private int[] m_taskSizes = new int[16];
+  private int m_taskCount;
+
+  /**
+   * @param pool the pool to solve islands on
+   * @param concurrentJoints true if the world pool can be used from several threads (see
+   *        {@link ThreadLocalWorldPool}), so islands with joints can be solved on the pool too.
+   */
+  public IslandScheduler(ForkJoinPool pool, boolean concurrentJoints) {
+    assert (pool != null);
+    m_pool = pool;
+    m_concurrentJoints = concurrentJoints;
+  }
+
+  public ForkJoinPool getPool() {
+    return m_pool;
+  }
+
+  /**
+   * @param pool the pool large islands are solved on color by color, or null
+   */
+  public void setColoredSolverPool(ForkJoinPool pool) {
+    m_coloredSolverPool = pool;
+  }
+
+  public int getIslandCount() {
+    return m_islandCount;
+  }
+
+  public void clear() {
+    m_islandCount = 0;
+    m_taskCount = 0;
+  }
+
+  /**
+   * Copies an island that was just built by the world. The contact constraints are initialized
+   * right away, because the island indices of static bodies get overwritten by the next island.
+   * 
+   * @param island the world's island
+   * @param step
+   */
+  public void add(Island island, TimeStep step) {
+    if (m_islandCount == m_islands.length) {
+      int newLength = m_islandCount * 2;
+      Island[] oldIslands = m_islands;
+      m_islands = new Island[newLength];
+      System.arraycopy(oldIslands, 0, m_islands, 0, m_islandCount);
+      Profile[] oldProfiles = m_profiles;
+      m_profiles = new Profile[newLength];
+      System.arraycopy(oldProfiles, 0, m_profiles, 0, m_islandCount);
+      boolean[] oldConcurrent = m_concurrent;
+      m_concurrent = new boolean[newLength];
+      System.arraycopy(oldConcurrent, 0, m_concurrent, 0, m_islandCount);
+    }
+    if (m_islands[m_islandCount] == null) {
+      m_islands[m_islandCount] = new Island(island.m_contactCount);
+      m_profiles[m_islandCount] = new Profile();
+    }
+
+    final Island copy = m_islands[m_islandCount];
+    copy.setColoredSolverPool(m_coloredSolverPool, m_concurrentJoints);
+    copy.init(island.m_bodyCount, island.m_contactCount, island.m_jointCount, island.m_listener);
+    for (int i = 0; i < island.m_bodyCount; ++i) {
+      copy.add(island.m_bodies[i]);
+    }
+    for (int i = 0; i < island.m_contactCount; ++i) {
+      copy.add(island.m_contacts[i]);
+    }
+    for (int i = 0; i < island.m_jointCount; ++i) {
+      copy.add(island.m_joints[i]);
+    }
+    copy.initContactSolver(step);
+
+    // Joints draw their temporaries from the world pool, so that has to be safe to share between
+    // threads. They also read the island index of their bodies when they initialize, and static
+    // bodies are re-indexed by every island that touches them, so islands with joints on static
+    // bodies stay on the stepping thread.
+    boolean concurrent = true;
+    for (int i = 0; i < copy.m_jointCount && concurrent; ++i) {
+      Joint joint = copy.m_joints[i];
+      concurrent = m_concurrentJoints && joint.getBodyA().m_type != BodyType.STATIC
+          && joint.getBodyB().m_type != BodyType.STATIC;
+    }
+    m_concurrent[m_islandCount] = concurrent;
+
+    if (concurrent) {
+      int size = copy.m_bodyCount + copy.m_contactCount;
+      if (m_taskCount == 0 || m_taskSizes[m_taskCount - 1] >= MIN_TASK_SIZE) {
+        if (m_taskCount == m_tasks.length) {
+          int[] oldTasks = m_tasks;
+          m_tasks = new int[m_taskCount * 2];
+          System.arraycopy(oldTasks, 0, m_tasks, 0, m_taskCount);
+          int[] oldSizes = m_taskSizes;
+          m_taskSizes = new int[m_taskCount * 2];
+          System.arraycopy(oldSizes, 0, m_taskSizes, 0, m_taskCount);
+        }
+        m_tasks[m_taskCount] = m_islandCount;
+        m_taskSizes[m_taskCount] = 0;
+        ++m_taskCount;
+      }
+      m_taskSizes[m_taskCount - 1] += size;
+    }
+
+    ++m_islandCount;
+  }
+
+  /**
+   * Solves all the collected islands, then reports and updates sleeping in island order.
+   */
+  public void solve(Profile profile, TimeStep step, Vec2 gravity, boolean allowSleep) {
+    for (int i = 0; i < m_islandCount; ++i) {
+      Profile p = m_profiles[i];
+      p.solveInit.startAccum();
+      p.solveVelocity.startAccum();
+      p.solvePosition.startAccum();
+    }
+
+    ForkJoinTask<Void> task = null;
+    if (m_taskCount > 0) {
+      task = m_pool.submit(new SolveTask(this, step, gravity, 0, m_taskCount));
+    }
+
+    for (int i = 0; i < m_islandCount; ++i) {
+      if (!m_concurrent[i]) {
+        Island island = m_islands[i];
+        // Joints pick up the island index of their bodies when they initialize, and static
+        // bodies have been re-indexed by every island built after this one.
+        for (int j = 0; j < island.m_bodyCount; ++j) {
+          island.m_bodies[j].m_islandIndex = j;
+        }
+        island.solveConstraints(m_profiles[i], step, gravity);
+      }
+    }
+
+    if (task != null) {
+      task.join();
+    }
+
+    for (int i = 0; i < m_islandCount; ++i) {
+      Island island = m_islands[i];
+      island.report();
+      if (allowSleep) {
+        island.updateSleep(step.dt);
+      }
+
+      Profile p = m_profiles[i];
+      profile.solveInit.accum(p.solveInit.accum);
+      profile.solveVelocity.accum(p.solveVelocity.accum);
+      profile.solvePosition.accum(p.solvePosition.accum);
+    }
+  }
+
+  /**
+   * Solves the islands of the task range [start, end), splitting it in half until a single task
+   * (a run of consecutive concurrent islands) is left.
+   */
+  private static class SolveTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final IslandScheduler scheduler;
+    private final TimeStep step;
+    private final Vec2 gravity;
+    private final int start;
+    private final int end;
+
+    SolveTask(IslandScheduler scheduler, TimeStep step, Vec2 gravity, int start, int end) {
+      this.scheduler = scheduler;
+      this.step = step;
+      this.gravity = gravity;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new SolveTask(scheduler, step, gravity, start, mid),
+            new SolveTask(scheduler, step, gravity, mid, end));
+        return;
+      }
+
+      final IslandScheduler s = scheduler;
+      int first = s.m_tasks[start];
+      int last = start + 1 < s.m_taskCount ? s.m_tasks[start + 1] : s.m_islandCount;
+      for (int i = first; i < last; ++i) {
+        if (s.m_concurrent[i]) {
+          s.m_islands[i].solveConstraints(s.m_profiles[i], step, gravity);
+        }
+      }
+    }
+  }
+}
@@ -23,11 +23,13 @@
  ******************************************************************************/
 package org.jbox2d.dynamics;
 
-import org.jbox2d.dynamics.contacts.Position;
-import org.jbox2d.dynamics.contacts.Velocity;
-
+/**
+ * The island state handed to the joint solvers. Positions and velocities are kept in flat arrays
+ * with three floats per body, starting at {@code 3 * Body.m_islandIndex}: {@code c.x, c.y, a} and
+ * {@code v.x, v.y, w}.
+ */
 public class SolverData {
   public TimeStep step;
-  public Position[] positions;
-  public Velocity[] velocities;
+  public float[] positions;
+  public float[] velocities;
 }
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.dynamics;
+
+import org.jbox2d.dynamics.contacts.Contact;
+
+/**
+ * Indexed binary min-heap of contacts keyed by their time of impact. Each queued contact stores
+ * its heap slot in {@link Contact#m_toiIndex} so it can be re-keyed or removed in O(log n).
+ */
+class TOIQueue {
+
+  private float[] m_keys = new float[64];
+  private Contact[] m_contacts = new Contact[64];
+  private int m_count;
+
+  public int getCount() {
+    return m_count;
+  }
+
+  /**
+   * @return the contact with the smallest time of impact, or null if the queue is empty
+   */
+  public Contact peek() {
+    return m_count > 0 ? m_contacts[0] : null;
+  }
+
+  /**
+   * Inserts the contact, or moves it to its new place if it is already queued.
+   */
+  public void update(Contact c, float alpha) {
+    int index = c.m_toiIndex;
+    if (index == -1) {
+      if (m_count == m_keys.length) {
+        float[] oldKeys = m_keys;
+        Contact[] oldContacts = m_contacts;
+        m_keys = new float[2 * m_count];
+        m_contacts = new Contact[2 * m_count];
+        System.arraycopy(oldKeys, 0, m_keys, 0, m_count);
+        System.arraycopy(oldContacts, 0, m_contacts, 0, m_count);
+      }
+      index = m_count++;
+      m_keys[index] = alpha;
+      m_contacts[index] = c;
+      c.m_toiIndex = index;
+      siftUp(index);
+    } else {
+      float old = m_keys[index];
+      m_keys[index] = alpha;
+      if (alpha < old) {
+        siftUp(index);
+      } else {
+        siftDown(index);
+      }
+    }
+  }
+
+  /**
+   * Removes the contact if it is queued.
+   */
+  public void remove(Contact c) {
+    int index = c.m_toiIndex;
+    if (index == -1) {
+      return;
+    }
+    c.m_toiIndex = -1;
+    --m_count;
+    if (index == m_count) {
+      m_contacts[index] = null;
+      return;
+    }
+    float key = m_keys[m_count];
+    Contact last = m_contacts[m_count];
+    m_contacts[m_count] = null;
+    float old = m_keys[index];
+    m_keys[index] = key;
+    m_contacts[index] = last;
+    last.m_toiIndex = index;
+    if (key < old) {
+      siftUp(index);
+    } else {
+      siftDown(index);
+    }
+  }
+
+  public void clear() {
+    for (int i = 0; i < m_count; ++i) {
+      m_contacts[i].m_toiIndex = -1;
+      m_contacts[i] = null;
+    }
+    m_count = 0;
+  }
+
+  private void siftUp(int index) {
+    final float[] keys = m_keys;
+    final Contact[] contacts = m_contacts;
+    float key = keys[index];
+    Contact c = contacts[index];
+    while (index > 0) {
+      int parent = (index - 1) >> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      keys[index] = keys[parent];
+      contacts[index] = contacts[parent];
+      contacts[index].m_toiIndex = index;
+      index = parent;
+    }
+    keys[index] = key;
+    contacts[index] = c;
+    c.m_toiIndex = index;
+  }
+
+  private void siftDown(int index) {
+    final float[] keys = m_keys;
+    final Contact[] contacts = m_contacts;
+    final int count = m_count;
+    float key = keys[index];
+    Contact c = contacts[index];
+    for (;;) {
+      int child = 2 * index + 1;
+      if (child >= count) {
+        break;
+      }
+      if (child + 1 < count && keys[child + 1] < keys[child]) {
+        ++child;
+      }
+      if (key <= keys[child]) {
+        break;
+      }
+      keys[index] = keys[child];
+      contacts[index] = contacts[child];
+      contacts[index].m_toiIndex = index;
+      index = child;
+    }
+    keys[index] = key;
+    contacts[index] = c;
+    c.m_toiIndex = index;
+  }
+}
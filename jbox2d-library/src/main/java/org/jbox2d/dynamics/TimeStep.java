@@ -43,4 +43,7 @@ public class TimeStep {
 	public int positionIterations;
 	
 	public boolean warmStarting;
+	
+	/** sub-steps of the soft step solver, 0 to use the iterations */
+	public int subSteps;
 }
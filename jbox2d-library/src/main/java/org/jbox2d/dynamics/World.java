@@ -23,6 +23,9 @@
  ******************************************************************************/
 package org.jbox2d.dynamics;
 
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
 import org.jbox2d.callbacks.ContactFilter;
 import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.callbacks.DebugDraw;
@@ -42,14 +45,18 @@ import org.jbox2d.collision.TimeOfImpact.TOIOutput;
 import org.jbox2d.collision.TimeOfImpact.TOIOutputState;
 import org.jbox2d.collision.broadphase.BroadPhase;
 import org.jbox2d.collision.broadphase.BroadPhaseStrategy;
+import org.jbox2d.collision.broadphase.ConcurrentQueryStrategy;
 import org.jbox2d.collision.broadphase.DefaultBroadPhaseBuffer;
 import org.jbox2d.collision.broadphase.DynamicTree;
+import org.jbox2d.collision.broadphase.DynamicTreeFlatNodes;
+import org.jbox2d.collision.broadphase.SplitBroadPhaseBuffer;
 import org.jbox2d.collision.shapes.ChainShape;
 import org.jbox2d.collision.shapes.CircleShape;
 import org.jbox2d.collision.shapes.EdgeShape;
 import org.jbox2d.collision.shapes.PolygonShape;
 import org.jbox2d.collision.shapes.Shape;
 import org.jbox2d.collision.shapes.ShapeType;
+import org.jbox2d.common.BufferUtils;
 import org.jbox2d.common.Color3f;
 import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Settings;
@@ -75,6 +82,7 @@ import org.jbox2d.pooling.IDynamicStack;
 import org.jbox2d.pooling.IWorldPool;
 import org.jbox2d.pooling.arrays.Vec2Array;
 import org.jbox2d.pooling.normal.DefaultWorldPool;
+import org.jbox2d.pooling.normal.ThreadLocalWorldPool;
 
 /**
  * The world class manages all physics entities, dynamic simulation, and asynchronous queries. The
@@ -86,6 +94,22 @@ public class World {
   public static final int WORLD_POOL_SIZE = 100;
   public static final int WORLD_POOL_CONTAINER_SIZE = 10;
 
+  /**
+   * Number of floats written per body by {@link #getBodyStates(float[], int[], boolean)}: the
+   * origin x and y, the angle, the linear velocity x and y and the angular velocity.
+   */
+  public static final int BODY_STATE_STRIDE = 6;
+
+  /** Floats per ray given to {@link #raycastClosest}: p1.x, p1.y, p2.x, p2.y. */
+  public static final int RAY_STRIDE = 4;
+  /**
+   * Floats per ray written by {@link #raycastClosest}: point.x, point.y, normal.x, normal.y and the
+   * fraction.
+   */
+  public static final int HIT_STRIDE = 5;
+  /** Floats per box given to {@link #queryAABBs}: lower.x, lower.y, upper.x, upper.y. */
+  public static final int AABB_STRIDE = 4;
+
   public static final int NEW_FIXTURE = 0x0001;
   public static final int LOCKED = 0x0002;
   public static final int CLEAR_FORCES = 0x0004;
@@ -105,6 +129,17 @@ public class World {
   private int m_bodyCount;
   private int m_jointCount;
 
+  private int m_bodyIndexCount;
+  private int[] m_freeBodyIndices = new int[16];
+  private int m_freeBodyIndexCount;
+
+  // The bodies that are awake, or were created or moved since the last step. Stepping only visits
+  // these, bodies that fell asleep are dropped at the start of the next step.
+  private Body[] m_awakeBodies = new Body[16];
+  private int m_awakeBodyCount;
+
+  BodyChanges m_bodyChanges;
+
   private final Vec2 m_gravity = new Vec2();
   private boolean m_allowSleep;
 
@@ -123,8 +158,10 @@ public class World {
 
   // these are for debugging the solver
   private boolean m_warmStarting;
+  private int m_softSubSteps;
   private boolean m_continuousPhysics;
   private boolean m_subStepping;
+  private boolean m_eventDrivenTOI;
 
   private boolean m_stepComplete;
 
@@ -210,6 +247,20 @@ public class World {
     return m_subStepping;
   }
 
+  /**
+   * Keeps the candidate TOI events in a priority queue instead of scanning every contact for the
+   * earliest one after each sub-step. Only the contacts of the bodies moved by a sub-step are
+   * recomputed, which pays off when there are many bullets. Events with the same time of impact
+   * may be solved in a different order than with the scan. Off by default.
+   */
+  public void setEventDrivenTOI(boolean eventDrivenTOI) {
+    m_eventDrivenTOI = eventDrivenTOI;
+  }
+
+  public boolean isEventDrivenTOI() {
+    return m_eventDrivenTOI;
+  }
+
   public boolean isAllowSleep() {
     return m_allowSleep;
   }
@@ -352,6 +403,16 @@ public class World {
     m_bodyList = b;
     ++m_bodyCount;
 
+    if (m_freeBodyIndexCount > 0) {
+      b.m_worldIndex = m_freeBodyIndices[--m_freeBodyIndexCount];
+    } else {
+      b.m_worldIndex = m_bodyIndexCount++;
+    }
+    if (m_bodyChanges != null) {
+      m_bodyChanges.created(b);
+    }
+    addAwakeBody(b);
+
     return b;
   }
 
@@ -426,9 +487,42 @@ public class World {
     }
 
     --m_bodyCount;
+
+    if (m_freeBodyIndexCount == m_freeBodyIndices.length) {
+      m_freeBodyIndices =
+          BufferUtils.reallocateBuffer(m_freeBodyIndices, m_freeBodyIndexCount,
+              2 * m_freeBodyIndexCount);
+    }
+    m_freeBodyIndices[m_freeBodyIndexCount++] = body.m_worldIndex;
+    if (m_bodyChanges != null) {
+      m_bodyChanges.destroyed(body);
+    }
+    if (body.m_awakeIndex != -1) {
+      removeAwakeBody(body);
+    }
     // TODO djm recycle body
   }
 
+  void addAwakeBody(Body body) {
+    assert (body.m_awakeIndex == -1);
+    if (m_awakeBodyCount == m_awakeBodies.length) {
+      Body[] old = m_awakeBodies;
+      m_awakeBodies = new Body[2 * old.length];
+      System.arraycopy(old, 0, m_awakeBodies, 0, old.length);
+    }
+    body.m_awakeIndex = m_awakeBodyCount;
+    m_awakeBodies[m_awakeBodyCount++] = body;
+  }
+
+  private void removeAwakeBody(Body body) {
+    final int index = body.m_awakeIndex;
+    final Body last = m_awakeBodies[--m_awakeBodyCount];
+    m_awakeBodies[index] = last;
+    last.m_awakeIndex = index;
+    m_awakeBodies[m_awakeBodyCount] = null;
+    body.m_awakeIndex = -1;
+  }
+
   /**
    * create a joint to constrain bodies together. No reference to the definition is retained. This
    * may cause the connected bodies to cease colliding.
@@ -619,6 +713,7 @@ public class World {
     step.dtRatio = m_inv_dt0 * dt;
 
     step.warmStarting = m_warmStarting;
+    step.subSteps = m_softSubSteps;
     m_profile.stepInit.record(tempTimer.getMilliseconds());
 
     // Update contacts. This is where some contacts are destroyed.
@@ -651,6 +746,10 @@ public class World {
       clearForces();
     }
 
+    if (m_bodyChanges != null) {
+      m_bodyChanges.finish();
+    }
+
     m_flags &= ~LOCKED;
     // log.debug("ending step");
 
@@ -863,6 +962,52 @@ public class World {
     m_particleSystem.raycast(particleCallback, point1, point2);
   }
 
+  private final BatchQueries m_batchQueries = new BatchQueries();
+
+  /**
+   * Ray-cast a batch of rays and find the closest fixture hit by each. Sensors and fixtures whose
+   * category bits don't match the mask are skipped. Like the single ray-cast, shapes that contain
+   * the starting point are not hit. Call this between steps; the rays run on the batch query pool
+   * if one is set.
+   * 
+   * @param rays the rays, {@link #RAY_STRIDE} floats per ray.
+   * @param count the number of rays.
+   * @param maskBits the category bits a fixture needs to be hit.
+   * @param fixtures receives the closest fixture of each ray, or null if the ray missed.
+   * @param hits receives the hits, {@link #HIT_STRIDE} floats per ray. The fraction is 1 for a
+   *          miss.
+   * @return the number of rays that hit a fixture.
+   */
+  public int raycastClosest(float[] rays, int count, int maskBits, Fixture[] fixtures,
+      float[] hits) {
+    assert (isLocked() == false);
+    assert (rays.length >= RAY_STRIDE * count);
+    assert (fixtures.length >= count && hits.length >= HIT_STRIDE * count);
+    return m_batchQueries.raycastClosest(m_contactManager.m_broadPhase, rays, count, maskBits,
+        fixtures, hits);
+  }
+
+  /**
+   * Query a batch of AABBs for the fixtures that potentially overlap them. The fixtures found by
+   * box i are stored in fixtures[starts[i]] to fixtures[starts[i + 1] - 1]. If the fixtures array
+   * is too small for all of them, only the starts are filled, so the call can be repeated with an
+   * array of the returned size. Call this between steps; the boxes run on the batch query pool if
+   * one is set.
+   * 
+   * @param aabbs the boxes, {@link #AABB_STRIDE} floats per box.
+   * @param count the number of boxes.
+   * @param maskBits the category bits a fixture needs to be reported.
+   * @param fixtures receives the fixtures found by all boxes, in box order.
+   * @param starts receives count + 1 offsets into fixtures.
+   * @return the number of fixtures found by all boxes together.
+   */
+  public int queryAABBs(float[] aabbs, int count, int maskBits, Fixture[] fixtures, int[] starts) {
+    assert (isLocked() == false);
+    assert (aabbs.length >= AABB_STRIDE * count && starts.length > count);
+    return m_batchQueries.queryAABBs(m_contactManager.m_broadPhase, aabbs, count, maskBits,
+        fixtures, starts);
+  }
+
   /**
    * Get the world body list. With the returned body, use Body.getNext to get the next body in the
    * world list. A null body indicates the end of the list.
@@ -916,6 +1061,24 @@ public class World {
     return m_warmStarting;
   }
 
+  /**
+   * Solve contacts as soft constraints over the given number of sub-steps instead of with the
+   * velocity and position iterations passed to {@link #step(float, int, int)}. Tall stacks settle
+   * with a few sub-steps where the iterative solver needs many iterations. The stiffness is set by
+   * {@link Settings#contactHertz} and {@link Settings#contactDampingRatio}. Time of impact
+   * sub-steps always use the iterative solver.
+   * 
+   * @param subSteps the number of sub-steps, or 0 to use the iterative solver (the default)
+   */
+  public void setSoftSubSteps(int subSteps) {
+    assert (subSteps >= 0);
+    m_softSubSteps = subSteps;
+  }
+
+  public int getSoftSubSteps() {
+    return m_softSubSteps;
+  }
+
   /**
    * Enable/disable continuous physics. For testing.
    * 
@@ -949,6 +1112,80 @@ public class World {
     return m_bodyCount;
   }
 
+  /**
+   * Get the number of body indices handed out so far. Every {@link Body#getWorldIndex()} is below
+   * this, so it can be used to size arrays that are indexed by body.
+   * 
+   * @return
+   */
+  public int getBodyIndexCount() {
+    return m_bodyIndexCount;
+  }
+
+  /**
+   * Write the state of the bodies into an array, {@link #BODY_STATE_STRIDE} floats per body. Body k
+   * starts at states[k * BODY_STATE_STRIDE] and holds the origin x and y, the angle, the linear
+   * velocity x and y and the angular velocity. Bodies are written in body list order, which
+   * changes as bodies are created and destroyed, so indices receives the
+   * {@link Body#getWorldIndex()} of each written body.
+   * 
+   * @param states must hold BODY_STATE_STRIDE * {@link #getBodyCount()} floats
+   * @param indices receives the world index of body k at indices[k], can be null
+   * @param awakeOnly only write the bodies that are awake
+   * @return the number of bodies written
+   */
+  public int getBodyStates(float[] states, int[] indices, boolean awakeOnly) {
+    int count = 0;
+    for (Body b = m_bodyList; b != null; b = b.m_next) {
+      if (awakeOnly && (b.m_flags & Body.e_awakeFlag) == 0) {
+        continue;
+      }
+      int offset = count * BODY_STATE_STRIDE;
+      states[offset] = b.m_xf.p.x;
+      states[offset + 1] = b.m_xf.p.y;
+      states[offset + 2] = b.m_sweep.a;
+      states[offset + 3] = b.m_linearVelocity.x;
+      states[offset + 4] = b.m_linearVelocity.y;
+      states[offset + 5] = b.m_angularVelocity;
+      if (indices != null) {
+        indices[count] = b.m_worldIndex;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Write the state of the bodies into a buffer, starting at its position and in the layout of
+   * {@link #getBodyStates(float[], int[], boolean)}. The buffer position is advanced past the
+   * written bodies, so a direct buffer can be handed to another thread or to native code without
+   * copying.
+   * 
+   * @param states must have BODY_STATE_STRIDE * {@link #getBodyCount()} floats remaining
+   * @param indices receives the world index of body k at indices[k], can be null
+   * @param awakeOnly only write the bodies that are awake
+   * @return the number of bodies written
+   */
+  public int getBodyStates(FloatBuffer states, int[] indices, boolean awakeOnly) {
+    int count = 0;
+    for (Body b = m_bodyList; b != null; b = b.m_next) {
+      if (awakeOnly && (b.m_flags & Body.e_awakeFlag) == 0) {
+        continue;
+      }
+      states.put(b.m_xf.p.x);
+      states.put(b.m_xf.p.y);
+      states.put(b.m_sweep.a);
+      states.put(b.m_linearVelocity.x);
+      states.put(b.m_linearVelocity.y);
+      states.put(b.m_angularVelocity);
+      if (indices != null) {
+        indices[count] = b.m_worldIndex;
+      }
+      count++;
+    }
+    return count;
+  }
+
   /**
    * Get the number of joints.
    * 
@@ -994,6 +1231,19 @@ public class World {
     return m_contactManager.m_broadPhase.getTreeQuality();
   }
 
+  /**
+   * Rebuild the broad-phase tree of static bodies in one go. Call it after creating a lot of static
+   * bodies, such as when loading a level, so they are found faster. This needs a
+   * {@link SplitBroadPhaseBuffer} whose static tree is a {@link DynamicTreeFlatNodes}, with any
+   * other broad-phase it does nothing.
+   */
+  public void rebuildStaticTree() {
+    BroadPhase broadPhase = m_contactManager.m_broadPhase;
+    if (broadPhase instanceof SplitBroadPhaseBuffer) {
+      ((SplitBroadPhaseBuffer) broadPhase).rebuildStatic();
+    }
+  }
+
   /**
    * Change the global gravity vector.
    * 
@@ -1052,11 +1302,168 @@ public class World {
     return m_contactManager;
   }
 
+  /**
+   * Get the particle system, for driving it on its own in benchmarks and tests.
+   * 
+   * @return
+   */
+  public ParticleSystem getParticleSystem() {
+    return m_particleSystem;
+  }
+
   public Profile getProfile() {
     return m_profile;
   }
 
+  /**
+   * Record which bodies change during each step, see {@link #getBodyChanges()}. Off by default.
+   * 
+   * @param flag
+   */
+  public void setBodyChangeTracking(boolean flag) {
+    if (!flag) {
+      m_bodyChanges = null;
+    } else if (m_bodyChanges == null) {
+      m_bodyChanges = new BodyChanges(this);
+    }
+  }
+
+  public boolean isBodyChangeTracking() {
+    return m_bodyChanges != null;
+  }
+
+  /**
+   * Get the bodies that were created, destroyed, moved, woke up or fell asleep during the last
+   * step, so state deltas cost O(changed bodies). The returned object is reused across steps.
+   * 
+   * @return the changes, or null if body change tracking is off
+   */
+  public BodyChanges getBodyChanges() {
+    return m_bodyChanges;
+  }
+
+  /**
+   * Solve the awake islands of each step concurrently on the given pool. Islands are collected
+   * first and then solved in parallel, with contact listener post-solve calls and sleeping applied
+   * afterwards in the same order as the serial solver. Pass null to go back to solving on the
+   * stepping thread (the default). Islands with joints are only solved on the pool if the world
+   * was created with a {@link ThreadLocalWorldPool}.
+   * 
+   * @param solverPool
+   */
+  public void setIslandSolverPool(ForkJoinPool solverPool) {
+    if (solverPool == null) {
+      m_islandScheduler = null;
+    } else if (m_islandScheduler == null || m_islandScheduler.getPool() != solverPool) {
+      m_islandScheduler = new IslandScheduler(solverPool, pool instanceof ThreadLocalWorldPool);
+      m_islandScheduler.setColoredSolverPool(m_coloredSolverPool);
+    }
+  }
+
+  public ForkJoinPool getIslandSolverPool() {
+    return m_islandScheduler != null ? m_islandScheduler.getPool() : null;
+  }
+
+  /**
+   * Solve islands with many constraints, like big stacks and piles, in parallel on the given pool.
+   * The constraints of such an island are colored so that no two of a color share a dynamic body,
+   * and each color is solved concurrently. The coloring only depends on the island, so the results
+   * are the same for any pool size, but they differ slightly from the serial solver because the
+   * constraints are visited in a different order. Joints are only solved on the pool if the world
+   * was created with a {@link ThreadLocalWorldPool}. Pass null to go back to the serial solver (the
+   * default).
+   * 
+   * @param coloredSolverPool
+   */
+  public void setColoredSolverPool(ForkJoinPool coloredSolverPool) {
+    m_coloredSolverPool = coloredSolverPool;
+    island.setColoredSolverPool(coloredSolverPool, pool instanceof ThreadLocalWorldPool);
+    if (m_islandScheduler != null) {
+      m_islandScheduler.setColoredSolverPool(coloredSolverPool);
+    }
+  }
+
+  public ForkJoinPool getColoredSolverPool() {
+    return m_coloredSolverPool;
+  }
+
+  /**
+   * Compute contact manifolds concurrently on the given pool. Listener callbacks are still made on
+   * the stepping thread, in contact list order. This needs a world created with a
+   * {@link ThreadLocalWorldPool}. Pass null to go back to the serial narrow phase (the default).
+   * 
+   * @param narrowPhasePool
+   */
+  public void setNarrowPhasePool(ForkJoinPool narrowPhasePool) {
+    if (narrowPhasePool != null && !(pool instanceof ThreadLocalWorldPool)) {
+      throw new IllegalStateException("A parallel narrow phase needs a ThreadLocalWorldPool");
+    }
+    m_contactManager.setNarrowPhasePool(narrowPhasePool);
+  }
+
+  public ForkJoinPool getNarrowPhasePool() {
+    return m_contactManager.getNarrowPhasePool();
+  }
+
+  /**
+   * Search for new broad-phase pairs on the given pool in steps where many proxies moved. Pairs
+   * are reported in the same order as with the serial search. This needs the default broad-phase
+   * with a strategy that implements {@link ConcurrentQueryStrategy}, such as the dynamic trees.
+   * Pass null to go back to the serial search (the default).
+   * 
+   * @param broadPhasePool
+   */
+  public void setBroadPhasePool(ForkJoinPool broadPhasePool) {
+    BroadPhase broadPhase = m_contactManager.m_broadPhase;
+    if (broadPhase instanceof DefaultBroadPhaseBuffer) {
+      ((DefaultBroadPhaseBuffer) broadPhase).setPairPool(broadPhasePool);
+    } else if (broadPhasePool != null) {
+      throw new IllegalStateException("A parallel pair search needs a DefaultBroadPhaseBuffer");
+    }
+  }
+
+  public ForkJoinPool getBroadPhasePool() {
+    BroadPhase broadPhase = m_contactManager.m_broadPhase;
+    if (broadPhase instanceof DefaultBroadPhaseBuffer) {
+      return ((DefaultBroadPhaseBuffer) broadPhase).getPairPool();
+    }
+    return null;
+  }
+
+  /**
+   * Run the rays and boxes of {@link #raycastClosest} and {@link #queryAABBs} on the given pool.
+   * Large batches are split into chunks when the broad-phase strategy implements
+   * {@link ConcurrentQueryStrategy}; otherwise they stay serial. Pass null to go back to serial
+   * queries (the default).
+   * 
+   * @param batchQueryPool
+   */
+  public void setBatchQueryPool(ForkJoinPool batchQueryPool) {
+    m_batchQueries.setPool(batchQueryPool);
+  }
+
+  public ForkJoinPool getBatchQueryPool() {
+    return m_batchQueries.getPool();
+  }
+
+  /**
+   * Run the per-particle and particle contact passes of the particle solver on the given pool. See
+   * {@link ParticleSystem#setSolverPool(ForkJoinPool)}. Pass null to go back to the serial particle
+   * solver (the default).
+   *
+   * @param particleSolverPool
+   */
+  public void setParticleSolverPool(ForkJoinPool particleSolverPool) {
+    m_particleSystem.setSolverPool(particleSolverPool);
+  }
+
+  public ForkJoinPool getParticleSolverPool() {
+    return m_particleSystem.getSolverPool();
+  }
+
   private final Island island = new Island();
+  private IslandScheduler m_islandScheduler;
+  private ForkJoinPool m_coloredSolverPool;
   private Body[] stack = new Body[10]; // TODO djm find a good initial stack number;
   private final Timer broadphaseTimer = new Timer();
 
@@ -1065,24 +1472,35 @@ public class World {
     m_profile.solveVelocity.startAccum();
     m_profile.solvePosition.startAccum();
 
-    // update previous transforms
-    for (Body b = m_bodyList; b != null; b = b.m_next) {
+    // Update previous transforms, and drop the bodies that went to sleep. Sleeping bodies keep
+    // their transform, so the previous one stays valid.
+    int awakeCount = 0;
+    for (int i = 0; i < m_awakeBodyCount; ++i) {
+      Body b = m_awakeBodies[i];
       b.m_xf0.set(b.m_xf);
+      if (b.isAwake() == false || b.m_type == BodyType.STATIC) {
+        // This is otherwise reset by solveTOI, which only visits the listed bodies.
+        b.m_sweep.alpha0 = 0.0f;
+        b.m_awakeIndex = -1;
+        continue;
+      }
+      b.m_awakeIndex = awakeCount;
+      m_awakeBodies[awakeCount++] = b;
     }
+    for (int i = awakeCount; i < m_awakeBodyCount; ++i) {
+      m_awakeBodies[i] = null;
+    }
+    m_awakeBodyCount = awakeCount;
 
     // Size the island for the worst case.
     island.init(m_bodyCount, m_contactManager.m_contactCount, m_jointCount,
         m_contactManager.m_contactListener);
 
-    // Clear all the island flags.
-    for (Body b = m_bodyList; b != null; b = b.m_next) {
-      b.m_flags &= ~Body.e_islandFlag;
-    }
-    for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
-      c.m_flags &= ~Contact.ISLAND_FLAG;
-    }
-    for (Joint j = m_jointList; j != null; j = j.m_next) {
-      j.m_islandFlag = false;
+    // The island flags are clear here: they are cleared as each island is built for contacts and
+    // joints, and after solving for bodies, so there is no need to visit the sleeping ones.
+
+    if (m_islandScheduler != null) {
+      m_islandScheduler.clear();
     }
 
     // Build and simulate all awake islands.
@@ -1090,7 +1508,10 @@ public class World {
     if (stack.length < stackSize) {
       stack = new Body[stackSize];
     }
-    for (Body seed = m_bodyList; seed != null; seed = seed.m_next) {
+    // Newest first, like the body list. Bodies woken up by the search are appended, they are in an
+    // island already.
+    for (int seedIndex = m_awakeBodyCount - 1; seedIndex >= 0; --seedIndex) {
+      final Body seed = m_awakeBodies[seedIndex];
       if ((seed.m_flags & Body.e_islandFlag) == Body.e_islandFlag) {
         continue;
       }
@@ -1187,7 +1608,11 @@ public class World {
           other.m_flags |= Body.e_islandFlag;
         }
       }
-      island.solve(m_profile, step, m_gravity, m_allowSleep);
+      if (m_islandScheduler != null) {
+        m_islandScheduler.add(island, step);
+      } else {
+        island.solve(m_profile, step, m_gravity, m_allowSleep);
+      }
 
       // Post solve cleanup.
       for (int i = 0; i < island.m_bodyCount; ++i) {
@@ -1197,18 +1622,31 @@ public class World {
           b.m_flags &= ~Body.e_islandFlag;
         }
       }
+      // Islands don't grow through static bodies, so no other island can reach these.
+      for (int i = 0; i < island.m_contactCount; ++i) {
+        island.m_contacts[i].m_flags &= ~Contact.ISLAND_FLAG;
+      }
+      for (int i = 0; i < island.m_jointCount; ++i) {
+        island.m_joints[i].m_islandFlag = false;
+      }
+    }
+    if (m_islandScheduler != null) {
+      m_islandScheduler.solve(m_profile, step, m_gravity, m_allowSleep);
     }
     m_profile.solveInit.endAccum();
     m_profile.solveVelocity.endAccum();
     m_profile.solvePosition.endAccum();
 
     broadphaseTimer.reset();
-    // Synchronize fixtures, check for out of range bodies.
-    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+    // Synchronize fixtures, check for out of range bodies. Every body of an island was woken up,
+    // so it is listed. Newest first, in the order of the body list.
+    for (int i = m_awakeBodyCount - 1; i >= 0; --i) {
+      Body b = m_awakeBodies[i];
       // If a body was not in an island then it did not move.
       if ((b.m_flags & Body.e_islandFlag) == 0) {
         continue;
       }
+      b.m_flags &= ~Body.e_islandFlag;
 
       if (b.getType() == BodyType.STATIC) {
         continue;
@@ -1216,6 +1654,9 @@ public class World {
 
       // Update fixtures (for broad-phase).
       b.synchronizeFixtures();
+      if (m_bodyChanges != null) {
+        m_bodyChanges.moved(b);
+      }
     }
 
     // Look for new contacts.
@@ -1230,6 +1671,126 @@ public class World {
   private final Body[] tempBodies = new Body[2];
   private final Sweep backup1 = new Sweep();
   private final Sweep backup2 = new Sweep();
+  private final TOIQueue toiQueue = new TOIQueue();
+
+  /**
+   * Computes the time of impact of the contact and caches it in {@link Contact#m_toi}.
+   *
+   * @return false if the contact can't have a TOI event
+   */
+  private boolean computeTOI(Contact c) {
+    Fixture fA = c.getFixtureA();
+    Fixture fB = c.getFixtureB();
+
+    // Is there a sensor?
+    if (fA.isSensor() || fB.isSensor()) {
+      return false;
+    }
+
+    Body bA = fA.getBody();
+    Body bB = fB.getBody();
+
+    BodyType typeA = bA.m_type;
+    BodyType typeB = bB.m_type;
+    assert (typeA == BodyType.DYNAMIC || typeB == BodyType.DYNAMIC);
+
+    boolean activeA = bA.isAwake() && typeA != BodyType.STATIC;
+    boolean activeB = bB.isAwake() && typeB != BodyType.STATIC;
+
+    // Is at least one body active (awake and dynamic or kinematic)?
+    if (activeA == false && activeB == false) {
+      return false;
+    }
+
+    boolean collideA = bA.isBullet() || typeA != BodyType.DYNAMIC;
+    boolean collideB = bB.isBullet() || typeB != BodyType.DYNAMIC;
+
+    // Are these two non-bullet dynamic bodies?
+    if (collideA == false && collideB == false) {
+      return false;
+    }
+
+    // Compute the TOI for this contact.
+    // Put the sweeps onto the same time interval.
+    float alpha0 = bA.m_sweep.alpha0;
+
+    // This may advance a sleeping or static body, list it so its sweep is reset the next step.
+    if (bA.m_sweep.alpha0 < bB.m_sweep.alpha0) {
+      alpha0 = bB.m_sweep.alpha0;
+      bA.m_sweep.advance(alpha0);
+      if (bA.m_awakeIndex == -1) {
+        addAwakeBody(bA);
+      }
+    } else if (bB.m_sweep.alpha0 < bA.m_sweep.alpha0) {
+      alpha0 = bA.m_sweep.alpha0;
+      bB.m_sweep.advance(alpha0);
+      if (bB.m_awakeIndex == -1) {
+        addAwakeBody(bB);
+      }
+    }
+
+    assert (alpha0 < 1.0f);
+
+    int indexA = c.getChildIndexA();
+    int indexB = c.getChildIndexB();
+
+    // Compute the time of impact in interval [0, minTOI]
+    final TOIInput input = toiInput;
+    input.proxyA.set(fA.getShape(), indexA);
+    input.proxyB.set(fB.getShape(), indexB);
+    input.sweepA.set(bA.m_sweep);
+    input.sweepB.set(bB.m_sweep);
+    input.tMax = 1.0f;
+    input.cache = c.m_toiCache;
+
+    pool.getTimeOfImpact().timeOfImpact(toiOutput, input);
+
+    // Beta is the fraction of the remaining portion of the .
+    float beta = toiOutput.t;
+    float alpha;
+    if (toiOutput.state == TOIOutputState.TOUCHING) {
+      alpha = MathUtils.min(alpha0 + (1.0f - alpha0) * beta, 1.0f);
+    } else {
+      alpha = 1.0f;
+    }
+
+    c.m_toi = alpha;
+    c.m_flags |= Contact.TOI_FLAG;
+    return true;
+  }
+
+  /**
+   * Puts the contact in the TOI queue if it has a pending event, or takes it out if it doesn't.
+   * Applies the same filters as the scan in {@link #solveTOI(TimeStep)}.
+   */
+  private void updateTOI(TOIQueue queue, Contact c) {
+    if (c.isEnabled() && c.m_toiCount <= Settings.maxSubSteps
+        && ((c.m_flags & Contact.TOI_FLAG) != 0 || computeTOI(c)) && c.m_toi < 1.0f) {
+      queue.update(c, c.m_toi);
+    } else {
+      queue.remove(c);
+    }
+  }
+
+  /**
+   * Invalidates the TOI state of the contacts for the next step. Only contacts with an awake body
+   * get a TOI or a sub-step count, and every body that was awake during the TOI phase is still
+   * listed, so the contacts of the listed bodies cover them all.
+   */
+  private void resetTOIContacts() {
+    for (int i = 0; i < m_awakeBodyCount; ++i) {
+      Body body = m_awakeBodies[i];
+      if (body.m_type == BodyType.STATIC) {
+        continue;
+      }
+      for (ContactEdge ce = body.m_contactList; ce != null; ce = ce.next) {
+        Contact c = ce.contact;
+        c.m_flags &= ~(Contact.TOI_FLAG | Contact.ISLAND_FLAG);
+        c.m_toiCount = 0;
+        c.m_toi = 1.0f;
+      }
+    }
+  }
 
   private void solveTOI(final TimeStep step) {
 
@@ -1237,16 +1798,22 @@ public class World {
     island.init(2 * Settings.maxTOIContacts, Settings.maxTOIContacts, 0,
         m_contactManager.m_contactListener);
     if (m_stepComplete) {
-      for (Body b = m_bodyList; b != null; b = b.m_next) {
-        b.m_flags &= ~Body.e_islandFlag;
-        b.m_sweep.alpha0 = 0.0f;
+      // Only listed bodies can have been advanced. The contacts were reset when the last TOI phase
+      // completed.
+      for (int i = 0; i < m_awakeBodyCount; ++i) {
+        m_awakeBodies[i].m_sweep.alpha0 = 0.0f;
       }
+    }
 
-      for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
-        // Invalidate TOI
-        c.m_flags &= ~(Contact.TOI_FLAG | Contact.ISLAND_FLAG);
-        c.m_toiCount = 0;
-        c.m_toi = 1.0f;
+    final TOIQueue queue = m_eventDrivenTOI ? toiQueue : null;
+    if (queue != null) {
+      // A TOI event needs an awake body, and solve() left only those on the list. Bodies that
+      // computeTOI lists while seeding are asleep or static and are skipped.
+      final int awakeBodyCount = m_awakeBodyCount;
+      for (int i = 0; i < awakeBodyCount; ++i) {
+        for (ContactEdge ce = m_awakeBodies[i].m_contactList; ce != null; ce = ce.next) {
+          updateTOI(queue, ce.contact);
+        }
       }
     }
 
@@ -1256,102 +1823,45 @@ public class World {
       Contact minContact = null;
       float minAlpha = 1.0f;
 
-      for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
-        // Is this contact disabled?
-        if (c.isEnabled() == false) {
-          continue;
+      if (queue != null) {
+        minContact = queue.peek();
+        if (minContact != null) {
+          minAlpha = minContact.m_toi;
         }
-
-        // Prevent excessive sub-stepping.
-        if (c.m_toiCount > Settings.maxSubSteps) {
-          continue;
-        }
-
-        float alpha = 1.0f;
-        if ((c.m_flags & Contact.TOI_FLAG) != 0) {
-          // This contact has a valid cached TOI.
-          alpha = c.m_toi;
-        } else {
-          Fixture fA = c.getFixtureA();
-          Fixture fB = c.getFixtureB();
-
-          // Is there a sensor?
-          if (fA.isSensor() || fB.isSensor()) {
+      } else {
+        for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
+          // Is this contact disabled?
+          if (c.isEnabled() == false) {
             continue;
           }
 
-          Body bA = fA.getBody();
-          Body bB = fB.getBody();
-
-          BodyType typeA = bA.m_type;
-          BodyType typeB = bB.m_type;
-          assert (typeA == BodyType.DYNAMIC || typeB == BodyType.DYNAMIC);
-
-          boolean activeA = bA.isAwake() && typeA != BodyType.STATIC;
-          boolean activeB = bB.isAwake() && typeB != BodyType.STATIC;
-
-          // Is at least one body active (awake and dynamic or kinematic)?
-          if (activeA == false && activeB == false) {
+          // Prevent excessive sub-stepping.
+          if (c.m_toiCount > Settings.maxSubSteps) {
             continue;
           }
 
-          boolean collideA = bA.isBullet() || typeA != BodyType.DYNAMIC;
-          boolean collideB = bB.isBullet() || typeB != BodyType.DYNAMIC;
-
-          // Are these two non-bullet dynamic bodies?
-          if (collideA == false && collideB == false) {
+          float alpha;
+          if ((c.m_flags & Contact.TOI_FLAG) != 0) {
+            // This contact has a valid cached TOI.
+            alpha = c.m_toi;
+          } else if (computeTOI(c)) {
+            alpha = c.m_toi;
+          } else {
             continue;
           }
 
-          // Compute the TOI for this contact.
-          // Put the sweeps onto the same time interval.
-          float alpha0 = bA.m_sweep.alpha0;
-
-          if (bA.m_sweep.alpha0 < bB.m_sweep.alpha0) {
-            alpha0 = bB.m_sweep.alpha0;
-            bA.m_sweep.advance(alpha0);
-          } else if (bB.m_sweep.alpha0 < bA.m_sweep.alpha0) {
-            alpha0 = bA.m_sweep.alpha0;
-            bB.m_sweep.advance(alpha0);
+          if (alpha < minAlpha) {
+            // This is the minimum TOI found so far.
+            minContact = c;
+            minAlpha = alpha;
           }
-
-          assert (alpha0 < 1.0f);
-
-          int indexA = c.getChildIndexA();
-          int indexB = c.getChildIndexB();
-
-          // Compute the time of impact in interval [0, minTOI]
-          final TOIInput input = toiInput;
-          input.proxyA.set(fA.getShape(), indexA);
-          input.proxyB.set(fB.getShape(), indexB);
-          input.sweepA.set(bA.m_sweep);
-          input.sweepB.set(bB.m_sweep);
-          input.tMax = 1.0f;
-
-          pool.getTimeOfImpact().timeOfImpact(toiOutput, input);
-
-          // Beta is the fraction of the remaining portion of the .
-          float beta = toiOutput.t;
-          if (toiOutput.state == TOIOutputState.TOUCHING) {
-            alpha = MathUtils.min(alpha0 + (1.0f - alpha0) * beta, 1.0f);
-          } else {
-            alpha = 1.0f;
-          }
-
-          c.m_toi = alpha;
-          c.m_flags |= Contact.TOI_FLAG;
-        }
-
-        if (alpha < minAlpha) {
-          // This is the minimum TOI found so far.
-          minContact = c;
-          minAlpha = alpha;
         }
       }
 
       if (minContact == null || 1.0f - 10.0f * Settings.EPSILON < minAlpha) {
         // No more TOI events. Done!
         m_stepComplete = true;
+        resetTOIContacts();
         break;
       }
 
@@ -1380,6 +1890,9 @@ public class World {
         bB.m_sweep.set(backup2);
         bA.synchronizeTransform();
         bB.synchronizeTransform();
+        if (queue != null) {
+          queue.remove(minContact);
+        }
         continue;
       }
 
@@ -1494,6 +2007,9 @@ public class World {
         }
 
         body.synchronizeFixtures();
+        if (m_bodyChanges != null) {
+          m_bodyChanges.moved(body);
+        }
 
         // Invalidate all contact TOIs on this displaced body.
         for (ContactEdge ce = body.m_contactList; ce != null; ce = ce.next) {
@@ -1503,13 +2019,37 @@ public class World {
 
       // Commit fixture proxy movements to the broad-phase so that new contacts are created.
       // Also, some contacts can be destroyed.
+      final Contact oldHead = m_contactManager.m_contactList;
       m_contactManager.findNewContacts();
 
+      if (queue != null) {
+        // Re-key the contacts that were invalidated or updated by this sub-step, and the new ones.
+        // Kinematic bodies don't move here, but they may have just been woken, which gives their
+        // contacts with sleeping bodies a TOI.
+        updateTOI(queue, minContact);
+        for (int i = 0; i < island.m_bodyCount; ++i) {
+          Body body = island.m_bodies[i];
+          if (body.m_type == BodyType.STATIC) {
+            continue;
+          }
+          for (ContactEdge ce = body.m_contactList; ce != null; ce = ce.next) {
+            updateTOI(queue, ce.contact);
+          }
+        }
+        for (Contact c = m_contactManager.m_contactList; c != oldHead; c = c.m_next) {
+          updateTOI(queue, c);
+        }
+      }
+
       if (m_subStepping) {
         m_stepComplete = false;
         break;
       }
     }
+
+    if (queue != null) {
+      queue.clear();
+    }
   }
 
   private void drawJoint(Joint joint) {
@@ -1649,7 +2189,7 @@ public class World {
     int particleCount = system.getParticleCount();
     if (particleCount != 0) {
       float particleRadius = system.getParticleRadius();
-      Vec2[] positionBuffer = system.getParticlePositionBuffer();
+      float[] positionBuffer = system.getParticlePositionArray();
       ParticleColor[] colorBuffer = null;
       if (system.m_colorBuffer.data != null) {
         colorBuffer = system.getParticleColorBuffer();
@@ -1921,12 +2461,58 @@ public class World {
     return m_particleSystem.getParticleFlagsBuffer();
   }
 
-  public Vec2[] getParticlePositionBuffer() {
-    return m_particleSystem.getParticlePositionBuffer();
+  /**
+   * The particle positions, with the x and y of particle i at 2 * i and 2 * i + 1.
+   */
+  public float[] getParticlePositionArray() {
+    return m_particleSystem.getParticlePositionArray();
+  }
+
+  /**
+   * The particle velocities, with the x and y of particle i at 2 * i and 2 * i + 1.
+   */
+  public float[] getParticleVelocityArray() {
+    return m_particleSystem.getParticleVelocityArray();
+  }
+
+  /**
+   * Copies the positions of all particles into dst, x and y interleaved.
+   * 
+   * @param dst must hold at least 2 * {@link #getParticleCount()} floats
+   * @return the number of particles copied
+   */
+  public int getParticlePositions(float[] dst) {
+    return m_particleSystem.getParticlePositions(dst);
+  }
+
+  /**
+   * Copies the velocities of all particles into dst, x and y interleaved.
+   * 
+   * @param dst must hold at least 2 * {@link #getParticleCount()} floats
+   * @return the number of particles copied
+   */
+  public int getParticleVelocities(float[] dst) {
+    return m_particleSystem.getParticleVelocities(dst);
   }
 
-  public Vec2[] getParticleVelocityBuffer() {
-    return m_particleSystem.getParticleVelocityBuffer();
+  /**
+   * Copies the positions of all particles into the vectors of dst.
+   * 
+   * @param dst must hold at least {@link #getParticleCount()} vectors
+   * @return the number of particles copied
+   */
+  public int copyParticlePositions(Vec2[] dst) {
+    return m_particleSystem.copyParticlePositions(dst);
+  }
+
+  /**
+   * Copies the velocities of all particles into the vectors of dst.
+   * 
+   * @param dst must hold at least {@link #getParticleCount()} vectors
+   * @return the number of particles copied
+   */
+  public int copyParticleVelocities(Vec2[] dst) {
+    return m_particleSystem.copyParticleVelocities(dst);
   }
 
   public ParticleColor[] getParticleColorBuffer() {
@@ -1951,14 +2537,20 @@ public class World {
     m_particleSystem.setParticleFlagsBuffer(buffer, capacity);
   }
 
-  public void setParticlePositionBuffer(Vec2[] buffer, int capacity) {
-    m_particleSystem.setParticlePositionBuffer(buffer, capacity);
-
+  /**
+   * @param buffer x and y of each particle, interleaved
+   * @param capacity the number of particles the buffer can hold
+   */
+  public void setParticlePositionArray(float[] buffer, int capacity) {
+    m_particleSystem.setParticlePositionArray(buffer, capacity);
   }
 
-  public void setParticleVelocityBuffer(Vec2[] buffer, int capacity) {
-    m_particleSystem.setParticleVelocityBuffer(buffer, capacity);
-
+  /**
+   * @param buffer x and y of each particle, interleaved
+   * @param capacity the number of particles the buffer can hold
+   */
+  public void setParticleVelocityArray(float[] buffer, int capacity) {
+    m_particleSystem.setParticleVelocityArray(buffer, capacity);
   }
 
   public void setParticleColorBuffer(ParticleColor[] buffer, int capacity) {
@@ -26,6 +26,7 @@ package org.jbox2d.dynamics.contacts;
 
 import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.collision.ContactID;
+import org.jbox2d.collision.Distance.SimplexCache;
 import org.jbox2d.collision.Manifold;
 import org.jbox2d.collision.ManifoldPoint;
 import org.jbox2d.collision.WorldManifold;
@@ -79,6 +80,10 @@ public abstract class Contact {
 
   public float m_toiCount;
   public float m_toi;
+  /** Slot in the world's TOI event queue, -1 when not queued. */
+  public int m_toiIndex = -1;
+  /** Warm starts the time of impact search from one step to the next. */
+  public final SimplexCache m_toiCache = new SimplexCache();
 
   public float m_friction;
   public float m_restitution;
@@ -122,6 +127,7 @@ public abstract class Contact {
     m_nodeB.other = null;
 
     m_toiCount = 0;
+    m_toiCache.count = 0;
     m_friction = Contact.mixFriction(fA.m_friction, fB.m_friction);
     m_restitution = Contact.mixRestitution(fA.m_restitution, fB.m_restitution);
 
@@ -260,14 +266,25 @@ public abstract class Contact {
   private final Manifold oldManifold = new Manifold();
 
   public void update(ContactListener listener) {
+    boolean touching = updateManifold();
+    updateTouching(touching, listener);
+  }
 
+  /**
+   * First half of {@link #update}: computes the new manifold (or the overlap for sensors) and
+   * carries the warm starting impulses over from the old one. This only writes to the contact
+   * itself, so different contacts can be updated concurrently as long as the world pool is safe to
+   * share between threads.
+   * 
+   * @return true if the shapes are touching
+   */
+  public boolean updateManifold() {
     oldManifold.set(m_manifold);
 
     // Re-enable this contact.
     m_flags |= ENABLED_FLAG;
 
     boolean touching = false;
-    boolean wasTouching = (m_flags & TOUCHING_FLAG) == TOUCHING_FLAG;
 
     boolean sensorA = m_fixtureA.isSensor();
     boolean sensorB = m_fixtureB.isSensor();
@@ -309,11 +326,28 @@ public abstract class Contact {
           }
         }
       }
+    }
 
-      if (touching != wasTouching) {
-        bodyA.setAwake(true);
-        bodyB.setAwake(true);
-      }
+    return touching;
+  }
+
+  /**
+   * Second half of {@link #update}: stores the touching state from {@link #updateManifold()},
+   * wakes the bodies if it changed and calls the listener.
+   * 
+   * @param touching
+   * @param listener
+   */
+  public void updateTouching(boolean touching, ContactListener listener) {
+    boolean wasTouching = (m_flags & TOUCHING_FLAG) == TOUCHING_FLAG;
+
+    boolean sensorA = m_fixtureA.isSensor();
+    boolean sensorB = m_fixtureB.isSensor();
+    boolean sensor = sensorA || sensorB;
+
+    if (sensor == false && touching != wasTouching) {
+      m_fixtureA.getBody().setAwake(true);
+      m_fixtureB.getBody().setAwake(true);
     }
 
     if (touching) {
@@ -57,17 +57,23 @@ public class ContactSolver {
   public static final float k_maxConditionNumber = 100.0f;
 
   public TimeStep m_step;
-  public Position[] m_positions;
-  public Velocity[] m_velocities;
+  /** Flat body positions, {@code c.x, c.y, a} at {@code 3 * islandIndex}. */
+  public float[] m_positions;
+  /** Flat body velocities, {@code v.x, v.y, w} at {@code 3 * islandIndex}. */
+  public float[] m_velocities;
   public ContactPositionConstraint[] m_positionConstraints;
   public ContactVelocityConstraint[] m_velocityConstraints;
   public Contact[] m_contacts;
   public int m_count;
 
   public ContactSolver() {
-    m_positionConstraints = new ContactPositionConstraint[INITIAL_NUM_CONSTRAINTS];
-    m_velocityConstraints = new ContactVelocityConstraint[INITIAL_NUM_CONSTRAINTS];
-    for (int i = 0; i < INITIAL_NUM_CONSTRAINTS; i++) {
+    this(INITIAL_NUM_CONSTRAINTS);
+  }
+
+  public ContactSolver(int initialCapacity) {
+    m_positionConstraints = new ContactPositionConstraint[initialCapacity];
+    m_velocityConstraints = new ContactVelocityConstraint[initialCapacity];
+    for (int i = 0; i < initialCapacity; i++) {
       m_positionConstraints[i] = new ContactPositionConstraint();
       m_velocityConstraints[i] = new ContactVelocityConstraint();
     }
@@ -187,10 +193,14 @@ public class ContactSolver {
       float iB = vc.invIB;
       int pointCount = vc.pointCount;
 
-      Vec2 vA = m_velocities[indexA].v;
-      float wA = m_velocities[indexA].w;
-      Vec2 vB = m_velocities[indexB].v;
-      float wB = m_velocities[indexB].w;
+      final int offsetA = 3 * indexA;
+      final int offsetB = 3 * indexB;
+      float vAx = m_velocities[offsetA];
+      float vAy = m_velocities[offsetA + 1];
+      float wA = m_velocities[offsetA + 2];
+      float vBx = m_velocities[offsetB];
+      float vBy = m_velocities[offsetB + 1];
+      float wB = m_velocities[offsetB + 2];
 
       Vec2 normal = vc.normal;
       float tangentx = 1.0f * normal.y;
@@ -202,14 +212,18 @@ public class ContactSolver {
         float Py = tangenty * vcp.tangentImpulse + normal.y * vcp.normalImpulse;
 
         wA -= iA * (vcp.rA.x * Py - vcp.rA.y * Px);
-        vA.x -= Px * mA;
-        vA.y -= Py * mA;
+        vAx -= Px * mA;
+        vAy -= Py * mA;
         wB += iB * (vcp.rB.x * Py - vcp.rB.y * Px);
-        vB.x += Px * mB;
-        vB.y += Py * mB;
+        vBx += Px * mB;
+        vBy += Py * mB;
       }
-      m_velocities[indexA].w = wA;
-      m_velocities[indexB].w = wB;
+      m_velocities[offsetA] = vAx;
+      m_velocities[offsetA + 1] = vAy;
+      m_velocities[offsetA + 2] = wA;
+      m_velocities[offsetB] = vBx;
+      m_velocities[offsetB + 1] = vBy;
+      m_velocities[offsetB + 2] = wB;
     }
   }
 
@@ -239,15 +253,21 @@ public class ContactSolver {
       Vec2 localCenterA = pc.localCenterA;
       Vec2 localCenterB = pc.localCenterB;
 
-      Vec2 cA = m_positions[indexA].c;
-      float aA = m_positions[indexA].a;
-      Vec2 vA = m_velocities[indexA].v;
-      float wA = m_velocities[indexA].w;
-
-      Vec2 cB = m_positions[indexB].c;
-      float aB = m_positions[indexB].a;
-      Vec2 vB = m_velocities[indexB].v;
-      float wB = m_velocities[indexB].w;
+      final int offsetA = 3 * indexA;
+      final int offsetB = 3 * indexB;
+      final float cAx = m_positions[offsetA];
+      final float cAy = m_positions[offsetA + 1];
+      final float aA = m_positions[offsetA + 2];
+      final float vAx = m_velocities[offsetA];
+      final float vAy = m_velocities[offsetA + 1];
+      final float wA = m_velocities[offsetA + 2];
+
+      final float cBx = m_positions[offsetB];
+      final float cBy = m_positions[offsetB + 1];
+      final float aB = m_positions[offsetB + 2];
+      final float vBx = m_velocities[offsetB];
+      final float vBy = m_velocities[offsetB + 1];
+      final float wB = m_velocities[offsetB + 2];
 
       assert (manifold.pointCount > 0);
 
@@ -255,10 +275,10 @@ public class ContactSolver {
       final Rot xfBq = xfB.q;
       xfAq.set(aA);
       xfBq.set(aB);
-      xfA.p.x = cA.x - (xfAq.c * localCenterA.x - xfAq.s * localCenterA.y);
-      xfA.p.y = cA.y - (xfAq.s * localCenterA.x + xfAq.c * localCenterA.y);
-      xfB.p.x = cB.x - (xfBq.c * localCenterB.x - xfBq.s * localCenterB.y);
-      xfB.p.y = cB.y - (xfBq.s * localCenterB.x + xfBq.c * localCenterB.y);
+      xfA.p.x = cAx - (xfAq.c * localCenterA.x - xfAq.s * localCenterA.y);
+      xfA.p.y = cAy - (xfAq.s * localCenterA.x + xfAq.c * localCenterA.y);
+      xfB.p.x = cBx - (xfBq.c * localCenterB.x - xfBq.s * localCenterB.y);
+      xfB.p.y = cBy - (xfBq.s * localCenterB.x + xfBq.c * localCenterB.y);
 
       worldManifold.initialize(manifold, xfA, radiusA, xfB, radiusB);
 
@@ -272,10 +292,10 @@ public class ContactSolver {
         Vec2 wmPj = worldManifold.points[j];
         final Vec2 vcprA = vcp.rA;
         final Vec2 vcprB = vcp.rB;
-        vcprA.x = wmPj.x - cA.x;
-        vcprA.y = wmPj.y - cA.y;
-        vcprB.x = wmPj.x - cB.x;
-        vcprB.y = wmPj.y - cB.y;
+        vcprA.x = wmPj.x - cAx;
+        vcprA.y = wmPj.y - cAy;
+        vcprB.x = wmPj.x - cBx;
+        vcprB.y = wmPj.y - cBy;
 
         float rnA = vcprA.x * vcnormal.y - vcprA.y * vcnormal.x;
         float rnB = vcprB.x * vcnormal.y - vcprB.y * vcnormal.x;
@@ -296,12 +316,15 @@ public class ContactSolver {
 
         // Setup a velocity bias for restitution.
         vcp.velocityBias = 0.0f;
-        float tempx = vB.x + -wB * vcprB.y - vA.x - (-wA * vcprA.y);
-        float tempy = vB.y + wB * vcprB.x - vA.y - (wA * vcprA.x);
+        float tempx = vBx + -wB * vcprB.y - vAx - (-wA * vcprA.y);
+        float tempy = vBy + wB * vcprB.x - vAy - (wA * vcprA.x);
         float vRel = vcnormal.x * tempx + vcnormal.y * tempy;
         if (vRel < -Settings.velocityThreshold) {
           vcp.velocityBias = -vc.restitution * vRel;
         }
+        vcp.relativeVelocity = vRel;
+        vcp.adjustedSeparation = worldManifold.separations[j]
+            - ((vcprB.x - vcprA.x) * vcnormal.x + (vcprB.y - vcprA.y) * vcnormal.y);
       }
 
       // If we have two points, then prepare the block solver.
@@ -334,8 +357,17 @@ public class ContactSolver {
 
 
   public final void solveVelocityConstraints() {
-    for (int i = 0; i < m_count; ++i) {
-      final ContactVelocityConstraint vc = m_velocityConstraints[i];
+    solveVelocityConstraints(null, 0, m_count);
+  }
+
+  /**
+   * Solves the velocity constraints {@code order[start]} to {@code order[end - 1]}, or constraints
+   * start to end - 1 if order is null. Only the velocities of the two bodies of each constraint are
+   * touched, so ranges that share no dynamic body can be solved concurrently.
+   */
+  public final void solveVelocityConstraints(int[] order, int start, int end) {
+    for (int k = start; k < end; ++k) {
+      final ContactVelocityConstraint vc = m_velocityConstraints[order != null ? order[k] : k];
 
       int indexA = vc.indexA;
       int indexB = vc.indexB;
@@ -346,10 +378,14 @@ public class ContactSolver {
       float iB = vc.invIB;
       int pointCount = vc.pointCount;
 
-      Vec2 vA = m_velocities[indexA].v;
-      float wA = m_velocities[indexA].w;
-      Vec2 vB = m_velocities[indexB].v;
-      float wB = m_velocities[indexB].w;
+      final int offsetA = 3 * indexA;
+      final int offsetB = 3 * indexB;
+      float vAx = m_velocities[offsetA];
+      float vAy = m_velocities[offsetA + 1];
+      float wA = m_velocities[offsetA + 2];
+      float vBx = m_velocities[offsetB];
+      float vBy = m_velocities[offsetB + 1];
+      float wB = m_velocities[offsetB + 2];
 
       Vec2 normal = vc.normal;
       final float normalx = normal.x;
@@ -364,8 +400,8 @@ public class ContactSolver {
       for (int j = 0; j < pointCount; ++j) {
         final VelocityConstraintPoint vcp = vc.points[j];
         final Vec2 a = vcp.rA;
-        float dvx = -wB * vcp.rB.y + vB.x - vA.x + wA * a.y;
-        float dvy = wB * vcp.rB.x + vB.y - vA.y - wA * a.x;
+        float dvx = -wB * vcp.rB.y + vBx - vAx + wA * a.y;
+        float dvy = wB * vcp.rB.x + vBy - vAy - wA * a.x;
 
         // Compute tangent force
         final float vt = dvx * tangentx + dvy * tangenty - vc.tangentSpeed;
@@ -385,13 +421,13 @@ public class ContactSolver {
         final float Py = tangenty * lambda;
 
         // vA -= invMassA * P;
-        vA.x -= Px * mA;
-        vA.y -= Py * mA;
+        vAx -= Px * mA;
+        vAy -= Py * mA;
         wA -= iA * (vcp.rA.x * Py - vcp.rA.y * Px);
 
         // vB += invMassB * P;
-        vB.x += Px * mB;
-        vB.y += Py * mB;
+        vBx += Px * mB;
+        vBy += Py * mB;
         wB += iB * (vcp.rB.x * Py - vcp.rB.y * Px);
       }
 
@@ -402,8 +438,8 @@ public class ContactSolver {
         // Relative velocity at contact
         // Vec2 dv = vB + Cross(wB, vcp.rB) - vA - Cross(wA, vcp.rA);
 
-        float dvx = -wB * vcp.rB.y + vB.x - vA.x + wA * vcp.rA.y;
-        float dvy = wB * vcp.rB.x + vB.y - vA.y - wA * vcp.rA.x;
+        float dvx = -wB * vcp.rB.y + vBx - vAx + wA * vcp.rA.y;
+        float dvy = wB * vcp.rB.x + vBy - vAy - wA * vcp.rA.x;
 
         // Compute normal impulse
         final float vn = dvx * normalx + dvy * normaly;
@@ -420,13 +456,13 @@ public class ContactSolver {
         float Py = normaly * lambda;
 
         // vA -= invMassA * P;
-        vA.x -= Px * mA;
-        vA.y -= Py * mA;
+        vAx -= Px * mA;
+        vAy -= Py * mA;
         wA -= iA * (vcp.rA.x * Py - vcp.rA.y * Px);
 
         // vB += invMassB * P;
-        vB.x += Px * mB;
-        vB.y += Py * mB;
+        vBx += Px * mB;
+        vBy += Py * mB;
         wB += iB * (vcp.rB.x * Py - vcp.rB.y * Px);
       } else {
         // Block solver developed in collaboration with Dirk Gregorius (back in 01/07 on
@@ -480,12 +516,12 @@ public class ContactSolver {
         assert (ax >= 0.0f && ay >= 0.0f);
         // Relative velocity at contact
         // Vec2 dv1 = vB + Cross(wB, cp1.rB) - vA - Cross(wA, cp1.rA);
-        float dv1x = -wB * cp1rB.y + vB.x - vA.x + wA * cp1rA.y;
-        float dv1y = wB * cp1rB.x + vB.y - vA.y - wA * cp1rA.x;
+        float dv1x = -wB * cp1rB.y + vBx - vAx + wA * cp1rA.y;
+        float dv1y = wB * cp1rB.x + vBy - vAy - wA * cp1rA.x;
 
         // Vec2 dv2 = vB + Cross(wB, cp2.rB) - vA - Cross(wA, cp2.rA);
-        float dv2x = -wB * cp2rB.y + vB.x - vA.x + wA * cp2rA.y;
-        float dv2y = wB * cp2rB.x + vB.y - vA.y - wA * cp2rA.x;
+        float dv2x = -wB * cp2rB.y + vBx - vAx + wA * cp2rA.y;
+        float dv2y = wB * cp2rB.x + vBy - vAy - wA * cp2rA.x;
 
         // Compute normal velocity
         float vn1 = dv1x * normalx + dv1y * normaly;
@@ -538,10 +574,10 @@ public class ContactSolver {
              * vB += invMassB * (P1 + P2); wB += invIB * (Cross(cp1.rB, P1) + Cross(cp2.rB, P2));
              */
 
-            vA.x -= mA * (P1x + P2x);
-            vA.y -= mA * (P1y + P2y);
-            vB.x += mB * (P1x + P2x);
-            vB.y += mB * (P1y + P2y);
+            vAx -= mA * (P1x + P2x);
+            vAy -= mA * (P1y + P2y);
+            vBx += mB * (P1x + P2x);
+            vBy += mB * (P1y + P2y);
 
             wA -= iA * (cp1rA.x * P1y - cp1rA.y * P1x + (cp2rA.x * P2y - cp2rA.y * P2x));
             wB += iB * (cp1rB.x * P1y - cp1rB.y * P1x + (cp2rB.x * P2y - cp2rB.y * P2x));
@@ -561,11 +597,13 @@ public class ContactSolver {
              */
             if (DEBUG_SOLVER) {
               // Postconditions
-              Vec2 dv1 = vB.add(Vec2.cross(wB, cp1rB).subLocal(vA).subLocal(Vec2.cross(wA, cp1rA)));
-              Vec2 dv2 = vB.add(Vec2.cross(wB, cp2rB).subLocal(vA).subLocal(Vec2.cross(wA, cp2rA)));
+              dv1x = -wB * cp1rB.y + vBx - vAx + wA * cp1rA.y;
+              dv1y = wB * cp1rB.x + vBy - vAy - wA * cp1rA.x;
+              dv2x = -wB * cp2rB.y + vBx - vAx + wA * cp2rA.y;
+              dv2y = wB * cp2rB.x + vBy - vAy - wA * cp2rA.x;
               // Compute normal velocity
-              vn1 = Vec2.dot(dv1, normal);
-              vn2 = Vec2.dot(dv2, normal);
+              vn1 = dv1x * normalx + dv1y * normaly;
+              vn2 = dv2x * normalx + dv2y * normaly;
 
               assert (MathUtils.abs(vn1 - cp1.velocityBias) < k_errorTol);
               assert (MathUtils.abs(vn2 - cp2.velocityBias) < k_errorTol);
@@ -604,10 +642,10 @@ public class ContactSolver {
              * vB += invMassB * (P1 + P2); wB += invIB * (Cross(cp1.rB, P1) + Cross(cp2.rB, P2));
              */
 
-            vA.x -= mA * (P1x + P2x);
-            vA.y -= mA * (P1y + P2y);
-            vB.x += mB * (P1x + P2x);
-            vB.y += mB * (P1y + P2y);
+            vAx -= mA * (P1x + P2x);
+            vAy -= mA * (P1y + P2y);
+            vBx += mB * (P1x + P2x);
+            vBy += mB * (P1y + P2y);
 
             wA -= iA * (cp1rA.x * P1y - cp1rA.y * P1x + (cp2rA.x * P2y - cp2rA.y * P2x));
             wB += iB * (cp1rB.x * P1y - cp1rB.y * P1x + (cp2rB.x * P2y - cp2rB.y * P2x));
@@ -626,9 +664,10 @@ public class ContactSolver {
              */
             if (DEBUG_SOLVER) {
               // Postconditions
-              Vec2 dv1 = vB.add(Vec2.cross(wB, cp1rB).subLocal(vA).subLocal(Vec2.cross(wA, cp1rA)));
+              dv1x = -wB * cp1rB.y + vBx - vAx + wA * cp1rA.y;
+              dv1y = wB * cp1rB.x + vBy - vAy - wA * cp1rA.x;
               // Compute normal velocity
-              vn1 = Vec2.dot(dv1, normal);
+              vn1 = dv1x * normalx + dv1y * normaly;
 
               assert (MathUtils.abs(vn1 - cp1.velocityBias) < k_errorTol);
             }
@@ -664,10 +703,10 @@ public class ContactSolver {
             float P2x = normalx * dy;
             float P2y = normaly * dy;
 
-            vA.x -= mA * (P1x + P2x);
-            vA.y -= mA * (P1y + P2y);
-            vB.x += mB * (P1x + P2x);
-            vB.y += mB * (P1y + P2y);
+            vAx -= mA * (P1x + P2x);
+            vAy -= mA * (P1y + P2y);
+            vBx += mB * (P1x + P2x);
+            vBy += mB * (P1y + P2y);
 
             wA -= iA * (cp1rA.x * P1y - cp1rA.y * P1x + (cp2rA.x * P2y - cp2rA.y * P2x));
             wB += iB * (cp1rB.x * P1y - cp1rB.y * P1x + (cp2rB.x * P2y - cp2rB.y * P2x));
@@ -686,9 +725,10 @@ public class ContactSolver {
              */
             if (DEBUG_SOLVER) {
               // Postconditions
-              Vec2 dv2 = vB.add(Vec2.cross(wB, cp2rB).subLocal(vA).subLocal(Vec2.cross(wA, cp2rA)));
+              dv2x = -wB * cp2rB.y + vBx - vAx + wA * cp2rA.y;
+              dv2y = wB * cp2rB.x + vBy - vAy - wA * cp2rA.x;
               // Compute normal velocity
-              vn2 = Vec2.dot(dv2, normal);
+              vn2 = dv2x * normalx + dv2y * normaly;
 
               assert (MathUtils.abs(vn2 - cp2.velocityBias) < k_errorTol);
             }
@@ -723,10 +763,10 @@ public class ContactSolver {
             float P2x = normalx * dy;
             float P2y = normaly * dy;
 
-            vA.x -= mA * (P1x + P2x);
-            vA.y -= mA * (P1y + P2y);
-            vB.x += mB * (P1x + P2x);
-            vB.y += mB * (P1y + P2y);
+            vAx -= mA * (P1x + P2x);
+            vAy -= mA * (P1y + P2y);
+            vBx += mB * (P1x + P2x);
+            vBy += mB * (P1y + P2y);
 
             wA -= iA * (cp1rA.x * P1y - cp1rA.y * P1x + (cp2rA.x * P2y - cp2rA.y * P2x));
             wB += iB * (cp1rB.x * P1y - cp1rB.y * P1x + (cp2rB.x * P2y - cp2rB.y * P2x));
@@ -743,10 +783,12 @@ public class ContactSolver {
         }
       }
 
-      // m_velocities[indexA].v.set(vA);
-      m_velocities[indexA].w = wA;
-      // m_velocities[indexB].v.set(vB);
-      m_velocities[indexB].w = wB;
+      m_velocities[offsetA] = vAx;
+      m_velocities[offsetA + 1] = vAy;
+      m_velocities[offsetA + 2] = wA;
+      m_velocities[offsetB] = vBx;
+      m_velocities[offsetB + 1] = vBy;
+      m_velocities[offsetB + 2] = wB;
     }
   }
 
@@ -762,6 +804,328 @@ public class ContactSolver {
     }
   }
 
+  // Soft step solver. Contacts are soft springs whose stiffness depends on the sub-step, so one
+  // iteration per sub-step is enough. See Erin Catto's "Solver2D" write-up.
+
+  private float m_biasRate, m_massScale, m_impulseScale;
+  private float m_staticBiasRate, m_staticMassScale, m_staticImpulseScale;
+  private final float[] softBias = new float[Settings.maxManifoldPoints];
+  private final float[] softMassScale = new float[Settings.maxManifoldPoints];
+  private final float[] softImpulseScale = new float[Settings.maxManifoldPoints];
+
+  /**
+   * Prepares the constraints for the soft step solver, after
+   * {@link #initializeVelocityConstraints()}. The accumulated impulses are turned into impulses per
+   * sub-step, {@link #finishSoftConstraints(int)} turns them back.
+   * 
+   * @param h the sub-step
+   * @param subSteps the number of sub-steps
+   */
+  public final void prepareSoftConstraints(float h, int subSteps) {
+    float hertz = MathUtils.min(Settings.contactHertz, 0.25f / h);
+    float zeta = Settings.contactDampingRatio;
+
+    // Soft constraint coefficients for a spring of the given stiffness and damping.
+    float omega = 2.0f * MathUtils.PI * hertz;
+    float a1 = 2.0f * zeta + h * omega;
+    float a2 = h * omega * a1;
+    float a3 = 1.0f / (1.0f + a2);
+    m_biasRate = omega / a1;
+    m_massScale = a2 * a3;
+    m_impulseScale = a3;
+
+    // Contacts with static bodies are twice as stiff.
+    omega *= 2.0f;
+    a1 = 2.0f * zeta + h * omega;
+    a2 = h * omega * a1;
+    a3 = 1.0f / (1.0f + a2);
+    m_staticBiasRate = omega / a1;
+    m_staticMassScale = a2 * a3;
+    m_staticImpulseScale = a3;
+
+    final float scale = 1.0f / subSteps;
+    for (int i = 0; i < m_count; ++i) {
+      final ContactVelocityConstraint vc = m_velocityConstraints[i];
+      for (int j = 0; j < vc.pointCount; ++j) {
+        final VelocityConstraintPoint vcp = vc.points[j];
+        vcp.normalImpulse *= scale;
+        vcp.tangentImpulse *= scale;
+        vcp.maxNormalImpulse = 0.0f;
+      }
+    }
+  }
+
+  /**
+   * Solves the contacts once for the current sub-step. The separation is measured from the
+   * positions at the start of the step, so contacts don't need to be updated between sub-steps.
+   * 
+   * @param positions0 the positions at the start of the step
+   * @param inv_h the inverse sub-step
+   * @param useBias false to relax the velocities after the positions have been integrated
+   * @return the smallest separation found
+   */
+  public final float solveSoftVelocityConstraints(float[] positions0, float inv_h,
+      boolean useBias) {
+    final float[] positions = m_positions;
+    final float[] velocities = m_velocities;
+    final float maxBiasVelocity = Settings.contactPushMaxVelocity;
+    float minSeparation = 0.0f;
+
+    for (int i = 0; i < m_count; ++i) {
+      final ContactVelocityConstraint vc = m_velocityConstraints[i];
+
+      final float mA = vc.invMassA;
+      final float mB = vc.invMassB;
+      final float iA = vc.invIA;
+      final float iB = vc.invIB;
+
+      final int offsetA = 3 * vc.indexA;
+      final int offsetB = 3 * vc.indexB;
+      float vAx = velocities[offsetA];
+      float vAy = velocities[offsetA + 1];
+      float wA = velocities[offsetA + 2];
+      float vBx = velocities[offsetB];
+      float vBy = velocities[offsetB + 1];
+      float wB = velocities[offsetB + 2];
+
+      // Motion since the start of the step.
+      final float dpx = positions[offsetB] - positions0[offsetB] - positions[offsetA]
+          + positions0[offsetA];
+      final float dpy = positions[offsetB + 1] - positions0[offsetB + 1] - positions[offsetA + 1]
+          + positions0[offsetA + 1];
+      final float daA = positions[offsetA + 2] - positions0[offsetA + 2];
+      final float daB = positions[offsetB + 2] - positions0[offsetB + 2];
+      final float cA = MathUtils.cos(daA), sA = MathUtils.sin(daA);
+      final float cB = MathUtils.cos(daB), sB = MathUtils.sin(daB);
+
+      final boolean isStatic = mA == 0.0f || mB == 0.0f;
+      final float biasRate = isStatic ? m_staticBiasRate : m_biasRate;
+      final float massScale = isStatic ? m_staticMassScale : m_massScale;
+      final float impulseScale = isStatic ? m_staticImpulseScale : m_impulseScale;
+
+      final float normalx = vc.normal.x;
+      final float normaly = vc.normal.y;
+      final float tangentx = normaly;
+      final float tangenty = -normalx;
+      final int pointCount = vc.pointCount;
+
+      // Soft constraint coefficients of the points
+      for (int j = 0; j < pointCount; ++j) {
+        final VelocityConstraintPoint vcp = vc.points[j];
+        final Vec2 rA = vcp.rA;
+        final Vec2 rB = vcp.rB;
+
+        // Current separation, with the anchors rotated along with the bodies.
+        final float prAx = cA * rA.x - sA * rA.y;
+        final float prAy = sA * rA.x + cA * rA.y;
+        final float prBx = cB * rB.x - sB * rB.y;
+        final float prBy = sB * rB.x + cB * rB.y;
+        final float sep = (dpx + prBx - prAx) * normalx + (dpy + prBy - prAy) * normaly
+            + vcp.adjustedSeparation;
+        minSeparation = MathUtils.min(minSeparation, sep);
+
+        // Rest at the slop like the position solver, so the manifold points don't flicker.
+        final float C = sep + Settings.linearSlop;
+        if (C > 0.0f) {
+          // Speculative, only remove the velocity that would close the gap.
+          softBias[j] = C * inv_h;
+          softMassScale[j] = 1.0f;
+          softImpulseScale[j] = 0.0f;
+        } else if (useBias) {
+          softBias[j] = MathUtils.max(biasRate * C, -maxBiasVelocity);
+          softMassScale[j] = massScale;
+          softImpulseScale[j] = impulseScale;
+        } else {
+          softBias[j] = 0.0f;
+          softMassScale[j] = 1.0f;
+          softImpulseScale[j] = 0.0f;
+        }
+      }
+
+      // Solve normal constraints. Two points are solved together if neither impulse becomes
+      // negative, solving them one after the other tilts stacks a little in every sub-step.
+      boolean solved = false;
+      if (pointCount == 2) {
+        final VelocityConstraintPoint cp1 = vc.points[0];
+        final VelocityConstraintPoint cp2 = vc.points[1];
+        final Vec2 rA1 = cp1.rA, rB1 = cp1.rB, rA2 = cp2.rA, rB2 = cp2.rB;
+        final float a1 = cp1.normalImpulse;
+        final float a2 = cp2.normalImpulse;
+
+        final float dv1x = -wB * rB1.y + vBx - vAx + wA * rA1.y;
+        final float dv1y = wB * rB1.x + vBy - vAy - wA * rA1.x;
+        final float dv2x = -wB * rB2.y + vBx - vAx + wA * rA2.y;
+        final float dv2y = wB * rB2.x + vBy - vAy - wA * rA2.x;
+        final float b1 = dv1x * normalx + dv1y * normaly + softBias[0];
+        final float b2 = dv2x * normalx + dv2y * normaly + softBias[1];
+
+        final Mat22 R = vc.normalMass;
+        final float x1 = a1 - softMassScale[0] * (R.ex.x * b1 + R.ey.x * b2)
+            - softImpulseScale[0] * a1;
+        final float x2 = a2 - softMassScale[1] * (R.ex.y * b1 + R.ey.y * b2)
+            - softImpulseScale[1] * a2;
+
+        if (x1 >= 0.0f && x2 >= 0.0f) {
+          final float d1 = x1 - a1;
+          final float d2 = x2 - a2;
+          cp1.normalImpulse = x1;
+          cp2.normalImpulse = x2;
+          cp1.maxNormalImpulse = MathUtils.max(cp1.maxNormalImpulse, d1);
+          cp2.maxNormalImpulse = MathUtils.max(cp2.maxNormalImpulse, d2);
+
+          final float P1x = normalx * d1;
+          final float P1y = normaly * d1;
+          final float P2x = normalx * d2;
+          final float P2y = normaly * d2;
+          vAx -= mA * (P1x + P2x);
+          vAy -= mA * (P1y + P2y);
+          wA -= iA * (rA1.x * P1y - rA1.y * P1x + (rA2.x * P2y - rA2.y * P2x));
+          vBx += mB * (P1x + P2x);
+          vBy += mB * (P1y + P2y);
+          wB += iB * (rB1.x * P1y - rB1.y * P1x + (rB2.x * P2y - rB2.y * P2x));
+          solved = true;
+        }
+      }
+
+      for (int j = 0; !solved && j < pointCount; ++j) {
+        final VelocityConstraintPoint vcp = vc.points[j];
+        final Vec2 rA = vcp.rA;
+        final Vec2 rB = vcp.rB;
+
+        final float dvx = -wB * rB.y + vBx - vAx + wA * rA.y;
+        final float dvy = wB * rB.x + vBy - vAy - wA * rA.x;
+        final float vn = dvx * normalx + dvy * normaly;
+
+        float impulse = -vcp.normalMass * softMassScale[j] * (vn + softBias[j])
+            - softImpulseScale[j] * vcp.normalImpulse;
+        final float newImpulse = MathUtils.max(vcp.normalImpulse + impulse, 0.0f);
+        impulse = newImpulse - vcp.normalImpulse;
+        vcp.normalImpulse = newImpulse;
+        vcp.maxNormalImpulse = MathUtils.max(vcp.maxNormalImpulse, impulse);
+
+        final float Px = normalx * impulse;
+        final float Py = normaly * impulse;
+        vAx -= Px * mA;
+        vAy -= Py * mA;
+        wA -= iA * (rA.x * Py - rA.y * Px);
+        vBx += Px * mB;
+        vBy += Py * mB;
+        wB += iB * (rB.x * Py - rB.y * Px);
+      }
+
+      // Solve tangent constraints
+      final float friction = vc.friction;
+      for (int j = 0; j < pointCount; ++j) {
+        final VelocityConstraintPoint vcp = vc.points[j];
+        final Vec2 rA = vcp.rA;
+        final Vec2 rB = vcp.rB;
+
+        final float dvx = -wB * rB.y + vBx - vAx + wA * rA.y;
+        final float dvy = wB * rB.x + vBy - vAy - wA * rA.x;
+        final float vt = dvx * tangentx + dvy * tangenty - vc.tangentSpeed;
+
+        float lambda = -vcp.tangentMass * vt;
+        final float maxFriction = friction * vcp.normalImpulse;
+        final float newImpulse =
+            MathUtils.clamp(vcp.tangentImpulse + lambda, -maxFriction, maxFriction);
+        lambda = newImpulse - vcp.tangentImpulse;
+        vcp.tangentImpulse = newImpulse;
+
+        final float Px = tangentx * lambda;
+        final float Py = tangenty * lambda;
+        vAx -= Px * mA;
+        vAy -= Py * mA;
+        wA -= iA * (rA.x * Py - rA.y * Px);
+        vBx += Px * mB;
+        vBy += Py * mB;
+        wB += iB * (rB.x * Py - rB.y * Px);
+      }
+
+      velocities[offsetA] = vAx;
+      velocities[offsetA + 1] = vAy;
+      velocities[offsetA + 2] = wA;
+      velocities[offsetB] = vBx;
+      velocities[offsetB + 1] = vBy;
+      velocities[offsetB + 2] = wB;
+    }
+
+    return minSeparation;
+  }
+
+  /**
+   * Applies restitution after the last sub-step to the contact points that were approaching
+   * faster than {@link Settings#velocityThreshold} and got pushed apart, then turns the
+   * impulses back into impulses per step.
+   * 
+   * @param subSteps the number of sub-steps
+   */
+  public final void finishSoftConstraints(int subSteps) {
+    final float[] velocities = m_velocities;
+    for (int i = 0; i < m_count; ++i) {
+      final ContactVelocityConstraint vc = m_velocityConstraints[i];
+      final int pointCount = vc.pointCount;
+
+      if (vc.restitution != 0.0f) {
+        final float mA = vc.invMassA;
+        final float mB = vc.invMassB;
+        final float iA = vc.invIA;
+        final float iB = vc.invIB;
+
+        final int offsetA = 3 * vc.indexA;
+        final int offsetB = 3 * vc.indexB;
+        float vAx = velocities[offsetA];
+        float vAy = velocities[offsetA + 1];
+        float wA = velocities[offsetA + 2];
+        float vBx = velocities[offsetB];
+        float vBy = velocities[offsetB + 1];
+        float wB = velocities[offsetB + 2];
+
+        final float normalx = vc.normal.x;
+        final float normaly = vc.normal.y;
+
+        for (int j = 0; j < pointCount; ++j) {
+          final VelocityConstraintPoint vcp = vc.points[j];
+          if (vcp.relativeVelocity > -Settings.velocityThreshold || vcp.maxNormalImpulse == 0.0f) {
+            continue;
+          }
+          final Vec2 rA = vcp.rA;
+          final Vec2 rB = vcp.rB;
+
+          final float dvx = -wB * rB.y + vBx - vAx + wA * rA.y;
+          final float dvy = wB * rB.x + vBy - vAy - wA * rA.x;
+          final float vn = dvx * normalx + dvy * normaly;
+
+          float impulse = -vcp.normalMass * (vn + vc.restitution * vcp.relativeVelocity);
+          final float newImpulse = MathUtils.max(vcp.normalImpulse + impulse, 0.0f);
+          impulse = newImpulse - vcp.normalImpulse;
+          vcp.normalImpulse = newImpulse;
+
+          final float Px = normalx * impulse;
+          final float Py = normaly * impulse;
+          vAx -= Px * mA;
+          vAy -= Py * mA;
+          wA -= iA * (rA.x * Py - rA.y * Px);
+          vBx += Px * mB;
+          vBy += Py * mB;
+          wB += iB * (rB.x * Py - rB.y * Px);
+        }
+
+        velocities[offsetA] = vAx;
+        velocities[offsetA + 1] = vAy;
+        velocities[offsetA + 2] = wA;
+        velocities[offsetB] = vBx;
+        velocities[offsetB + 1] = vBy;
+        velocities[offsetB + 2] = wB;
+      }
+
+      for (int j = 0; j < pointCount; ++j) {
+        final VelocityConstraintPoint vcp = vc.points[j];
+        vcp.normalImpulse *= subSteps;
+        vcp.tangentImpulse *= subSteps;
+      }
+    }
+  }
+
   /*
    * #if 0 // Sequential solver. bool ContactSolver::SolvePositionConstraints(float baumgarte) {
    * float minSeparation = 0.0f;
@@ -802,16 +1166,45 @@ public class ContactSolver {
    * -_linearSlop. return minSeparation >= -1.5f * _linearSlop; }
    */
 
-  private final PositionSolverManifold psolver = new PositionSolverManifold();
+  /**
+   * Temporaries of the position solver. Threads solving position constraints concurrently each need
+   * their own.
+   */
+  public static class PositionSolverTemp {
+    private final Transform xfA = new Transform();
+    private final Transform xfB = new Transform();
+    private final PositionSolverManifold psolver = new PositionSolverManifold();
+  }
+
+  private final PositionSolverTemp positionTemp = new PositionSolverTemp();
 
   /**
    * Sequential solver.
    */
   public final boolean solvePositionConstraints() {
+    float minSeparation = solvePositionConstraints(null, 0, m_count, positionTemp);
+
+    // We can't expect minSpeparation >= -linearSlop because we don't
+    // push the separation above -linearSlop.
+    return minSeparation >= -3.0f * Settings.linearSlop;
+  }
+
+  /**
+   * Solves the position constraints {@code order[start]} to {@code order[end - 1]}, or constraints
+   * start to end - 1 if order is null. Ranges that share no dynamic body can be solved concurrently
+   * with separate temporaries.
+   * 
+   * @return the smallest separation found, the constraints are solved once it is at least -3 times
+   *         {@link Settings#linearSlop}
+   */
+  public final float solvePositionConstraints(int[] order, int start, int end,
+      PositionSolverTemp temp) {
+    final Transform xfA = temp.xfA;
+    final Transform xfB = temp.xfB;
     float minSeparation = 0.0f;
 
-    for (int i = 0; i < m_count; ++i) {
-      ContactPositionConstraint pc = m_positionConstraints[i];
+    for (int k = start; k < end; ++k) {
+      ContactPositionConstraint pc = m_positionConstraints[order != null ? order[k] : k];
 
       int indexA = pc.indexA;
       int indexB = pc.indexB;
@@ -828,10 +1221,14 @@ public class ContactSolver {
       final float localCenterBy = localCenterB.y;
       int pointCount = pc.pointCount;
 
-      Vec2 cA = m_positions[indexA].c;
-      float aA = m_positions[indexA].a;
-      Vec2 cB = m_positions[indexB].c;
-      float aB = m_positions[indexB].a;
+      final int offsetA = 3 * indexA;
+      final int offsetB = 3 * indexB;
+      float cAx = m_positions[offsetA];
+      float cAy = m_positions[offsetA + 1];
+      float aA = m_positions[offsetA + 2];
+      float cBx = m_positions[offsetB];
+      float cBy = m_positions[offsetB + 1];
+      float aB = m_positions[offsetB + 2];
 
       // Solve normal constraints
       for (int j = 0; j < pointCount; ++j) {
@@ -839,21 +1236,21 @@ public class ContactSolver {
         final Rot xfBq = xfB.q;
         xfAq.set(aA);
         xfBq.set(aB);
-        xfA.p.x = cA.x - xfAq.c * localCenterAx + xfAq.s * localCenterAy;
-        xfA.p.y = cA.y - xfAq.s * localCenterAx - xfAq.c * localCenterAy;
-        xfB.p.x = cB.x - xfBq.c * localCenterBx + xfBq.s * localCenterBy;
-        xfB.p.y = cB.y - xfBq.s * localCenterBx - xfBq.c * localCenterBy;
+        xfA.p.x = cAx - xfAq.c * localCenterAx + xfAq.s * localCenterAy;
+        xfA.p.y = cAy - xfAq.s * localCenterAx - xfAq.c * localCenterAy;
+        xfB.p.x = cBx - xfBq.c * localCenterBx + xfBq.s * localCenterBy;
+        xfB.p.y = cBy - xfBq.s * localCenterBx - xfBq.c * localCenterBy;
 
-        final PositionSolverManifold psm = psolver;
+        final PositionSolverManifold psm = temp.psolver;
         psm.initialize(pc, xfA, xfB, j);
         final Vec2 normal = psm.normal;
         final Vec2 point = psm.point;
         final float separation = psm.separation;
 
-        float rAx = point.x - cA.x;
-        float rAy = point.y - cA.y;
-        float rBx = point.x - cB.x;
-        float rBy = point.y - cB.y;
+        float rAx = point.x - cAx;
+        float rAy = point.y - cAy;
+        float rBx = point.x - cBx;
+        float rBy = point.y - cBy;
 
         // Track max constraint error.
         minSeparation = MathUtils.min(minSeparation, separation);
@@ -874,25 +1271,25 @@ public class ContactSolver {
         float Px = normal.x * impulse;
         float Py = normal.y * impulse;
         
-        cA.x -= Px * mA;
-        cA.y -= Py * mA;
+        cAx -= Px * mA;
+        cAy -= Py * mA;
         aA -= iA * (rAx * Py - rAy * Px);
 
-        cB.x += Px * mB;
-        cB.y += Py * mB;
+        cBx += Px * mB;
+        cBy += Py * mB;
         aB += iB * (rBx * Py - rBy * Px);
       }
 
-      // m_positions[indexA].c.set(cA);
-      m_positions[indexA].a = aA;
+      m_positions[offsetA] = cAx;
+      m_positions[offsetA + 1] = cAy;
+      m_positions[offsetA + 2] = aA;
 
-      // m_positions[indexB].c.set(cB);
-      m_positions[indexB].a = aB;
+      m_positions[offsetB] = cBx;
+      m_positions[offsetB + 1] = cBy;
+      m_positions[offsetB + 2] = aB;
     }
 
-    // We can't expect minSpeparation >= -linearSlop because we don't
-    // push the separation above -linearSlop.
-    return minSeparation >= -3.0f * Settings.linearSlop;
+    return minSeparation;
   }
 
   // Sequential position solver for position constraints.
@@ -926,11 +1323,15 @@ public class ContactSolver {
         iB = pc.invIB;
       }
 
-      Vec2 cA = m_positions[indexA].c;
-      float aA = m_positions[indexA].a;
+      final int offsetA = 3 * indexA;
+      final int offsetB = 3 * indexB;
+      float cAx = m_positions[offsetA];
+      float cAy = m_positions[offsetA + 1];
+      float aA = m_positions[offsetA + 2];
 
-      Vec2 cB = m_positions[indexB].c;
-      float aB = m_positions[indexB].a;
+      float cBx = m_positions[offsetB];
+      float cBy = m_positions[offsetB + 1];
+      float aB = m_positions[offsetB + 2];
 
       // Solve normal constraints
       for (int j = 0; j < pointCount; ++j) {
@@ -938,22 +1339,22 @@ public class ContactSolver {
         final Rot xfBq = xfB.q;
         xfAq.set(aA);
         xfBq.set(aB);
-        xfA.p.x = cA.x - xfAq.c * localCenterAx + xfAq.s * localCenterAy;
-        xfA.p.y = cA.y - xfAq.s * localCenterAx - xfAq.c * localCenterAy;
-        xfB.p.x = cB.x - xfBq.c * localCenterBx + xfBq.s * localCenterBy;
-        xfB.p.y = cB.y - xfBq.s * localCenterBx - xfBq.c * localCenterBy;
+        xfA.p.x = cAx - xfAq.c * localCenterAx + xfAq.s * localCenterAy;
+        xfA.p.y = cAy - xfAq.s * localCenterAx - xfAq.c * localCenterAy;
+        xfB.p.x = cBx - xfBq.c * localCenterBx + xfBq.s * localCenterBy;
+        xfB.p.y = cBy - xfBq.s * localCenterBx - xfBq.c * localCenterBy;
 
-        final PositionSolverManifold psm = psolver;
+        final PositionSolverManifold psm = positionTemp.psolver;
         psm.initialize(pc, xfA, xfB, j);
         Vec2 normal = psm.normal;
 
         Vec2 point = psm.point;
         float separation = psm.separation;
 
-        float rAx = point.x - cA.x;
-        float rAy = point.y - cA.y;
-        float rBx = point.x - cB.x;
-        float rBy = point.y - cB.y;
+        float rAx = point.x - cAx;
+        float rAy = point.y - cAy;
+        float rBx = point.x - cBx;
+        float rBy = point.y - cBy;
 
         // Track max constraint error.
         minSeparation = MathUtils.min(minSeparation, separation);
@@ -974,20 +1375,22 @@ public class ContactSolver {
         float Px = normal.x * impulse;
         float Py = normal.y * impulse;
         
-        cA.x -= Px * mA;
-        cA.y -= Py * mA;
+        cAx -= Px * mA;
+        cAy -= Py * mA;
         aA -= iA * (rAx * Py - rAy * Px);
 
-        cB.x += Px * mB;
-        cB.y += Py * mB;
+        cBx += Px * mB;
+        cBy += Py * mB;
         aB += iB * (rBx * Py - rBy * Px);
       }
 
-      // m_positions[indexA].c.set(cA);
-      m_positions[indexA].a = aA;
+      m_positions[offsetA] = cAx;
+      m_positions[offsetA + 1] = cAy;
+      m_positions[offsetA + 2] = aA;
 
-      // m_positions[indexB].c.set(cB);
-      m_positions[indexB].a = aB;
+      m_positions[offsetB] = cBx;
+      m_positions[offsetB + 1] = cBy;
+      m_positions[offsetB + 2] = aB;
     }
 
     // We can't expect minSpeparation >= -_linearSlop because we don't
@@ -999,8 +1402,8 @@ public class ContactSolver {
     public TimeStep step;
     public Contact[] contacts;
     public int count;
-    public Position[] positions;
-    public Velocity[] velocities;
+    public float[] positions;
+    public float[] velocities;
   }
 }
 
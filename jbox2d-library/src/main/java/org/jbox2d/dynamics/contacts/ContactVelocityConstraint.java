@@ -56,5 +56,11 @@ public class ContactVelocityConstraint {
     public float normalMass;
     public float tangentMass;
     public float velocityBias;
+    /** separation at the start of the step, minus the anchor separation along the normal */
+    public float adjustedSeparation;
+    /** normal velocity at the start of the step */
+    public float relativeVelocity;
+    /** largest normal impulse of the step, used by the soft step solver for restitution */
+    public float maxNormalImpulse;
   }
 }
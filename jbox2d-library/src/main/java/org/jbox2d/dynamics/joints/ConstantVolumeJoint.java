@@ -29,8 +29,6 @@ import org.jbox2d.common.Vec2;
 import org.jbox2d.dynamics.Body;
 import org.jbox2d.dynamics.SolverData;
 import org.jbox2d.dynamics.World;
-import org.jbox2d.dynamics.contacts.Position;
-import org.jbox2d.dynamics.contacts.Velocity;
 
 public class ConstantVolumeJoint extends Joint {
 
@@ -119,24 +117,26 @@ public class ConstantVolumeJoint extends Joint {
     return area;
   }
 
-  private float getSolverArea(Position[] positions) {
+  private float getSolverArea(float[] positions) {
     float area = 0.0f;
     for (int i = 0; i < bodies.length; ++i) {
       final int next = (i == bodies.length - 1) ? 0 : i + 1;
-      area +=
-          positions[bodies[i].m_islandIndex].c.x * positions[bodies[next].m_islandIndex].c.y
-              - positions[bodies[next].m_islandIndex].c.x * positions[bodies[i].m_islandIndex].c.y;
+      final int pi = 3 * bodies[i].m_islandIndex;
+      final int pn = 3 * bodies[next].m_islandIndex;
+      area += positions[pi] * positions[pn + 1] - positions[pn] * positions[pi + 1];
     }
     area *= .5f;
     return area;
   }
 
-  private boolean constrainEdges(Position[] positions) {
+  private boolean constrainEdges(float[] positions) {
     float perimeter = 0.0f;
     for (int i = 0; i < bodies.length; ++i) {
       final int next = (i == bodies.length - 1) ? 0 : i + 1;
-      float dx = positions[bodies[next].m_islandIndex].c.x - positions[bodies[i].m_islandIndex].c.x;
-      float dy = positions[bodies[next].m_islandIndex].c.y - positions[bodies[i].m_islandIndex].c.y;
+      final int pi = 3 * bodies[i].m_islandIndex;
+      final int pn = 3 * bodies[next].m_islandIndex;
+      float dx = positions[pn] - positions[pi];
+      float dy = positions[pn + 1] - positions[pi + 1];
       float dist = MathUtils.sqrt(dx * dx + dy * dy);
       if (dist < Settings.EPSILON) {
         dist = 1.0f;
@@ -164,8 +164,8 @@ public class ConstantVolumeJoint extends Joint {
       if (normSqrd > Settings.linearSlop * Settings.linearSlop) {
         done = false;
       }
-      positions[bodies[next].m_islandIndex].c.x += delta.x;
-      positions[bodies[next].m_islandIndex].c.y += delta.y;
+      positions[3 * bodies[next].m_islandIndex] += delta.x;
+      positions[3 * bodies[next].m_islandIndex + 1] += delta.y;
       // bodies[next].m_linearVelocity.x += delta.x * step.inv_dt;
       // bodies[next].m_linearVelocity.y += delta.y * step.inv_dt;
     }
@@ -177,15 +177,16 @@ public class ConstantVolumeJoint extends Joint {
 
   @Override
   public void initVelocityConstraints(final SolverData step) {
-    Velocity[] velocities = step.velocities;
-    Position[] positions = step.positions;
+    float[] velocities = step.velocities;
+    float[] positions = step.positions;
     final Vec2[] d = pool.getVec2Array(bodies.length);
 
     for (int i = 0; i < bodies.length; ++i) {
       final int prev = (i == 0) ? bodies.length - 1 : i - 1;
       final int next = (i == bodies.length - 1) ? 0 : i + 1;
-      d[i].set(positions[bodies[next].m_islandIndex].c);
-      d[i].subLocal(positions[bodies[prev].m_islandIndex].c);
+      final int pn = 3 * bodies[next].m_islandIndex;
+      final int pp = 3 * bodies[prev].m_islandIndex;
+      d[i].set(positions[pn] - positions[pp], positions[pn + 1] - positions[pp + 1]);
     }
 
     if (step.step.warmStarting) {
@@ -196,8 +197,9 @@ public class ConstantVolumeJoint extends Joint {
       // Settings.maxLinearCorrection);
       // m_impulse = lambda;
       for (int i = 0; i < bodies.length; ++i) {
-        velocities[bodies[i].m_islandIndex].v.x += bodies[i].m_invMass * d[i].y * .5f * m_impulse;
-        velocities[bodies[i].m_islandIndex].v.y += bodies[i].m_invMass * -d[i].x * .5f * m_impulse;
+        velocities[3 * bodies[i].m_islandIndex] += bodies[i].m_invMass * d[i].y * .5f * m_impulse;
+        velocities[3 * bodies[i].m_islandIndex + 1] +=
+            bodies[i].m_invMass * -d[i].x * .5f * m_impulse;
       }
     } else {
       m_impulse = 0.0f;
@@ -214,17 +216,19 @@ public class ConstantVolumeJoint extends Joint {
     float crossMassSum = 0.0f;
     float dotMassSum = 0.0f;
 
-    Velocity[] velocities = step.velocities;
-    Position[] positions = step.positions;
+    float[] velocities = step.velocities;
+    float[] positions = step.positions;
     final Vec2 d[] = pool.getVec2Array(bodies.length);
 
     for (int i = 0; i < bodies.length; ++i) {
       final int prev = (i == 0) ? bodies.length - 1 : i - 1;
       final int next = (i == bodies.length - 1) ? 0 : i + 1;
-      d[i].set(positions[bodies[next].m_islandIndex].c);
-      d[i].subLocal(positions[bodies[prev].m_islandIndex].c);
+      final int pn = 3 * bodies[next].m_islandIndex;
+      final int pp = 3 * bodies[prev].m_islandIndex;
+      d[i].set(positions[pn] - positions[pp], positions[pn + 1] - positions[pp + 1]);
       dotMassSum += (d[i].lengthSquared()) / bodies[i].getMass();
-      crossMassSum += Vec2.cross(velocities[bodies[i].m_islandIndex].v, d[i]);
+      final int vi = 3 * bodies[i].m_islandIndex;
+      crossMassSum += velocities[vi] * d[i].y - velocities[vi + 1] * d[i].x;
     }
     float lambda = -2.0f * crossMassSum / dotMassSum;
     // System.out.println(crossMassSum + " " +dotMassSum);
@@ -233,8 +237,8 @@ public class ConstantVolumeJoint extends Joint {
     m_impulse += lambda;
     // System.out.println(m_impulse);
     for (int i = 0; i < bodies.length; ++i) {
-      velocities[bodies[i].m_islandIndex].v.x += bodies[i].m_invMass * d[i].y * .5f * lambda;
-      velocities[bodies[i].m_islandIndex].v.y += bodies[i].m_invMass * -d[i].x * .5f * lambda;
+      velocities[3 * bodies[i].m_islandIndex] += bodies[i].m_invMass * d[i].y * .5f * lambda;
+      velocities[3 * bodies[i].m_islandIndex + 1] += bodies[i].m_invMass * -d[i].x * .5f * lambda;
     }
   }
 
@@ -175,15 +175,19 @@ public class DistanceJoint extends Joint {
     m_invIA = m_bodyA.m_invI;
     m_invIB = m_bodyB.m_invI;
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -194,7 +198,8 @@ public class DistanceJoint extends Joint {
     // use m_u as temporary variable
     Rot.mulToOutUnsafe(qA, m_u.set(m_localAnchorA).subLocal(m_localCenterA), m_rA);
     Rot.mulToOutUnsafe(qB, m_u.set(m_localAnchorB).subLocal(m_localCenterB), m_rB);
-    m_u.set(cB).addLocal(m_rB).subLocal(cA).subLocal(m_rA);
+    m_u.x = cBx + m_rB.x - cAx - m_rA.x;
+    m_u.y = cBy + m_rB.y - cAy - m_rA.y;
 
     pool.pushRot(2);
 
@@ -247,39 +252,45 @@ public class DistanceJoint extends Joint {
       Vec2 P = pool.popVec2();
       P.set(m_u).mulLocal(m_impulse);
 
-      vA.x -= m_invMassA * P.x;
-      vA.y -= m_invMassA * P.y;
+      vAx -= m_invMassA * P.x;
+      vAy -= m_invMassA * P.y;
       wA -= m_invIA * Vec2.cross(m_rA, P);
 
-      vB.x += m_invMassB * P.x;
-      vB.y += m_invMassB * P.y;
+      vBx += m_invMassB * P.x;
+      vBy += m_invMassB * P.y;
       wB += m_invIB * Vec2.cross(m_rB, P);
 
       pool.pushVec2(1);
     } else {
       m_impulse = 0.0f;
     }
-//    data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Vec2 vpA = pool.popVec2();
     final Vec2 vpB = pool.popVec2();
 
     // Cdot = dot(u, v + cross(w, r))
     Vec2.crossToOutUnsafe(wA, m_rA, vpA);
-    vpA.addLocal(vA);
+    vpA.x += vAx;
+    vpA.y += vAy;
     Vec2.crossToOutUnsafe(wB, m_rB, vpB);
-    vpB.addLocal(vB);
+    vpB.x += vBx;
+    vpB.y += vBy;
     float Cdot = Vec2.dot(m_u, vpB.subLocal(vpA));
 
     float impulse = -m_mass * (Cdot + m_bias + m_gamma * m_impulse);
@@ -289,17 +300,19 @@ public class DistanceJoint extends Joint {
     float Px = impulse * m_u.x;
     float Py = impulse * m_u.y;
 
-    vA.x -= m_invMassA * Px;
-    vA.y -= m_invMassA * Py;
+    vAx -= m_invMassA * Px;
+    vAy -= m_invMassA * Py;
     wA -= m_invIA * (m_rA.x * Py - m_rA.y * Px);
-    vB.x += m_invMassB * Px;
-    vB.y += m_invMassB * Py;
+    vBx += m_invMassB * Px;
+    vBy += m_invMassB * Py;
     wB += m_invIB * (m_rB.x * Py - m_rB.y * Px);
 
-//    data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(2);
   }
@@ -315,17 +328,20 @@ public class DistanceJoint extends Joint {
     final Vec2 rB = pool.popVec2();
     final Vec2 u = pool.popVec2();
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
 
     qA.set(aA);
     qB.set(aB);
 
     Rot.mulToOutUnsafe(qA, u.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOutUnsafe(qB, u.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-    u.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+    u.x = cBx + rB.x - cAx - rA.x;
+    u.y = cBy + rB.y - cAy - rA.y;
 
 
     float length = u.normalize();
@@ -336,17 +352,19 @@ public class DistanceJoint extends Joint {
     float Px = impulse * u.x;
     float Py = impulse * u.y;
 
-    cA.x -= m_invMassA * Px;
-    cA.y -= m_invMassA * Py;
+    cAx -= m_invMassA * Px;
+    cAy -= m_invMassA * Py;
     aA -= m_invIA * (rA.x * Py - rA.y * Px);
-    cB.x += m_invMassB * Px;
-    cB.y += m_invMassB * Py;
+    cBx += m_invMassB * Px;
+    cBy += m_invMassB * Py;
     aB += m_invIB * (rB.x * Py - rB.y * Px);
 
-//    data.positions[m_indexA].c.set(cA);
-    data.positions[m_indexA].a = aA;
-//    data.positions[m_indexB].c.set(cB);
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     pool.pushVec2(3);
     pool.pushRot(2);
@@ -133,13 +133,15 @@ public class FrictionJoint extends Joint {
     m_invIA = m_bodyA.m_invI;
     m_invIB = m_bodyB.m_invI;
 
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
 
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
 
     final Vec2 temp = pool.popVec2();
@@ -187,11 +189,13 @@ public class FrictionJoint extends Joint {
       P.set(m_linearImpulse);
 
       temp.set(P).mulLocal(mA);
-      vA.subLocal(temp);
+      vAx -= temp.x;
+      vAy -= temp.y;
       wA -= iA * (Vec2.cross(m_rA, P) + m_angularImpulse);
 
       temp.set(P).mulLocal(mB);
-      vB.addLocal(temp);
+      vBx += temp.x;
+      vBy += temp.y;
       wB += iB * (Vec2.cross(m_rB, P) + m_angularImpulse);
 
       pool.pushVec2(1);
@@ -199,13 +203,15 @@ public class FrictionJoint extends Joint {
       m_linearImpulse.setZero();
       m_angularImpulse = 0.0f;
     }
-//    data.velocities[m_indexA].v.set(vA);
-    if( data.velocities[m_indexA].w != wA) {
-      assert(data.velocities[m_indexA].w != wA);
+    if( data.velocities[3 * m_indexA + 2] != wA) {
+      assert(data.velocities[3 * m_indexA + 2] != wA);
     }
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushRot(2);
     pool.pushVec2(1);
@@ -214,10 +220,12 @@ public class FrictionJoint extends Joint {
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
@@ -245,7 +253,8 @@ public class FrictionJoint extends Joint {
 
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot);
-      Cdot.addLocal(vB).subLocal(vA).subLocal(temp);
+      Cdot.x = Cdot.x + vBx - vAx - temp.x;
+      Cdot.y = Cdot.y + vBy - vAy - temp.y;
 
       final Vec2 impulse = pool.popVec2();
       Mat22.mulToOutUnsafe(m_linearMass, Cdot, impulse);
@@ -266,23 +275,27 @@ public class FrictionJoint extends Joint {
       impulse.set(m_linearImpulse).subLocal(oldImpulse);
 
       temp.set(impulse).mulLocal(mA);
-      vA.subLocal(temp);
+      vAx -= temp.x;
+      vAy -= temp.y;
       wA -= iA * Vec2.cross(m_rA, impulse);
 
       temp.set(impulse).mulLocal(mB);
-      vB.addLocal(temp);
+      vBx += temp.x;
+      vBy += temp.y;
       wB += iB * Vec2.cross(m_rB, impulse);
       
     }
 
-//    data.velocities[m_indexA].v.set(vA);
-    if( data.velocities[m_indexA].w != wA) {
-      assert(data.velocities[m_indexA].w != wA);
+    if( data.velocities[3 * m_indexA + 2] != wA) {
+      assert(data.velocities[3 * m_indexA + 2] != wA);
     }
-    data.velocities[m_indexA].w = wA;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
    
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(4);
   }
@@ -245,24 +245,28 @@ public class GearJoint extends Joint {
     m_iD = m_bodyD.m_invI;
 
     // Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
 
     // Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     // Vec2 cC = data.positions[m_indexC].c;
-    float aC = data.positions[m_indexC].a;
-    Vec2 vC = data.velocities[m_indexC].v;
-    float wC = data.velocities[m_indexC].w;
+    float aC = data.positions[3 * m_indexC + 2];
+    float vCx = data.velocities[3 * m_indexC];
+    float vCy = data.velocities[3 * m_indexC + 1];
+    float wC = data.velocities[3 * m_indexC + 2];
 
     // Vec2 cD = data.positions[m_indexD].c;
-    float aD = data.positions[m_indexD].a;
-    Vec2 vD = data.velocities[m_indexD].v;
-    float wD = data.velocities[m_indexD].w;
+    float aD = data.positions[3 * m_indexD + 2];
+    float vDx = data.velocities[3 * m_indexD];
+    float vDy = data.velocities[3 * m_indexD + 1];
+    float wD = data.velocities[3 * m_indexD + 2];
 
     Rot qA = pool.popRot(), qB = pool.popRot(), qC = pool.popRot(), qD = pool.popRot();
     qA.set(aA);
@@ -314,20 +318,20 @@ public class GearJoint extends Joint {
     m_mass = m_mass > 0.0f ? 1.0f / m_mass : 0.0f;
 
     if (data.step.warmStarting) {
-      vA.x += (m_mA * m_impulse) * m_JvAC.x;
-      vA.y += (m_mA * m_impulse) * m_JvAC.y;
+      vAx += (m_mA * m_impulse) * m_JvAC.x;
+      vAy += (m_mA * m_impulse) * m_JvAC.y;
       wA += m_iA * m_impulse * m_JwA;
 
-      vB.x += (m_mB * m_impulse) * m_JvBD.x;
-      vB.y += (m_mB * m_impulse) * m_JvBD.y;
+      vBx += (m_mB * m_impulse) * m_JvBD.x;
+      vBy += (m_mB * m_impulse) * m_JvBD.y;
       wB += m_iB * m_impulse * m_JwB;
 
-      vC.x -= (m_mC * m_impulse) * m_JvAC.x;
-      vC.y -= (m_mC * m_impulse) * m_JvAC.y;
+      vCx -= (m_mC * m_impulse) * m_JvAC.x;
+      vCy -= (m_mC * m_impulse) * m_JvAC.y;
       wC -= m_iC * m_impulse * m_JwC;
 
-      vD.x -= (m_mD * m_impulse) * m_JvBD.x;
-      vD.y -= (m_mD * m_impulse) * m_JvBD.y;
+      vDx -= (m_mD * m_impulse) * m_JvBD.x;
+      vDy -= (m_mD * m_impulse) * m_JvBD.y;
       wD -= m_iD * m_impulse * m_JwD;
     } else {
       m_impulse = 0.0f;
@@ -335,62 +339,74 @@ public class GearJoint extends Joint {
     pool.pushVec2(1);
     pool.pushRot(4);
 
-    // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
-    // data.velocities[m_indexC].v = vC;
-    data.velocities[m_indexC].w = wC;
-    // data.velocities[m_indexD].v = vD;
-    data.velocities[m_indexD].w = wD;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
+    data.velocities[3 * m_indexC] = vCx;
+    data.velocities[3 * m_indexC + 1] = vCy;
+    data.velocities[3 * m_indexC + 2] = wC;
+    data.velocities[3 * m_indexD] = vDx;
+    data.velocities[3 * m_indexD + 1] = vDy;
+    data.velocities[3 * m_indexD + 2] = wD;
   }
 
   @Override
   public void solveVelocityConstraints(SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
-    Vec2 vC = data.velocities[m_indexC].v;
-    float wC = data.velocities[m_indexC].w;
-    Vec2 vD = data.velocities[m_indexD].v;
-    float wD = data.velocities[m_indexD].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
+    float vCx = data.velocities[3 * m_indexC];
+    float vCy = data.velocities[3 * m_indexC + 1];
+    float wC = data.velocities[3 * m_indexC + 2];
+    float vDx = data.velocities[3 * m_indexD];
+    float vDy = data.velocities[3 * m_indexD + 1];
+    float wD = data.velocities[3 * m_indexD + 2];
 
     Vec2 temp1 = pool.popVec2();
     Vec2 temp2 = pool.popVec2();
     float Cdot =
-        Vec2.dot(m_JvAC, temp1.set(vA).subLocal(vC)) + Vec2.dot(m_JvBD, temp2.set(vB).subLocal(vD));
+        Vec2.dot(m_JvAC, temp1.set(vAx - vCx, vAy - vCy))
+            + Vec2.dot(m_JvBD, temp2.set(vBx - vDx, vBy - vDy));
     Cdot += (m_JwA * wA - m_JwC * wC) + (m_JwB * wB - m_JwD * wD);
     pool.pushVec2(2);
 
     float impulse = -m_mass * Cdot;
     m_impulse += impulse;
 
-    vA.x += (m_mA * impulse) * m_JvAC.x;
-    vA.y += (m_mA * impulse) * m_JvAC.y;
+    vAx += (m_mA * impulse) * m_JvAC.x;
+    vAy += (m_mA * impulse) * m_JvAC.y;
     wA += m_iA * impulse * m_JwA;
 
-    vB.x += (m_mB * impulse) * m_JvBD.x;
-    vB.y += (m_mB * impulse) * m_JvBD.y;
+    vBx += (m_mB * impulse) * m_JvBD.x;
+    vBy += (m_mB * impulse) * m_JvBD.y;
     wB += m_iB * impulse * m_JwB;
 
-    vC.x -= (m_mC * impulse) * m_JvAC.x;
-    vC.y -= (m_mC * impulse) * m_JvAC.y;
+    vCx -= (m_mC * impulse) * m_JvAC.x;
+    vCy -= (m_mC * impulse) * m_JvAC.y;
     wC -= m_iC * impulse * m_JwC;
 
-    vD.x -= (m_mD * impulse) * m_JvBD.x;
-    vD.y -= (m_mD * impulse) * m_JvBD.y;
+    vDx -= (m_mD * impulse) * m_JvBD.x;
+    vDy -= (m_mD * impulse) * m_JvBD.y;
     wD -= m_iD * impulse * m_JwD;
 
-
-    // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
-    // data.velocities[m_indexC].v = vC;
-    data.velocities[m_indexC].w = wC;
-    // data.velocities[m_indexD].v = vD;
-    data.velocities[m_indexD].w = wD;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
+    data.velocities[3 * m_indexC] = vCx;
+    data.velocities[3 * m_indexC + 1] = vCy;
+    data.velocities[3 * m_indexC + 2] = wC;
+    data.velocities[3 * m_indexD] = vDx;
+    data.velocities[3 * m_indexD + 1] = vDy;
+    data.velocities[3 * m_indexD + 2] = wD;
   }
 
   public Joint getJoint1() {
@@ -403,14 +419,18 @@ public class GearJoint extends Joint {
 
   @Override
   public boolean solvePositionConstraints(SolverData data) {
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 cC = data.positions[m_indexC].c;
-    float aC = data.positions[m_indexC].a;
-    Vec2 cD = data.positions[m_indexD].c;
-    float aD = data.positions[m_indexD].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float cCx = data.positions[3 * m_indexC];
+    float cCy = data.positions[3 * m_indexC + 1];
+    float aC = data.positions[3 * m_indexC + 2];
+    float cDx = data.positions[3 * m_indexD];
+    float cDy = data.positions[3 * m_indexD + 1];
+    float aD = data.positions[3 * m_indexD + 2];
 
     Rot qA = pool.popRot(), qB = pool.popRot(), qC = pool.popRot(), qD = pool.popRot();
     qA.set(aA);
@@ -448,7 +468,7 @@ public class GearJoint extends Joint {
       mass += m_mC + m_mA + m_iC * JwC * JwC + m_iA * JwA * JwA;
 
       pC.set(m_localAnchorC).subLocal(m_lcC);
-      Rot.mulTransUnsafe(qC, temp.set(rA).addLocal(cA).subLocal(cC), pA);
+      Rot.mulTransUnsafe(qC, temp.set(rA.x + cAx - cCx, rA.y + cAy - cCy), pA);
       coordinateA = Vec2.dot(pA.subLocal(pC), m_localAxisC);
       pool.pushVec2(4);
     }
@@ -475,7 +495,7 @@ public class GearJoint extends Joint {
       mass += m_ratio * m_ratio * (m_mD + m_mB) + m_iD * JwD * JwD + m_iB * JwB * JwB;
 
       pD.set(m_localAnchorD).subLocal(m_lcD);
-      Rot.mulTransUnsafe(qD, temp.set(rB).addLocal(cB).subLocal(cD), pB);
+      Rot.mulTransUnsafe(qD, temp.set(rB.x + cBx - cDx, rB.y + cBy - cDy), pB);
       coordinateB = Vec2.dot(pB.subLocal(pD), m_localAxisD);
       pool.pushVec2(5);
     }
@@ -489,30 +509,34 @@ public class GearJoint extends Joint {
     pool.pushVec2(3);
     pool.pushRot(4);
 
-    cA.x += (m_mA * impulse) * JvAC.x;
-    cA.y += (m_mA * impulse) * JvAC.y;
+    cAx += (m_mA * impulse) * JvAC.x;
+    cAy += (m_mA * impulse) * JvAC.y;
     aA += m_iA * impulse * JwA;
 
-    cB.x += (m_mB * impulse) * JvBD.x;
-    cB.y += (m_mB * impulse) * JvBD.y;
+    cBx += (m_mB * impulse) * JvBD.x;
+    cBy += (m_mB * impulse) * JvBD.y;
     aB += m_iB * impulse * JwB;
 
-    cC.x -= (m_mC * impulse) * JvAC.x;
-    cC.y -= (m_mC * impulse) * JvAC.y;
+    cCx -= (m_mC * impulse) * JvAC.x;
+    cCy -= (m_mC * impulse) * JvAC.y;
     aC -= m_iC * impulse * JwC;
 
-    cD.x -= (m_mD * impulse) * JvBD.x;
-    cD.y -= (m_mD * impulse) * JvBD.y;
+    cDx -= (m_mD * impulse) * JvBD.x;
+    cDy -= (m_mD * impulse) * JvBD.y;
     aD -= m_iD * impulse * JwD;
 
-    // data.positions[m_indexA].c = cA;
-    data.positions[m_indexA].a = aA;
-    // data.positions[m_indexB].c = cB;
-    data.positions[m_indexB].a = aB;
-    // data.positions[m_indexC].c = cC;
-    data.positions[m_indexC].a = aC;
-    // data.positions[m_indexD].c = cD;
-    data.positions[m_indexD].a = aD;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
+    data.positions[3 * m_indexC] = cCx;
+    data.positions[3 * m_indexC + 1] = cCy;
+    data.positions[3 * m_indexC + 2] = aC;
+    data.positions[3 * m_indexD] = cDx;
+    data.positions[3 * m_indexD + 1] = cDy;
+    data.positions[3 * m_indexD + 2] = aD;
 
     // TODO_ERIN not implemented
     return linearError < Settings.linearSlop;
@@ -175,15 +175,19 @@ public class MotorJoint extends Joint {
     m_invIA = m_bodyA.m_invI;
     m_invIB = m_bodyB.m_invI;
 
-    final Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    final Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-
-    final Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    final Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -226,8 +230,8 @@ public class MotorJoint extends Joint {
 
     // m_linearError = cB + m_rB - cA - m_rA - b2Mul(qA, m_linearOffset);
     Rot.mulToOutUnsafe(qA, m_linearOffset, temp);
-    m_linearError.x = cB.x + m_rB.x - cA.x - m_rA.x - temp.x;
-    m_linearError.y = cB.y + m_rB.y - cA.y - m_rA.y - temp.y;
+    m_linearError.x = cBx + m_rB.x - cAx - m_rA.x - temp.x;
+    m_linearError.y = cBy + m_rB.y - cAy - m_rA.y - temp.y;
     m_angularError = aB - aA - m_angularOffset;
 
     if (data.step.warmStarting) {
@@ -237,11 +241,11 @@ public class MotorJoint extends Joint {
       m_angularImpulse *= data.step.dtRatio;
 
       final Vec2 P = m_linearImpulse;
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * (m_rA.x * P.y - m_rA.y * P.x + m_angularImpulse);
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * (m_rB.x * P.y - m_rB.y * P.x + m_angularImpulse);
     } else {
       m_linearImpulse.setZero();
@@ -253,17 +257,23 @@ public class MotorJoint extends Joint {
     pool.pushRot(2);
 
     // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
     // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
   public void solveVelocityConstraints(SolverData data) {
-    final Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    final Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
@@ -294,9 +304,9 @@ public class MotorJoint extends Joint {
       // Cdot = vB + b2Cross(wB, m_rB) - vA - b2Cross(wA, m_rA) + inv_h * m_correctionFactor *
       // m_linearError;
       Cdot.x =
-          vB.x + -wB * m_rB.y - vA.x - -wA * m_rA.y + inv_h * m_correctionFactor * m_linearError.x;
+          vBx + -wB * m_rB.y - vAx - -wA * m_rA.y + inv_h * m_correctionFactor * m_linearError.x;
       Cdot.y =
-          vB.y + wB * m_rB.x - vA.y - wA * m_rA.x + inv_h * m_correctionFactor * m_linearError.y;
+          vBy + wB * m_rB.x - vAy - wA * m_rA.x + inv_h * m_correctionFactor * m_linearError.y;
 
       final Vec2 impulse = temp;
       Mat22.mulToOutUnsafe(m_linearMass, Cdot, impulse);
@@ -315,21 +325,23 @@ public class MotorJoint extends Joint {
       impulse.x = m_linearImpulse.x - oldImpulse.x;
       impulse.y = m_linearImpulse.y - oldImpulse.y;
 
-      vA.x -= mA * impulse.x;
-      vA.y -= mA * impulse.y;
+      vAx -= mA * impulse.x;
+      vAy -= mA * impulse.y;
       wA -= iA * (m_rA.x * impulse.y - m_rA.y * impulse.x);
 
-      vB.x += mB * impulse.x;
-      vB.y += mB * impulse.y;
+      vBx += mB * impulse.x;
+      vBy += mB * impulse.y;
       wB += iB * (m_rB.x * impulse.y - m_rB.y * impulse.x);
     }
 
     pool.pushVec2(3);
 
-    // data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
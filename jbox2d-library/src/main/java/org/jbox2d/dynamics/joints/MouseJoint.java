@@ -148,10 +148,12 @@ public class MouseJoint extends Joint {
     m_invMassB = m_bodyB.m_invMass;
     m_invIB = m_bodyB.m_invI;
 
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qB = pool.popRot();
 
@@ -195,7 +197,8 @@ public class MouseJoint extends Joint {
 
     K.invertToOut(m_mass);
 
-    m_C.set(cB).addLocal(m_rB).subLocal(m_targetA);
+    m_C.x = cBx + m_rB.x - m_targetA.x;
+    m_C.y = cBy + m_rB.y - m_targetA.y;
     m_C.mulLocal(m_beta);
 
     // Cheat with some damping
@@ -203,15 +206,16 @@ public class MouseJoint extends Joint {
 
     if (data.step.warmStarting) {
       m_impulse.mulLocal(data.step.dtRatio);
-      vB.x += m_invMassB * m_impulse.x;
-      vB.y += m_invMassB * m_impulse.y;
+      vBx += m_invMassB * m_impulse.x;
+      vBy += m_invMassB * m_impulse.y;
       wB += m_invIB * Vec2.cross(m_rB, m_impulse);
     } else {
       m_impulse.setZero();
     }
 
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(1);
     pool.pushMat22(1);
@@ -226,13 +230,15 @@ public class MouseJoint extends Joint {
   @Override
   public void solveVelocityConstraints(final SolverData data) {
 
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     // Cdot = v + cross(w, r)
     final Vec2 Cdot = pool.popVec2();
     Vec2.crossToOutUnsafe(wB, m_rB, Cdot);
-    Cdot.addLocal(vB);
+    Cdot.x += vBx;
+    Cdot.y += vBy;
 
     final Vec2 impulse = pool.popVec2();
     final Vec2 temp = pool.popVec2();
@@ -249,12 +255,13 @@ public class MouseJoint extends Joint {
     }
     impulse.set(m_impulse).subLocal(oldImpulse);
 
-    vB.x += m_invMassB * impulse.x;
-    vB.y += m_invMassB * impulse.y;
+    vBx += m_invMassB * impulse.x;
+    vBy += m_invMassB * impulse.y;
     wB += m_invIB * Vec2.cross(m_rB, impulse);
 
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
     
     pool.pushVec2(3);
   }
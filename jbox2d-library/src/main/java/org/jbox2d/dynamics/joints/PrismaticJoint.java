@@ -399,15 +399,19 @@ public class PrismaticJoint extends Joint {
     m_invIA = m_bodyA.m_invI;
     m_invIB = m_bodyB.m_invI;
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -422,7 +426,8 @@ public class PrismaticJoint extends Joint {
     // Compute the effective masses.
     Rot.mulToOutUnsafe(qA, d.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOutUnsafe(qB, d.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-    d.set(cB).subLocal(cA).addLocal(rB).subLocal(rA);
+    d.x = cBx - cAx + rB.x - rA.x;
+    d.y = cBy - cAy + rB.y - rA.y;
 
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
@@ -505,12 +510,12 @@ public class PrismaticJoint extends Joint {
       float LA = m_impulse.x * m_s1 + m_impulse.y + (m_motorImpulse + m_impulse.z) * m_a1;
       float LB = m_impulse.x * m_s2 + m_impulse.y + (m_motorImpulse + m_impulse.z) * m_a2;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * LA;
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * LB;
 
       pool.pushVec2(1);
@@ -519,10 +524,12 @@ public class PrismaticJoint extends Joint {
       m_motorImpulse = 0.0f;
     }
 
-    // data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushRot(2);
     pool.pushVec2(4);
@@ -530,10 +537,12 @@ public class PrismaticJoint extends Joint {
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
@@ -542,7 +551,8 @@ public class PrismaticJoint extends Joint {
 
     // Solve linear motor constraint.
     if (m_enableMotor && m_limitState != LimitState.EQUAL) {
-      temp.set(vB).subLocal(vA);
+      temp.x = vBx - vAx;
+      temp.y = vBy - vAy;
       float Cdot = Vec2.dot(m_axis, temp) + m_a2 * wB - m_a1 * wA;
       float impulse = m_motorMass * (m_motorSpeed - Cdot);
       float oldImpulse = m_motorImpulse;
@@ -555,19 +565,20 @@ public class PrismaticJoint extends Joint {
       float LA = impulse * m_a1;
       float LB = impulse * m_a2;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * LA;
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * LB;
 
       pool.pushVec2(1);
     }
 
     final Vec2 Cdot1 = pool.popVec2();
-    temp.set(vB).subLocal(vA);
+    temp.x = vBx - vAx;
+    temp.y = vBy - vAy;
     Cdot1.x = Vec2.dot(m_perp, temp) + m_s2 * wB - m_s1 * wA;
     Cdot1.y = wB - wA;
     // System.out.println(Cdot1);
@@ -575,7 +586,8 @@ public class PrismaticJoint extends Joint {
     if (m_enableLimit && m_limitState != LimitState.INACTIVE) {
       // Solve prismatic and limit constraint in block form.
       float Cdot2;
-      temp.set(vB).subLocal(vA);
+      temp.x = vBx - vAx;
+      temp.y = vBy - vAy;
       Cdot2 = Vec2.dot(m_axis, temp) + m_a2 * wB - m_a1 * wA;
 
       final Vec3 Cdot = pool.popVec3();
@@ -617,12 +629,12 @@ public class PrismaticJoint extends Joint {
       float LA = df.x * m_s1 + df.y + df.z * m_a1;
       float LB = df.x * m_s2 + df.y + df.z * m_a2;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * LA;
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * LB;
 
       pool.pushVec2(3);
@@ -641,21 +653,23 @@ public class PrismaticJoint extends Joint {
       float LA = df.x * m_s1 + df.y;
       float LB = df.x * m_s2 + df.y;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * LA;
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * LB;
 
       pool.pushVec2(2);
     }
 
-    // data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(2);
   }
@@ -676,10 +690,12 @@ public class PrismaticJoint extends Joint {
 
     final Vec3 impulse = pool.popVec3();
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
 
     qA.set(aA);
     qB.set(aB);
@@ -690,7 +706,8 @@ public class PrismaticJoint extends Joint {
     // Compute fresh Jacobians
     Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-    d.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+    d.x = cBx + rB.x - cAx - rA.x;
+    d.y = cBy + rB.y - cAy - rA.y;
 
     Rot.mulToOutUnsafe(qA, m_localXAxisA, axis);
     float a1 = Vec2.cross(temp.set(d).addLocal(rA), axis);
@@ -787,17 +804,19 @@ public class PrismaticJoint extends Joint {
     float LA = impulse.x * s1 + impulse.y + impulse.z * a1;
     float LB = impulse.x * s2 + impulse.y + impulse.z * a2;
 
-    cA.x -= mA * Px;
-    cA.y -= mA * Py;
+    cAx -= mA * Px;
+    cAy -= mA * Py;
     aA -= iA * LA;
-    cB.x += mB * Px;
-    cB.y += mB * Py;
+    cBx += mB * Px;
+    cBy += mB * Py;
     aB += iB * LB;
 
-    // data.positions[m_indexA].c.set(cA);
-    data.positions[m_indexA].a = aA;
-    // data.positions[m_indexB].c.set(cB);
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     pool.pushVec2(7);
     pool.pushVec3(1);
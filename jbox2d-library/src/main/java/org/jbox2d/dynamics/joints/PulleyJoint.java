@@ -189,15 +189,19 @@ public class PulleyJoint extends Joint {
     m_invIA = m_bodyA.m_invI;
     m_invIB = m_bodyB.m_invI;
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -210,8 +214,10 @@ public class PulleyJoint extends Joint {
     Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), m_rA);
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), m_rB);
 
-    m_uA.set(cA).addLocal(m_rA).subLocal(m_groundAnchorA);
-    m_uB.set(cB).addLocal(m_rB).subLocal(m_groundAnchorB);
+    m_uA.x = cAx + m_rA.x - m_groundAnchorA.x;
+    m_uA.y = cAy + m_rA.y - m_groundAnchorA.y;
+    m_uB.x = cBx + m_rB.x - m_groundAnchorB.x;
+    m_uB.y = cBy + m_rB.y - m_groundAnchorB.y;
 
     float lengthA = m_uA.length();
     float lengthB = m_uB.length();
@@ -253,21 +259,23 @@ public class PulleyJoint extends Joint {
       PA.set(m_uA).mulLocal(-m_impulse);
       PB.set(m_uB).mulLocal(-m_ratio * m_impulse);
 
-      vA.x += m_invMassA * PA.x;
-      vA.y += m_invMassA * PA.y;
+      vAx += m_invMassA * PA.x;
+      vAy += m_invMassA * PA.y;
       wA += m_invIA * Vec2.cross(m_rA, PA);
-      vB.x += m_invMassB * PB.x;
-      vB.y += m_invMassB * PB.y;
+      vBx += m_invMassB * PB.x;
+      vBy += m_invMassB * PB.y;
       wB += m_invIB * Vec2.cross(m_rB, PB);
 
       pool.pushVec2(2);
     } else {
       m_impulse = 0.0f;
     }
-//    data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(1);
     pool.pushRot(2);
@@ -275,10 +283,12 @@ public class PulleyJoint extends Joint {
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Vec2 vpA = pool.popVec2();
     final Vec2 vpB = pool.popVec2();
@@ -286,9 +296,11 @@ public class PulleyJoint extends Joint {
     final Vec2 PB = pool.popVec2();
 
     Vec2.crossToOutUnsafe(wA, m_rA, vpA);
-    vpA.addLocal(vA);
+    vpA.x += vAx;
+    vpA.y += vAy;
     Vec2.crossToOutUnsafe(wB, m_rB, vpB);
-    vpB.addLocal(vB);
+    vpB.x += vBx;
+    vpB.y += vBy;
 
     float Cdot = -Vec2.dot(m_uA, vpA) - m_ratio * Vec2.dot(m_uB, vpB);
     float impulse = -m_mass * Cdot;
@@ -296,17 +308,19 @@ public class PulleyJoint extends Joint {
 
     PA.set(m_uA).mulLocal(-impulse);
     PB.set(m_uB).mulLocal(-m_ratio * impulse);
-    vA.x += m_invMassA * PA.x;
-    vA.y += m_invMassA * PA.y;
+    vAx += m_invMassA * PA.x;
+    vAy += m_invMassA * PA.y;
     wA += m_invIA * Vec2.cross(m_rA, PA);
-    vB.x += m_invMassB * PB.x;
-    vB.y += m_invMassB * PB.y;
+    vBx += m_invMassB * PB.x;
+    vBy += m_invMassB * PB.y;
     wB += m_invIB * Vec2.cross(m_rB, PB);
 
-//    data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(4);
   }
@@ -323,10 +337,12 @@ public class PulleyJoint extends Joint {
     final Vec2 PA = pool.popVec2();
     final Vec2 PB = pool.popVec2();
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
 
     qA.set(aA);
     qB.set(aB);
@@ -334,8 +350,10 @@ public class PulleyJoint extends Joint {
     Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), rB);
 
-    uA.set(cA).addLocal(rA).subLocal(m_groundAnchorA);
-    uB.set(cB).addLocal(rB).subLocal(m_groundAnchorB);
+    uA.x = cAx + rA.x - m_groundAnchorA.x;
+    uA.y = cAy + rA.y - m_groundAnchorA.y;
+    uB.x = cBx + rB.x - m_groundAnchorB.x;
+    uB.y = cBy + rB.y - m_groundAnchorB.y;
 
     float lengthA = uA.length();
     float lengthB = uB.length();
@@ -373,17 +391,19 @@ public class PulleyJoint extends Joint {
     PA.set(uA).mulLocal(-impulse);
     PB.set(uB).mulLocal(-m_ratio * impulse);
 
-    cA.x += m_invMassA * PA.x;
-    cA.y += m_invMassA * PA.y;
+    cAx += m_invMassA * PA.x;
+    cAy += m_invMassA * PA.y;
     aA += m_invIA * Vec2.cross(rA, PA);
-    cB.x += m_invMassB * PB.x;
-    cB.y += m_invMassB * PB.y;
+    cBx += m_invMassB * PB.x;
+    cBy += m_invMassB * PB.y;
     aB += m_invIB * Vec2.cross(rB, PB);
 
-//    data.positions[m_indexA].c.set(cA);
-    data.positions[m_indexA].a = aA;
-//    data.positions[m_indexB].c.set(cB);
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     pool.pushRot(2);
     pool.pushVec2(7);
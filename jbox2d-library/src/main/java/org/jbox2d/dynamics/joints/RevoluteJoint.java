@@ -117,14 +117,16 @@ public class RevoluteJoint extends Joint {
     m_invIB = m_bodyB.m_invI;
 
     // Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
 
     // Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
     final Vec2 temp = pool.popVec2();
@@ -201,22 +203,24 @@ public class RevoluteJoint extends Joint {
       P.x = m_impulse.x;
       P.y = m_impulse.y;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * (Vec2.cross(m_rA, P) + m_motorImpulse + m_impulse.z);
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * (Vec2.cross(m_rB, P) + m_motorImpulse + m_impulse.z);
       pool.pushVec2(1);
     } else {
       m_impulse.setZero();
       m_motorImpulse = 0.0f;
     }
-    // data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(1);
     pool.pushRot(2);
@@ -224,10 +228,12 @@ public class RevoluteJoint extends Joint {
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
@@ -257,7 +263,8 @@ public class RevoluteJoint extends Joint {
       // Solve point-to-point constraint
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot1);
-      Cdot1.addLocal(vB).subLocal(vA).subLocal(temp);
+      Cdot1.x = Cdot1.x + vBx - vAx - temp.x;
+      Cdot1.y = Cdot1.y + vBy - vAy - temp.y;
       float Cdot2 = wB - wA;
       Cdot.set(Cdot1.x, Cdot1.y, Cdot2);
 
@@ -304,12 +311,12 @@ public class RevoluteJoint extends Joint {
 
       P.set(impulse.x, impulse.y);
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * (Vec2.cross(m_rA, P) + impulse.z);
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * (Vec2.cross(m_rB, P) + impulse.z);
 
       pool.pushVec2(2);
@@ -322,27 +329,30 @@ public class RevoluteJoint extends Joint {
 
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot);
-      Cdot.addLocal(vB).subLocal(vA).subLocal(temp);
+      Cdot.x = Cdot.x + vBx - vAx - temp.x;
+      Cdot.y = Cdot.y + vBy - vAy - temp.y;
       m_mass.solve22ToOut(Cdot.negateLocal(), impulse); // just leave negated
 
       m_impulse.x += impulse.x;
       m_impulse.y += impulse.y;
 
-      vA.x -= mA * impulse.x;
-      vA.y -= mA * impulse.y;
+      vAx -= mA * impulse.x;
+      vAy -= mA * impulse.y;
       wA -= iA * Vec2.cross(m_rA, impulse);
 
-      vB.x += mB * impulse.x;
-      vB.y += mB * impulse.y;
+      vBx += mB * impulse.x;
+      vBy += mB * impulse.y;
       wB += iB * Vec2.cross(m_rB, impulse);
 
       pool.pushVec2(2);
     }
 
-    // data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-    // data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(1);
   }
@@ -351,10 +361,12 @@ public class RevoluteJoint extends Joint {
   public boolean solvePositionConstraints(final SolverData data) {
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
 
     qA.set(aA);
     qB.set(aB);
@@ -407,7 +419,8 @@ public class RevoluteJoint extends Joint {
 
       Rot.mulToOutUnsafe(qA, C.set(m_localAnchorA).subLocal(m_localCenterA), rA);
       Rot.mulToOutUnsafe(qB, C.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-      C.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+      C.x = cBx + rB.x - cAx - rA.x;
+      C.y = cBy + rB.y - cAy - rA.y;
       positionError = C.length();
 
       float mA = m_invMassA, mB = m_invMassB;
@@ -421,21 +434,23 @@ public class RevoluteJoint extends Joint {
       K.solveToOut(C, impulse);
       impulse.negateLocal();
 
-      cA.x -= mA * impulse.x;
-      cA.y -= mA * impulse.y;
+      cAx -= mA * impulse.x;
+      cAy -= mA * impulse.y;
       aA -= iA * Vec2.cross(rA, impulse);
 
-      cB.x += mB * impulse.x;
-      cB.y += mB * impulse.y;
+      cBx += mB * impulse.x;
+      cBy += mB * impulse.y;
       aB += iB * Vec2.cross(rB, impulse);
 
       pool.pushVec2(4);
       pool.pushMat22(1);
     }
-    // data.positions[m_indexA].c.set(cA);
-    data.positions[m_indexA].a = aA;
-    // data.positions[m_indexB].c.set(cB);
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     pool.pushRot(2);
 
@@ -63,15 +63,19 @@ public class RopeJoint extends Joint {
     m_invIA = m_bodyA.m_invI;
     m_invIB = m_bodyB.m_invI;
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -84,7 +88,8 @@ public class RopeJoint extends Joint {
     Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), m_rA);
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), m_rB);
 
-    m_u.set(cB).addLocal(m_rB).subLocal(cA).subLocal(m_rA);
+    m_u.x = cBx + m_rB.x - cAx - m_rA.x;
+    m_u.y = cBy + m_rB.y - cAy - m_rA.y;
 
     m_length = m_u.length();
 
@@ -119,12 +124,12 @@ public class RopeJoint extends Joint {
 
       float Px = m_impulse * m_u.x;
       float Py = m_impulse * m_u.y;
-      vA.x -= m_invMassA * Px;
-      vA.y -= m_invMassA * Py;
+      vAx -= m_invMassA * Px;
+      vAy -= m_invMassA * Py;
       wA -= m_invIA * (m_rA.x * Py - m_rA.y * Px);
 
-      vB.x += m_invMassB * Px;
-      vB.y += m_invMassB * Py;
+      vBx += m_invMassB * Px;
+      vBy += m_invMassB * Py;
       wB += m_invIB * (m_rB.x * Py - m_rB.y * Px);
     } else {
       m_impulse = 0.0f;
@@ -134,17 +139,23 @@ public class RopeJoint extends Joint {
     pool.pushVec2(1);
 
     // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
     // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     // Cdot = dot(u, v + cross(w, r))
     Vec2 vpA = pool.popVec2();
@@ -152,9 +163,11 @@ public class RopeJoint extends Joint {
     Vec2 temp = pool.popVec2();
 
     Vec2.crossToOutUnsafe(wA, m_rA, vpA);
-    vpA.addLocal(vA);
+    vpA.x += vAx;
+    vpA.y += vAy;
     Vec2.crossToOutUnsafe(wB, m_rB, vpB);
-    vpB.addLocal(vB);
+    vpB.x += vBx;
+    vpB.y += vBy;
 
     float C = m_length - m_maxLength;
     float Cdot = Vec2.dot(m_u, temp.set(vpB).subLocal(vpA));
@@ -171,27 +184,33 @@ public class RopeJoint extends Joint {
 
     float Px = impulse * m_u.x;
     float Py = impulse * m_u.y;
-    vA.x -= m_invMassA * Px;
-    vA.y -= m_invMassA * Py;
+    vAx -= m_invMassA * Px;
+    vAy -= m_invMassA * Py;
     wA -= m_invIA * (m_rA.x * Py - m_rA.y * Px);
-    vB.x += m_invMassB * Px;
-    vB.y += m_invMassB * Py;
+    vBx += m_invMassB * Px;
+    vBy += m_invMassB * Py;
     wB += m_invIB * (m_rB.x * Py - m_rB.y * Px);
 
     pool.pushVec2(3);
 
     // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
     // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
   public boolean solvePositionConstraints(final SolverData data) {
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -206,7 +225,8 @@ public class RopeJoint extends Joint {
     // Compute the effective masses.
     Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-    u.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+    u.x = cBx + rB.x - cAx - rA.x;
+    u.y = cBy + rB.y - cAy - rA.y;
 
     float length = u.normalize();
     float C = length - m_maxLength;
@@ -217,20 +237,24 @@ public class RopeJoint extends Joint {
     float Px = impulse * u.x;
     float Py = impulse * u.y;
 
-    cA.x -= m_invMassA * Px;
-    cA.y -= m_invMassA * Py;
+    cAx -= m_invMassA * Px;
+    cAy -= m_invMassA * Py;
     aA -= m_invIA * (rA.x * Py - rA.y * Px);
-    cB.x += m_invMassB * Px;
-    cB.y += m_invMassB * Py;
+    cBx += m_invMassB * Px;
+    cBy += m_invMassB * Py;
     aB += m_invIB * (rB.x * Py - rB.y * Px);
 
     pool.pushRot(2);
     pool.pushVec2(4);
 
     // data.positions[m_indexA].c = cA;
-    data.positions[m_indexA].a = aA;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
     // data.positions[m_indexB].c = cB;
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     return length - m_maxLength < Settings.linearSlop;
   }
@@ -155,14 +155,16 @@ public class WeldJoint extends Joint {
     m_invIB = m_bodyB.m_invI;
 
     // Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
 
     // Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -237,22 +239,24 @@ public class WeldJoint extends Joint {
 
       P.set(m_impulse.x, m_impulse.y);
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * (Vec2.cross(m_rA, P) + m_impulse.z);
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * (Vec2.cross(m_rB, P) + m_impulse.z);
       pool.pushVec2(1);
     } else {
       m_impulse.setZero();
     }
 
-//    data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(1);
     pool.pushRot(2);
@@ -261,10 +265,12 @@ public class WeldJoint extends Joint {
 
   @Override
   public void solveVelocityConstraints(final SolverData data) {
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
@@ -283,7 +289,8 @@ public class WeldJoint extends Joint {
 
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot1);
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
-      Cdot1.addLocal(vB).subLocal(vA).subLocal(temp);
+      Cdot1.x = Cdot1.x + vBx - vAx - temp.x;
+      Cdot1.y = Cdot1.y + vBy - vAy - temp.y;
 
       final Vec2 impulse1 = P;
       Mat33.mul22ToOutUnsafe(m_mass, Cdot1, impulse1);
@@ -292,17 +299,18 @@ public class WeldJoint extends Joint {
       m_impulse.x += impulse1.x;
       m_impulse.y += impulse1.y;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * Vec2.cross(m_rA, P);
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * Vec2.cross(m_rB, P);
     } else {
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot1);
-      Cdot1.addLocal(vB).subLocal(vA).subLocal(temp);
+      Cdot1.x = Cdot1.x + vBx - vAx - temp.x;
+      Cdot1.y = Cdot1.y + vBy - vAy - temp.y;
       float Cdot2 = wB - wA;
 
       final Vec3 Cdot = pool.popVec3();
@@ -315,31 +323,35 @@ public class WeldJoint extends Joint {
 
       P.set(impulse.x, impulse.y);
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * (Vec2.cross(m_rA, P) + impulse.z);
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * (Vec2.cross(m_rB, P) + impulse.z);
 
       pool.pushVec3(2);
     }
 
-//    data.velocities[m_indexA].v.set(vA);
-    data.velocities[m_indexA].w = wA;
-//    data.velocities[m_indexB].v.set(vB);
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
 
     pool.pushVec2(3);
   }
 
   @Override
   public boolean solvePositionConstraints(final SolverData data) {
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
     final Vec2 temp = pool.popVec2();
@@ -370,7 +382,8 @@ public class WeldJoint extends Joint {
     K.ey.z = K.ez.y;
     K.ez.z = iA + iB;
     if (m_frequencyHz > 0.0f) {
-      C1.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+      C1.x = cBx + rB.x - cAx - rA.x;
+      C1.y = cBy + rB.y - cAy - rA.y;
 
       positionError = C1.length();
       angularError = 0.0f;
@@ -378,15 +391,16 @@ public class WeldJoint extends Joint {
       K.solve22ToOut(C1, P);
       P.negateLocal();
 
-      cA.x -= mA * P.x;
-      cA.y -= mA * P.y;
+      cAx -= mA * P.x;
+      cAy -= mA * P.y;
       aA -= iA * Vec2.cross(rA, P);
 
-      cB.x += mB * P.x;
-      cB.y += mB * P.y;
+      cBx += mB * P.x;
+      cBy += mB * P.y;
       aB += iB * Vec2.cross(rB, P);
     } else {
-      C1.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+      C1.x = cBx + rB.x - cAx - rA.x;
+      C1.y = cBy + rB.y - cAy - rA.y;
       float C2 = aB - aA - m_referenceAngle;
 
       positionError = C1.length();
@@ -400,20 +414,22 @@ public class WeldJoint extends Joint {
       impulse.negateLocal();
       P.set(impulse.x, impulse.y);
 
-      cA.x -= mA * P.x;
-      cA.y -= mA * P.y;
+      cAx -= mA * P.x;
+      cAy -= mA * P.y;
       aA -= iA * (Vec2.cross(rA, P) + impulse.z);
 
-      cB.x += mB * P.x;
-      cB.y += mB * P.y;
+      cBx += mB * P.x;
+      cBy += mB * P.y;
       aB += iB * (Vec2.cross(rB, P) + impulse.z);
       pool.pushVec3(2);
     }
 
-//    data.positions[m_indexA].c.set(cA);
-    data.positions[m_indexA].a = aA;
-//    data.positions[m_indexB].c.set(cB);
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     pool.pushVec2(5);
     pool.pushRot(2);
@@ -241,15 +241,19 @@ public class WheelJoint extends Joint {
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
 
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -261,7 +265,8 @@ public class WheelJoint extends Joint {
     // Compute the effective masses.
     Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-    d.set(cB).addLocal(rB).subLocal(cA).subLocal(rA);
+    d.x = cBx + rB.x - cAx - rA.x;
+    d.y = cBy + rB.y - cAy - rA.y;
 
     // Point to line constraint
     {
@@ -342,12 +347,12 @@ public class WheelJoint extends Joint {
       float LA = m_impulse * m_sAy + m_springImpulse * m_sAx + m_motorImpulse;
       float LB = m_impulse * m_sBy + m_springImpulse * m_sBx + m_motorImpulse;
 
-      vA.x -= m_invMassA * P.x;
-      vA.y -= m_invMassA * P.y;
+      vAx -= m_invMassA * P.x;
+      vAy -= m_invMassA * P.y;
       wA -= m_invIA * LA;
 
-      vB.x += m_invMassB * P.x;
-      vB.y += m_invMassB * P.y;
+      vBx += m_invMassB * P.x;
+      vBy += m_invMassB * P.y;
       wB += m_invIB * LB;
       pool.pushVec2(1);
     } else {
@@ -359,9 +364,13 @@ public class WheelJoint extends Joint {
     pool.pushVec2(1);
 
     // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
     // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
@@ -369,17 +378,19 @@ public class WheelJoint extends Joint {
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
 
-    Vec2 vA = data.velocities[m_indexA].v;
-    float wA = data.velocities[m_indexA].w;
-    Vec2 vB = data.velocities[m_indexB].v;
-    float wB = data.velocities[m_indexB].w;
+    float vAx = data.velocities[3 * m_indexA];
+    float vAy = data.velocities[3 * m_indexA + 1];
+    float wA = data.velocities[3 * m_indexA + 2];
+    float vBx = data.velocities[3 * m_indexB];
+    float vBy = data.velocities[3 * m_indexB + 1];
+    float wB = data.velocities[3 * m_indexB + 2];
 
     final Vec2 temp = pool.popVec2();
     final Vec2 P = pool.popVec2();
 
     // Solve spring constraint
     {
-      float Cdot = Vec2.dot(m_ax, temp.set(vB).subLocal(vA)) + m_sBx * wB - m_sAx * wA;
+      float Cdot = Vec2.dot(m_ax, temp.set(vBx - vAx, vBy - vAy)) + m_sBx * wB - m_sAx * wA;
       float impulse = -m_springMass * (Cdot + m_bias + m_gamma * m_springImpulse);
       m_springImpulse += impulse;
 
@@ -388,12 +399,12 @@ public class WheelJoint extends Joint {
       float LA = impulse * m_sAx;
       float LB = impulse * m_sBx;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * LA;
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * LB;
     }
 
@@ -413,7 +424,7 @@ public class WheelJoint extends Joint {
 
     // Solve point to line constraint
     {
-      float Cdot = Vec2.dot(m_ay, temp.set(vB).subLocal(vA)) + m_sBy * wB - m_sAy * wA;
+      float Cdot = Vec2.dot(m_ay, temp.set(vBx - vAx, vBy - vAy)) + m_sBy * wB - m_sAy * wA;
       float impulse = -m_mass * Cdot;
       m_impulse += impulse;
 
@@ -422,28 +433,34 @@ public class WheelJoint extends Joint {
       float LA = impulse * m_sAy;
       float LB = impulse * m_sBy;
 
-      vA.x -= mA * P.x;
-      vA.y -= mA * P.y;
+      vAx -= mA * P.x;
+      vAy -= mA * P.y;
       wA -= iA * LA;
 
-      vB.x += mB * P.x;
-      vB.y += mB * P.y;
+      vBx += mB * P.x;
+      vBy += mB * P.y;
       wB += iB * LB;
     }
     pool.pushVec2(2);
 
     // data.velocities[m_indexA].v = vA;
-    data.velocities[m_indexA].w = wA;
+    data.velocities[3 * m_indexA] = vAx;
+    data.velocities[3 * m_indexA + 1] = vAy;
+    data.velocities[3 * m_indexA + 2] = wA;
     // data.velocities[m_indexB].v = vB;
-    data.velocities[m_indexB].w = wB;
+    data.velocities[3 * m_indexB] = vBx;
+    data.velocities[3 * m_indexB + 1] = vBy;
+    data.velocities[3 * m_indexB + 2] = wB;
   }
 
   @Override
   public boolean solvePositionConstraints(SolverData data) {
-    Vec2 cA = data.positions[m_indexA].c;
-    float aA = data.positions[m_indexA].a;
-    Vec2 cB = data.positions[m_indexB].c;
-    float aB = data.positions[m_indexB].a;
+    float cAx = data.positions[3 * m_indexA];
+    float cAy = data.positions[3 * m_indexA + 1];
+    float aA = data.positions[3 * m_indexA + 2];
+    float cBx = data.positions[3 * m_indexB];
+    float cBy = data.positions[3 * m_indexB + 1];
+    float aB = data.positions[3 * m_indexB + 2];
 
     final Rot qA = pool.popRot();
     final Rot qB = pool.popRot();
@@ -454,7 +471,8 @@ public class WheelJoint extends Joint {
 
     Rot.mulToOut(qA, temp.set(m_localAnchorA).subLocal(m_localCenterA), rA);
     Rot.mulToOut(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), rB);
-    d.set(cB).subLocal(cA).addLocal(rB).subLocal(rA);
+    d.x = cBx - cAx + rB.x - rA.x;
+    d.y = cBy - cAy + rB.y - rA.y;
 
     Vec2 ay = pool.popVec2();
     Rot.mulToOut(qA, m_localYAxisA, ay);
@@ -479,19 +497,23 @@ public class WheelJoint extends Joint {
     float LA = impulse * sAy;
     float LB = impulse * sBy;
 
-    cA.x -= m_invMassA * P.x;
-    cA.y -= m_invMassA * P.y;
+    cAx -= m_invMassA * P.x;
+    cAy -= m_invMassA * P.y;
     aA -= m_invIA * LA;
-    cB.x += m_invMassB * P.x;
-    cB.y += m_invMassB * P.y;
+    cBx += m_invMassB * P.x;
+    cBy += m_invMassB * P.y;
     aB += m_invIB * LB;
 
     pool.pushVec2(3);
     pool.pushRot(2);
     // data.positions[m_indexA].c = cA;
-    data.positions[m_indexA].a = aA;
+    data.positions[3 * m_indexA] = cAx;
+    data.positions[3 * m_indexA + 1] = cAy;
+    data.positions[3 * m_indexA + 2] = aA;
     // data.positions[m_indexB].c = cB;
-    data.positions[m_indexB].a = aB;
+    data.positions[3 * m_indexB] = cBx;
+    data.positions[3 * m_indexB + 1] = cBy;
+    data.positions[3 * m_indexB + 2] = aB;
 
     return MathUtils.abs(C) <= Settings.linearSlop;
   }
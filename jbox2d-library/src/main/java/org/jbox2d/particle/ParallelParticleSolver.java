@@ -0,0 +1,453 @@
+package org.jbox2d.particle;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+
+/**
+ * Runs the heavy stages of {@link ParticleSystem#solve} on a {@link ForkJoinPool}. Per-particle
+ * passes are split into ranges of particles. Passes over the particle contacts scatter into both
+ * particles of a contact, so each range of contacts accumulates into its own buffer and the
+ * buffers are summed per particle afterwards, always in range order. The number of ranges only
+ * depends on the pool's parallelism and the particle and contact counts, so results are
+ * repeatable, but they are not bit for bit the same as the serial solver because the sums are
+ * rounded in a different order.
+ *
+ * Contacts with bodies always stay on the stepping thread, since they apply impulses to bodies.
+ * This is an internal class.
+ */
+public class ParallelParticleSolver {
+
+  /** Particles or contacts are not split into ranges smaller than this. */
+  public static int MIN_RANGE_SIZE = 512;
+
+  private static final int GRAVITY = 0;
+  private static final int INTEGRATE = 1;
+  private static final int PRESSURE = 2;
+  private static final int ACCUMULATE_WEIGHTS = 3;
+  private static final int PRESSURE_IMPULSES = 4;
+  private static final int DAMPING_IMPULSES = 5;
+  private static final int VISCOUS_IMPULSES = 6;
+  private static final int ACCUMULATE_TENSILE = 7;
+  private static final int TENSILE_IMPULSES = 8;
+  private static final int ADD_WEIGHTS = 9;
+  private static final int SET_TENSILE = 10;
+  private static final int ADD_VELOCITIES = 11;
+
+  private final ForkJoinPool m_pool;
+  private final int m_parallelism;
+  private final ParticleSystem m_system;
+
+  // one buffer per contact range, one float per particle
+  private float[][] m_weights;
+  // one buffer per contact range, two floats per particle
+  private float[][] m_vectors;
+  private int m_bufferCapacity;
+  private int m_bufferCount;
+
+  private int m_itemCount;
+  private int m_rangeCount;
+  private float m_param0, m_param1, m_param2;
+
+  public ParallelParticleSolver(ForkJoinPool pool, ParticleSystem system) {
+    assert (pool != null);
+    m_pool = pool;
+    m_parallelism = pool.getParallelism();
+    m_system = system;
+    m_weights = new float[m_parallelism][];
+    m_vectors = new float[m_parallelism][];
+  }
+
+  public ForkJoinPool getPool() {
+    return m_pool;
+  }
+
+  /** Adds gravity to every particle velocity and clamps it to the critical velocity. */
+  public void applyGravity(float gravityx, float gravityy, float criticalVelocitySquared) {
+    m_param0 = gravityx;
+    m_param1 = gravityy;
+    m_param2 = criticalVelocitySquared;
+    runParticles(GRAVITY);
+  }
+
+  public void integratePositions(float dt) {
+    m_param0 = dt;
+    runParticles(INTEGRATE);
+  }
+
+  /**
+   * Adds the contact weights of the particle contacts to the accumulation buffer, then turns the
+   * accumulated weights into pressures.
+   */
+  public void accumulatePressure(float pressurePerWeight) {
+    runContacts(ACCUMULATE_WEIGHTS);
+    runParticles(ADD_WEIGHTS);
+    m_param0 = pressurePerWeight;
+    runParticles(PRESSURE);
+  }
+
+  /** Applies the pressures in the accumulation buffer across the particle contacts. */
+  public void applyPressure(float velocityPerPressure) {
+    m_param0 = velocityPerPressure;
+    runContacts(PRESSURE_IMPULSES);
+    runParticles(ADD_VELOCITIES);
+  }
+
+  /**
+   * Damps the normal velocity of the particle contacts. Unlike the serial solver, every contact
+   * sees the velocities from before the pass.
+   */
+  public void applyDamping(float damping) {
+    m_param0 = damping;
+    runContacts(DAMPING_IMPULSES);
+    runParticles(ADD_VELOCITIES);
+  }
+
+  /**
+   * Applies viscosity across the viscous particle contacts. Every contact sees the velocities from
+   * before the pass.
+   */
+  public void applyViscous(float viscousStrength) {
+    m_param0 = viscousStrength;
+    runContacts(VISCOUS_IMPULSES);
+    runParticles(ADD_VELOCITIES);
+  }
+
+  /** Both passes of surface tension over the tensile particle contacts. */
+  public void applyTensile(float strengthA, float strengthB) {
+    runContacts(ACCUMULATE_TENSILE);
+    runParticles(SET_TENSILE);
+    m_param0 = strengthA;
+    m_param1 = strengthB;
+    runContacts(TENSILE_IMPULSES);
+    runParticles(ADD_VELOCITIES);
+  }
+
+  private void runParticles(int stage) {
+    run(stage, m_system.m_count);
+  }
+
+  private void runContacts(int stage) {
+    final int particleCount = m_system.m_count;
+    if (m_bufferCapacity < particleCount) {
+      m_bufferCapacity = MathUtils.max(particleCount, 2 * m_bufferCapacity);
+      for (int i = 0; i < m_parallelism; ++i) {
+        m_weights[i] = null;
+        m_vectors[i] = null;
+      }
+    }
+    run(stage, m_system.m_contactCount);
+    m_bufferCount = m_rangeCount;
+  }
+
+  private void run(int stage, int itemCount) {
+    m_itemCount = itemCount;
+    m_rangeCount = MathUtils.max(1, MathUtils.min(m_parallelism, itemCount / MIN_RANGE_SIZE));
+    if (m_rangeCount == 1) {
+      runRange(stage, 0);
+    } else {
+      m_pool.invoke(new StageTask(stage, 0, m_rangeCount));
+    }
+  }
+
+  private void runRange(int stage, int range) {
+    final int start = (int) ((long) m_itemCount * range / m_rangeCount);
+    final int end = (int) ((long) m_itemCount * (range + 1) / m_rangeCount);
+    switch (stage) {
+      case GRAVITY:
+        gravity(start, end);
+        break;
+      case INTEGRATE:
+        integrate(start, end);
+        break;
+      case PRESSURE:
+        pressure(start, end);
+        break;
+      case ACCUMULATE_WEIGHTS:
+        accumulateWeights(start, end, weights(range));
+        break;
+      case PRESSURE_IMPULSES:
+        pressureImpulses(start, end, vectors(range));
+        break;
+      case DAMPING_IMPULSES:
+        dampingImpulses(start, end, vectors(range));
+        break;
+      case VISCOUS_IMPULSES:
+        viscousImpulses(start, end, vectors(range));
+        break;
+      case ACCUMULATE_TENSILE:
+        accumulateTensile(start, end, weights(range), vectors(range));
+        break;
+      case TENSILE_IMPULSES:
+        tensileImpulses(start, end, vectors(range));
+        break;
+      case ADD_WEIGHTS:
+        addWeights(start, end);
+        break;
+      case SET_TENSILE:
+        setTensile(start, end);
+        break;
+      case ADD_VELOCITIES:
+        addVelocities(start, end);
+        break;
+      default:
+        assert (false);
+    }
+  }
+
+  // The range buffers are allocated by the range that scatters into them, and cleared again by the
+  // pass that sums them up.
+
+  private float[] weights(int range) {
+    if (m_weights[range] == null) {
+      m_weights[range] = new float[m_bufferCapacity];
+    }
+    return m_weights[range];
+  }
+
+  private float[] vectors(int range) {
+    if (m_vectors[range] == null) {
+      m_vectors[range] = new float[2 * m_bufferCapacity];
+    }
+    return m_vectors[range];
+  }
+
+  private void gravity(int start, int end) {
+    final float[] velocities = m_system.m_velocityBuffer.data;
+    final float gravityx = m_param0;
+    final float gravityy = m_param1;
+    final float criticalVelocitySquared = m_param2;
+    for (int i = start; i < end; i++) {
+      float vx = velocities[2 * i] + gravityx;
+      float vy = velocities[2 * i + 1] + gravityy;
+      float v2 = vx * vx + vy * vy;
+      if (v2 > criticalVelocitySquared) {
+        float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocitySquared / v2);
+        vx *= a;
+        vy *= a;
+      }
+      velocities[2 * i] = vx;
+      velocities[2 * i + 1] = vy;
+    }
+  }
+
+  private void integrate(int start, int end) {
+    final float[] positions = m_system.m_positionBuffer.data;
+    final float[] velocities = m_system.m_velocityBuffer.data;
+    final float dt = m_param0;
+    for (int i = 2 * start; i < 2 * end; i++) {
+      positions[i] += dt * velocities[i];
+    }
+  }
+
+  private void pressure(int start, int end) {
+    final float[] accumulation = m_system.m_accumulationBuffer;
+    final int[] flags = m_system.m_flagsBuffer.data;
+    final boolean noPressure =
+        (m_system.m_allParticleFlags & ParticleSystem.k_noPressureFlags) != 0;
+    final float pressurePerWeight = m_param0;
+    for (int i = start; i < end; i++) {
+      // ignores powder particles
+      float w =
+          noPressure && (flags[i] & ParticleSystem.k_noPressureFlags) != 0 ? 0 : accumulation[i];
+      accumulation[i] =
+          pressurePerWeight
+              * MathUtils.max(0.0f, MathUtils.min(w, Settings.maxParticleWeight)
+                  - Settings.minParticleWeight);
+    }
+  }
+
+  private void accumulateWeights(int start, int end, float[] weights) {
+    final ParticleContact[] contacts = m_system.m_contactBuffer;
+    for (int k = start; k < end; k++) {
+      ParticleContact contact = contacts[k];
+      float w = contact.weight;
+      weights[contact.indexA] += w;
+      weights[contact.indexB] += w;
+    }
+  }
+
+  private void pressureImpulses(int start, int end, float[] deltas) {
+    final ParticleContact[] contacts = m_system.m_contactBuffer;
+    final float[] accumulation = m_system.m_accumulationBuffer;
+    final float velocityPerPressure = m_param0;
+    for (int k = start; k < end; k++) {
+      ParticleContact contact = contacts[k];
+      int a = contact.indexA;
+      int b = contact.indexB;
+      float w = contact.weight;
+      Vec2 n = contact.normal;
+      float h = accumulation[a] + accumulation[b];
+      final float fx = velocityPerPressure * w * h * n.x;
+      final float fy = velocityPerPressure * w * h * n.y;
+      deltas[2 * a] -= fx;
+      deltas[2 * a + 1] -= fy;
+      deltas[2 * b] += fx;
+      deltas[2 * b + 1] += fy;
+    }
+  }
+
+  private void dampingImpulses(int start, int end, float[] deltas) {
+    final ParticleContact[] contacts = m_system.m_contactBuffer;
+    final float[] velocities = m_system.m_velocityBuffer.data;
+    final float damping = m_param0;
+    for (int k = start; k < end; k++) {
+      ParticleContact contact = contacts[k];
+      int a = contact.indexA;
+      int b = contact.indexB;
+      float w = contact.weight;
+      Vec2 n = contact.normal;
+      final float vx = velocities[2 * b] - velocities[2 * a];
+      final float vy = velocities[2 * b + 1] - velocities[2 * a + 1];
+      float vn = vx * n.x + vy * n.y;
+      if (vn < 0) {
+        float fx = damping * w * vn * n.x;
+        float fy = damping * w * vn * n.y;
+        deltas[2 * a] += fx;
+        deltas[2 * a + 1] += fy;
+        deltas[2 * b] -= fx;
+        deltas[2 * b + 1] -= fy;
+      }
+    }
+  }
+
+  private void viscousImpulses(int start, int end, float[] deltas) {
+    final ParticleContact[] contacts = m_system.m_contactBuffer;
+    final float[] velocities = m_system.m_velocityBuffer.data;
+    final float viscousStrength = m_param0;
+    for (int k = start; k < end; k++) {
+      ParticleContact contact = contacts[k];
+      if ((contact.flags & ParticleType.b2_viscousParticle) != 0) {
+        int a = contact.indexA;
+        int b = contact.indexB;
+        float w = contact.weight;
+        final float fx = viscousStrength * w * (velocities[2 * b] - velocities[2 * a]);
+        final float fy = viscousStrength * w * (velocities[2 * b + 1] - velocities[2 * a + 1]);
+        deltas[2 * a] += fx;
+        deltas[2 * a + 1] += fy;
+        deltas[2 * b] -= fx;
+        deltas[2 * b + 1] -= fy;
+      }
+    }
+  }
+
+  private void accumulateTensile(int start, int end, float[] weights, float[] vectors) {
+    final ParticleContact[] contacts = m_system.m_contactBuffer;
+    for (int k = start; k < end; k++) {
+      ParticleContact contact = contacts[k];
+      if ((contact.flags & ParticleType.b2_tensileParticle) != 0) {
+        int a = contact.indexA;
+        int b = contact.indexB;
+        float w = contact.weight;
+        Vec2 n = contact.normal;
+        weights[a] += w;
+        weights[b] += w;
+        final float inter = (1 - w) * w;
+        vectors[2 * a] -= inter * n.x;
+        vectors[2 * a + 1] -= inter * n.y;
+        vectors[2 * b] += inter * n.x;
+        vectors[2 * b + 1] += inter * n.y;
+      }
+    }
+  }
+
+  private void tensileImpulses(int start, int end, float[] deltas) {
+    final ParticleContact[] contacts = m_system.m_contactBuffer;
+    final float[] accumulation = m_system.m_accumulationBuffer;
+    final Vec2[] accumulation2 = m_system.m_accumulation2Buffer;
+    final float strengthA = m_param0;
+    final float strengthB = m_param1;
+    for (int k = start; k < end; k++) {
+      ParticleContact contact = contacts[k];
+      if ((contact.flags & ParticleType.b2_tensileParticle) != 0) {
+        int a = contact.indexA;
+        int b = contact.indexB;
+        float w = contact.weight;
+        Vec2 n = contact.normal;
+        final Vec2 a2A = accumulation2[a];
+        final Vec2 a2B = accumulation2[b];
+        float h = accumulation[a] + accumulation[b];
+        final float sx = a2B.x - a2A.x;
+        final float sy = a2B.y - a2A.y;
+        float fn = (strengthA * (h - 2) + strengthB * (sx * n.x + sy * n.y)) * w;
+        final float fx = fn * n.x;
+        final float fy = fn * n.y;
+        deltas[2 * a] -= fx;
+        deltas[2 * a + 1] -= fy;
+        deltas[2 * b] += fx;
+        deltas[2 * b + 1] += fy;
+      }
+    }
+  }
+
+  private void addWeights(int start, int end) {
+    final float[] accumulation = m_system.m_accumulationBuffer;
+    for (int r = 0; r < m_bufferCount; r++) {
+      final float[] weights = m_weights[r];
+      for (int i = start; i < end; i++) {
+        accumulation[i] += weights[i];
+        weights[i] = 0;
+      }
+    }
+  }
+
+  private void setTensile(int start, int end) {
+    final float[] accumulation = m_system.m_accumulationBuffer;
+    final Vec2[] accumulation2 = m_system.m_accumulation2Buffer;
+    for (int i = start; i < end; i++) {
+      accumulation[i] = 0;
+      accumulation2[i].setZero();
+    }
+    for (int r = 0; r < m_bufferCount; r++) {
+      final float[] weights = m_weights[r];
+      final float[] vectors = m_vectors[r];
+      for (int i = start; i < end; i++) {
+        accumulation[i] += weights[i];
+        weights[i] = 0;
+        accumulation2[i].x += vectors[2 * i];
+        accumulation2[i].y += vectors[2 * i + 1];
+        vectors[2 * i] = 0;
+        vectors[2 * i + 1] = 0;
+      }
+    }
+  }
+
+  private void addVelocities(int start, int end) {
+    final float[] velocities = m_system.m_velocityBuffer.data;
+    for (int r = 0; r < m_bufferCount; r++) {
+      final float[] deltas = m_vectors[r];
+      for (int i = 2 * start; i < 2 * end; i++) {
+        velocities[i] += deltas[i];
+        deltas[i] = 0;
+      }
+    }
+  }
+
+  /** Runs one stage over the ranges [first, last). */
+  private class StageTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int stage;
+    private final int first;
+    private final int last;
+
+    StageTask(int stage, int first, int last) {
+      this.stage = stage;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1) {
+        int mid = (first + last) >>> 1;
+        invokeAll(new StageTask(stage, first, mid), new StageTask(stage, mid, last));
+        return;
+      }
+      runRange(stage, first);
+    }
+  }
+}
@@ -114,18 +114,18 @@ public class ParticleGroup {
 
   public void updateStatistics() {
     if (m_timestamp != m_system.m_timestamp) {
+      final float[] positions = m_system.m_positionBuffer.data;
+      final float[] velocities = m_system.m_velocityBuffer.data;
       float m = m_system.getParticleMass();
       m_mass = 0;
       m_center.setZero();
       m_linearVelocity.setZero();
       for (int i = m_firstIndex; i < m_lastIndex; i++) {
         m_mass += m;
-        Vec2 pos = m_system.m_positionBuffer.data[i];
-        m_center.x += m * pos.x;
-        m_center.y += m * pos.y;
-        Vec2 vel = m_system.m_velocityBuffer.data[i];
-        m_linearVelocity.x += m * vel.x;
-        m_linearVelocity.y += m * vel.y;
+        m_center.x += m * positions[2 * i];
+        m_center.y += m * positions[2 * i + 1];
+        m_linearVelocity.x += m * velocities[2 * i];
+        m_linearVelocity.y += m * velocities[2 * i + 1];
       }
       if (m_mass > 0) {
         m_center.x *= 1 / m_mass;
@@ -136,12 +136,10 @@ public class ParticleGroup {
       m_inertia = 0;
       m_angularVelocity = 0;
       for (int i = m_firstIndex; i < m_lastIndex; i++) {
-        Vec2 pos = m_system.m_positionBuffer.data[i];
-        Vec2 vel = m_system.m_velocityBuffer.data[i];
-        float px = pos.x - m_center.x;
-        float py = pos.y - m_center.y;
-        float vx = vel.x - m_linearVelocity.x;
-        float vy = vel.y - m_linearVelocity.y;
+        float px = positions[2 * i] - m_center.x;
+        float py = positions[2 * i + 1] - m_center.y;
+        float vx = velocities[2 * i] - m_linearVelocity.x;
+        float vy = velocities[2 * i + 1] - m_linearVelocity.y;
         m_inertia += m * (px * px + py * py);
         m_angularVelocity += m * (px * vy - py * vx);
       }
@@ -2,6 +2,7 @@ package org.jbox2d.particle;
 
 import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import org.jbox2d.callbacks.ParticleDestructionListener;
 import org.jbox2d.callbacks.ParticleQueryCallback;
@@ -29,7 +30,7 @@ public class ParticleSystem {
   /** All particle types that require creating triads */
   private static final int k_triadFlags = ParticleType.b2_elasticParticle;
   /** All particle types that require computing depth */
-  private static final int k_noPressureFlags = ParticleType.b2_powderParticle;
+  static final int k_noPressureFlags = ParticleType.b2_powderParticle;
 
   static final int xTruncBits = 12;
   static final int yTruncBits = 12;
@@ -68,8 +69,10 @@ public class ParticleSystem {
   int m_internalAllocatedCapacity;
   int m_maxCount;
   ParticleBufferInt m_flagsBuffer;
-  ParticleBuffer<Vec2> m_positionBuffer;
-  ParticleBuffer<Vec2> m_velocityBuffer;
+  /** x and y of every particle, interleaved. */
+  ParticleBufferVec2 m_positionBuffer;
+  /** x and y of every particle, interleaved. */
+  ParticleBufferVec2 m_velocityBuffer;
   float[] m_accumulationBuffer; // temporary values
   Vec2[] m_accumulation2Buffer; // temporary vector values
   float[] m_depthBuffer; // distance from the surface
@@ -80,7 +83,14 @@ public class ParticleSystem {
 
   int m_proxyCount;
   int m_proxyCapacity;
-  Proxy[] m_proxyBuffer;
+  /** Particle index of each proxy, kept in the order of {@link #m_proxyTags}. */
+  int[] m_proxyIndices;
+  /** Spatial tag of each proxy, see {@link #computeTag}. Sorted by {@link #updateContacts}. */
+  long[] m_proxyTags;
+  // Scratch space for the radix sort of the proxies.
+  int[] m_proxySortIndices;
+  long[] m_proxySortTags;
+  private final int[] m_proxySortCounts = new int[8 * 256];
 
   public int m_contactCount;
   int m_contactCapacity;
@@ -114,6 +124,8 @@ public class ParticleSystem {
 
   World m_world;
 
+  ParallelParticleSolver m_parallelSolver;
+
   public ParticleSystem(World world) {
     m_world = world;
     m_timestamp = 0;
@@ -159,8 +171,8 @@ public class ParticleSystem {
     m_colorMixingStrength = 0.5f;
 
     m_flagsBuffer = new ParticleBufferInt();
-    m_positionBuffer = new ParticleBuffer<Vec2>(Vec2.class);
-    m_velocityBuffer = new ParticleBuffer<Vec2>(Vec2.class);
+    m_positionBuffer = new ParticleBufferVec2();
+    m_velocityBuffer = new ParticleBufferVec2();
     m_colorBuffer = new ParticleBuffer<ParticleColor>(ParticleColor.class);
     m_userDataBuffer = new ParticleBuffer<Object>(Object.class);
   }
@@ -215,9 +227,11 @@ public class ParticleSystem {
     }
     int index = m_count++;
     m_flagsBuffer.data[index] = def.flags;
-    m_positionBuffer.data[index].set(def.position);
+    m_positionBuffer.data[2 * index] = def.position.x;
+    m_positionBuffer.data[2 * index + 1] = def.position.y;
 //    assertNotSamePosition();
-    m_velocityBuffer.data[index].set(def.velocity);
+    m_velocityBuffer.data[2 * index] = def.velocity.x;
+    m_velocityBuffer.data[2 * index + 1] = def.velocity.y;
     m_groupBuffer[index] = null;
     if (m_depthBuffer != null) {
       m_depthBuffer[index] = 0;
@@ -234,11 +248,11 @@ public class ParticleSystem {
     if (m_proxyCount >= m_proxyCapacity) {
       int oldCapacity = m_proxyCapacity;
       int newCapacity = m_proxyCount != 0 ? 2 * m_proxyCount : Settings.minParticleBufferCapacity;
-      m_proxyBuffer =
-          BufferUtils.reallocateBuffer(Proxy.class, m_proxyBuffer, oldCapacity, newCapacity);
+      m_proxyIndices = BufferUtils.reallocateBuffer(m_proxyIndices, oldCapacity, newCapacity);
+      m_proxyTags = BufferUtils.reallocateBuffer(m_proxyTags, oldCapacity, newCapacity);
       m_proxyCapacity = newCapacity;
     }
-    m_proxyBuffer[m_proxyCount++].index = index;
+    m_proxyIndices[m_proxyCount++] = index;
     return index;
   }
 
@@ -268,6 +282,7 @@ public class ParticleSystem {
 
   private final AABB temp2 = new AABB();
   private final Vec2 tempVec = new Vec2();
+  private final Vec2 tempPosition = new Vec2();
   private final Transform tempTransform = new Transform();
   private final Transform tempTransform2 = new Transform();
   private CreateParticleGroupCallback createParticleGroupCallback =
@@ -367,7 +382,9 @@ public class ParticleSystem {
           pair.indexB = b;
           pair.flags = contact.flags;
           pair.strength = groupDef.strength;
-          pair.distance = MathUtils.distance(m_positionBuffer.data[a], m_positionBuffer.data[b]);
+          final float dx = m_positionBuffer.data[2 * a] - m_positionBuffer.data[2 * b];
+          final float dy = m_positionBuffer.data[2 * a + 1] - m_positionBuffer.data[2 * b + 1];
+          pair.distance = MathUtils.sqrt(dx * dx + dy * dy);
           m_pairCount++;
         }
       }
@@ -375,7 +392,7 @@ public class ParticleSystem {
     if ((groupDef.flags & k_triadFlags) != 0) {
       VoronoiDiagram diagram = new VoronoiDiagram(lastIndex - firstIndex);
       for (int i = firstIndex; i < lastIndex; i++) {
-        diagram.addGenerator(m_positionBuffer.data[i], i);
+        diagram.addGenerator(m_positionBuffer.data[2 * i], m_positionBuffer.data[2 * i + 1], i);
       }
       diagram.generate(stride / 2);
       createParticleGroupCallback.system = this;
@@ -428,7 +445,9 @@ public class ParticleSystem {
           pair.indexB = b;
           pair.flags = contact.flags;
           pair.strength = MathUtils.min(groupA.m_strength, groupB.m_strength);
-          pair.distance = MathUtils.distance(m_positionBuffer.data[a], m_positionBuffer.data[b]);
+          final float dx = m_positionBuffer.data[2 * a] - m_positionBuffer.data[2 * b];
+          final float dy = m_positionBuffer.data[2 * a + 1] - m_positionBuffer.data[2 * b + 1];
+          pair.distance = MathUtils.sqrt(dx * dx + dy * dy);
           m_pairCount++;
         }
       }
@@ -437,7 +456,7 @@ public class ParticleSystem {
       VoronoiDiagram diagram = new VoronoiDiagram(groupB.m_lastIndex - groupA.m_firstIndex);
       for (int i = groupA.m_firstIndex; i < groupB.m_lastIndex; i++) {
         if ((m_flagsBuffer.data[i] & ParticleType.b2_zombieParticle) == 0) {
-          diagram.addGenerator(m_positionBuffer.data[i], i);
+          diagram.addGenerator(m_positionBuffer.data[2 * i], m_positionBuffer.data[2 * i + 1], i);
         }
       }
       diagram.generate(getParticleStride() / 2);
@@ -548,10 +567,9 @@ public class ParticleSystem {
 
   public void addContact(int a, int b) {
     assert(a != b);
-    Vec2 pa = m_positionBuffer.data[a];
-    Vec2 pb = m_positionBuffer.data[b];
-    float dx = pb.x - pa.x;
-    float dy = pb.y - pa.y;
+    final float[] positions = m_positionBuffer.data;
+    float dx = positions[2 * b] - positions[2 * a];
+    float dy = positions[2 * b + 1] - positions[2 * a + 1];
     float d2 = dx * dx + dy * dy;
 //    assert(d2 != 0);
     if (d2 < m_squaredDiameter) {
@@ -578,39 +596,39 @@ public class ParticleSystem {
 
   public void updateContacts(boolean exceptZombie) {
     for (int p = 0; p < m_proxyCount; p++) {
-      Proxy proxy = m_proxyBuffer[p];
-      int i = proxy.index;
-      Vec2 pos = m_positionBuffer.data[i];
-      proxy.tag = computeTag(m_inverseDiameter * pos.x, m_inverseDiameter * pos.y);
-    }
-    Arrays.sort(m_proxyBuffer, 0, m_proxyCount);
+      final int i = m_proxyIndices[p];
+      m_proxyTags[p] =
+          computeTag(m_inverseDiameter * m_positionBuffer.data[2 * i], m_inverseDiameter
+              * m_positionBuffer.data[2 * i + 1]);
+    }
+    sortProxies();
+    final long[] tags = m_proxyTags;
+    final int[] indices = m_proxyIndices;
     m_contactCount = 0;
     int c_index = 0;
     for (int i = 0; i < m_proxyCount; i++) {
-      Proxy a = m_proxyBuffer[i];
-      long rightTag = computeRelativeTag(a.tag, 1, 0);
+      final long aTag = tags[i];
+      final int aIndex = indices[i];
+      long rightTag = computeRelativeTag(aTag, 1, 0);
       for (int j = i + 1; j < m_proxyCount; j++) {
-        Proxy b = m_proxyBuffer[j];
-        if (rightTag < b.tag) {
+        if (rightTag < tags[j]) {
           break;
         }
-        addContact(a.index, b.index);
+        addContact(aIndex, indices[j]);
       }
-      long bottomLeftTag = computeRelativeTag(a.tag, -1, 1);
+      long bottomLeftTag = computeRelativeTag(aTag, -1, 1);
       for (; c_index < m_proxyCount; c_index++) {
-        Proxy c = m_proxyBuffer[c_index];
-        if (bottomLeftTag <= c.tag) {
+        if (bottomLeftTag <= tags[c_index]) {
           break;
         }
       }
-      long bottomRightTag = computeRelativeTag(a.tag, 1, 1);
+      long bottomRightTag = computeRelativeTag(aTag, 1, 1);
 
       for (int b_index = c_index; b_index < m_proxyCount; b_index++) {
-        Proxy b = m_proxyBuffer[b_index];
-        if (bottomRightTag < b.tag) {
+        if (bottomRightTag < tags[b_index]) {
           break;
         }
-        addContact(a.index, b.index);
+        addContact(aIndex, indices[b_index]);
       }
     }
     if (exceptZombie) {
@@ -628,6 +646,95 @@ public class ParticleSystem {
     }
   }
 
+  /**
+   * Sorts the proxies by tag. Particles seldom change cells between steps, so the proxies are
+   * usually close to sorted already and an insertion sort finishes in about linear time. If it has
+   * to shift more entries than there are proxies it hands what is left over to a radix sort. Both
+   * sorts are stable, so proxies with equal tags keep their order from the previous step.
+   */
+  void sortProxies() {
+    final long[] tags = m_proxyTags;
+    final int[] indices = m_proxyIndices;
+    int budget = m_proxyCount;
+    for (int i = 1; i < m_proxyCount; i++) {
+      final long tag = tags[i];
+      if (tags[i - 1] <= tag) {
+        continue;
+      }
+      final int index = indices[i];
+      int j = i;
+      do {
+        tags[j] = tags[j - 1];
+        indices[j] = indices[j - 1];
+        --j;
+        --budget;
+      } while (j > 0 && tags[j - 1] > tag && budget > 0);
+      // everything to the right of j is greater than tag, so stopping early keeps the order of
+      // equal tags
+      tags[j] = tag;
+      indices[j] = index;
+      if (budget <= 0) {
+        radixSortProxies();
+        return;
+      }
+    }
+  }
+
+  /** Stable LSD radix sort of the proxies, one byte of the tag per pass. */
+  private void radixSortProxies() {
+    final int count = m_proxyCount;
+    if (m_proxySortTags == null || m_proxySortTags.length < m_proxyCapacity) {
+      m_proxySortTags = new long[m_proxyCapacity];
+      m_proxySortIndices = new int[m_proxyCapacity];
+    }
+    long[] tags = m_proxyTags;
+    int[] indices = m_proxyIndices;
+    long[] tagsOut = m_proxySortTags;
+    int[] indicesOut = m_proxySortIndices;
+
+    // Flipping the sign bit makes the unsigned digit order match the signed tag order.
+    final int[] counts = m_proxySortCounts;
+    Arrays.fill(counts, 0);
+    for (int i = 0; i < count; i++) {
+      final long key = tags[i] ^ Long.MIN_VALUE;
+      for (int pass = 0; pass < 8; pass++) {
+        counts[(pass << 8) + (int) ((key >>> (pass << 3)) & 0xff)]++;
+      }
+    }
+
+    for (int pass = 0; pass < 8; pass++) {
+      final int base = pass << 8;
+      final int shift = pass << 3;
+      // Skip the digits every tag shares, usually the upper half of the tag.
+      if (counts[base + (int) (((tags[0] ^ Long.MIN_VALUE) >>> shift) & 0xff)] == count) {
+        continue;
+      }
+      int offset = 0;
+      for (int digit = 0; digit < 256; digit++) {
+        final int digitCount = counts[base + digit];
+        counts[base + digit] = offset;
+        offset += digitCount;
+      }
+      for (int i = 0; i < count; i++) {
+        final long tag = tags[i];
+        final int dst = counts[base + (int) (((tag ^ Long.MIN_VALUE) >>> shift) & 0xff)]++;
+        tagsOut[dst] = tag;
+        indicesOut[dst] = indices[i];
+      }
+      final long[] swapTags = tags;
+      tags = tagsOut;
+      tagsOut = swapTags;
+      final int[] swapIndices = indices;
+      indices = indicesOut;
+      indicesOut = swapIndices;
+    }
+
+    m_proxyTags = tags;
+    m_proxyIndices = indices;
+    m_proxySortTags = tagsOut;
+    m_proxySortIndices = indicesOut;
+  }
+
   private final UpdateBodyContactsCallback ubccallback = new UpdateBodyContactsCallback();
 
   public void updateBodyContacts() {
@@ -636,10 +743,14 @@ public class ParticleSystem {
     aabb.lowerBound.y = Float.MAX_VALUE;
     aabb.upperBound.x = -Float.MAX_VALUE;
     aabb.upperBound.y = -Float.MAX_VALUE;
+    final float[] positions = m_positionBuffer.data;
     for (int i = 0; i < m_count; i++) {
-      Vec2 p = m_positionBuffer.data[i];
-      Vec2.minToOut(aabb.lowerBound, p, aabb.lowerBound);
-      Vec2.maxToOut(aabb.upperBound, p, aabb.upperBound);
+      final float px = positions[2 * i];
+      final float py = positions[2 * i + 1];
+      aabb.lowerBound.x = aabb.lowerBound.x < px ? aabb.lowerBound.x : px;
+      aabb.lowerBound.y = aabb.lowerBound.y < py ? aabb.lowerBound.y : py;
+      aabb.upperBound.x = aabb.upperBound.x > px ? aabb.upperBound.x : px;
+      aabb.upperBound.y = aabb.upperBound.y > py ? aabb.upperBound.y : py;
     }
     aabb.lowerBound.x -= m_particleDiameter;
     aabb.lowerBound.y -= m_particleDiameter;
@@ -661,13 +772,13 @@ public class ParticleSystem {
     lowerBound.y = Float.MAX_VALUE;
     upperBound.x = -Float.MAX_VALUE;
     upperBound.y = -Float.MAX_VALUE;
+    final float[] velocities = m_velocityBuffer.data;
+    final float[] positions = m_positionBuffer.data;
     for (int i = 0; i < m_count; i++) {
-      final Vec2 v = m_velocityBuffer.data[i];
-      final Vec2 p1 = m_positionBuffer.data[i];
-      final float p1x = p1.x;
-      final float p1y = p1.y;
-      final float p2x = p1x + step.dt * v.x;
-      final float p2y = p1y + step.dt * v.y;
+      final float p1x = positions[2 * i];
+      final float p1y = positions[2 * i + 1];
+      final float p2x = p1x + step.dt * velocities[2 * i];
+      final float p2y = p1y + step.dt * velocities[2 * i + 1];
       final float bx = p1x < p2x ? p1x : p2x;
       final float by = p1y < p2y ? p1y : p2y;
       lowerBound.x = lowerBound.x < bx ? lowerBound.x : bx;
@@ -704,15 +815,21 @@ public class ParticleSystem {
     final float gravityx = step.dt * m_gravityScale * m_world.getGravity().x;
     final float gravityy = step.dt * m_gravityScale * m_world.getGravity().y;
     float criticalVelocytySquared = getCriticalVelocitySquared(step);
-    for (int i = 0; i < m_count; i++) {
-      Vec2 v = m_velocityBuffer.data[i];
-      v.x += gravityx;
-      v.y += gravityy;
-      float v2 = v.x * v.x + v.y * v.y;
-      if (v2 > criticalVelocytySquared) {
-        float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocytySquared / v2);
-        v.x *= a;
-        v.y *= a;
+    if (m_parallelSolver != null) {
+      m_parallelSolver.applyGravity(gravityx, gravityy, criticalVelocytySquared);
+    } else {
+      final float[] velocities = m_velocityBuffer.data;
+      for (int i = 0; i < m_count; i++) {
+        float vx = velocities[2 * i] + gravityx;
+        float vy = velocities[2 * i + 1] + gravityy;
+        float v2 = vx * vx + vy * vy;
+        if (v2 > criticalVelocytySquared) {
+          float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocytySquared / v2);
+          vx *= a;
+          vy *= a;
+        }
+        velocities[2 * i] = vx;
+        velocities[2 * i + 1] = vy;
       }
     }
     solveCollision(step);
@@ -722,11 +839,15 @@ public class ParticleSystem {
     if ((m_allParticleFlags & ParticleType.b2_wallParticle) != 0) {
       solveWall(step);
     }
-    for (int i = 0; i < m_count; i++) {
-      Vec2 pos = m_positionBuffer.data[i];
-      Vec2 vel = m_velocityBuffer.data[i];
-      pos.x += step.dt * vel.x;
-      pos.y += step.dt * vel.y;
+    if (m_parallelSolver != null) {
+      m_parallelSolver.integratePositions(step.dt);
+    } else {
+      final float[] positions = m_positionBuffer.data;
+      final float[] velocities = m_velocityBuffer.data;
+      for (int i = 0; i < m_count; i++) {
+        positions[2 * i] += step.dt * velocities[2 * i];
+        positions[2 * i + 1] += step.dt * velocities[2 * i + 1];
+      }
     }
     updateBodyContacts();
     updateContacts(false);
@@ -767,34 +888,40 @@ public class ParticleSystem {
       float w = contact.weight;
       m_accumulationBuffer[a] += w;
     }
-    for (int k = 0; k < m_contactCount; k++) {
-      ParticleContact contact = m_contactBuffer[k];
-      int a = contact.indexA;
-      int b = contact.indexB;
-      float w = contact.weight;
-      m_accumulationBuffer[a] += w;
-      m_accumulationBuffer[b] += w;
-    }
-    // ignores powder particles
-    if ((m_allParticleFlags & k_noPressureFlags) != 0) {
-      for (int i = 0; i < m_count; i++) {
-        if ((m_flagsBuffer.data[i] & k_noPressureFlags) != 0) {
-          m_accumulationBuffer[i] = 0;
+    float pressurePerWeight = m_pressureStrength * getCriticalPressure(step);
+    if (m_parallelSolver != null) {
+      m_parallelSolver.accumulatePressure(pressurePerWeight);
+    } else {
+      for (int k = 0; k < m_contactCount; k++) {
+        ParticleContact contact = m_contactBuffer[k];
+        int a = contact.indexA;
+        int b = contact.indexB;
+        float w = contact.weight;
+        m_accumulationBuffer[a] += w;
+        m_accumulationBuffer[b] += w;
+      }
+      // ignores powder particles
+      if ((m_allParticleFlags & k_noPressureFlags) != 0) {
+        for (int i = 0; i < m_count; i++) {
+          if ((m_flagsBuffer.data[i] & k_noPressureFlags) != 0) {
+            m_accumulationBuffer[i] = 0;
+          }
         }
       }
-    }
-    // calculates pressure as a linear function of density
-    float pressurePerWeight = m_pressureStrength * getCriticalPressure(step);
-    for (int i = 0; i < m_count; i++) {
-      float w = m_accumulationBuffer[i];
-      float h =
-          pressurePerWeight
-              * MathUtils.max(0.0f, MathUtils.min(w, Settings.maxParticleWeight)
-                  - Settings.minParticleWeight);
-      m_accumulationBuffer[i] = h;
+      // calculates pressure as a linear function of density
+      for (int i = 0; i < m_count; i++) {
+        float w = m_accumulationBuffer[i];
+        float h =
+            pressurePerWeight
+                * MathUtils.max(0.0f, MathUtils.min(w, Settings.maxParticleWeight)
+                    - Settings.minParticleWeight);
+        m_accumulationBuffer[i] = h;
+      }
     }
     // applies pressure between each particles in contact
     float velocityPerPressure = step.dt / (m_density * m_particleDiameter);
+    final float[] positions = m_positionBuffer.data;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_bodyContactCount; k++) {
       ParticleBodyContact contact = m_bodyContactBuffer[k];
       int a = contact.index;
@@ -802,17 +929,19 @@ public class ParticleSystem {
       float w = contact.weight;
       float m = contact.mass;
       Vec2 n = contact.normal;
-      Vec2 p = m_positionBuffer.data[a];
       float h = m_accumulationBuffer[a] + pressurePerWeight * w;
       final Vec2 f = tempVec;
       final float coef = velocityPerPressure * w * m * h;
       f.x = coef * n.x;
       f.y = coef * n.y;
-      final Vec2 velData = m_velocityBuffer.data[a];
       final float particleInvMass = getParticleInvMass();
-      velData.x -= particleInvMass * f.x;
-      velData.y -= particleInvMass * f.y;
-      b.applyLinearImpulse(f, p, true);
+      velocities[2 * a] -= particleInvMass * f.x;
+      velocities[2 * a + 1] -= particleInvMass * f.y;
+      b.applyLinearImpulse(f, tempPosition.set(positions[2 * a], positions[2 * a + 1]), true);
+    }
+    if (m_parallelSolver != null) {
+      m_parallelSolver.applyPressure(velocityPerPressure);
+      return;
     }
     for (int k = 0; k < m_contactCount; k++) {
       ParticleContact contact = m_contactBuffer[k];
@@ -823,18 +952,18 @@ public class ParticleSystem {
       float h = m_accumulationBuffer[a] + m_accumulationBuffer[b];
       final float fx = velocityPerPressure * w * h * n.x;
       final float fy = velocityPerPressure * w * h * n.y;
-      final Vec2 velDataA = m_velocityBuffer.data[a];
-      final Vec2 velDataB = m_velocityBuffer.data[b];
-      velDataA.x -= fx;
-      velDataA.y -= fy;
-      velDataB.x += fx;
-      velDataB.y += fy;
+      velocities[2 * a] -= fx;
+      velocities[2 * a + 1] -= fy;
+      velocities[2 * b] += fx;
+      velocities[2 * b + 1] += fy;
     }
   }
 
   void solveDamping(TimeStep step) {
     // reduces normal velocity of each contact
     float damping = m_dampingStrength;
+    final float[] positions = m_positionBuffer.data;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_bodyContactCount; k++) {
       final ParticleBodyContact contact = m_bodyContactBuffer[k];
       int a = contact.index;
@@ -842,13 +971,11 @@ public class ParticleSystem {
       float w = contact.weight;
       float m = contact.mass;
       Vec2 n = contact.normal;
-      Vec2 p = m_positionBuffer.data[a];
-      final float tempX = p.x - b.m_sweep.c.x;
-      final float tempY = p.y - b.m_sweep.c.y;
-      final Vec2 velA = m_velocityBuffer.data[a];
+      final float tempX = positions[2 * a] - b.m_sweep.c.x;
+      final float tempY = positions[2 * a + 1] - b.m_sweep.c.y;
       // getLinearVelocityFromWorldPointToOut, with -= velA
-      float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velA.x;
-      float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velA.y;
+      float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velocities[2 * a];
+      float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velocities[2 * a + 1];
       // done
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) {
@@ -856,41 +983,43 @@ public class ParticleSystem {
         f.x = damping * w * m * vn * n.x;
         f.y = damping * w * m * vn * n.y;
         final float invMass = getParticleInvMass();
-        velA.x += invMass * f.x;
-        velA.y += invMass * f.y;
+        velocities[2 * a] += invMass * f.x;
+        velocities[2 * a + 1] += invMass * f.y;
         f.x = -f.x;
         f.y = -f.y;
-        b.applyLinearImpulse(f, p, true);
+        b.applyLinearImpulse(f, tempPosition.set(positions[2 * a], positions[2 * a + 1]), true);
       }
     }
+    if (m_parallelSolver != null) {
+      m_parallelSolver.applyDamping(damping);
+      return;
+    }
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
       float w = contact.weight;
       Vec2 n = contact.normal;
-      final Vec2 velA = m_velocityBuffer.data[a];
-      final Vec2 velB = m_velocityBuffer.data[b];
-      final float vx = velB.x - velA.x;
-      final float vy = velB.y - velA.y;
+      final float vx = velocities[2 * b] - velocities[2 * a];
+      final float vy = velocities[2 * b + 1] - velocities[2 * a + 1];
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) {
         float fx = damping * w * vn * n.x;
         float fy = damping * w * vn * n.y;
-        velA.x += fx;
-        velA.y += fy;
-        velB.x -= fx;
-        velB.y -= fy;
+        velocities[2 * a] += fx;
+        velocities[2 * a + 1] += fy;
+        velocities[2 * b] -= fx;
+        velocities[2 * b + 1] -= fy;
       }
     }
   }
 
   public void solveWall(TimeStep step) {
+    final float[] velocities = m_velocityBuffer.data;
     for (int i = 0; i < m_count; i++) {
       if ((m_flagsBuffer.data[i] & ParticleType.b2_wallParticle) != 0) {
-        final Vec2 r = m_velocityBuffer.data[i];
-        r.x = 0.0f;
-        r.y = 0.0f;
+        velocities[2 * i] = 0.0f;
+        velocities[2 * i + 1] = 0.0f;
       }
     }
   }
@@ -918,9 +1047,14 @@ public class ParticleSystem {
         velocityTransform.p.y = step.inv_dt * tempXf.p.y;
         velocityTransform.q.s = step.inv_dt * tempXf.q.s;
         velocityTransform.q.c = step.inv_dt * (tempXf.q.c - 1);
+        final float[] positions = m_positionBuffer.data;
+        final float[] velocities = m_velocityBuffer.data;
+        final Rot q = velocityTransform.q;
         for (int i = group.m_firstIndex; i < group.m_lastIndex; i++) {
-          Transform.mulToOutUnsafe(velocityTransform, m_positionBuffer.data[i],
-              m_velocityBuffer.data[i]);
+          final float px = positions[2 * i];
+          final float py = positions[2 * i + 1];
+          velocities[2 * i] = (q.c * px - q.s * py) + velocityTransform.p.x;
+          velocities[2 * i + 1] = (q.s * px + q.c * py) + velocityTransform.p.y;
         }
       }
     }
@@ -928,6 +1062,8 @@ public class ParticleSystem {
 
   void solveElastic(final TimeStep step) {
     float elasticStrength = step.inv_dt * m_elasticStrength;
+    final float[] positions = m_positionBuffer.data;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_triadCount; k++) {
       final Triad triad = m_triadBuffer[k];
       if ((triad.flags & ParticleType.b2_elasticParticle) != 0) {
@@ -937,13 +1073,15 @@ public class ParticleSystem {
         final Vec2 oa = triad.pa;
         final Vec2 ob = triad.pb;
         final Vec2 oc = triad.pc;
-        final Vec2 pa = m_positionBuffer.data[a];
-        final Vec2 pb = m_positionBuffer.data[b];
-        final Vec2 pc = m_positionBuffer.data[c];
-        final float px = 1f / 3 * (pa.x + pb.x + pc.x);
-        final float py = 1f / 3 * (pa.y + pb.y + pc.y);
-        float rs = Vec2.cross(oa, pa) + Vec2.cross(ob, pb) + Vec2.cross(oc, pc);
-        float rc = Vec2.dot(oa, pa) + Vec2.dot(ob, pb) + Vec2.dot(oc, pc);
+        final float pax = positions[2 * a], pay = positions[2 * a + 1];
+        final float pbx = positions[2 * b], pby = positions[2 * b + 1];
+        final float pcx = positions[2 * c], pcy = positions[2 * c + 1];
+        final float px = 1f / 3 * (pax + pbx + pcx);
+        final float py = 1f / 3 * (pay + pby + pcy);
+        float rs =
+            (oa.x * pay - oa.y * pax) + (ob.x * pby - ob.y * pbx) + (oc.x * pcy - oc.y * pcx);
+        float rc =
+            (oa.x * pax + oa.y * pay) + (ob.x * pbx + ob.y * pby) + (oc.x * pcx + oc.y * pcy);
         float r2 = rs * rs + rc * rc;
         float invR = r2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(1f / r2);
         rs *= invR;
@@ -955,48 +1093,48 @@ public class ParticleSystem {
         final float roby = rs * ob.x + rc * ob.y;
         final float rocx = rc * oc.x - rs * oc.y;
         final float rocy = rs * oc.x + rc * oc.y;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        final Vec2 vc = m_velocityBuffer.data[c];
-        va.x += strength * (roax - (pa.x - px));
-        va.y += strength * (roay - (pa.y - py));
-        vb.x += strength * (robx - (pb.x - px));
-        vb.y += strength * (roby - (pb.y - py));
-        vc.x += strength * (rocx - (pc.x - px));
-        vc.y += strength * (rocy - (pc.y - py));
+        velocities[2 * a] += strength * (roax - (pax - px));
+        velocities[2 * a + 1] += strength * (roay - (pay - py));
+        velocities[2 * b] += strength * (robx - (pbx - px));
+        velocities[2 * b + 1] += strength * (roby - (pby - py));
+        velocities[2 * c] += strength * (rocx - (pcx - px));
+        velocities[2 * c + 1] += strength * (rocy - (pcy - py));
       }
     }
   }
 
   void solveSpring(final TimeStep step) {
     float springStrength = step.inv_dt * m_springStrength;
+    final float[] positions = m_positionBuffer.data;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_pairCount; k++) {
       final Pair pair = m_pairBuffer[k];
       if ((pair.flags & ParticleType.b2_springParticle) != 0) {
         int a = pair.indexA;
         int b = pair.indexB;
-        final Vec2 pa = m_positionBuffer.data[a];
-        final Vec2 pb = m_positionBuffer.data[b];
-        final float dx = pb.x - pa.x;
-        final float dy = pb.y - pa.y;
+        final float dx = positions[2 * b] - positions[2 * a];
+        final float dy = positions[2 * b + 1] - positions[2 * a + 1];
         float r0 = pair.distance;
         float r1 = MathUtils.sqrt(dx * dx + dy * dy);
         if (r1 == 0) r1 = Float.MAX_VALUE;
         float strength = springStrength * pair.strength;
         final float fx = strength * (r0 - r1) / r1 * dx;
         final float fy = strength * (r0 - r1) / r1 * dy;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        va.x -= fx;
-        va.y -= fy;
-        vb.x += fx;
-        vb.y += fy;
+        velocities[2 * a] -= fx;
+        velocities[2 * a + 1] -= fy;
+        velocities[2 * b] += fx;
+        velocities[2 * b + 1] += fy;
       }
     }
   }
 
   void solveTensile(final TimeStep step) {
     m_accumulation2Buffer = requestParticleBuffer(Vec2.class, m_accumulation2Buffer);
+    if (m_parallelSolver != null) {
+      m_parallelSolver.applyTensile(m_surfaceTensionStrengthA * getCriticalVelocity(step),
+          m_surfaceTensionStrengthB * getCriticalVelocity(step));
+      return;
+    }
     for (int i = 0; i < m_count; i++) {
       m_accumulationBuffer[i] = 0;
       m_accumulation2Buffer[i].setZero();
@@ -1021,6 +1159,7 @@ public class ParticleSystem {
     }
     float strengthA = m_surfaceTensionStrengthA * getCriticalVelocity(step);
     float strengthB = m_surfaceTensionStrengthB * getCriticalVelocity(step);
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       if ((contact.flags & ParticleType.b2_tensileParticle) != 0) {
@@ -1036,18 +1175,18 @@ public class ParticleSystem {
         float fn = (strengthA * (h - 2) + strengthB * (sx * n.x + sy * n.y)) * w;
         final float fx = fn * n.x;
         final float fy = fn * n.y;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        va.x -= fx;
-        va.y -= fy;
-        vb.x += fx;
-        vb.y += fy;
+        velocities[2 * a] -= fx;
+        velocities[2 * a + 1] -= fy;
+        velocities[2 * b] += fx;
+        velocities[2 * b + 1] += fy;
       }
     }
   }
 
   void solveViscous(final TimeStep step) {
     float viscousStrength = m_viscousStrength;
+    final float[] positions = m_positionBuffer.data;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_bodyContactCount; k++) {
       final ParticleBodyContact contact = m_bodyContactBuffer[k];
       int a = contact.index;
@@ -1055,39 +1194,41 @@ public class ParticleSystem {
         Body b = contact.body;
         float w = contact.weight;
         float m = contact.mass;
-        Vec2 p = m_positionBuffer.data[a];
-        final Vec2 va = m_velocityBuffer.data[a];
-        final float tempX = p.x - b.m_sweep.c.x;
-        final float tempY = p.y - b.m_sweep.c.y;
-        final float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - va.x;
-        final float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - va.y;
+        final float tempX = positions[2 * a] - b.m_sweep.c.x;
+        final float tempY = positions[2 * a + 1] - b.m_sweep.c.y;
+        final float vx =
+            -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velocities[2 * a];
+        final float vy =
+            b.m_angularVelocity * tempX + b.m_linearVelocity.y - velocities[2 * a + 1];
         final Vec2 f = tempVec;
         final float pInvMass = getParticleInvMass();
         f.x = viscousStrength * m * w * vx;
         f.y = viscousStrength * m * w * vy;
-        va.x += pInvMass * f.x;
-        va.y += pInvMass * f.y;
+        velocities[2 * a] += pInvMass * f.x;
+        velocities[2 * a + 1] += pInvMass * f.y;
         f.x = -f.x;
         f.y = -f.y;
-        b.applyLinearImpulse(f, p, true);
+        b.applyLinearImpulse(f, tempPosition.set(positions[2 * a], positions[2 * a + 1]), true);
       }
     }
+    if (m_parallelSolver != null) {
+      m_parallelSolver.applyViscous(viscousStrength);
+      return;
+    }
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       if ((contact.flags & ParticleType.b2_viscousParticle) != 0) {
         int a = contact.indexA;
         int b = contact.indexB;
         float w = contact.weight;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        final float vx = vb.x - va.x;
-        final float vy = vb.y - va.y;
+        final float vx = velocities[2 * b] - velocities[2 * a];
+        final float vy = velocities[2 * b + 1] - velocities[2 * a + 1];
         final float fx = viscousStrength * w * vx;
         final float fy = viscousStrength * w * vy;
-        va.x += fx;
-        va.y += fy;
-        vb.x -= fx;
-        vb.y -= fy;
+        velocities[2 * a] += fx;
+        velocities[2 * a + 1] += fy;
+        velocities[2 * b] -= fx;
+        velocities[2 * b + 1] -= fy;
       }
     }
   }
@@ -1095,6 +1236,8 @@ public class ParticleSystem {
   void solvePowder(final TimeStep step) {
     float powderStrength = m_powderStrength * getCriticalVelocity(step);
     float minWeight = 1.0f - Settings.particleStride;
+    final float[] positions = m_positionBuffer.data;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_bodyContactCount; k++) {
       final ParticleBodyContact contact = m_bodyContactBuffer[k];
       int a = contact.index;
@@ -1103,17 +1246,15 @@ public class ParticleSystem {
         if (w > minWeight) {
           Body b = contact.body;
           float m = contact.mass;
-          Vec2 p = m_positionBuffer.data[a];
           Vec2 n = contact.normal;
           final Vec2 f = tempVec;
-          final Vec2 va = m_velocityBuffer.data[a];
           final float inter = powderStrength * m * (w - minWeight);
           final float pInvMass = getParticleInvMass();
           f.x = inter * n.x;
           f.y = inter * n.y;
-          va.x -= pInvMass * f.x;
-          va.y -= pInvMass * f.y;
-          b.applyLinearImpulse(f, p, true);
+          velocities[2 * a] -= pInvMass * f.x;
+          velocities[2 * a + 1] -= pInvMass * f.y;
+          b.applyLinearImpulse(f, tempPosition.set(positions[2 * a], positions[2 * a + 1]), true);
         }
       }
     }
@@ -1125,15 +1266,13 @@ public class ParticleSystem {
           int a = contact.indexA;
           int b = contact.indexB;
           Vec2 n = contact.normal;
-          final Vec2 va = m_velocityBuffer.data[a];
-          final Vec2 vb = m_velocityBuffer.data[b];
           final float inter = powderStrength * (w - minWeight);
           final float fx = inter * n.x;
           final float fy = inter * n.y;
-          va.x -= fx;
-          va.y -= fy;
-          vb.x += fx;
-          vb.y += fy;
+          velocities[2 * a] -= fx;
+          velocities[2 * a + 1] -= fy;
+          velocities[2 * b] += fx;
+          velocities[2 * b + 1] += fy;
         }
       }
     }
@@ -1143,6 +1282,7 @@ public class ParticleSystem {
     // applies extra repulsive force from solid particle groups
     m_depthBuffer = requestParticleBuffer(m_depthBuffer);
     float ejectionStrength = step.inv_dt * m_ejectionStrength;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
@@ -1151,15 +1291,13 @@ public class ParticleSystem {
         float w = contact.weight;
         Vec2 n = contact.normal;
         float h = m_depthBuffer[a] + m_depthBuffer[b];
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
         final float inter = ejectionStrength * h * w;
         final float fx = inter * n.x;
         final float fy = inter * n.y;
-        va.x -= fx;
-        va.y -= fy;
-        vb.x += fx;
-        vb.y += fy;
+        velocities[2 * a] -= fx;
+        velocities[2 * a + 1] -= fy;
+        velocities[2 * b] += fx;
+        velocities[2 * b + 1] += fy;
       }
     }
   }
@@ -1207,8 +1345,10 @@ public class ParticleSystem {
         newIndices[i] = newCount;
         if (i != newCount) {
           m_flagsBuffer.data[newCount] = m_flagsBuffer.data[i];
-          m_positionBuffer.data[newCount].set(m_positionBuffer.data[i]);
-          m_velocityBuffer.data[newCount].set(m_velocityBuffer.data[i]);
+          m_positionBuffer.data[2 * newCount] = m_positionBuffer.data[2 * i];
+          m_positionBuffer.data[2 * newCount + 1] = m_positionBuffer.data[2 * i + 1];
+          m_velocityBuffer.data[2 * newCount] = m_velocityBuffer.data[2 * i];
+          m_velocityBuffer.data[2 * newCount + 1] = m_velocityBuffer.data[2 * i + 1];
           m_groupBuffer[newCount] = m_groupBuffer[i];
           if (m_depthBuffer != null) {
             m_depthBuffer[newCount] = m_depthBuffer[i];
@@ -1226,8 +1366,7 @@ public class ParticleSystem {
 
     // update proxies
     for (int k = 0; k < m_proxyCount; k++) {
-      Proxy proxy = m_proxyBuffer[k];
-      proxy.index = newIndices[proxy.index];
+      m_proxyIndices[k] = newIndices[m_proxyIndices[k]];
     }
 
     // Proxy lastProxy = std.remove_if(
@@ -1236,11 +1375,14 @@ public class ParticleSystem {
     // m_proxyCount = (int) (lastProxy - m_proxyBuffer);
     int j = m_proxyCount;
     for (int i = 0; i < j; i++) {
-      if (Test.IsProxyInvalid(m_proxyBuffer[i])) {
+      if (Test.IsProxyInvalid(m_proxyIndices[i])) {
         --j;
-        Proxy temp = m_proxyBuffer[j];
-        m_proxyBuffer[j] = m_proxyBuffer[i];
-        m_proxyBuffer[i] = temp;
+        int tempIndex = m_proxyIndices[j];
+        m_proxyIndices[j] = m_proxyIndices[i];
+        m_proxyIndices[i] = tempIndex;
+        long tempTag = m_proxyTags[j];
+        m_proxyTags[j] = m_proxyTags[i];
+        m_proxyTags[i] = tempTag;
         --i;
       }
     }
@@ -1407,8 +1549,8 @@ public class ParticleSystem {
     newIndices.end = end;
 
     BufferUtils.rotate(m_flagsBuffer.data, start, mid, end);
-    BufferUtils.rotate(m_positionBuffer.data, start, mid, end);
-    BufferUtils.rotate(m_velocityBuffer.data, start, mid, end);
+    BufferUtils.rotate(m_positionBuffer.data, 2 * start, 2 * mid, 2 * end);
+    BufferUtils.rotate(m_velocityBuffer.data, 2 * start, 2 * mid, 2 * end);
     BufferUtils.rotate(m_groupBuffer, start, mid, end);
     if (m_depthBuffer != null) {
       BufferUtils.rotate(m_depthBuffer, start, mid, end);
@@ -1422,8 +1564,7 @@ public class ParticleSystem {
 
     // update proxies
     for (int k = 0; k < m_proxyCount; k++) {
-      Proxy proxy = m_proxyBuffer[k];
-      proxy.index = newIndices.getIndex(proxy.index);
+      m_proxyIndices[k] = newIndices.getIndex(m_proxyIndices[k]);
     }
 
     // update contacts
@@ -1526,14 +1667,73 @@ public class ParticleSystem {
     return m_flagsBuffer.data;
   }
 
-  public Vec2[] getParticlePositionBuffer() {
+  /**
+   * The particle positions, with the x and y of particle i at 2 * i and 2 * i + 1.
+   */
+  public float[] getParticlePositionArray() {
     return m_positionBuffer.data;
   }
 
-  public Vec2[] getParticleVelocityBuffer() {
+  /**
+   * The particle velocities, with the x and y of particle i at 2 * i and 2 * i + 1.
+   */
+  public float[] getParticleVelocityArray() {
     return m_velocityBuffer.data;
   }
 
+  /**
+   * Copies the positions of all particles into dst, x and y interleaved.
+   * 
+   * @param dst must hold at least 2 * {@link #getParticleCount()} floats
+   * @return the number of particles copied
+   */
+  public int getParticlePositions(float[] dst) {
+    if (m_count != 0) {
+      System.arraycopy(m_positionBuffer.data, 0, dst, 0, 2 * m_count);
+    }
+    return m_count;
+  }
+
+  /**
+   * Copies the velocities of all particles into dst, x and y interleaved.
+   * 
+   * @param dst must hold at least 2 * {@link #getParticleCount()} floats
+   * @return the number of particles copied
+   */
+  public int getParticleVelocities(float[] dst) {
+    if (m_count != 0) {
+      System.arraycopy(m_velocityBuffer.data, 0, dst, 0, 2 * m_count);
+    }
+    return m_count;
+  }
+
+  /**
+   * Copies the positions of all particles into the vectors of dst.
+   * 
+   * @param dst must hold at least {@link #getParticleCount()} vectors
+   * @return the number of particles copied
+   */
+  public int copyParticlePositions(Vec2[] dst) {
+    return copyVectors(m_positionBuffer.data, dst);
+  }
+
+  /**
+   * Copies the velocities of all particles into the vectors of dst.
+   * 
+   * @param dst must hold at least {@link #getParticleCount()} vectors
+   * @return the number of particles copied
+   */
+  public int copyParticleVelocities(Vec2[] dst) {
+    return copyVectors(m_velocityBuffer.data, dst);
+  }
+
+  private int copyVectors(float[] data, Vec2[] dst) {
+    for (int i = 0; i < m_count; i++) {
+      dst[i].set(data[2 * i], data[2 * i + 1]);
+    }
+    return m_count;
+  }
+
   public ParticleColor[] getParticleColorBuffer() {
     m_colorBuffer.data = requestParticleBuffer(ParticleColor.class, m_colorBuffer.data);
     return m_colorBuffer.data;
@@ -1562,6 +1762,13 @@ public class ParticleSystem {
     buffer.userSuppliedCapacity = newCapacity;
   }
 
+  void setParticleBuffer(ParticleBufferVec2 buffer, float[] newData, int newCapacity) {
+    assert ((newData != null && newCapacity != 0) || (newData == null && newCapacity == 0));
+    assert (newData == null || newData.length >= 2 * newCapacity);
+    buffer.data = newData;
+    buffer.userSuppliedCapacity = newCapacity;
+  }
+
   <T> void setParticleBuffer(ParticleBuffer<T> buffer, T[] newData, int newCapacity) {
     assert ((newData != null && newCapacity != 0) || (newData == null && newCapacity == 0));
     if (buffer.userSuppliedCapacity != 0) {
@@ -1575,11 +1782,19 @@ public class ParticleSystem {
     setParticleBuffer(m_flagsBuffer, buffer, capacity);
   }
 
-  public void setParticlePositionBuffer(Vec2[] buffer, int capacity) {
+  /**
+   * @param buffer x and y of each particle, interleaved
+   * @param capacity the number of particles the buffer can hold
+   */
+  public void setParticlePositionArray(float[] buffer, int capacity) {
     setParticleBuffer(m_positionBuffer, buffer, capacity);
   }
 
-  public void setParticleVelocityBuffer(Vec2[] buffer, int capacity) {
+  /**
+   * @param buffer x and y of each particle, interleaved
+   * @param capacity the number of particles the buffer can hold
+   */
+  public void setParticleVelocityArray(float[] buffer, int capacity) {
     setParticleBuffer(m_velocityBuffer, buffer, capacity);
   }
 
@@ -1603,17 +1818,38 @@ public class ParticleSystem {
     return m_count;
   }
 
+  /**
+   * Run the particle and particle contact passes of {@link #solve} on the given pool. Contacts
+   * between particles then see the velocities from the start of the damping and viscosity passes
+   * instead of the ones already updated by earlier contacts, and sums are rounded in a different
+   * order, so results differ slightly from the serial solver. Pass null to go back to solving on
+   * the stepping thread (the default).
+   * 
+   * @param solverPool
+   */
+  public void setSolverPool(ForkJoinPool solverPool) {
+    if (solverPool == null) {
+      m_parallelSolver = null;
+    } else if (m_parallelSolver == null || m_parallelSolver.getPool() != solverPool) {
+      m_parallelSolver = new ParallelParticleSolver(solverPool, this);
+    }
+  }
+
+  public ForkJoinPool getSolverPool() {
+    return m_parallelSolver != null ? m_parallelSolver.getPool() : null;
+  }
+
   public void setParticleUserDataBuffer(Object[] buffer, int capacity) {
     setParticleBuffer(m_userDataBuffer, buffer, capacity);
   }
 
-  private static final int lowerBound(Proxy[] ray, int length, long tag) {
+  private static final int lowerBound(long[] ray, int length, long tag) {
     int left = 0;
     int step, curr;
     while (length > 0) {
       step = length / 2;
       curr = left + step;
-      if (ray[curr].tag < tag) {
+      if (ray[curr] < tag) {
         left = curr + 1;
         length -= step + 1;
       } else {
@@ -1623,13 +1859,13 @@ public class ParticleSystem {
     return left;
   }
 
-  private static final int upperBound(Proxy[] ray, int length, long tag) {
+  private static final int upperBound(long[] ray, int length, long tag) {
     int left = 0;
     int step, curr;
     while (length > 0) {
       step = length / 2;
       curr = left + step;
-      if (ray[curr].tag <= tag) {
+      if (ray[curr] <= tag) {
         left = curr + 1;
         length -= step + 1;
       } else {
@@ -1649,15 +1885,17 @@ public class ParticleSystem {
     final float upperBoundX = aabb.upperBound.x;
     final float upperBoundY = aabb.upperBound.y;
     int firstProxy =
-        lowerBound(m_proxyBuffer, m_proxyCount,
+        lowerBound(m_proxyTags, m_proxyCount,
             computeTag(m_inverseDiameter * lowerBoundX, m_inverseDiameter * lowerBoundY));
     int lastProxy =
-        upperBound(m_proxyBuffer, m_proxyCount,
+        upperBound(m_proxyTags, m_proxyCount,
             computeTag(m_inverseDiameter * upperBoundX, m_inverseDiameter * upperBoundY));
+    final float[] positions = m_positionBuffer.data;
     for (int proxy = firstProxy; proxy < lastProxy; ++proxy) {
-      int i = m_proxyBuffer[proxy].index;
-      final Vec2 p = m_positionBuffer.data[i];
-      if (lowerBoundX < p.x && p.x < upperBoundX && lowerBoundY < p.y && p.y < upperBoundY) {
+      int i = m_proxyIndices[proxy];
+      final float px = positions[2 * i];
+      final float py = positions[2 * i + 1];
+      if (lowerBoundX < px && px < upperBoundX && lowerBoundY < py && py < upperBoundY) {
         if (!callback.reportParticle(i)) {
           break;
         }
@@ -1676,13 +1914,13 @@ public class ParticleSystem {
     }
     int firstProxy =
         lowerBound(
-            m_proxyBuffer,
+            m_proxyTags,
             m_proxyCount,
             computeTag(m_inverseDiameter * MathUtils.min(point1.x, point2.x) - 1, m_inverseDiameter
                 * MathUtils.min(point1.y, point2.y) - 1));
     int lastProxy =
         upperBound(
-            m_proxyBuffer,
+            m_proxyTags,
             m_proxyCount,
             computeTag(m_inverseDiameter * MathUtils.max(point1.x, point2.x) + 1, m_inverseDiameter
                 * MathUtils.max(point1.y, point2.y) + 1));
@@ -1694,11 +1932,11 @@ public class ParticleSystem {
     final float vy = point2.y - point1.y;
     float v2 = vx * vx + vy * vy;
     if (v2 == 0) v2 = Float.MAX_VALUE;
+    final float[] positions = m_positionBuffer.data;
     for (int proxy = firstProxy; proxy < lastProxy; ++proxy) {
-      int i = m_proxyBuffer[proxy].index;
-      final Vec2 posI = m_positionBuffer.data[i];
-      final float px = point1.x - posI.x;
-      final float py = point1.y - posI.y;
+      int i = m_proxyIndices[proxy];
+      final float px = point1.x - positions[2 * i];
+      final float py = point1.y - positions[2 * i + 1];
       float pv = px * vx + py * vy;
       float p2 = px * px + py * py;
       float determinant = pv * pv - v2 * (p2 - m_squaredDiameter);
@@ -1733,15 +1971,14 @@ public class ParticleSystem {
 
   public float computeParticleCollisionEnergy() {
     float sum_v2 = 0;
+    final float[] velocities = m_velocityBuffer.data;
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
       Vec2 n = contact.normal;
-      final Vec2 va = m_velocityBuffer.data[a];
-      final Vec2 vb = m_velocityBuffer.data[b];
-      final float vx = vb.x - va.x;
-      final float vy = vb.y - va.y;
+      final float vx = velocities[2 * b] - velocities[2 * a];
+      final float vy = velocities[2 * b + 1] - velocities[2 * a + 1];
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) {
         sum_v2 += vn * vn;
@@ -1765,6 +2002,15 @@ public class ParticleSystem {
         newCapacity, deferred);
   }
 
+  static float[] reallocateBuffer(ParticleBufferVec2 buffer, int oldCapacity, int newCapacity,
+      boolean deferred) {
+    assert (newCapacity > oldCapacity);
+    if ((!deferred || buffer.data != null) && buffer.userSuppliedCapacity == 0) {
+      return BufferUtils.reallocateBuffer(buffer.data, 2 * oldCapacity, 2 * newCapacity);
+    }
+    return buffer.data;
+  }
+
   @SuppressWarnings("unchecked")
   <T> T[] requestParticleBuffer(Class<T> klass, T[] buffer) {
     if (buffer == null) {
@@ -1801,25 +2047,10 @@ public class ParticleSystem {
     int userSuppliedCapacity;
   }
 
-  /** Used for detecting particle contacts */
-  public static class Proxy implements Comparable<Proxy> {
-    int index;
-    long tag;
-
-    @Override
-    public int compareTo(Proxy o) {
-      return (tag - o.tag) < 0 ? -1 : (o.tag == tag ? 0 : 1);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) return true;
-      if (obj == null) return false;
-      if (getClass() != obj.getClass()) return false;
-      Proxy other = (Proxy) obj;
-      if (tag != other.tag) return false;
-      return true;
-    }
+  /** Two floats per particle, x and y. Capacities count particles. */
+  static class ParticleBufferVec2 {
+    float[] data;
+    int userSuppliedCapacity;
   }
 
   /** Connection between two particles */
@@ -1842,15 +2073,16 @@ public class ParticleSystem {
   // Callback used with VoronoiDiagram.
   static class CreateParticleGroupCallback implements VoronoiDiagramCallback {
     public void callback(int a, int b, int c) {
-      final Vec2 pa = system.m_positionBuffer.data[a];
-      final Vec2 pb = system.m_positionBuffer.data[b];
-      final Vec2 pc = system.m_positionBuffer.data[c];
-      final float dabx = pa.x - pb.x;
-      final float daby = pa.y - pb.y;
-      final float dbcx = pb.x - pc.x;
-      final float dbcy = pb.y - pc.y;
-      final float dcax = pc.x - pa.x;
-      final float dcay = pc.y - pa.y;
+      final float[] positions = system.m_positionBuffer.data;
+      final float pax = positions[2 * a], pay = positions[2 * a + 1];
+      final float pbx = positions[2 * b], pby = positions[2 * b + 1];
+      final float pcx = positions[2 * c], pcy = positions[2 * c + 1];
+      final float dabx = pax - pbx;
+      final float daby = pay - pby;
+      final float dbcx = pbx - pcx;
+      final float dbcy = pby - pcy;
+      final float dcax = pcx - pax;
+      final float dcay = pcy - pay;
       float maxDistanceSquared = Settings.maxTriadDistanceSquared * system.m_squaredDiameter;
       if (dabx * dabx + daby * daby < maxDistanceSquared
           && dbcx * dbcx + dbcy * dbcy < maxDistanceSquared
@@ -1874,18 +2106,18 @@ public class ParticleSystem {
             system.m_flagsBuffer.data[a] | system.m_flagsBuffer.data[b]
                 | system.m_flagsBuffer.data[c];
         triad.strength = def.strength;
-        final float midPointx = (float) 1 / 3 * (pa.x + pb.x + pc.x);
-        final float midPointy = (float) 1 / 3 * (pa.y + pb.y + pc.y);
-        triad.pa.x = pa.x - midPointx;
-        triad.pa.y = pa.y - midPointy;
-        triad.pb.x = pb.x - midPointx;
-        triad.pb.y = pb.y - midPointy;
-        triad.pc.x = pc.x - midPointx;
-        triad.pc.y = pc.y - midPointy;
+        final float midPointx = (float) 1 / 3 * (pax + pbx + pcx);
+        final float midPointy = (float) 1 / 3 * (pay + pby + pcy);
+        triad.pa.x = pax - midPointx;
+        triad.pa.y = pay - midPointy;
+        triad.pb.x = pbx - midPointx;
+        triad.pb.y = pby - midPointy;
+        triad.pc.x = pcx - midPointx;
+        triad.pc.y = pcy - midPointy;
         triad.ka = -(dcax * dabx + dcay * daby);
         triad.kb = -(dabx * dbcx + daby * dbcy);
         triad.kc = -(dbcx * dcax + dbcy * dcay);
-        triad.s = Vec2.cross(pa, pb) + Vec2.cross(pb, pc) + Vec2.cross(pc, pa);
+        triad.s = (pax * pby - pay * pbx) + (pbx * pcy - pby * pcx) + (pcx * pay - pcy * pax);
         system.m_triadCount++;
       }
     }
@@ -1907,15 +2139,16 @@ public class ParticleSystem {
         int bf = system.m_flagsBuffer.data[b];
         int cf = system.m_flagsBuffer.data[c];
         if ((af & bf & cf & k_triadFlags) != 0) {
-          final Vec2 pa = system.m_positionBuffer.data[a];
-          final Vec2 pb = system.m_positionBuffer.data[b];
-          final Vec2 pc = system.m_positionBuffer.data[c];
-          final float dabx = pa.x - pb.x;
-          final float daby = pa.y - pb.y;
-          final float dbcx = pb.x - pc.x;
-          final float dbcy = pb.y - pc.y;
-          final float dcax = pc.x - pa.x;
-          final float dcay = pc.y - pa.y;
+          final float[] positions = system.m_positionBuffer.data;
+          final float pax = positions[2 * a], pay = positions[2 * a + 1];
+          final float pbx = positions[2 * b], pby = positions[2 * b + 1];
+          final float pcx = positions[2 * c], pcy = positions[2 * c + 1];
+          final float dabx = pax - pbx;
+          final float daby = pay - pby;
+          final float dbcx = pbx - pcx;
+          final float dbcy = pby - pcy;
+          final float dcax = pcx - pax;
+          final float dcay = pcy - pay;
           float maxDistanceSquared = Settings.maxTriadDistanceSquared * system.m_squaredDiameter;
           if (dabx * dabx + daby * daby < maxDistanceSquared
               && dbcx * dbcx + dbcy * dbcy < maxDistanceSquared
@@ -1937,18 +2170,18 @@ public class ParticleSystem {
             triad.indexC = c;
             triad.flags = af | bf | cf;
             triad.strength = MathUtils.min(groupA.m_strength, groupB.m_strength);
-            final float midPointx = (float) 1 / 3 * (pa.x + pb.x + pc.x);
-            final float midPointy = (float) 1 / 3 * (pa.y + pb.y + pc.y);
-            triad.pa.x = pa.x - midPointx;
-            triad.pa.y = pa.y - midPointy;
-            triad.pb.x = pb.x - midPointx;
-            triad.pb.y = pb.y - midPointy;
-            triad.pc.x = pc.x - midPointx;
-            triad.pc.y = pc.y - midPointy;
+            final float midPointx = (float) 1 / 3 * (pax + pbx + pcx);
+            final float midPointy = (float) 1 / 3 * (pay + pby + pcy);
+            triad.pa.x = pax - midPointx;
+            triad.pa.y = pay - midPointy;
+            triad.pb.x = pbx - midPointx;
+            triad.pb.y = pby - midPointy;
+            triad.pc.x = pcx - midPointx;
+            triad.pc.y = pcy - midPointy;
             triad.ka = -(dcax * dabx + dcay * daby);
             triad.kb = -(dabx * dbcx + daby * dbcy);
             triad.kc = -(dbcx * dcax + dbcy * dcay);
-            triad.s = Vec2.cross(pa, pb) + Vec2.cross(pb, pc) + Vec2.cross(pc, pa);
+            triad.s = (pax * pby - pay * pbx) + (pbx * pcy - pby * pcx) + (pcx * pay - pcy * pax);
             system.m_triadCount++;
           }
         }
@@ -1967,6 +2200,8 @@ public class ParticleSystem {
     boolean callDestructionListener;
     int destroyed;
 
+    private final Vec2 tempPosition = new Vec2();
+
     public DestroyParticlesInShapeCallback() {
       // TODO Auto-generated constructor stub
     }
@@ -1983,7 +2218,9 @@ public class ParticleSystem {
     @Override
     public boolean reportParticle(int index) {
       assert (index >= 0 && index < system.m_count);
-      if (shape.testPoint(xf, system.m_positionBuffer.data[index])) {
+      final float[] positions = system.m_positionBuffer.data;
+      tempPosition.set(positions[2 * index], positions[2 * index + 1]);
+      if (shape.testPoint(xf, tempPosition)) {
         system.destroyParticle(index, callDestructionListener);
         destroyed++;
       }
@@ -1995,6 +2232,7 @@ public class ParticleSystem {
     ParticleSystem system;
 
     private final Vec2 tempVec = new Vec2();
+    private final Vec2 tempPosition = new Vec2();
 
     @Override
     public boolean reportFixture(Fixture fixture) {
@@ -2009,6 +2247,7 @@ public class ParticleSystem {
       float invBm = bm > 0 ? 1 / bm : 0;
       float invBI = bI > 0 ? 1 / bI : 0;
       int childCount = shape.getChildCount();
+      final float[] positions = system.m_positionBuffer.data;
       for (int childIndex = 0; childIndex < childCount; childIndex++) {
         AABB aabb = fixture.getAABB(childIndex);
         final float aabblowerBoundx = aabb.lowerBound.x - system.m_particleDiameter;
@@ -2017,31 +2256,32 @@ public class ParticleSystem {
         final float aabbupperBoundy = aabb.upperBound.y + system.m_particleDiameter;
         int firstProxy =
             lowerBound(
-                system.m_proxyBuffer,
+                system.m_proxyTags,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabblowerBoundx, system.m_inverseDiameter
                     * aabblowerBoundy));
         int lastProxy =
             upperBound(
-                system.m_proxyBuffer,
+                system.m_proxyTags,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabbupperBoundx, system.m_inverseDiameter
                     * aabbupperBoundy));
 
         for (int proxy = firstProxy; proxy != lastProxy; ++proxy) {
-          int a = system.m_proxyBuffer[proxy].index;
-          Vec2 ap = system.m_positionBuffer.data[a];
-          if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
-              && ap.y <= aabbupperBoundy) {
+          int a = system.m_proxyIndices[proxy];
+          final float apx = positions[2 * a];
+          final float apy = positions[2 * a + 1];
+          if (aabblowerBoundx <= apx && apx <= aabbupperBoundx && aabblowerBoundy <= apy
+              && apy <= aabbupperBoundy) {
             float d;
             final Vec2 n = tempVec;
-            d = fixture.computeDistance(ap, childIndex, n);
+            d = fixture.computeDistance(tempPosition.set(apx, apy), childIndex, n);
             if (d < system.m_particleDiameter) {
               float invAm =
                   (system.m_flagsBuffer.data[a] & ParticleType.b2_wallParticle) != 0 ? 0 : system
                       .getParticleInvMass();
-              final float rpx = ap.x - bp.x;
-              final float rpy = ap.y - bp.y;
+              final float rpx = apx - bp.x;
+              final float rpy = apy - bp.y;
               float rpn = rpx * n.y - rpy * n.x;
               if (system.m_bodyContactCount >= system.m_bodyContactCapacity) {
                 int oldCapacity = system.m_bodyContactCapacity;
@@ -2078,6 +2318,7 @@ public class ParticleSystem {
     private final RayCastOutput output = new RayCastOutput();
     private final Vec2 tempVec = new Vec2();
     private final Vec2 tempVec2 = new Vec2();
+    private final Vec2 tempPosition = new Vec2();
 
     @Override
     public boolean reportFixture(Fixture fixture) {
@@ -2087,6 +2328,8 @@ public class ParticleSystem {
       final Shape shape = fixture.getShape();
       Body body = fixture.getBody();
       int childCount = shape.getChildCount();
+      final float[] positions = system.m_positionBuffer.data;
+      final float[] velocities = system.m_velocityBuffer.data;
       for (int childIndex = 0; childIndex < childCount; childIndex++) {
         AABB aabb = fixture.getAABB(childIndex);
         final float aabblowerBoundx = aabb.lowerBound.x - system.m_particleDiameter;
@@ -2095,28 +2338,28 @@ public class ParticleSystem {
         final float aabbupperBoundy = aabb.upperBound.y + system.m_particleDiameter;
         int firstProxy =
             lowerBound(
-                system.m_proxyBuffer,
+                system.m_proxyTags,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabblowerBoundx, system.m_inverseDiameter
                     * aabblowerBoundy));
         int lastProxy =
             upperBound(
-                system.m_proxyBuffer,
+                system.m_proxyTags,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabbupperBoundx, system.m_inverseDiameter
                     * aabbupperBoundy));
 
         for (int proxy = firstProxy; proxy != lastProxy; ++proxy) {
-          int a = system.m_proxyBuffer[proxy].index;
-          Vec2 ap = system.m_positionBuffer.data[a];
-          if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
-              && ap.y <= aabbupperBoundy) {
-            Vec2 av = system.m_velocityBuffer.data[a];
+          int a = system.m_proxyIndices[proxy];
+          final float apx = positions[2 * a];
+          final float apy = positions[2 * a + 1];
+          if (aabblowerBoundx <= apx && apx <= aabbupperBoundx && aabblowerBoundy <= apy
+              && apy <= aabbupperBoundy) {
             final Vec2 temp = tempVec;
-            Transform.mulTransToOutUnsafe(body.m_xf0, ap, temp);
+            Transform.mulTransToOutUnsafe(body.m_xf0, tempPosition.set(apx, apy), temp);
             Transform.mulToOutUnsafe(body.m_xf, temp, input.p1);
-            input.p2.x = ap.x + step.dt * av.x;
-            input.p2.y = ap.y + step.dt * av.y;
+            input.p2.x = apx + step.dt * velocities[2 * a];
+            input.p2.y = apy + step.dt * velocities[2 * a + 1];
             input.maxFraction = 1;
             if (fixture.raycast(output, input, childIndex)) {
               final Vec2 p = tempVec;
@@ -2127,13 +2370,13 @@ public class ParticleSystem {
                   (1 - output.fraction) * input.p1.y + output.fraction * input.p2.y
                       + Settings.linearSlop * output.normal.y;
 
-              final float vx = step.inv_dt * (p.x - ap.x);
-              final float vy = step.inv_dt * (p.y - ap.y);
-              av.x = vx;
-              av.y = vy;
+              final float vx = step.inv_dt * (p.x - apx);
+              final float vy = step.inv_dt * (p.y - apy);
+              velocities[2 * a] = vx;
+              velocities[2 * a + 1] = vy;
               final float particleMass = system.getParticleMass();
-              final float ax = particleMass * (av.x - vx);
-              final float ay = particleMass * (av.y - vy);
+              final float ax = particleMass * (velocities[2 * a] - vx);
+              final float ay = particleMass * (velocities[2 * a + 1] - vy);
               Vec2 b = output.normal;
               final float fdn = ax * b.x + ay * b.y;
               final Vec2 f = tempVec2;
@@ -2149,8 +2392,8 @@ public class ParticleSystem {
   }
 
   static class Test {
-    static boolean IsProxyInvalid(final Proxy proxy) {
-      return proxy.index < 0;
+    static boolean IsProxyInvalid(final int proxyIndex) {
+      return proxyIndex < 0;
     }
 
     static boolean IsContactInvalid(final ParticleContact contact) {
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.pooling.normal;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.Collision;
+import org.jbox2d.collision.Distance;
+import org.jbox2d.collision.TimeOfImpact;
+import org.jbox2d.common.Mat22;
+import org.jbox2d.common.Mat33;
+import org.jbox2d.common.Rot;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.common.Vec3;
+import org.jbox2d.dynamics.contacts.ChainAndCircleContact;
+import org.jbox2d.dynamics.contacts.ChainAndPolygonContact;
+import org.jbox2d.dynamics.contacts.CircleContact;
+import org.jbox2d.dynamics.contacts.Contact;
+import org.jbox2d.dynamics.contacts.EdgeAndCircleContact;
+import org.jbox2d.dynamics.contacts.EdgeAndPolygonContact;
+import org.jbox2d.dynamics.contacts.PolygonAndCircleContact;
+import org.jbox2d.dynamics.contacts.PolygonContact;
+import org.jbox2d.pooling.IDynamicStack;
+import org.jbox2d.pooling.IWorldPool;
+
+/**
+ * A world pool that can be used from several threads at once. Every thread gets its own
+ * {@link DefaultWorldPool} for temporaries, arrays and the {@link Collision}, {@link Distance} and
+ * {@link TimeOfImpact} objects, so narrow phase and solver work can run on worker threads without
+ * locking. Contacts are only created and destroyed by the thread stepping the world, so the contact
+ * stacks are shared and handed out contacts that draw from this pool.
+ * 
+ * The static statistics counters in {@link Distance} and {@link TimeOfImpact} are not synchronized,
+ * they are only approximate when used from several threads.
+ */
+public class ThreadLocalWorldPool implements IWorldPool {
+
+  private final IWorldPool world = this;
+
+  private final MutableStack<Contact> pcstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new PolygonContact(world); }
+      protected Contact[] newArray(int size) { return new PolygonContact[size]; }
+  };
+
+  private final MutableStack<Contact> ccstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new CircleContact(world); }
+      protected Contact[] newArray(int size) { return new CircleContact[size]; }
+    };
+
+  private final MutableStack<Contact> cpstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new PolygonAndCircleContact(world); }
+      protected Contact[] newArray(int size) { return new PolygonAndCircleContact[size]; }
+    };
+
+  private final MutableStack<Contact> ecstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new EdgeAndCircleContact(world); }
+      protected Contact[] newArray(int size) { return new EdgeAndCircleContact[size]; }
+    };
+
+  private final MutableStack<Contact> epstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new EdgeAndPolygonContact(world); }
+      protected Contact[] newArray(int size) { return new EdgeAndPolygonContact[size]; }
+    };
+
+  private final MutableStack<Contact> chcstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new ChainAndCircleContact(world); }
+      protected Contact[] newArray(int size) { return new ChainAndCircleContact[size]; }
+    };
+
+  private final MutableStack<Contact> chpstack =
+    new MutableStack<Contact>(Settings.CONTACT_STACK_INIT_SIZE) {
+      protected Contact newInstance () { return new ChainAndPolygonContact(world); }
+      protected Contact[] newArray(int size) { return new ChainAndPolygonContact[size]; }
+    };
+
+  private final ThreadLocal<DefaultWorldPool> local;
+
+  public ThreadLocalWorldPool(final int argSize, final int argContainerSize) {
+    local = new ThreadLocal<DefaultWorldPool>() {
+      protected DefaultWorldPool initialValue() {
+        return new DefaultWorldPool(argSize, argContainerSize);
+      }
+    };
+  }
+
+  /**
+   * @return the pool of the calling thread
+   */
+  public final DefaultWorldPool getLocalPool() {
+    return local.get();
+  }
+
+  public final IDynamicStack<Contact> getPolyContactStack() {
+    return pcstack;
+  }
+
+  public final IDynamicStack<Contact> getCircleContactStack() {
+    return ccstack;
+  }
+
+  public final IDynamicStack<Contact> getPolyCircleContactStack() {
+    return cpstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getEdgeCircleContactStack() {
+    return ecstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getEdgePolyContactStack() {
+    return epstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getChainCircleContactStack() {
+    return chcstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getChainPolyContactStack() {
+    return chpstack;
+  }
+
+  public final Vec2 popVec2() {
+    return local.get().popVec2();
+  }
+
+  public final Vec2[] popVec2(int argNum) {
+    return local.get().popVec2(argNum);
+  }
+
+  public final void pushVec2(int argNum) {
+    local.get().pushVec2(argNum);
+  }
+
+  public final Vec3 popVec3() {
+    return local.get().popVec3();
+  }
+
+  public final Vec3[] popVec3(int argNum) {
+    return local.get().popVec3(argNum);
+  }
+
+  public final void pushVec3(int argNum) {
+    local.get().pushVec3(argNum);
+  }
+
+  public final Mat22 popMat22() {
+    return local.get().popMat22();
+  }
+
+  public final Mat22[] popMat22(int argNum) {
+    return local.get().popMat22(argNum);
+  }
+
+  public final void pushMat22(int argNum) {
+    local.get().pushMat22(argNum);
+  }
+
+  public final Mat33 popMat33() {
+    return local.get().popMat33();
+  }
+
+  public final void pushMat33(int argNum) {
+    local.get().pushMat33(argNum);
+  }
+
+  public final AABB popAABB() {
+    return local.get().popAABB();
+  }
+
+  public final AABB[] popAABB(int argNum) {
+    return local.get().popAABB(argNum);
+  }
+
+  public final void pushAABB(int argNum) {
+    local.get().pushAABB(argNum);
+  }
+
+  public final Rot popRot() {
+    return local.get().popRot();
+  }
+
+  public final void pushRot(int num) {
+    local.get().pushRot(num);
+  }
+
+  public final Collision getCollision() {
+    return local.get().getCollision();
+  }
+
+  public final TimeOfImpact getTimeOfImpact() {
+    return local.get().getTimeOfImpact();
+  }
+
+  public final Distance getDistance() {
+    return local.get().getDistance();
+  }
+
+  public final float[] getFloatArray(int argLength) {
+    return local.get().getFloatArray(argLength);
+  }
+
+  public final int[] getIntArray(int argLength) {
+    return local.get().getIntArray(argLength);
+  }
+
+  public final Vec2[] getVec2Array(int argLength) {
+    return local.get().getVec2Array(argLength);
+  }
+}
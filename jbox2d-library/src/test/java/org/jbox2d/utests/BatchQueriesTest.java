@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.utests;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jbox2d.collision.shapes.EdgeShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.BatchQueries;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.Fixture;
+import org.jbox2d.dynamics.World;
+
+import junit.framework.TestCase;
+
+public class BatchQueriesTest extends TestCase {
+
+  public void testPooledEdgeRaycastsMatchSerial() {
+    World world = new World(new Vec2(0, -10));
+    // One sloped edge, so every ray of the batch hits the same shape and a normal that is read
+    // back before it is normalized is far off.
+    EdgeShape edge = new EdgeShape();
+    edge.set(new Vec2(-50, -5), new Vec2(50, 5));
+    Fixture ground = world.createBody(new BodyDef()).createFixture(edge, 0);
+
+    final int count = 16 * BatchQueries.CHUNK_SIZE;
+    float[] rays = new float[World.RAY_STRIDE * count];
+    Random random = new Random(3);
+    for (int i = 0; i < count; i++) {
+      float x = -40 + 80 * random.nextFloat();
+      float side = random.nextBoolean() ? 1 : -1;
+      int r = World.RAY_STRIDE * i;
+      rays[r] = x;
+      rays[r + 1] = side * 20;
+      rays[r + 2] = x + 2 * random.nextFloat() - 1;
+      rays[r + 3] = -side * 20;
+    }
+
+    Fixture[] serialFixtures = new Fixture[count];
+    float[] serialHits = new float[World.HIT_STRIDE * count];
+    assertEquals(count, world.raycastClosest(rays, count, 0xFFFF, serialFixtures, serialHits));
+    for (int i = 0; i < count; i++) {
+      assertSame(ground, serialFixtures[i]);
+      int h = World.HIT_STRIDE * i;
+      Vec2 normal = new Vec2(serialHits[h + 2], serialHits[h + 3]);
+      assertEquals(1, normal.length(), 1e-5f);
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      world.setBatchQueryPool(pool);
+      Fixture[] fixtures = new Fixture[count];
+      float[] hits = new float[World.HIT_STRIDE * count];
+      for (int run = 0; run < 200; run++) {
+        Arrays.fill(fixtures, null);
+        Arrays.fill(hits, 0);
+        assertEquals(count, world.raycastClosest(rays, count, 0xFFFF, fixtures, hits));
+        assertTrue(Arrays.equals(serialFixtures, fixtures));
+        assertTrue("run " + run, Arrays.equals(serialHits, hits));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
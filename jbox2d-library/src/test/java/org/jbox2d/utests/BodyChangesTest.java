@@ -21,11 +21,46 @@
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
  * POSSIBILITY OF SUCH DAMAGE.
  ******************************************************************************/
-package org.jbox2d.dynamics.contacts;
+package org.jbox2d.utests;
 
+import org.jbox2d.collision.shapes.CircleShape;
 import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyChanges;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.World;
 
-public class Velocity {
-  public final Vec2 v = new Vec2();
-  public float w;
+import junit.framework.TestCase;
+
+public class BodyChangesTest extends TestCase {
+
+  public void testManyBodiesMoveInOneStep() {
+    World world = new World(new Vec2(0, -10));
+    CircleShape shape = new CircleShape();
+    shape.m_radius = 0.5f;
+    int count = 100;
+    for (int i = 0; i < count; i++) {
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.position.set(2 * i, 10);
+      Body body = world.createBody(bd);
+      body.createFixture(shape, 1);
+    }
+
+    // Turned on after the bodies exist, so the first step records more entries than the record
+    // initially holds.
+    world.setBodyChangeTracking(true);
+    world.step(1 / 60f, 8, 3);
+
+    BodyChanges changes = world.getBodyChanges();
+    assertEquals(count, changes.getCount());
+    boolean[] seen = new boolean[world.getBodyIndexCount()];
+    for (int k = 0; k < changes.getCount(); k++) {
+      assertTrue((changes.getChanges()[k] & BodyChanges.MOVED) != 0);
+      int index = changes.getIndices()[k];
+      assertFalse(seen[index]);
+      seen[index] = true;
+    }
+  }
 }
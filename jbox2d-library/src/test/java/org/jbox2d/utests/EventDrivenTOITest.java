@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.utests;
+
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.World;
+
+import junit.framework.TestCase;
+
+public class EventDrivenTOITest extends TestCase {
+
+  /**
+   * A bullet hits a sleeping kinematic platform with a sleeping box on it, so close that the
+   * contact of the box and the platform has a TOI event once the TOI island wakes the platform.
+   */
+  private World createWorld(boolean eventDriven) {
+    World world = new World(new Vec2(0, -10));
+    world.setEventDrivenTOI(eventDriven);
+
+    BodyDef bd = new BodyDef();
+    bd.type = BodyType.KINEMATIC;
+    Body platform = world.createBody(bd);
+    PolygonShape shape = new PolygonShape();
+    shape.setAsBox(5, 0.5f);
+    platform.createFixture(shape, 0);
+
+    bd = new BodyDef();
+    bd.type = BodyType.DYNAMIC;
+    bd.position.set(3, 1);
+    shape.setAsBox(0.5f, 0.5f);
+    Body box = world.createBody(bd);
+    box.createFixture(shape, 1);
+
+    bd = new BodyDef();
+    bd.type = BodyType.DYNAMIC;
+    bd.bullet = true;
+    bd.position.set(-4, -3.5f);
+    bd.linearVelocity.set(0, 120);
+    CircleShape circle = new CircleShape();
+    circle.m_radius = 0.1f;
+    world.createBody(bd).createFixture(circle, 1);
+
+    // One step creates the contacts, which wakes the bodies, so put them back to sleep.
+    world.step(1 / 60f, 8, 3);
+    box.setTransform(new Vec2(3, 1.003f), 0);
+    box.setAwake(false);
+    platform.setAwake(false);
+    return world;
+  }
+
+  public void testWokenKinematicBodyMatchesScan() {
+    World scan = createWorld(false);
+    World events = createWorld(true);
+    for (int i = 0; i < 60; i++) {
+      scan.step(1 / 60f, 8, 3);
+      events.step(1 / 60f, 8, 3);
+      Body b = events.getBodyList();
+      for (Body r = scan.getBodyList(); r != null; r = r.getNext()) {
+        assertEquals(r.getPosition(), b.getPosition());
+        assertEquals(r.getLinearVelocity(), b.getLinearVelocity());
+        b = b.getNext();
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Daniel Murphy
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright notice,
+ * 	  this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright notice,
+ * 	  this list of conditions and the following disclaimer in the documentation
+ * 	  and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.jbox2d.utests;
+
+import java.util.Random;
+
+import org.jbox2d.callbacks.QueryCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.broadphase.DynamicTreeFlatNodes;
+import org.jbox2d.collision.broadphase.SplitBroadPhaseBuffer;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Fixture;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.pooling.normal.DefaultWorldPool;
+
+import junit.framework.TestCase;
+
+public class SplitBroadPhaseTest extends TestCase {
+
+  private DynamicTreeFlatNodes staticTree;
+
+  private World createWorld() {
+    staticTree = new DynamicTreeFlatNodes();
+    World world = new World(new Vec2(0, -10), new DefaultWorldPool(100, 10),
+        new SplitBroadPhaseBuffer(staticTree, new DynamicTreeFlatNodes()));
+
+    // Level geometry in a shuffled order, so inserting it one by one gives a poor tree.
+    int[] cells = new int[400];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = i;
+    }
+    Random random = new Random(7);
+    for (int i = cells.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int cell = cells[i];
+      cells[i] = cells[j];
+      cells[j] = cell;
+    }
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.5f, 0.5f);
+    for (int cell : cells) {
+      BodyDef bd = new BodyDef();
+      bd.position.set(-20 + 2 * (cell % 20), -2 * (cell / 20));
+      world.createBody(bd).createFixture(box, 0);
+    }
+
+    CircleShape circle = new CircleShape();
+    circle.m_radius = 0.4f;
+    for (int i = 0; i < 20; i++) {
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.position.set(-19.5f + 2 * i, 2);
+      world.createBody(bd).createFixture(circle, 1);
+    }
+    return world;
+  }
+
+  private static int countFixtures(World world, AABB aabb) {
+    final int[] count = new int[1];
+    world.queryAABB(new QueryCallback() {
+      public boolean reportFixture(Fixture fixture) {
+        count[0]++;
+        return true;
+      }
+    }, aabb);
+    return count[0];
+  }
+
+  public void testRebuildStaticTree() {
+    World world = createWorld();
+    AABB aabb = new AABB(new Vec2(-10, -15), new Vec2(5, 3));
+    int before = countFixtures(world, aabb);
+    float areaRatio = staticTree.getAreaRatio();
+
+    world.rebuildStaticTree();
+    staticTree.validate();
+    assertTrue(staticTree.getAreaRatio() < areaRatio);
+    assertEquals(before, countFixtures(world, aabb));
+
+    // Proxy ids are kept, so the pairs and the simulation are the same as without the rebuild.
+    World reference = createWorld();
+    for (int i = 0; i < 120; i++) {
+      world.step(1 / 60f, 8, 3);
+      reference.step(1 / 60f, 8, 3);
+    }
+    assertEquals(reference.getContactCount(), world.getContactCount());
+    Body b = world.getBodyList();
+    Body r = reference.getBodyList();
+    while (b != null) {
+      assertEquals(r.getPosition(), b.getPosition());
+      b = b.getNext();
+      r = r.getNext();
+    }
+  }
+
+  public void testCreateProxies() {
+    DynamicTreeFlatNodes tree = new DynamicTreeFlatNodes();
+    AABB[] aabbs = new AABB[100];
+    Object[] userData = new Object[aabbs.length];
+    for (int i = 0; i < aabbs.length; i++) {
+      aabbs[i] = new AABB(new Vec2(i, i % 7), new Vec2(i + 1, i % 7 + 1));
+      userData[i] = Integer.valueOf(i);
+    }
+    int[] proxyIds = new int[aabbs.length];
+    tree.createProxies(aabbs, userData, aabbs.length, proxyIds);
+    tree.validate();
+    for (int i = 0; i < aabbs.length; i++) {
+      assertEquals(userData[i], tree.getUserData(proxyIds[i]));
+      assertTrue(tree.getFatAABB(proxyIds[i]).contains(aabbs[i]));
+    }
+  }
+}
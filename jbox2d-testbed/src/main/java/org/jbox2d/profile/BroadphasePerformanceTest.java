@@ -1,16 +1,21 @@
 package org.jbox2d.profile;
 
+import org.jbox2d.collision.broadphase.DynamicTreeCompact;
 import org.jbox2d.collision.broadphase.DynamicTreeFlatNodes;
+import org.jbox2d.collision.broadphase.DynamicTreeWide;
+import org.jbox2d.collision.broadphase.SpatialHashGrid;
+import org.jbox2d.collision.broadphase.SweepAndPrune;
 import org.jbox2d.common.Vec2;
 import org.jbox2d.dynamics.World;
 import org.jbox2d.pooling.IWorldPool;
 import org.jbox2d.pooling.normal.DefaultWorldPool;
+import org.jbox2d.profile.worlds.ConveyorWorld;
 import org.jbox2d.profile.worlds.PerformanceTestWorld;
 import org.jbox2d.profile.worlds.PistonWorld;
 
 public class BroadphasePerformanceTest extends BasicPerformanceTest {
 
-  private static int NUM_TESTS = 2;
+  private static int NUM_TESTS = 6;
   private PerformanceTestWorld world;
 
   public BroadphasePerformanceTest(int iters, PerformanceTestWorld world) {
@@ -20,7 +25,9 @@ public class BroadphasePerformanceTest extends BasicPerformanceTest {
   }
 
   public static void main(String[] args) {
-    BroadphasePerformanceTest benchmark = new BroadphasePerformanceTest(10, new PistonWorld());
+    PerformanceTestWorld world =
+        args.length > 0 && "conveyor".equals(args[0]) ? new ConveyorWorld() : new PistonWorld();
+    BroadphasePerformanceTest benchmark = new BroadphasePerformanceTest(10, world);
     benchmark.go();
   }
 
@@ -29,8 +36,16 @@ public class BroadphasePerformanceTest extends BasicPerformanceTest {
     IWorldPool pool = new DefaultWorldPool(50, 50);
     if (testNum == 0) {
       w = new World(new Vec2(0.0f, -10.0f), pool);
-    } else {
+    } else if (testNum == 1) {
       w = new World(new Vec2(0, -10), pool, new DynamicTreeFlatNodes());
+    } else if (testNum == 2) {
+      w = new World(new Vec2(0, -10), pool, new SweepAndPrune());
+    } else if (testNum == 3) {
+      w = new World(new Vec2(0, -10), pool, new SpatialHashGrid());
+    } else if (testNum == 4) {
+      w = new World(new Vec2(0, -10), pool, new DynamicTreeCompact());
+    } else {
+      w = new World(new Vec2(0, -10), pool, new DynamicTreeWide());
     }
     world.setupWorld(w);
   }
@@ -47,6 +62,14 @@ public class BroadphasePerformanceTest extends BasicPerformanceTest {
         return "Normal";
       case 1:
         return "Flat";
+      case 2:
+        return "Sweep and prune";
+      case 3:
+        return "Hashed grid";
+      case 4:
+        return "Compact tree";
+      case 5:
+        return "Wide tree";
       default:
         return "";
     }
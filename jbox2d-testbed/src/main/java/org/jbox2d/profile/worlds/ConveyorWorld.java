@@ -0,0 +1,88 @@
+package org.jbox2d.profile.worlds;
+
+import org.jbox2d.callbacks.ContactImpulse;
+import org.jbox2d.callbacks.ContactListener;
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Fixture;
+import org.jbox2d.dynamics.FixtureDef;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.contacts.Contact;
+
+/**
+ * Rows of conveyor belts carrying lots of equally sized boxes along the x axis.
+ */
+public class ConveyorWorld implements PerformanceTestWorld, ContactListener {
+  public float timeStep = 1f / 60;
+  public int velIters = 8;
+  public int posIters = 3;
+
+  public int belts = 8;
+  public int boxesPerBelt = 400;
+  public float beltSpeed = 4f;
+
+  public World world;
+
+  public ConveyorWorld() {}
+
+  @Override
+  public void setupWorld(World world) {
+    this.world = world;
+    world.setContactListener(this);
+
+    PolygonShape beltShape = new PolygonShape();
+    float beltLength = boxesPerBelt * 1.5f;
+    beltShape.setAsBox(beltLength, 0.5f);
+    FixtureDef belt = new FixtureDef();
+    belt.shape = beltShape;
+    belt.friction = 0.8f;
+
+    PolygonShape boxShape = new PolygonShape();
+    boxShape.setAsBox(0.5f, 0.5f);
+    FixtureDef box = new FixtureDef();
+    box.shape = boxShape;
+    box.density = 1f;
+    box.friction = 0.8f;
+
+    for (int i = 0; i < belts; i++) {
+      float y = i * 4f;
+      BodyDef bd = new BodyDef();
+      bd.position.set(beltLength, y);
+      Body beltBody = world.createBody(bd);
+      beltBody.createFixture(belt);
+
+      bd.type = BodyType.DYNAMIC;
+      for (int j = 0; j < boxesPerBelt; j++) {
+        bd.position.set(j * 1.2f + 1f, y + 1.01f);
+        world.createBody(bd).createFixture(box);
+      }
+    }
+  }
+
+  @Override
+  public void step() {
+    world.step(timeStep, velIters, posIters);
+  }
+
+  @Override
+  public void preSolve(Contact contact, Manifold oldManifold) {
+    Fixture fixtureA = contact.getFixtureA();
+    Fixture fixtureB = contact.getFixtureB();
+    if (fixtureA.getBody().getType() == BodyType.STATIC
+        || fixtureB.getBody().getType() == BodyType.STATIC) {
+      contact.setTangentSpeed(beltSpeed);
+    }
+  }
+
+  @Override
+  public void beginContact(Contact contact) {}
+
+  @Override
+  public void endContact(Contact contact) {}
+
+  @Override
+  public void postSolve(Contact contact, ContactImpulse impulse) {}
+}
@@ -859,6 +859,7 @@ class ParticleVelocityQueryCallback implements ParticleQueryCallback {
   Shape shape;
   Vec2 velocity;
   final Transform xf = new Transform();
+  private final Vec2 p = new Vec2();
 
   public ParticleVelocityQueryCallback() {
     xf.setIdentity();
@@ -872,10 +873,12 @@ class ParticleVelocityQueryCallback implements ParticleQueryCallback {
 
   @Override
   public boolean reportParticle(int index) {
-    Vec2 p = world.getParticlePositionBuffer()[index];
+    float[] positions = world.getParticlePositionArray();
+    p.set(positions[2 * index], positions[2 * index + 1]);
     if (shape.testPoint(xf, p)) {
-      Vec2 v = world.getParticleVelocityBuffer()[index];
-      v.set(velocity);
+      float[] velocities = world.getParticleVelocityArray();
+      velocities[2 * index] = velocity.x;
+      velocities[2 * index + 1] = velocity.y;
     }
     return true;
   }
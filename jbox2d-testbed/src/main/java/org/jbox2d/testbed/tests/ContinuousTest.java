@@ -106,6 +106,8 @@ public class ContinuousTest extends TestbedTest {
     TimeOfImpact.toiMaxIters = 0;
     TimeOfImpact.toiRootIters = 0;
     TimeOfImpact.toiMaxRootIters = 0;
+    TimeOfImpact.toiSkips = 0;
+    TimeOfImpact.toiWarmStarts = 0;
   }
 
   public void launch() {
@@ -144,6 +146,9 @@ public class ContinuousTest extends TestbedTest {
 
       addTextLine(String.format("ave toi root iters = %3.1f, max toi root iters = %d", toiRootIters
           * 1. / toiCalls, toiMaxRootIters));
+
+      addTextLine(String.format("toi skips = %d, toi warm starts = %d", TimeOfImpact.toiSkips,
+          TimeOfImpact.toiWarmStarts));
     }
 
     addTextLine("Press 'c' to change launch shape");